@@ -0,0 +1,110 @@
+package git.command.implementation;
+
+import git.object.CompressionPolicy;
+import git.object.FsyncPolicy;
+import git.object.ObjectStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Fixtures shared by the benchmarks: scratch repositories and generated working trees.
+ */
+public final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Distribution of generated file sizes.
+     */
+    public enum SizeDistribution {
+        /** Every file is 1 KiB. */
+        SMALL,
+        /** Mostly source-sized files with an occasional large one, like a typical repository. */
+        MIXED,
+        /** Every file is 256 KiB. */
+        LARGE;
+
+        int nextSize(Random random) {
+            return switch (this) {
+                case SMALL -> 1024;
+                case LARGE -> 256 * 1024;
+                case MIXED -> random.nextInt(100) < 95 ? 512 + random.nextInt(16 * 1024) : 256 * 1024 + random.nextInt(768 * 1024);
+            };
+        }
+    }
+
+    static Path createScratchDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory("git-bench-" + prefix);
+    }
+
+    static ObjectStore openStore(Path gitDir) throws IOException {
+        return openStore(gitDir, CompressionPolicy.DEFAULT);
+    }
+
+    static ObjectStore openStore(Path gitDir, CompressionPolicy compression) throws IOException {
+        Path objects = gitDir.resolve("objects");
+        Files.createDirectories(objects);
+        return new ObjectStore(objects, FsyncPolicy.NONE, compression);
+    }
+
+    /**
+     * Fills {@code root} with {@code fileCount} files spread over a directory tree of the given
+     * depth, each directory having {@code fanout} subdirectories. Content is pseudo-random
+     * text so that it compresses like source code.
+     */
+    static void generateTree(Path root, int fileCount, int depth, int fanout, SizeDistribution sizes, long seed)
+            throws IOException {
+        generateTree(root, fileCount, depth, fanout, sizes, 0, seed);
+    }
+
+    /**
+     * Like {@link #generateTree(Path, int, int, int, SizeDistribution, long)}, but about
+     * {@code binaryPercent} percent of the files hold random bytes, which compress no better
+     * than the images and archives they stand in for.
+     */
+    static void generateTree(Path root, int fileCount, int depth, int fanout, SizeDistribution sizes,
+                             int binaryPercent, long seed) throws IOException {
+        Random random = new Random(seed);
+        int leaves = (int) Math.pow(fanout, depth);
+        for (int i = 0; i < fileCount; i++) {
+            int leaf = i % leaves;
+            Path dir = root;
+            for (int level = 0; level < depth; level++) {
+                dir = dir.resolve("d" + (leaf % fanout));
+                leaf /= fanout;
+            }
+            Files.createDirectories(dir);
+            int size = sizes.nextSize(random);
+            if (random.nextInt(100) < binaryPercent) {
+                byte[] data = new byte[size];
+                random.nextBytes(data);
+                Files.write(dir.resolve("file" + i + ".bin"), data);
+            } else {
+                Files.write(dir.resolve("file" + i + ".txt"), randomText(random, size));
+            }
+        }
+    }
+
+    static byte[] randomText(Random random, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int r = random.nextInt(64);
+            data[i] = (byte) (r < 52 ? 'a' + (r % 26) : r < 60 ? ' ' : '\n');
+        }
+        return data;
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path))
+            return;
+        try (Stream<Path> walk = Files.walk(path)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
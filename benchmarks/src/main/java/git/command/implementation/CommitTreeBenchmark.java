@@ -0,0 +1,52 @@
+package git.command.implementation;
+
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commit construction and writing in {@link CommitTree}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitTreeBenchmark {
+
+    private static final ObjectId TREE = ObjectId.fromHex("4b825dc642cb6eb9a060e54bf8d69288fbee4904");
+    private static final ObjectId PARENT = ObjectId.fromHex("3b18e512dba79e4c8300dd08aeb37f8e728b8dad");
+
+    private final CommitTree commitTree = new CommitTree();
+    private Path scratch;
+    private ObjectStore store;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scratch = BenchmarkSupport.createScratchDirectory("commit-tree");
+        store = BenchmarkSupport.openStore(scratch.resolve(".git"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkSupport.deleteRecursively(scratch);
+    }
+
+    @Benchmark
+    public String buildCommit() {
+        return commitTree.buildCommitContent(TREE, PARENT, "Benchmark commit message");
+    }
+
+    @Benchmark
+    public ObjectId buildAndWriteCommit() throws IOException {
+        // A distinct message per call so every commit is a new object
+        String content = commitTree.buildCommitContent(TREE, PARENT, "Benchmark commit " + counter++);
+        return commitTree.writeCommitObject(store, content);
+    }
+}
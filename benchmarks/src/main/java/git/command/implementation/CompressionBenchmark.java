@@ -0,0 +1,80 @@
+package git.command.implementation;
+
+import git.index.CacheTree;
+import git.index.Index;
+import git.object.CompressionPolicy;
+import git.object.ObjectStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Cold write-tree under different loose object compression policies, over working trees where
+ * some of the files are incompressible binaries.
+ * <p>
+ * {@code ZLIB_DEFAULT} is the fixed level every object used to get, {@code BEST_SPEED} is
+ * Git's default level without the probe, and {@code ADAPTIVE} is the default policy, which
+ * stores blobs it detects as incompressible.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompressionBenchmark {
+
+    public enum Policy {
+        ZLIB_DEFAULT(new CompressionPolicy(Deflater.DEFAULT_COMPRESSION, false)),
+        BEST_SPEED(new CompressionPolicy(Deflater.BEST_SPEED, false)),
+        ADAPTIVE(CompressionPolicy.DEFAULT);
+
+        final CompressionPolicy policy;
+
+        Policy(CompressionPolicy policy) {
+            this.policy = policy;
+        }
+    }
+
+    @Param({"2000"})
+    public int fileCount;
+
+    @Param({"0", "30"})
+    public int binaryPercent;
+
+    @Param({"ZLIB_DEFAULT", "BEST_SPEED", "ADAPTIVE"})
+    public Policy policy;
+
+    private Path workTree;
+    private Path gitDir;
+    private ObjectStore store;
+    private Index index;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        workTree = BenchmarkSupport.createScratchDirectory("compression");
+        BenchmarkSupport.generateTree(workTree, fileCount, 2, 4, BenchmarkSupport.SizeDistribution.MIXED, binaryPercent, 1);
+        gitDir = BenchmarkSupport.createScratchDirectory("compression-git");
+    }
+
+    @Setup(Level.Iteration)
+    public void resetRepository() throws IOException {
+        BenchmarkSupport.deleteRecursively(gitDir.resolve("objects"));
+        store = BenchmarkSupport.openStore(gitDir, policy.policy);
+        index = new Index();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkSupport.deleteRecursively(workTree);
+        BenchmarkSupport.deleteRecursively(gitDir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public CacheTree writeTree() throws IOException {
+        return new WriteTree().writeTree(workTree.toFile(), store, index, WriteTree.Mode.SERIAL);
+    }
+}
@@ -0,0 +1,70 @@
+package git.command.implementation;
+
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blob hashing through {@link HashObject#hashFile}: {@code stored} measures the path where the
+ * object already exists (hash plus stat), {@code fresh} the full hash, deflate and write.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashObjectBenchmark {
+
+    @Param({"1024", "65536", "4194304"})
+    public int fileSize;
+
+    private final HashObject hashObject = new HashObject();
+    private Path scratch;
+    private ObjectStore store;
+    private File file;
+    private ObjectId hash;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scratch = BenchmarkSupport.createScratchDirectory("hash-object");
+        store = BenchmarkSupport.openStore(scratch.resolve(".git"));
+        file = scratch.resolve("blob.txt").toFile();
+        Files.write(file.toPath(), BenchmarkSupport.randomText(new Random(42), fileSize));
+        hash = hashObject.hashFile(store, file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkSupport.deleteRecursively(scratch);
+    }
+
+    @Benchmark
+    public ObjectId stored() throws IOException {
+        return hashObject.hashFile(store, file);
+    }
+
+    @Benchmark
+    public ObjectId fresh(FreshObject fresh) throws IOException {
+        return hashObject.hashFile(store, file);
+    }
+
+    /**
+     * Removes the stored object before each invocation so it has to be written again.
+     */
+    @State(Scope.Thread)
+    public static class FreshObject {
+
+        @Setup(Level.Invocation)
+        public void removeObject(HashObjectBenchmark benchmark) throws IOException {
+            Files.deleteIfExists(benchmark.store.pathOf(benchmark.hash));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package git.command.implementation;
+
+import git.object.ObjectId;
+import git.object.Tree;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tree entry serialization and ordering in {@link WriteTree}, and tree parsing with {@link Tree}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeSerializationBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int entryCount;
+
+    private final WriteTree writeTree = new WriteTree();
+    private final List<String> names = new ArrayList<>();
+    private final List<ObjectId> ids = new ArrayList<>();
+    private List<byte[]> entries;
+    private byte[] treeContent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(7);
+        for (int i = 0; i < entryCount; i++) {
+            names.add("file-" + Integer.toHexString(random.nextInt()) + ".java");
+            byte[] id = new byte[20];
+            random.nextBytes(id);
+            ids.add(ObjectId.fromRaw(id));
+        }
+        entries = new ArrayList<>();
+        for (int i = 0; i < entryCount; i++)
+            entries.add(writeTree.serializeEntry("100644", names.get(i), ids.get(i)));
+
+        List<byte[]> sorted = new ArrayList<>(entries);
+        WriteTree.sortWithRawBytes(sorted);
+        int size = sorted.stream().mapToInt(e -> e.length).sum();
+        treeContent = new byte[size];
+        int offset = 0;
+        for (byte[] entry : sorted) {
+            System.arraycopy(entry, 0, treeContent, offset, entry.length);
+            offset += entry.length;
+        }
+    }
+
+    @Benchmark
+    public void serializeEntries(Blackhole blackhole) {
+        for (int i = 0; i < entryCount; i++)
+            blackhole.consume(writeTree.serializeEntry("100644", names.get(i), ids.get(i)));
+    }
+
+    @Benchmark
+    public List<byte[]> sortEntries() {
+        List<byte[]> shuffled = new ArrayList<>(entries);
+        Collections.shuffle(shuffled, new Random(entryCount));
+        WriteTree.sortWithRawBytes(shuffled);
+        return shuffled;
+    }
+
+    @Benchmark
+    public Tree parseTree() throws IOException {
+        return Tree.parse(treeContent);
+    }
+}
@@ -0,0 +1,80 @@
+package git.command.implementation;
+
+import git.index.CacheTree;
+import git.index.Index;
+import git.object.ObjectStore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end write-tree over a generated working tree of configurable shape.
+ * <p>
+ * {@code cold} starts every iteration from an empty object store and index, so every blob is
+ * read, hashed, compressed and written. {@code warm} reuses the index from the previous run,
+ * which is the common incremental case.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriteTreeBenchmark {
+
+    @Param({"1000", "10000"})
+    public int fileCount;
+
+    @Param({"1", "3"})
+    public int depth;
+
+    @Param({"4"})
+    public int fanout;
+
+    @Param({"SMALL", "MIXED"})
+    public BenchmarkSupport.SizeDistribution sizes;
+
+    @Param({"SERIAL", "PARALLEL", "PIPELINE"})
+    public WriteTree.Mode mode;
+
+    private Path workTree;
+    private Path gitDir;
+    private ObjectStore store;
+    private Index index;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        workTree = BenchmarkSupport.createScratchDirectory("write-tree");
+        BenchmarkSupport.generateTree(workTree, fileCount, depth, fanout, sizes, 1);
+        gitDir = BenchmarkSupport.createScratchDirectory("write-tree-git");
+    }
+
+    @Setup(Level.Iteration)
+    public void resetRepository(BenchmarkParams params) throws IOException {
+        BenchmarkSupport.deleteRecursively(gitDir.resolve("objects"));
+        store = BenchmarkSupport.openStore(gitDir);
+        index = new Index();
+        if (params.getBenchmark().endsWith(".warm"))
+            new WriteTree().writeTree(workTree.toFile(), store, index, mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkSupport.deleteRecursively(workTree);
+        BenchmarkSupport.deleteRecursively(gitDir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public CacheTree cold() throws IOException {
+        return new WriteTree().writeTree(workTree.toFile(), store, index, mode);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public CacheTree warm() throws IOException {
+        return new WriteTree().writeTree(workTree.toFile(), store, index, mode);
+    }
+}
@@ -1,9 +1,27 @@
 import git.Git;
+import git.command.ExitStatusException;
+import git.daemon.DaemonClient;
+import git.enums.Command;
+
+import java.nio.file.Path;
+import java.util.OptionalInt;
 
 public class Main {
 
 
     public static void main(String[] args) throws Exception {
-        Git.getInstance().process(args);
+        // With a daemon configured, act as its thin client and only run locally if it is down
+        Path socket = DaemonClient.configuredSocket();
+        if (socket != null && args.length > 0 && !args[0].equals(Command.DAEMON.getValue())) {
+            OptionalInt status = DaemonClient.forward(socket, args);
+            if (status.isPresent())
+                System.exit(status.getAsInt());
+        }
+
+        try {
+            Git.getInstance().process(args);
+        } catch (ExitStatusException e) {
+            System.exit(e.getStatus());
+        }
     }
 }
@@ -0,0 +1,118 @@
+package git;
+
+import git.command.CommandContext;
+import git.command.CommandRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Training run for the class-data-sharing archive built by the {@code cds} Maven profile.
+ * <p>
+ * Runs the everyday commands once each, in-process, against a scratch repository, so that the
+ * archive dumped at exit holds every class they load. Network commands and the daemon are left
+ * out; their classes are loaded from the jar as usual.
+ */
+public final class CdsTraining {
+
+    private final CommandRegistry registry = new CommandRegistry();
+
+    private CdsTraining() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path repository = Files.createTempDirectory("codecrafters-git-cds");
+        PrintStream stdout = System.out;
+        InputStream stdin = System.in;
+        try {
+            Files.writeString(repository.resolve("README.md"), "# Training\n");
+            Files.createDirectories(repository.resolve("src"));
+            for (int i = 0; i < 8; i++)
+                Files.writeString(repository.resolve("src/File" + i + ".java"), ("class File" + i + " {}\n").repeat(50 * i + 1));
+
+            CommandContext context = new CommandContext(repository, stdin, stdout, System.err);
+            context.run(() -> new CdsTraining().train());
+        } finally {
+            System.setOut(stdout);
+            System.setIn(stdin);
+            deleteRecursively(repository);
+        }
+    }
+
+    private void train() throws Exception {
+        run("init");
+        String blob = run("hash-object", "-w", "README.md");
+        run("add", ".");
+        run("update-index", "README.md");
+        String tree = run("write-tree");
+        run("write-tree", "--parallel");
+        run("write-tree", "--pipeline");
+        String commit = run("commit-tree", tree, "-m", "Training");
+        String head = run("commit-tree", tree, "-p", commit, "-m", "Training again");
+
+        run("ls-tree", "--name-only", tree);
+        run("ls-tree", "-r", tree);
+        run("cat-file", "-p", blob);
+        run("cat-file", "-p", tree);
+        run("cat-file", "-t", commit);
+        run("cat-file", "-s", commit);
+        run("cat-file", "-e", blob);
+        runWithInput(blob + "\n" + tree + "\n" + commit + "\n", "cat-file", "--batch");
+        runWithInput(blob + "\n" + tree + "\n", "cat-file", "--batch-check");
+
+        run("rev-list", "--count", head);
+        run("log", head);
+        run("diff-tree", "-r", head);
+        run("diff-tree", "--name-status", commit, head);
+        run("read-tree", tree);
+        run("read-tree", "-u", head);
+        run("status");
+        runWithInput("blob\nmark :1\ndata 9\nimported\n\n"
+                + "commit refs/heads/imported\nmark :2\ncommitter Training <training@example.com> 0 +0000\ndata 8\nImported\n"
+                + "from " + head + "\nM 100644 :1 imported.txt\nM 100644 inline dir/inline.txt\ndata 7\ninline\n"
+                + "R imported.txt renamed.txt\n\n"
+                + "tag v1\nfrom :2\ntagger Training <training@example.com> 0 +0000\ndata 3\nv1\n\ndone\n", "fast-import");
+        run("fsck");
+
+        run("gc");
+        run("cat-file", "-p", commit);
+        run("ls-tree", "-r", tree);
+        run("rev-list", "--topo-order", head);
+        run("log", "--oneline", head);
+        run("grep", "-n", "Training", head);
+        run("fsck", "--unreachable");
+    }
+
+    private String run(String... args) throws Exception {
+        return runWithInput("", args);
+    }
+
+    /**
+     * Runs one command with the given standard input and returns its first line of output.
+     */
+    private String runWithInput(String input, String... args) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        System.setIn(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+        registry.execute(args);
+        System.out.flush();
+        String text = output.toString(StandardCharsets.UTF_8);
+        int newline = text.indexOf('\n');
+        return newline < 0 ? text : text.substring(0, newline);
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package git;
 
 import git.command.CommandRegistry;
+import git.metrics.Metrics;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,7 +20,8 @@ public class Git {
     }
 
     public void process(String[] args) throws Exception {
-        log.log(Level.INFO, "Working with Git");
+        log.log(Level.FINE, "Working with Git");
+        Metrics.dumpAtExit();
         CommandRegistry commandRegistry = new CommandRegistry();
         commandRegistry.execute(args);
     }
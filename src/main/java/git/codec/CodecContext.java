@@ -0,0 +1,136 @@
+package git.codec;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static git.constant.Constant.SHA_1;
+
+/**
+ * Per-thread pool of the codecs used to encode and decode objects, so that hashing,
+ * compressing and inflating an object does not create a native {@link Deflater} or
+ * {@link Inflater}, look up a {@link MessageDigest}, or allocate scratch buffers each time.
+ * <p>
+ * Every accessor resets and returns the same instance on a given thread. A caller must be done
+ * with one before anything on the same thread asks for it again, so the codecs must not be held
+ * across calls that may themselves encode or decode objects. The instances live as long as
+ * their thread; their native memory is released when the thread's context is collected.
+ */
+public final class CodecContext {
+
+    public static final int ID_LENGTH = 20;
+    public static final int BUFFER_SIZE = 64 * 1024;
+    public static final int HEADER_SIZE = 32;
+
+    private static final ThreadLocal<CodecContext> CONTEXT = ThreadLocal.withInitial(CodecContext::new);
+
+    private final MessageDigest digest;
+    private final Deflater deflater = new Deflater();
+    private final Inflater inflater = new Inflater();
+    private final byte[] id = new byte[ID_LENGTH];
+    private final byte[] header = new byte[HEADER_SIZE];
+    private final byte[] inputBuffer = new byte[BUFFER_SIZE];
+    private final byte[] outputBuffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer input = ByteBuffer.wrap(inputBuffer);
+    private final ByteBuffer output = ByteBuffer.wrap(outputBuffer);
+    private byte[] contentBuffer = new byte[BUFFER_SIZE];
+
+    private CodecContext() {
+        try {
+            digest = MessageDigest.getInstance(SHA_1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Returns the context of the current thread.
+     */
+    public static CodecContext get() {
+        return CONTEXT.get();
+    }
+
+    /**
+     * Returns the SHA-1 digest, reset.
+     */
+    public MessageDigest digest() {
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Completes the digest into a shared 20-byte array, valid until the next call.
+     */
+    public byte[] finishDigest() {
+        try {
+            digest.digest(id, 0, ID_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the deflater, reset and set to {@code level}.
+     */
+    public Deflater deflater(int level) {
+        deflater.reset();
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    /**
+     * Returns the inflater, reset.
+     */
+    public Inflater inflater() {
+        inflater.reset();
+        return inflater;
+    }
+
+    /**
+     * Scratch buffer for an object header such as {@code "blob 12\0"}.
+     */
+    public byte[] headerBuffer() {
+        return header;
+    }
+
+    /**
+     * Scratch buffer for data read from a file or stream, with a cleared {@link ByteBuffer} view
+     * for channel reads.
+     */
+    public byte[] inputBuffer() {
+        return inputBuffer;
+    }
+
+    public ByteBuffer input() {
+        return input.clear();
+    }
+
+    /**
+     * Scratch buffer for compressor output, with a cleared {@link ByteBuffer} view for channel
+     * writes.
+     */
+    public byte[] outputBuffer() {
+        return outputBuffer;
+    }
+
+    public ByteBuffer output() {
+        return output.clear();
+    }
+
+    /**
+     * Returns a scratch buffer of at least {@code size} bytes for a whole object, growing the
+     * pooled one as needed. Sizes above {@code limit} get a fresh array that is not retained.
+     */
+    public byte[] contentBuffer(int size, int limit) {
+        if (size > contentBuffer.length) {
+            if (size > limit)
+                return new byte[size];
+            contentBuffer = new byte[Math.max(size, Math.min(limit, contentBuffer.length * 2))];
+        }
+        return contentBuffer;
+    }
+}
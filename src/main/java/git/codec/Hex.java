@@ -0,0 +1,108 @@
+package git.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Table-driven conversion between object IDs and their lowercase hexadecimal form.
+ */
+public final class Hex {
+
+    private static final byte[] DIGITS = "0123456789abcdef".getBytes();
+    // Maps an ASCII character to its nibble value, or -1 if it is not a hex digit
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++)
+            VALUES['0' + i] = (byte) i;
+        for (int i = 0; i < 6; i++) {
+            VALUES['a' + i] = (byte) (10 + i);
+            VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private Hex() {
+    }
+
+    public static String encode(byte[] bytes) {
+        return encode(bytes, 0, bytes.length);
+    }
+
+    public static String encode(byte[] bytes, int offset, int length) {
+        byte[] chars = new byte[length * 2];
+        encode(bytes, offset, length, chars, 0);
+        // Latin-1 strings keep the byte array layout, so this is a single copy
+        return new String(chars, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Writes the {@code 2 * length} ASCII hex digits of the given bytes into {@code out}
+     * starting at {@code outOffset}.
+     */
+    public static void encode(byte[] bytes, int offset, int length, byte[] out, int outOffset) {
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xff;
+            out[outOffset + i * 2] = DIGITS[b >>> 4];
+            out[outOffset + i * 2 + 1] = DIGITS[b & 0x0f];
+        }
+    }
+
+    public static byte[] decode(CharSequence hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        decode(hex, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Decodes {@code hex} into {@code out} starting at {@code offset}.
+     *
+     * @throws IllegalArgumentException if {@code hex} has odd length or a non-hex character
+     */
+    public static void decode(CharSequence hex, byte[] out, int offset) {
+        int length = hex.length();
+        if ((length & 1) != 0)
+            throw new IllegalArgumentException("Odd-length hex string: " + hex);
+        for (int i = 0; i < length; i += 2) {
+            int high = value(hex.charAt(i));
+            int low = value(hex.charAt(i + 1));
+            if ((high | low) < 0)
+                throw new IllegalArgumentException("Invalid hex string: " + hex);
+            out[offset + i / 2] = (byte) ((high << 4) | low);
+        }
+    }
+
+    /**
+     * Decodes {@code digits} hex characters of {@code hex} starting at {@code offset}, at most
+     * 16, into the low bits of a long.
+     *
+     * @throws IllegalArgumentException if one of them is not a hex digit
+     */
+    public static long decodeBits(CharSequence hex, int offset, int digits) {
+        long value = 0;
+        int invalid = 0;
+        for (int i = offset; i < offset + digits; i++) {
+            int nibble = value(hex.charAt(i));
+            invalid |= nibble;
+            value = (value << 4) | (nibble & 0x0f);
+        }
+        if (invalid < 0)
+            throw new IllegalArgumentException("Invalid hex string: " + hex);
+        return value;
+    }
+
+    /**
+     * Writes the low {@code digits * 4} bits of {@code value} as hex characters into
+     * {@code out} starting at {@code offset}.
+     */
+    public static void encodeBits(long value, int digits, byte[] out, int offset) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            out[i] = DIGITS[(int) (value & 0x0f)];
+            value >>>= 4;
+        }
+    }
+
+    private static int value(char c) {
+        return c < 128 ? VALUES[c] : -1;
+    }
+}
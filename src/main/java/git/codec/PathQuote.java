@@ -0,0 +1,129 @@
+package git.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Git's C-style quoting of paths in command output, with the default {@code core.quotePath}:
+ * a path containing control characters, quotes, backslashes or any non-ASCII byte is written
+ * between double quotes, with those bytes escaped. Where a space would be ambiguous, as in
+ * the short status format, a path holding one is quoted too, its spaces left as they are.
+ * Quoted paths in input, such as a fast-import stream, are decoded by {@link #unquote}.
+ */
+public final class PathQuote {
+
+    private PathQuote() {
+    }
+
+    public static boolean needsQuotes(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            int c = data[i] & 0xff;
+            if (c < 0x20 || c >= 0x7f || c == '"' || c == '\\')
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean hasSpace(byte[] data) {
+        for (byte b : data)
+            if (b == ' ')
+                return true;
+        return false;
+    }
+
+    /**
+     * Writes the bytes escaped as inside a quoted path, without the quotes, so that a path can
+     * be written in pieces.
+     */
+    public static void writeEscaped(OutputStream out, byte[] data, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            int c = data[i] & 0xff;
+            int escape = switch (c) {
+                case 0x07 -> 'a';
+                case '\b' -> 'b';
+                case '\t' -> 't';
+                case '\n' -> 'n';
+                case 0x0b -> 'v';
+                case '\f' -> 'f';
+                case '\r' -> 'r';
+                case '"', '\\' -> c;
+                default -> -1;
+            };
+            if (escape >= 0) {
+                out.write('\\');
+                out.write(escape);
+            } else if (c < 0x20 || c >= 0x7f) {
+                out.write('\\');
+                out.write('0' + (c >>> 6));
+                out.write('0' + ((c >>> 3) & 7));
+                out.write('0' + (c & 7));
+            } else {
+                out.write(c);
+            }
+        }
+    }
+
+    /**
+     * Decodes the quoted path whose opening quote is at {@code start} of {@code line}, a
+     * string of bytes as ISO-8859-1 characters, into {@code path}, in the same form.
+     *
+     * @return the index after the closing quote
+     * @throws IllegalArgumentException if the quoting is malformed
+     */
+    public static int unquote(String line, int start, StringBuilder path) {
+        int i = start + 1;
+        while (i < line.length()) {
+            char c = line.charAt(i++);
+            if (c == '"')
+                return i;
+            if (c != '\\') {
+                path.append(c);
+                continue;
+            }
+            if (i >= line.length())
+                break;
+            char escape = line.charAt(i++);
+            switch (escape) {
+                case 'a' -> path.append((char) 0x07);
+                case 'b' -> path.append('\b');
+                case 't' -> path.append('\t');
+                case 'n' -> path.append('\n');
+                case 'v' -> path.append((char) 0x0b);
+                case 'f' -> path.append('\f');
+                case 'r' -> path.append('\r');
+                case '"', '\\' -> path.append(escape);
+                default -> {
+                    if (escape < '0' || escape > '3' || i + 2 > line.length())
+                        throw new IllegalArgumentException("Bad escape in quoted path: " + line);
+                    int value = (escape - '0') << 6 | Character.digit(line.charAt(i), 8) << 3 | Character.digit(line.charAt(i + 1), 8);
+                    if (value < 0)
+                        throw new IllegalArgumentException("Bad escape in quoted path: " + line);
+                    path.append((char) value);
+                    i += 2;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unterminated quoted path: " + line);
+    }
+
+    /**
+     * Writes a whole path, quoted if it needs to be.
+     */
+    public static void write(OutputStream out, byte[] path) throws IOException {
+        write(out, path, false);
+    }
+
+    /**
+     * Writes a whole path, quoted if it needs to be or, with {@code quoteSpace}, if it holds a
+     * space, like Git's {@code QUOTE_PATH_QUOTE_SP}.
+     */
+    public static void write(OutputStream out, byte[] path, boolean quoteSpace) throws IOException {
+        if (!needsQuotes(path, 0, path.length) && !(quoteSpace && hasSpace(path))) {
+            out.write(path);
+            return;
+        }
+        out.write('"');
+        writeEscaped(out, path, 0, path.length);
+        out.write('"');
+    }
+}
@@ -0,0 +1,92 @@
+package git.command;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The working directory and standard streams a command runs with.
+ * <p>
+ * A normal run uses the process' own. The daemon runs many commands at once in one JVM, each
+ * for a client in its own repository, so every command resolves repository paths through
+ * {@link #current()} rather than against the process working directory. The context is
+ * inherited by threads a command starts, such as its worker pools.
+ */
+public final class CommandContext {
+
+    private static final CommandContext PROCESS =
+            new CommandContext(Paths.get("").toAbsolutePath(), System.in, System.out, System.err);
+    private static final InheritableThreadLocal<CommandContext> CURRENT = new InheritableThreadLocal<>();
+
+    private final Path workingDirectory;
+    private final InputStream in;
+    private final PrintStream out;
+    private final PrintStream err;
+
+    public CommandContext(Path workingDirectory, InputStream in, PrintStream out, PrintStream err) {
+        this.workingDirectory = workingDirectory.toAbsolutePath().normalize();
+        this.in = in;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Returns the context of the command running on this thread, or the process context.
+     */
+    public static CommandContext current() {
+        CommandContext context = CURRENT.get();
+        return context != null ? context : PROCESS;
+    }
+
+    /**
+     * Returns the context of the process itself, with the streams it was started with.
+     */
+    public static CommandContext process() {
+        return PROCESS;
+    }
+
+    /**
+     * Runs {@code action} with this context as the current one on the calling thread.
+     */
+    public void run(Action action) throws Exception {
+        CommandContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            action.run();
+        } finally {
+            if (previous == null)
+                CURRENT.remove();
+            else
+                CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Resolves a path given relative to the working directory, such as {@code .git/index} or a
+     * path from the command line.
+     */
+    public Path resolve(String path) {
+        return workingDirectory.resolve(path).normalize();
+    }
+
+    public Path getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    public InputStream getIn() {
+        return in;
+    }
+
+    public PrintStream getOut() {
+        return out;
+    }
+
+    public PrintStream getErr() {
+        return err;
+    }
+
+    public interface Action {
+        void run() throws Exception;
+    }
+}
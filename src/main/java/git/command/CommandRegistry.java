@@ -1,38 +1,45 @@
 package git.command;
 
-import git.command.implementation.*;
+import git.metrics.CommandEvent;
+import git.metrics.Metrics;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static git.enums.Command.*;
-
+/**
+ * Resolves command names through {@link git.enums.Command} and runs a new instance of the
+ * command for every call. Nothing is created up front, so a run only loads the classes of the
+ * command it executes, and concurrent callers never share command state.
+ * <p>
+ * When metrics are on, every run is timed into {@link Metrics} and recorded as a
+ * {@link CommandEvent}.
+ */
 public class CommandRegistry {
 
     private static final Logger log = Logger.getLogger(CommandRegistry.class.getName());
 
-    private final Map<String, Command> commands = new HashMap<>();
-
-    public CommandRegistry() {
-        commands.put(INIT.getValue(), new Init());
-        commands.put(CAT_FILE.getValue(), new CatFile());
-        commands.put(HASH_OBJECT.getValue(), new HashObject());
-        commands.put(LS_TREE.getValue(), new LsTree());
-        commands.put(WRITE_TREE.getValue(), new WriteTree());
-        commands.put(COMMIT_TREE.getValue(), new CommitTree());
-        commands.put(CLONE.getValue(), new Clone());
-    }
-
     public void execute(String[] args) throws Exception {
         final String command = args[0];
-        log.log(Level.INFO, "Args: {0}", args);
-        log.log(Level.INFO, "Executing {0} command", command);
-        Command cmd = commands.get(command);
-        if (cmd != null)
-            cmd.execute(args);
-        else
+        if (log.isLoggable(Level.FINE)) {
+            log.log(Level.FINE, "Args: {0}", String.join(" ", args));
+            log.log(Level.FINE, "Executing {0} command", command);
+        }
+        git.enums.Command cmd = git.enums.Command.fromValue(command);
+        if (cmd == null) {
             log.log(Level.SEVERE, "Unknown command: {0}", command);
+            return;
+        }
+        CommandEvent event = Metrics.beginCommand();
+        long start = Metrics.start();
+        try {
+            cmd.create().execute(args);
+        } finally {
+            Metrics.commandFinished(command, start);
+            if (event != null && event.shouldCommit()) {
+                event.command = command;
+                event.arguments = String.join(" ", args);
+                event.commit();
+            }
+        }
     }
 }
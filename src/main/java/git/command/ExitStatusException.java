@@ -0,0 +1,19 @@
+package git.command;
+
+/**
+ * Ends a command with a non-zero exit status and no further output, the way {@code git}
+ * reports "no" answers such as a missing object for {@code cat-file -e}.
+ */
+public class ExitStatusException extends Exception {
+
+    private final int status;
+
+    public ExitStatusException(int status) {
+        super("Exit status " + status);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,141 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.command.CommandContext;
+import git.enums.ObjectType;
+import git.index.Index;
+import git.index.IndexEntry;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.Tree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * Stages files into the index. Directories are added recursively, and index entries below a
+ * given directory whose files no longer exist are removed, like {@code git add <dir>}.
+ * Symbolic links are staged as links and never followed, and submodules keep their entries.
+ */
+public class Add implements Command {
+
+    private static final Logger log = Logger.getLogger(Add.class.getName());
+    private static final int MODE_SYMLINK = 0120000;
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        if (args.length < 2) {
+            log.log(Level.SEVERE, "Usage: add <pathspec>...");
+            return;
+        }
+
+        Path indexFile = CommandContext.current().resolve(INDEX_PATH);
+        Index index = Index.read(indexFile);
+        try (ObjectStore objectStore = ObjectStore.open()) {
+            for (int i = 1; i < args.length; i++) {
+                String path = toIndexPath(args[i]);
+                File file = CommandContext.current().resolve(path).toFile();
+                if (isDirectory(file)) {
+                    addDirectory(objectStore, index, file, path);
+                } else if (isStageable(file)) {
+                    stage(objectStore, index, file, path);
+                } else if (!index.remove(path)) {
+                    log.log(Level.SEVERE, "pathspec ''{0}'' did not match any files", args[i]);
+                    return;
+                }
+            }
+        }
+        index.write(indexFile);
+    }
+
+    private void addDirectory(ObjectStore objectStore, Index index, File directory, String path) throws IOException {
+        String prefix = path.isEmpty() ? path : path + FORWARD_SLASH;
+        List<String> deleted = new ArrayList<>();
+        for (IndexEntry entry : index.getEntries()) {
+            if (!entry.getPath().startsWith(prefix))
+                continue;
+            File file = CommandContext.current().resolve(entry.getPath()).toFile();
+            if (entry.getMode() == Tree.MODE_GITLINK ? !isDirectory(file) : !isStageable(file))
+                deleted.add(entry.getPath());
+        }
+        deleted.forEach(index::remove);
+
+        walk(objectStore, index, directory, prefix);
+    }
+
+    private void walk(ObjectStore objectStore, Index index, File directory, String prefix) throws IOException {
+        for (File file : Objects.requireNonNull(directory.listFiles())) {
+            if (file.getName().equals(GIT_DIRECTORY)) continue; // Ignore .git directory
+
+            String path = prefix + file.getName();
+            if (isStageable(file)) {
+                stage(objectStore, index, file, path);
+            } else if (isDirectory(file)) {
+                // A submodule keeps its index entry; its files belong to another repository
+                IndexEntry entry = index.getEntry(path);
+                if (entry == null || entry.getMode() != Tree.MODE_GITLINK)
+                    walk(objectStore, index, file, path + FORWARD_SLASH);
+            }
+        }
+    }
+
+    /**
+     * Whether {@code file} is staged as a blob: a regular file or a symbolic link, whatever
+     * the link points to.
+     */
+    static boolean isStageable(File file) {
+        return Files.isSymbolicLink(file.toPath()) || Files.isRegularFile(file.toPath(), LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * Whether {@code file} is a directory to descend into; a symbolic link to one is not.
+     */
+    private static boolean isDirectory(File file) {
+        return Files.isDirectory(file.toPath(), LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * Hashes and stores {@code file} unless its index entry is still fresh, then records it
+     * with the mode Git gives it: {@code 120000} for a symbolic link, whose blob is the target
+     * path, and {@code 100755} or {@code 100644} for a regular file.
+     *
+     * @param path repository-relative path using forward slashes
+     */
+    void stage(ObjectStore objectStore, Index index, File file, String path) throws IOException {
+        IndexEntry stat = IndexEntry.lstat(file.toPath(), path);
+        IndexEntry cached = index.getEntry(path);
+        if (cached != null && !index.isRacilyClean(cached) && cached.getMode() == stat.getMode() && cached.hasSameStat(stat))
+            return;
+
+        ObjectId id;
+        if (stat.getMode() == MODE_SYMLINK) {
+            byte[] target = Files.readSymbolicLink(file.toPath()).toString().getBytes(StandardCharsets.UTF_8);
+            id = objectStore.insert(ObjectType.BLOB, target);
+        } else {
+            id = objectStore.insertBlob(file.toPath());
+        }
+        index.add(stat.withId(id.toRaw()));
+    }
+
+    /**
+     * Converts a command-line path into the slash-separated form stored in the index.
+     */
+    static String toIndexPath(String argument) {
+        Path path = Paths.get(argument).normalize();
+        if (path.startsWith(".."))
+            throw new IllegalArgumentException("Path is outside the repository: " + argument);
+        return path.toString().replace(File.separatorChar, '/');
+    }
+}
@@ -1,38 +1,86 @@
 package git.command.implementation;
 
 import git.command.Command;
+import git.command.ExitStatusException;
+import git.enums.ObjectType;
+import git.object.MissingObjectException;
+import git.object.ObjectHeader;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.Tree;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.InflaterInputStream;
 
 import static git.constant.Constant.*;
 import static java.lang.System.out;
 
+/**
+ * {@code cat-file (-p | -t | -s | -e) <object>} and {@code cat-file (--batch | --batch-check)}.
+ * <p>
+ * {@code -p} copies the object's bytes to standard output unchanged, so binary blobs survive
+ * and large objects stream through a fixed buffer; trees are listed like {@code ls-tree}.
+ * {@code -t} and {@code -s} print the type or size from the header alone, and {@code -e}
+ * only sets the exit status. The batch modes answer many objects from standard input in one
+ * process; see {@link CatFileBatch}.
+ */
 public class CatFile implements Command {
 
     private static final Logger log = Logger.getLogger(CatFile.class.getName());
 
     @Override
-    public void execute(String[] args) {
-        if (args[1].equals(ARG_P))
-            catFile(args);
+    public void execute(String[] args) throws Exception {
+        if (args.length == 2 && (args[1].equals(ARG_BATCH) || args[1].equals(ARG_BATCH_CHECK))) {
+            try (ObjectStore objectStore = ObjectStore.open()) {
+                new CatFileBatch(objectStore, args[1].equals(ARG_BATCH)).run(System.in, out);
+            }
+            return;
+        }
+        if (args.length < 3) {
+            log.log(Level.SEVERE, "Usage: cat-file (-p | -t | -s | -e) <object> | (--batch | --batch-check)");
+            return;
+        }
+        String hash = args[2];
+        if (args[1].equals(ARG_E) && !ObjectId.isId(hash))
+            throw new ExitStatusException(1);
+        try (ObjectStore objectStore = ObjectStore.open()) {
+            ObjectId id = ObjectId.fromHex(hash);
+            switch (args[1]) {
+                case ARG_P -> prettyPrint(objectStore, id);
+                case ARG_T -> out.println(objectStore.readHeader(id).type().getValue());
+                case ARG_S -> out.println(objectStore.readHeader(id).size());
+                case ARG_E -> {
+                    if (!objectStore.contains(id))
+                        throw new ExitStatusException(1);
+                }
+                default -> log.log(Level.SEVERE, "Unknown option: {0}", args[1]);
+            }
+        } catch (MissingObjectException | IllegalArgumentException e) {
+            log.log(Level.SEVERE, "Not a valid object name {0}", hash);
+        }
     }
 
-    private void catFile(String[] args) {
-        String fileName = args[2];
-        String path = String.format(OBJECTS_BASE_PATH, fileName.substring(0, 2), fileName.substring(2));
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new InflaterInputStream(new FileInputStream(path))))) {
-            String line = reader.readLine();
-            out.print(line.substring(line.indexOf(NULL_CHAR) + 1));
-            while ((line = reader.readLine()) != null)
-                log.log(Level.INFO, line);
-        } catch (IOException exception) {
-            log.log(Level.SEVERE, exception.getMessage());
+    private void prettyPrint(ObjectStore objectStore, ObjectId id) throws IOException {
+        ObjectHeader header = objectStore.readHeader(id);
+        if (header.type() == ObjectType.TREE) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for (Tree.Entry entry : objectStore.readTree(id).entries()) {
+                LsTree.writeDetails(entry, writer);
+                writer.write(entry.name());
+                writer.write(NEW_LINE);
+            }
+            writer.flush();
+            return;
         }
+        WritableByteChannel channel = Channels.newChannel(out);
+        objectStore.copyTo(id, channel);
+        out.flush();
     }
 }
@@ -0,0 +1,146 @@
+package git.command.implementation;
+
+import git.object.GitObject;
+import git.object.MissingObjectException;
+import git.object.ObjectHeader;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code cat-file --batch} and {@code --batch-check} loop: object names are read from
+ * standard input, one per line, and answered in order with {@code <sha> <type> <size>} (plus
+ * the content for {@code --batch}), or {@code <name> missing}.
+ * <p>
+ * The work is pipelined in three stages. A reader thread parses input lines and hands each
+ * lookup to a pool of workers, which read headers and inflate contents concurrently; the
+ * calling thread writes the results in input order to a buffered stream. Output is flushed
+ * whenever the writer catches up with the workers, so scripts that wait for each answer still
+ * see it at once, while bulk input is written in large batches.
+ */
+final class CatFileBatch {
+
+    private static final Logger log = Logger.getLogger(CatFileBatch.class.getName());
+
+    // Lookups in flight between the reader and the writer
+    private static final int PIPELINE_DEPTH = 256;
+    // Larger contents are streamed by the writer instead of held in the pipeline
+    private static final int INLINE_CONTENT_LIMIT = 1024 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final Future<Result> END = CompletableFuture.completedFuture(null);
+
+    private final ObjectStore objectStore;
+    private final boolean contents;
+
+    CatFileBatch(ObjectStore objectStore, boolean contents) {
+        this.objectStore = objectStore;
+        this.contents = contents;
+    }
+
+    void run(InputStream in, OutputStream out) throws IOException {
+        BlockingQueue<Future<Result>> pending = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+        ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        Thread reader = new Thread(() -> readRequests(in, workers, pending), "cat-file-batch-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        BufferedOutputStream output = new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE);
+        long objects = 0;
+        try {
+            Future<Result> next;
+            while ((next = pending.take()) != END) {
+                write(next.get(), output);
+                objects++;
+                if (pending.isEmpty())
+                    output.flush();
+            }
+            output.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException("Batch lookup failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        log.log(Level.FINE, "Answered {0} batch requests", objects);
+    }
+
+    private void readRequests(InputStream in, ExecutorService workers, BlockingQueue<Future<Result>> pending) {
+        try {
+            BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = lines.readLine()) != null) {
+                String name = line;
+                pending.put(workers.submit(() -> lookup(name)));
+            }
+            pending.put(END);
+        } catch (IOException e) {
+            pending.offer(CompletableFuture.failedFuture(e));
+            pending.offer(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Result lookup(String name) throws IOException {
+        if (!ObjectId.isId(name))
+            return new Result(name, null, null, null);
+        ObjectId id = ObjectId.fromHex(name);
+        try {
+            ObjectHeader header = objectStore.readHeader(id);
+            byte[] content = null;
+            if (contents && header.size() <= INLINE_CONTENT_LIMIT) {
+                GitObject object = objectStore.read(id);
+                content = object.content();
+            }
+            return new Result(name, id, header, content);
+        } catch (MissingObjectException e) {
+            return new Result(name, id, null, null);
+        }
+    }
+
+    private void write(Result result, BufferedOutputStream output) throws IOException {
+        if (result.header() == null) {
+            output.write((result.name() + " missing\n").getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        String line = result.id().name() + ' ' + result.header().type().getValue() + ' ' + result.header().size() + '\n';
+        output.write(line.getBytes(StandardCharsets.UTF_8));
+        if (!contents)
+            return;
+        if (result.content() != null)
+            output.write(result.content());
+        else
+            objectStore.copyTo(result.id(), Channels.newChannel(output));
+        output.write('\n');
+    }
+
+    /**
+     * The answer to one input line; {@code id} is {@code null} for a malformed name,
+     * {@code header} is {@code null} for a missing object and {@code content} is {@code null}
+     * when it is to be streamed by the writer.
+     */
+    private record Result(String name, ObjectId id, ObjectHeader header, byte[] content) {
+    }
+}
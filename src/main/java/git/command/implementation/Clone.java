@@ -1,38 +1,88 @@
 package git.command.implementation;
 
 import git.command.Command;
+import git.command.CommandContext;
+import git.command.ExitStatusException;
+import git.config.Config;
+import git.index.Index;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.refs.RefStore;
+import git.transport.Transport;
+import git.transport.UploadPackClient;
+import git.worktree.Checkout;
+import git.worktree.UnsafePathException;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static git.constant.Constant.*;
+
+/**
+ * Clones a repository:
+ * {@code clone [--jgit] [--upload-pack=<command>] [--threads=<n>] <repository_url> <destination_directory>}.
+ * <p>
+ * {@code http://}, {@code https://}, {@code file://} URLs and local paths are cloned natively:
+ * the pack is received and indexed in parallel straight into {@code objects/pack}, the remote
+ * branches and tags go into {@code packed-refs} and the default branch is checked out. Other
+ * URLs, or {@code --jgit}, go through JGit.
+ */
 public class Clone implements Command {
 
     private static final Logger log = Logger.getLogger(Clone.class.getName());
 
+    private static final String HEADS = "refs/heads/";
+
     @Override
     public void execute(String[] args) throws Exception {
-        if (args.length != 3) {
-            log.log(Level.SEVERE, "Usage: clone <repository_url> <destination_directory>");
+        List<String> operands = new ArrayList<>();
+        for (int i = 1; i < args.length; i++)
+            if (!args[i].startsWith("-"))
+                operands.add(args[i]);
+        if (operands.size() != 2) {
+            log.log(Level.SEVERE, "Usage: clone [--jgit] <repository_url> <destination_directory>");
             return;
         }
 
-        String repoUrl = args[1];
-        String destinationDir = args[2];
+        String repoUrl = operands.get(0);
+        String destinationDir = operands.get(1);
 
         log.log(Level.INFO, "Cloning repository: {0}", repoUrl);
         log.log(Level.INFO, "Destination: {0}", destinationDir);
 
-        File repoDirectory = new File(destinationDir);
+        File repoDirectory = CommandContext.current().resolve(destinationDir).toFile();
 
         if (repoDirectory.exists()) {
             log.log(Level.SEVERE, "Error: Directory already exists.");
             return;
         }
 
-        clone(repoUrl, repoDirectory, destinationDir);
+        long start = System.nanoTime();
+        if (List.of(args).contains(ARG_JGIT) || !Transport.supports(repoUrl)) {
+            clone(repoUrl, repoDirectory, destinationDir);
+        } else {
+            try {
+                cloneNative(repoUrl, repoDirectory.toPath(), Fetch.stringOption(args, ARG_UPLOAD_PACK, DEFAULT_UPLOAD_PACK),
+                        Fetch.intOption(args, ARG_THREADS, Runtime.getRuntime().availableProcessors()));
+            } catch (UnsafePathException e) {
+                log.log(Level.SEVERE, "error: {0}", e.getMessage());
+                log.log(Level.SEVERE, "fatal: unable to checkout working tree");
+                throw new ExitStatusException(128);
+            }
+        }
+        log.log(Level.FINE, "clone took {0} ms", (System.nanoTime() - start) / 1_000_000);
     }
 
     private void clone(String repoUrl, File repoDirectory, String destinationDir) {
@@ -46,5 +96,108 @@ public class Clone implements Command {
             log.log(Level.SEVERE, "Error: Cloning failed - {0}", e.getMessage());
         }
     }
-}
 
+    /**
+     * Clones into the new directory {@code root}, removing it again if anything fails.
+     */
+    void cloneNative(String repoUrl, Path root, String uploadPack, int threads) throws Exception {
+        CommandContext outer = CommandContext.current();
+        Files.createDirectories(root);
+        try {
+            new CommandContext(root, outer.getIn(), outer.getOut(), outer.getErr()).run(() -> {
+                new Init().execute(new String[0]);
+                populate(repoUrl, root, uploadPack, threads);
+            });
+            log.log(Level.INFO, "Repository successfully cloned into: {0}", root);
+        } catch (Exception e) {
+            deleteRecursively(root);
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches everything into the freshly initialized repository of the current context,
+     * records the refs and configuration, and checks out the default branch.
+     */
+    private void populate(String repoUrl, Path root, String uploadPack, int threads) throws IOException {
+        RefStore refs = RefStore.open();
+        try (ObjectStore store = ObjectStore.open()) {
+            Fetch.Result result = Fetch.fetch(repoUrl, DEFAULT_REMOTE, uploadPack, threads, store, refs);
+            UploadPackClient.Advertisement advertisement = result.advertisement();
+            refs.writePacked(result.remoteRefs(), advertisement.peeled());
+
+            String branch = defaultBranch(advertisement);
+            writeConfig(repoUrl, branch);
+
+            String headId = branch != null ? advertisement.refs().get(branch) : advertisement.refs().get(HEAD);
+            if (headId == null) {
+                if (branch != null)
+                    refs.link(HEAD, branch);
+                log.log(Level.WARNING, "You appear to have cloned an empty repository.");
+                return;
+            }
+            if (branch != null) {
+                String tracking = REFS + "/remotes/" + DEFAULT_REMOTE + FORWARD_SLASH + branch.substring(HEADS.length());
+                refs.update(branch, headId);
+                refs.link(HEAD, branch);
+                refs.link(REFS + "/remotes/" + DEFAULT_REMOTE + FORWARD_SLASH + HEAD, tracking);
+            } else {
+                refs.update(HEAD, headId);
+            }
+
+            Index index = new Checkout(store, root).checkout(treeOf(store, headId));
+            index.write(CommandContext.current().resolve(INDEX_PATH));
+        }
+    }
+
+    /**
+     * Returns the branch the remote {@code HEAD} points to: announced by the {@code symref}
+     * capability, or otherwise the first branch at the same commit. Null for an empty remote
+     * or a detached {@code HEAD}.
+     */
+    private static String defaultBranch(UploadPackClient.Advertisement advertisement) {
+        if (advertisement.head() != null && advertisement.head().startsWith(HEADS))
+            return advertisement.head();
+        String headId = advertisement.refs().get(HEAD);
+        if (headId == null)
+            return null;
+        for (Map.Entry<String, String> ref : advertisement.refs().entrySet())
+            if (ref.getKey().startsWith(HEADS) && ref.getValue().equals(headId))
+                return ref.getKey();
+        return null;
+    }
+
+    private static void writeConfig(String repoUrl, String branch) throws IOException {
+        Path file = CommandContext.current().resolve(CONFIG_PATH);
+        Config config = Config.read(file);
+        config.set("core.repositoryformatversion", "0");
+        config.set("core.filemode", "true");
+        config.set("core.bare", "false");
+        config.set("core.logallrefupdates", "true");
+        config.set("remote." + DEFAULT_REMOTE + ".url", repoUrl);
+        config.set("remote." + DEFAULT_REMOTE + ".fetch", "+refs/heads/*:refs/remotes/" + DEFAULT_REMOTE + "/*");
+        if (branch != null) {
+            String name = branch.substring(HEADS.length());
+            config.set("branch." + name + ".remote", DEFAULT_REMOTE);
+            config.set("branch." + name + ".merge", branch);
+        }
+        config.write(file);
+    }
+
+    private static ObjectId treeOf(ObjectStore store, String commitId) throws IOException {
+        byte[] content = store.read(commitId).content();
+        String firstLine = new String(content, 0, Math.min(content.length, TREE.length() + 40), StandardCharsets.US_ASCII);
+        if (!firstLine.startsWith(TREE))
+            throw new IOException("Commit " + commitId + " has no tree");
+        return ObjectId.fromHex(firstLine.substring(TREE.length()));
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        if (!Files.exists(root))
+            return;
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.command.CommandContext;
+import git.graph.CommitGraphWriter;
+import git.graph.RevCommit;
+import git.graph.RevWalk;
+import git.object.ObjectStore;
+import git.refs.RefStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * {@code commit-graph write [--reachable]}: writes {@code objects/info/commit-graph} for every
+ * commit reachable from a ref or {@code HEAD}, which is what Git's {@code --reachable} does.
+ * <p>
+ * An existing graph is read to collect the commits, so rewriting it after a few new commits
+ * only inflates those.
+ */
+public class CommitGraph implements Command {
+
+    private static final Logger log = Logger.getLogger(CommitGraph.class.getName());
+
+    private static final String WRITE = "write";
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        if (args.length < 2 || !WRITE.equals(args[1])) {
+            log.log(Level.SEVERE, "Usage: commit-graph write [--reachable]");
+            return;
+        }
+        write();
+    }
+
+    /**
+     * Writes the graph of all reachable commits.
+     */
+    void write() throws IOException {
+        long start = System.nanoTime();
+        List<RevCommit> commits = new ArrayList<>();
+        try (ObjectStore store = ObjectStore.open()) {
+            RevWalk walk = RevList.openWalk(store);
+            RevList.markRevisions(walk, RefStore.open(), List.of(), true);
+            RevCommit commit;
+            while ((commit = walk.next()) != null)
+                commits.add(commit);
+        }
+        if (commits.isEmpty()) {
+            log.log(Level.INFO, "commit-graph: no commits to write");
+            return;
+        }
+        CommitGraphWriter.write(CommandContext.current().resolve(COMMIT_GRAPH_PATH), commits);
+        log.log(Level.INFO, String.format("commit-graph: wrote %d commits in %.1f ms",
+                commits.size(), (System.nanoTime() - start) / 1e6));
+    }
+}
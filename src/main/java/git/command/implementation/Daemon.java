@@ -0,0 +1,27 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.daemon.DaemonClient;
+import git.daemon.DaemonServer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static git.constant.Constant.ARG_SOCKET;
+
+/**
+ * {@code daemon [--socket=<path>]}: serves commands from a resident JVM until stopped. The
+ * socket defaults to {@code $GIT_DAEMON_SOCKET}, then to a per-user path in the temporary
+ * directory; clients find the daemon through the same variable.
+ */
+public class Daemon implements Command {
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        Path socket = DaemonClient.configuredSocket();
+        for (int i = 1; i < args.length; i++)
+            if (args[i].startsWith(ARG_SOCKET + "="))
+                socket = Paths.get(args[i].substring(ARG_SOCKET.length() + 1));
+        new DaemonServer(socket != null ? socket : DaemonServer.defaultSocket()).serve();
+    }
+}
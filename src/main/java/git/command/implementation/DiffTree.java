@@ -0,0 +1,221 @@
+package git.command.implementation;
+
+import git.codec.Hex;
+import git.codec.PathQuote;
+import git.command.Command;
+import git.enums.ObjectType;
+import git.graph.RevCommit;
+import git.graph.RevWalk;
+import git.object.GitObject;
+import git.object.MissingObjectException;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.TreeCursor;
+import git.refs.RefStore;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * {@code diff-tree [-r] [--name-status] <tree-ish> [<tree-ish>]}: lists the paths that differ
+ * between two trees in Git's raw format,
+ * {@code :<old mode> SP <new mode> SP <old object> SP <new object> SP <status> TAB <path>}, or
+ * as {@code <status> TAB <path>} with {@code --name-status}. With one commit it is compared
+ * with its parent, after a line with its ID; root and merge commits show nothing. Without
+ * {@code -r} a changed subtree is one entry, with {@code -r} the files below it are listed.
+ * <p>
+ * Both trees are walked side by side over their sorted entries with {@link TreeCursor}s, and a
+ * subtree whose ID is the same on both sides is skipped without being read, so the cost
+ * follows the size of the change rather than of the trees. Names and IDs are written straight
+ * from the inflated tree contents.
+ */
+public class DiffTree implements Command {
+
+    private static final Logger log = Logger.getLogger(DiffTree.class.getName());
+
+    private static final int MODE_TYPE_MASK = 0170000;
+    private static final byte[] EMPTY_TREE = new byte[0];
+    private static final byte[] ZERO_ID = new byte[ObjectId.LENGTH];
+
+    private ObjectStore store;
+    private OutputStream out;
+    private boolean recursive;
+    private boolean nameStatus;
+    private byte[] path = new byte[256];
+    private int pathLength;
+    private final byte[] hex = new byte[ObjectId.HEX_LENGTH];
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        recursive = false;
+        nameStatus = false;
+        List<String> revisions = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case ARG_RECURSIVE -> recursive = true;
+                case ARG_NAME_STATUS -> nameStatus = true;
+                default -> revisions.add(args[i]);
+            }
+        }
+        if (revisions.isEmpty() || revisions.size() > 2) {
+            log.log(Level.SEVERE, "Usage: diff-tree [-r] [--name-status] <tree-ish> [<tree-ish>]");
+            return;
+        }
+
+        try (ObjectStore objectStore = ObjectStore.open()) {
+            store = objectStore;
+            out = new BufferedOutputStream(System.out, 64 * 1024);
+            RevWalk walk = RevList.openWalk(objectStore);
+            RefStore refs = RefStore.open();
+            if (revisions.size() == 1) {
+                RevCommit commit = RevList.resolveCommit(walk, refs, revisions.get(0));
+                if (commit == null) {
+                    log.log(Level.SEVERE, "fatal: ''{0}'' is not a commit", revisions.get(0));
+                    return;
+                }
+                RevCommit[] parents = commit.getParents();
+                if (parents.length == 1) {
+                    out.write((commit.getId().name() + NEW_LINE).getBytes());
+                    diff(walk.parse(parents[0]).getTree(), commit.getTree());
+                }
+            } else {
+                ObjectId oldTree = RevList.resolveTree(objectStore, walk, refs, revisions.get(0));
+                ObjectId newTree = RevList.resolveTree(objectStore, walk, refs, revisions.get(1));
+                if (oldTree == null || newTree == null) {
+                    log.log(Level.SEVERE, "fatal: not a tree object: ''{0}''", oldTree == null ? revisions.get(0) : revisions.get(1));
+                    return;
+                }
+                diff(oldTree, newTree);
+            }
+            out.flush();
+        } catch (MissingObjectException e) {
+            log.log(Level.SEVERE, "fatal: bad object {0}", e.getMessage());
+        }
+    }
+
+    private void diff(ObjectId oldTree, ObjectId newTree) throws IOException {
+        pathLength = 0;
+        if (!oldTree.equals(newTree))
+            diff(readTree(oldTree), readTree(newTree));
+    }
+
+    /**
+     * Merges the sorted entries of two tree contents, reporting what was deleted from the first,
+     * added in the second or changed between them.
+     */
+    private void diff(byte[] oldTree, byte[] newTree) throws IOException {
+        TreeCursor a = new TreeCursor(oldTree);
+        TreeCursor b = new TreeCursor(newTree);
+        a.next();
+        b.next();
+        while (a.hasEntry() || b.hasEntry()) {
+            int order = !a.hasEntry() ? 1 : !b.hasEntry() ? -1 : TreeCursor.compare(a, b);
+            if (order < 0) {
+                removedOrAdded(a, true);
+                a.next();
+            } else if (order > 0) {
+                removedOrAdded(b, false);
+                b.next();
+            } else {
+                // Same name and both trees or both not; a subtree with the same ID is skipped whole
+                if (a.mode() != b.mode() || !a.sameId(b))
+                    changed(a, b);
+                a.next();
+                b.next();
+            }
+        }
+    }
+
+    private void removedOrAdded(TreeCursor entry, boolean removed) throws IOException {
+        if (recursive && entry.isTree()) {
+            int saved = enter(entry);
+            byte[] tree = readTree(entry.id());
+            diff(removed ? tree : EMPTY_TREE, removed ? EMPTY_TREE : tree);
+            pathLength = saved;
+        } else if (removed) {
+            print(entry.mode(), entry.content(), entry.idOffset(), 0, ZERO_ID, 0, 'D', entry);
+        } else {
+            print(0, ZERO_ID, 0, entry.mode(), entry.content(), entry.idOffset(), 'A', entry);
+        }
+    }
+
+    private void changed(TreeCursor a, TreeCursor b) throws IOException {
+        if (recursive && a.isTree()) {
+            int saved = enter(a);
+            diff(readTree(a.id()), readTree(b.id()));
+            pathLength = saved;
+            return;
+        }
+        char status = (a.mode() & MODE_TYPE_MASK) == (b.mode() & MODE_TYPE_MASK) ? 'M' : 'T';
+        print(a.mode(), a.content(), a.idOffset(), b.mode(), b.content(), b.idOffset(), status, b);
+    }
+
+    /**
+     * Appends the entry's name and a slash to the current path.
+     *
+     * @return the previous path length, to restore when leaving the subtree
+     */
+    private int enter(TreeCursor entry) {
+        int saved = pathLength;
+        int length = pathLength + entry.nameLength() + 1;
+        if (length > path.length)
+            path = Arrays.copyOf(path, Math.max(length, path.length * 2));
+        System.arraycopy(entry.content(), entry.nameOffset(), path, pathLength, entry.nameLength());
+        path[length - 1] = '/';
+        pathLength = length;
+        return saved;
+    }
+
+    private void print(int oldMode, byte[] oldId, int oldIdOffset, int newMode, byte[] newId, int newIdOffset,
+                       char status, TreeCursor name) throws IOException {
+        if (!nameStatus) {
+            out.write(':');
+            writeMode(oldMode);
+            out.write(' ');
+            writeMode(newMode);
+            out.write(' ');
+            writeId(oldId, oldIdOffset);
+            out.write(' ');
+            writeId(newId, newIdOffset);
+            out.write(' ');
+        }
+        out.write(status);
+        out.write('\t');
+        if (PathQuote.needsQuotes(path, 0, pathLength)
+                || PathQuote.needsQuotes(name.content(), name.nameOffset(), name.nameLength())) {
+            out.write('"');
+            PathQuote.writeEscaped(out, path, 0, pathLength);
+            PathQuote.writeEscaped(out, name.content(), name.nameOffset(), name.nameLength());
+            out.write('"');
+        } else {
+            out.write(path, 0, pathLength);
+            out.write(name.content(), name.nameOffset(), name.nameLength());
+        }
+        out.write('\n');
+    }
+
+    private void writeMode(int mode) throws IOException {
+        for (int shift = 15; shift >= 0; shift -= 3)
+            out.write('0' + ((mode >>> shift) & 7));
+    }
+
+    private void writeId(byte[] data, int offset) throws IOException {
+        Hex.encode(data, offset, ObjectId.LENGTH, hex, 0);
+        out.write(hex);
+    }
+
+    private byte[] readTree(ObjectId id) throws IOException {
+        GitObject object = store.read(id);
+        if (object.type() != ObjectType.TREE)
+            throw new IOException("Not a tree object: " + id);
+        return object.content();
+    }
+}
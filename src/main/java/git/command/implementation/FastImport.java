@@ -0,0 +1,811 @@
+package git.command.implementation;
+
+import git.codec.PathQuote;
+import git.command.Command;
+import git.command.CommandContext;
+import git.enums.ObjectType;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.Tree;
+import git.object.TreeCursor;
+import git.pack.DeltaEncoder;
+import git.pack.ObjectTable;
+import git.pack.PackWriter;
+import git.refs.RefStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * {@code fast-import [--import-marks=<file>] [--export-marks=<file>] [--done]}: reads a
+ * {@code git fast-import} stream from standard input and writes its blobs, trees, commits and
+ * tags into one new packfile, then points the branches and tags it names at their last
+ * commits.
+ * <p>
+ * Supported are {@code blob}, {@code commit} with {@code M}, {@code D}, {@code C}, {@code R}
+ * and {@code deleteall}, {@code tag}, {@code reset}, {@code progress}, {@code checkpoint},
+ * {@code done}, the {@code done}, {@code import-marks}, {@code export-marks},
+ * {@code date-format=raw} and {@code force} features, and {@code option} lines, which are
+ * ignored. Refs are updated without a fast-forward check and a checkpoint writes nothing
+ * early; the pack is published once, at the end of the stream.
+ * <p>
+ * Objects are hashed and deflated into the pack as they are read, and an object already
+ * written is not written again. What the import keeps per object lives in primitive
+ * structures: the pack's {@link ObjectTable}, and marks as entry numbers in pages of ints, so
+ * memory grows by a few dozen bytes per object. Only the trees of the branches being built
+ * are held as nodes, and an unchanged subtree stays an ID until a path below it is touched.
+ * <p>
+ * Like {@code git fast-import}, a directory that changes is written as a delta against the
+ * version of it written before, which keeps most of each tree out of the deflater and the
+ * pack; blobs and commits are written whole.
+ */
+public class FastImport implements Command {
+
+    private static final Logger log = Logger.getLogger(FastImport.class.getName());
+
+    private static final int MODE_FILE = 0100644;
+    private static final int MODE_EXECUTABLE = 0100755;
+    private static final int MODE_SYMLINK = 0120000;
+    private static final String ZERO_ID = "0".repeat(ObjectId.HEX_LENGTH);
+    // The longest delta chain a rewritten tree may extend, as in git fast-import
+    private static final int MAX_DELTA_DEPTH = 50;
+
+    private ObjectStore store;
+    private PackWriter writer;
+    private ObjectTable written;
+    // Objects named by the stream that are not in the new pack, e.g. by imported marks
+    private final ObjectTable known = new ObjectTable();
+    private final Marks marks = new Marks();
+    private final Map<String, Branch> branches = new LinkedHashMap<>();
+    private final Map<String, ObjectId> tags = new LinkedHashMap<>();
+    private final int[] objectCounts = new int[5];
+    private int duplicates;
+    private StreamReader in;
+    private PrintStream out;
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        String importMarks = null;
+        String exportMarks = null;
+        boolean requireDone = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith(ARG_IMPORT_MARKS + "=")) {
+                importMarks = args[i].substring(ARG_IMPORT_MARKS.length() + 1);
+            } else if (args[i].startsWith(ARG_EXPORT_MARKS + "=")) {
+                exportMarks = args[i].substring(ARG_EXPORT_MARKS.length() + 1);
+            } else if (args[i].equals(ARG_DONE)) {
+                requireDone = true;
+            } else {
+                log.log(Level.SEVERE, "Usage: fast-import [--import-marks=<file>] [--export-marks=<file>] [--done]");
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        CommandContext context = CommandContext.current();
+        in = new StreamReader(System.in);
+        out = System.out;
+        try (ObjectStore objectStore = ObjectStore.open();
+             PackWriter packWriter = new PackWriter(context.resolve(OBJECTS_PATH).resolve(PACK))) {
+            store = objectStore;
+            writer = packWriter;
+            written = packWriter.getObjects();
+            if (importMarks != null)
+                importMarks(context.resolve(importMarks));
+            Options options = run(new Options(exportMarks, requireDone));
+
+            Path pack = null;
+            if (writer.getObjectCount() > 0) {
+                pack = writer.finish();
+                store.rescanPacks();
+            }
+            updateRefs();
+            if (options.exportMarks != null)
+                exportMarks(context.resolve(options.exportMarks));
+            logStatistics(pack, System.nanoTime() - start);
+        } catch (IOException | IllegalArgumentException e) {
+            log.log(Level.SEVERE, "fatal: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reads commands until the end of the stream or {@code done}.
+     */
+    private Options run(Options options) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            } else if (line.equals("blob")) {
+                blob();
+            } else if (line.startsWith("commit ")) {
+                commit(line.substring("commit ".length()));
+            } else if (line.startsWith("tag ")) {
+                tag(line.substring("tag ".length()));
+            } else if (line.startsWith("reset ")) {
+                reset(line.substring("reset ".length()));
+            } else if (line.startsWith("progress ")) {
+                out.println(line);
+            } else if (line.equals("checkpoint") || line.startsWith("option ")) {
+                // Nothing is published before the end of the stream; options of other tools are ignored
+            } else if (line.startsWith("feature ")) {
+                feature(line.substring("feature ".length()), options);
+            } else if (line.equals("done")) {
+                return options;
+            } else {
+                throw new IOException("Unsupported command: " + line);
+            }
+        }
+        if (options.requireDone)
+            throw new IOException("Stream ends early");
+        return options;
+    }
+
+    private void feature(String feature, Options options) throws IOException {
+        if (feature.equals("done")) {
+            options.requireDone = true;
+        } else if (feature.startsWith("import-marks=")) {
+            importMarks(CommandContext.current().resolve(feature.substring("import-marks=".length())));
+        } else if (feature.startsWith("export-marks=")) {
+            options.exportMarks = feature.substring("export-marks=".length());
+        } else if (!feature.equals("date-format=raw") && !feature.equals("force")) {
+            throw new IOException("This version of fast-import does not support feature " + feature);
+        }
+    }
+
+    private void blob() throws IOException {
+        long mark = readMark();
+        skipOriginalOid();
+        int entry = storeObject(ObjectType.BLOB, readData());
+        if (mark > 0)
+            marks.set(mark, entry + 1);
+    }
+
+    private void commit(String ref) throws IOException {
+        Branch branch = branches.computeIfAbsent(ref, name -> new Branch());
+        long mark = readMark();
+        skipOriginalOid();
+        String author = optionalLine("author ");
+        String committer = optionalLine("committer ");
+        if (committer == null)
+            throw new IOException("Expected committer in commit " + ref);
+        String encoding = optionalLine("encoding ");
+        byte[] message = readData();
+
+        List<ObjectId> parents = new ArrayList<>();
+        String from = optionalLine("from ");
+        if (from != null)
+            branch.reset(from.equals(ZERO_ID) ? null : resolveCommit(from), this);
+        if (branch.tip != null)
+            parents.add(branch.tip);
+        String merge;
+        while ((merge = optionalLine("merge ")) != null)
+            parents.add(resolveCommit(merge));
+        fileChanges(branch);
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream(256 + message.length);
+        content.writeBytes((TREE + writeTree(branch.root).name() + NEW_LINE).getBytes(StandardCharsets.ISO_8859_1));
+        for (ObjectId parent : parents)
+            content.writeBytes((PARENT + parent.name() + NEW_LINE).getBytes(StandardCharsets.ISO_8859_1));
+        content.writeBytes((AUTHOR + (author == null ? committer : author) + NEW_LINE).getBytes(StandardCharsets.ISO_8859_1));
+        content.writeBytes((COMMITTER + committer + NEW_LINE).getBytes(StandardCharsets.ISO_8859_1));
+        if (encoding != null)
+            content.writeBytes(("encoding " + encoding + NEW_LINE).getBytes(StandardCharsets.ISO_8859_1));
+        content.write('\n');
+        content.writeBytes(message);
+
+        int entry = storeObject(ObjectType.COMMIT, content.toByteArray());
+        branch.tip = written.getId(entry);
+        if (mark > 0)
+            marks.set(mark, entry + 1);
+    }
+
+    /**
+     * Applies the {@code M}, {@code D}, {@code C}, {@code R} and {@code deleteall} lines that
+     * follow a commit's header.
+     */
+    private void fileChanges(Branch branch) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("M ")) {
+                modify(branch, line);
+            } else if (line.startsWith("D ")) {
+                remove(branch.root, parsePath(line, 2, true).path());
+            } else if (line.startsWith("C ") || line.startsWith("R ")) {
+                ParsedPath source = parsePath(line, 2, false);
+                String target = parsePath(line, source.end() + 1, true).path();
+                TreeNode node = find(branch.root, source.path());
+                if (node == null)
+                    throw new IOException("Path " + source.path() + " not in branch");
+                if (line.charAt(0) == 'R')
+                    remove(branch.root, source.path());
+                else
+                    node = new TreeNode(node.mode, writeTree(node));
+                put(branch.root, target, node);
+            } else if (line.equals("deleteall")) {
+                branch.root = TreeNode.directory(null);
+            } else {
+                // A blank line ends the commit; anything else is the next command
+                if (!line.isEmpty())
+                    in.unread(line);
+                return;
+            }
+        }
+    }
+
+    private void modify(Branch branch, String line) throws IOException {
+        int modeEnd = line.indexOf(' ', 2);
+        int refEnd = modeEnd < 0 ? -1 : line.indexOf(' ', modeEnd + 1);
+        if (refEnd < 0)
+            throw new IOException("Missing path in: " + line);
+        int mode = parseMode(line.substring(2, modeEnd));
+        String dataRef = line.substring(modeEnd + 1, refEnd);
+        String path = parsePath(line, refEnd + 1, true).path();
+        ObjectId id;
+        if (dataRef.equals("inline")) {
+            id = written.getId(storeObject(ObjectType.BLOB, readData()));
+        } else {
+            id = resolve(dataRef);
+        }
+        put(branch.root, path, mode == Tree.MODE_TREE ? TreeNode.directory(id) : new TreeNode(mode, id));
+    }
+
+    private void tag(String name) throws IOException {
+        long mark = readMark();
+        String from = optionalLine("from ");
+        if (from == null)
+            throw new IOException("Expected from in tag " + name);
+        skipOriginalOid();
+        String tagger = optionalLine("tagger ");
+        byte[] message = readData();
+
+        ObjectId target = resolveCommit(from);
+        ByteArrayOutputStream content = new ByteArrayOutputStream(256 + message.length);
+        content.writeBytes(("object " + target.name() + NEW_LINE + "type " + typeOf(target).getValue() + NEW_LINE
+                + "tag " + name + NEW_LINE).getBytes(StandardCharsets.ISO_8859_1));
+        if (tagger != null)
+            content.writeBytes(("tagger " + tagger + NEW_LINE).getBytes(StandardCharsets.ISO_8859_1));
+        content.write('\n');
+        content.writeBytes(message);
+        int entry = storeObject(ObjectType.TAG, content.toByteArray());
+        tags.put(REFS + FORWARD_SLASH + "tags/" + name, written.getId(entry));
+        if (mark > 0)
+            marks.set(mark, entry + 1);
+    }
+
+    private void reset(String ref) throws IOException {
+        Branch branch = branches.computeIfAbsent(ref, name -> new Branch());
+        String from = optionalLine("from ");
+        branch.reset(from == null || from.equals(ZERO_ID) ? null : resolveCommit(from), this);
+    }
+
+    /**
+     * Hashes an object and appends it to the pack unless it is there already.
+     *
+     * @return its entry in the pack's table
+     */
+    private int storeObject(ObjectType type, byte[] content) throws IOException {
+        return storeObject(type, content, null);
+    }
+
+    /**
+     * Hashes an object and appends it to the pack unless it is there already, as a delta
+     * against the version of {@code directory} written before when that is smaller.
+     *
+     * @return its entry in the pack's table
+     */
+    private int storeObject(ObjectType type, byte[] content, TreeNode directory) throws IOException {
+        byte[] id = ObjectStore.idOf(type, content, content.length).toRaw();
+        int entry = written.find(id, 0);
+        if (entry >= 0) {
+            duplicates++;
+            return entry;
+        }
+        byte[] delta = null;
+        if (directory != null && directory.base != null && directory.baseDepth < MAX_DELTA_DEPTH && content.length > 20)
+            delta = new DeltaEncoder(directory.base).encode(content, content.length - 20);
+        long offset = delta == null
+                ? writer.write(id, type, content)
+                : writer.writeOfsDelta(id, directory.baseOffset, delta);
+        if (directory != null) {
+            directory.baseDepth = delta == null ? 0 : directory.baseDepth + 1;
+            directory.base = content;
+            directory.baseOffset = offset;
+        }
+        objectCounts[type.getPackCode()]++;
+        return written.size() - 1;
+    }
+
+    /**
+     * Reads an object written by this import or already in the repository.
+     */
+    private byte[] readObject(ObjectId id) throws IOException {
+        int entry = written.find(id);
+        return entry >= 0 ? writer.read(written.getOffset(entry)) : store.read(id).content();
+    }
+
+    private ObjectType typeOf(ObjectId id) throws IOException {
+        int entry = written.find(id);
+        if (entry < 0)
+            return store.readHeader(id).type();
+        // Only trees are written as deltas
+        ObjectType type = written.getType(entry);
+        return type == null ? ObjectType.TREE : type;
+    }
+
+    /**
+     * Resolves a data reference: a mark or an ID.
+     */
+    private ObjectId resolve(String reference) throws IOException {
+        if (reference.startsWith(":")) {
+            int value = marks.get(parseMark(reference));
+            if (value == 0)
+                throw new IOException("Mark " + reference + " not declared");
+            return value > 0 ? written.getId(value - 1) : known.getId(-value - 1);
+        }
+        if (!ObjectId.isId(reference))
+            throw new IOException("Invalid dataref: " + reference);
+        return ObjectId.fromHex(reference);
+    }
+
+    /**
+     * Resolves a commit-ish: a mark, an ID, a branch of this import or an existing ref.
+     */
+    private ObjectId resolveCommit(String reference) throws IOException {
+        if (reference.startsWith(":") || ObjectId.isId(reference))
+            return resolve(reference);
+        Branch branch = branches.get(reference);
+        if (branch != null && branch.tip != null)
+            return branch.tip;
+        ObjectId id = RevList.resolveRevision(RefStore.open(), reference);
+        if (id == null)
+            throw new IOException("Not a valid commit: " + reference);
+        return id;
+    }
+
+    private ObjectId treeOf(ObjectId commit) throws IOException {
+        byte[] content = readObject(commit);
+        if (content.length < TREE.length() + ObjectId.HEX_LENGTH
+                || !new String(content, 0, TREE.length(), StandardCharsets.ISO_8859_1).equals(TREE))
+            throw new IOException("Not a commit: " + commit);
+        return ObjectId.fromHex(new String(content, TREE.length(), ObjectId.HEX_LENGTH, StandardCharsets.ISO_8859_1));
+    }
+
+    // Branch trees: paths are bytes held as ISO-8859-1 strings, so names order as Git orders them
+
+    /**
+     * Loads the entries of a directory that is still only an ID.
+     */
+    private void load(TreeNode directory) throws IOException {
+        if (directory.children != null)
+            return;
+        directory.children = new TreeMap<>();
+        TreeCursor cursor = new TreeCursor(readObject(directory.id));
+        while (cursor.next()) {
+            String name = new String(cursor.content(), cursor.nameOffset(), cursor.nameLength(), StandardCharsets.ISO_8859_1);
+            directory.children.put(name, cursor.isTree() ? TreeNode.directory(cursor.id()) : new TreeNode(cursor.mode(), cursor.id()));
+        }
+    }
+
+    private void put(TreeNode root, String path, TreeNode node) throws IOException {
+        String[] names = split(path);
+        TreeNode directory = root;
+        for (int i = 0; i < names.length - 1; i++) {
+            load(directory);
+            directory.id = null;
+            TreeNode child = directory.children.get(names[i]);
+            if (child == null || child.mode != Tree.MODE_TREE) {
+                child = TreeNode.directory(null);
+                directory.children.put(names[i], child);
+            }
+            directory = child;
+        }
+        load(directory);
+        directory.id = null;
+        directory.children.put(names[names.length - 1], node);
+    }
+
+    private TreeNode find(TreeNode root, String path) throws IOException {
+        TreeNode node = root;
+        for (String name : split(path)) {
+            if (node.mode != Tree.MODE_TREE)
+                return null;
+            load(node);
+            node = node.children.get(name);
+            if (node == null)
+                return null;
+        }
+        return node;
+    }
+
+    /**
+     * Removes a path, and the directories it leaves empty.
+     *
+     * @return whether the path was there
+     */
+    private boolean remove(TreeNode root, String path) throws IOException {
+        return remove(root, split(path), 0);
+    }
+
+    private boolean remove(TreeNode directory, String[] names, int depth) throws IOException {
+        load(directory);
+        TreeNode child = directory.children.get(names[depth]);
+        if (child == null)
+            return false;
+        if (depth == names.length - 1) {
+            directory.children.remove(names[depth]);
+        } else if (child.mode != Tree.MODE_TREE || !remove(child, names, depth + 1)) {
+            return false;
+        } else if (child.children.isEmpty()) {
+            directory.children.remove(names[depth]);
+        }
+        directory.id = null;
+        return true;
+    }
+
+    /**
+     * Writes the changed directories below {@code node}, deepest first, and returns its ID.
+     */
+    private ObjectId writeTree(TreeNode node) throws IOException {
+        if (node.id != null)
+            return node.id;
+        List<String> order = new ArrayList<>(node.children.size());
+        for (Map.Entry<String, TreeNode> child : node.children.entrySet()) {
+            TreeNode value = child.getValue();
+            // Git sorts a directory as if its name ended with a slash
+            if (value.mode != Tree.MODE_TREE)
+                order.add(child.getKey());
+            else if (value.children == null || !value.children.isEmpty())
+                order.add(child.getKey() + FORWARD_SLASH);
+        }
+        order.sort(null);
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream(order.size() * 48);
+        byte[] id = new byte[ObjectId.LENGTH];
+        for (String key : order) {
+            boolean directory = key.endsWith(FORWARD_SLASH);
+            String name = directory ? key.substring(0, key.length() - 1) : key;
+            TreeNode child = node.children.get(name);
+            content.writeBytes((Integer.toOctalString(child.mode) + SPACE + name).getBytes(StandardCharsets.ISO_8859_1));
+            content.write(0);
+            writeTree(child).copyRawTo(id, 0);
+            content.writeBytes(id);
+        }
+        node.id = written.getId(storeObject(ObjectType.TREE, content.toByteArray(), node));
+        return node.id;
+    }
+
+    private static String[] split(String path) throws IOException {
+        String[] names = path.split(FORWARD_SLASH, -1);
+        for (String name : names)
+            if (name.isEmpty() || name.equals(".") || name.equals(".."))
+                throw new IOException("Invalid path: " + path);
+        return names;
+    }
+
+    private static int parseMode(String mode) throws IOException {
+        return switch (mode) {
+            case "644", "100644" -> MODE_FILE;
+            case "755", "100755" -> MODE_EXECUTABLE;
+            case "120000" -> MODE_SYMLINK;
+            case "160000" -> Tree.MODE_GITLINK;
+            case "040000", "40000" -> Tree.MODE_TREE;
+            default -> throw new IOException("Invalid mode: " + mode);
+        };
+    }
+
+    /**
+     * Parses a path at {@code start} of {@code line}, quoted or not; an unquoted one runs to
+     * the end of the line if {@code last}, else to the next space.
+     */
+    private static ParsedPath parsePath(String line, int start, boolean last) throws IOException {
+        if (start >= line.length())
+            throw new IOException("Missing path in: " + line);
+        if (line.charAt(start) == '"') {
+            StringBuilder path = new StringBuilder();
+            int end = PathQuote.unquote(line, start, path);
+            if (last && end != line.length())
+                throw new IOException("Garbage after path in: " + line);
+            return new ParsedPath(path.toString(), end);
+        }
+        int end = last ? line.length() : line.indexOf(' ', start);
+        if (end < 0)
+            throw new IOException("Missing target path in: " + line);
+        return new ParsedPath(line.substring(start, end), end);
+    }
+
+    // Stream parsing
+
+    private long readMark() throws IOException {
+        String line = optionalLine("mark ");
+        return line == null ? 0 : parseMark(line);
+    }
+
+    private static long parseMark(String mark) throws IOException {
+        try {
+            long value = mark.startsWith(":") ? Long.parseLong(mark.substring(1)) : -1;
+            if (value > 0 && value <= Integer.MAX_VALUE)
+                return value;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IOException("Invalid mark: " + mark);
+    }
+
+    private void skipOriginalOid() throws IOException {
+        optionalLine("original-oid ");
+    }
+
+    /**
+     * Returns the rest of the next line if it starts with {@code prefix}, else leaves it.
+     */
+    private String optionalLine(String prefix) throws IOException {
+        String line = in.readLine();
+        if (line != null && line.startsWith(prefix))
+            return line.substring(prefix.length());
+        if (line != null)
+            in.unread(line);
+        return null;
+    }
+
+    /**
+     * Reads a {@code data <count>} or {@code data <<<delimiter>} command and its content.
+     */
+    private byte[] readData() throws IOException {
+        String line = in.readLine();
+        if (line == null || !line.startsWith("data "))
+            throw new IOException("Expected 'data n' command, found: " + line);
+        String size = line.substring("data ".length());
+        if (!size.startsWith("<<")) {
+            try {
+                return in.read(Integer.parseInt(size));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid data size: " + size);
+            }
+        }
+        String delimiter = size.substring(2);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        while ((line = in.readLine()) != null && !line.equals(delimiter)) {
+            data.writeBytes(line.getBytes(StandardCharsets.ISO_8859_1));
+            data.write('\n');
+        }
+        if (line == null)
+            throw new IOException("EOF in data (terminator '" + delimiter + "' not found)");
+        return data.toByteArray();
+    }
+
+    // Marks and refs
+
+    private void importMarks(Path file) throws IOException {
+        for (String line : Files.readAllLines(file, StandardCharsets.ISO_8859_1)) {
+            if (line.isEmpty())
+                continue;
+            int space = line.indexOf(' ');
+            if (space < 0 || !ObjectId.isId(line.substring(space + 1)))
+                throw new IOException("Corrupt mark line: " + line);
+            byte[] id = ObjectId.fromHex(line.substring(space + 1)).toRaw();
+            int entry = written.find(id, 0);
+            if (entry >= 0) {
+                marks.set(parseMark(line.substring(0, space)), entry + 1);
+                continue;
+            }
+            entry = known.find(id, 0);
+            if (entry < 0)
+                entry = known.add(id, null, -1, 0);
+            marks.set(parseMark(line.substring(0, space)), -(entry + 1));
+        }
+    }
+
+    private void exportMarks(Path file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        marks.forEach((mark, value) -> text.append(':').append(mark).append(' ')
+                .append((value > 0 ? written.getId(value - 1) : known.getId(-value - 1)).name()).append(NEW_LINE));
+        Files.writeString(file, text, StandardCharsets.ISO_8859_1);
+    }
+
+    private void updateRefs() throws IOException {
+        RefStore refs = RefStore.open();
+        for (Map.Entry<String, Branch> branch : branches.entrySet())
+            if (branch.getValue().tip != null)
+                refs.update(branch.getKey(), branch.getValue().tip.name());
+        for (Map.Entry<String, ObjectId> tag : tags.entrySet())
+            refs.update(tag.getKey(), tag.getValue().name());
+    }
+
+    private void logStatistics(Path pack, long elapsedNanos) throws IOException {
+        int objects = written.size();
+        double seconds = Math.max(elapsedNanos, 1) / 1_000_000_000.0;
+        log.log(Level.INFO, String.format("fast-import: %d objects (%d blobs, %d trees, %d commits, %d tags, %d duplicates) in %.1f ms"
+                        + " (%.0f objects/s), %d marks, %d branches, pack %s %d KB",
+                objects, objectCounts[ObjectType.BLOB.getPackCode()], objectCounts[ObjectType.TREE.getPackCode()],
+                objectCounts[ObjectType.COMMIT.getPackCode()], objectCounts[ObjectType.TAG.getPackCode()], duplicates,
+                seconds * 1000, objects / seconds, marks.count, branches.size(),
+                pack == null ? "none" : pack.getFileName(), pack == null ? 0 : Files.size(pack) / 1024));
+    }
+
+    private static final class Options {
+
+        private String exportMarks;
+        private boolean requireDone;
+
+        Options(String exportMarks, boolean requireDone) {
+            this.exportMarks = exportMarks;
+            this.requireDone = requireDone;
+        }
+    }
+
+    private record ParsedPath(String path, int end) {
+    }
+
+    /**
+     * A branch being imported: its last commit and its tree as of that commit plus the changes
+     * read so far.
+     */
+    private static final class Branch {
+
+        private ObjectId tip;
+        private TreeNode root = TreeNode.directory(null);
+
+        void reset(ObjectId commit, FastImport importer) throws IOException {
+            tip = commit;
+            root = TreeNode.directory(commit == null ? null : importer.treeOf(commit));
+        }
+    }
+
+    /**
+     * A file, or a directory whose entries are read on first use. A null ID marks a directory
+     * that changed since it was last written; an empty new directory has no ID and no entries.
+     * A directory written by this import keeps that content as the base of its next delta.
+     */
+    private static final class TreeNode {
+
+        private final int mode;
+        private ObjectId id;
+        private TreeMap<String, TreeNode> children;
+        private byte[] base;
+        private long baseOffset;
+        private int baseDepth;
+
+        TreeNode(int mode, ObjectId id) {
+            this.mode = mode;
+            this.id = id;
+        }
+
+        static TreeNode directory(ObjectId id) {
+            TreeNode directory = new TreeNode(Tree.MODE_TREE, id);
+            if (id == null)
+                directory.children = new TreeMap<>();
+            return directory;
+        }
+    }
+
+    /**
+     * Mark numbers mapped to objects, in pages of ints allocated as marks are set: a value is
+     * an entry of the pack's table plus one, or minus one minus an entry of the known objects.
+     */
+    private static final class Marks {
+
+        private static final int PAGE_SHIFT = 16;
+        private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+        private int[][] pages = new int[16][];
+        private int count;
+
+        int get(long mark) {
+            int page = (int) (mark >>> PAGE_SHIFT);
+            return page < pages.length && pages[page] != null ? pages[page][(int) mark & PAGE_MASK] : 0;
+        }
+
+        void set(long mark, int value) {
+            int page = (int) (mark >>> PAGE_SHIFT);
+            if (page >= pages.length)
+                pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+            if (pages[page] == null)
+                pages[page] = new int[1 << PAGE_SHIFT];
+            if (pages[page][(int) mark & PAGE_MASK] == 0)
+                count++;
+            pages[page][(int) mark & PAGE_MASK] = value;
+        }
+
+        void forEach(MarkVisitor visitor) {
+            for (int page = 0; page < pages.length; page++) {
+                if (pages[page] == null)
+                    continue;
+                for (int i = 0; i <= PAGE_MASK; i++)
+                    if (pages[page][i] != 0)
+                        visitor.visit(((long) page << PAGE_SHIFT) | i, pages[page][i]);
+            }
+        }
+
+        @FunctionalInterface
+        interface MarkVisitor {
+            void visit(long mark, int value);
+        }
+    }
+
+    /**
+     * Reads the stream through one buffer: command lines as ISO-8859-1 strings, so that paths
+     * keep their bytes, and data as raw bytes. One line can be pushed back.
+     */
+    private static final class StreamReader {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int position;
+        private int limit;
+        private String pushedBack;
+
+        StreamReader(InputStream in) {
+            this.in = in;
+        }
+
+        String readLine() throws IOException {
+            if (pushedBack != null) {
+                String line = pushedBack;
+                pushedBack = null;
+                return line;
+            }
+            StringBuilder line = null;
+            while (true) {
+                if (position == limit && !fill())
+                    return line == null ? null : line.toString();
+                int start = position;
+                while (position < limit && buffer[position] != '\n')
+                    position++;
+                String piece = new String(buffer, start, position - start, StandardCharsets.ISO_8859_1);
+                if (position < limit) {
+                    position++;
+                    return line == null ? piece : line.append(piece).toString();
+                }
+                line = line == null ? new StringBuilder(piece) : line.append(piece);
+            }
+        }
+
+        void unread(String line) {
+            pushedBack = line;
+        }
+
+        /**
+         * Reads exactly {@code length} bytes, then a line feed right after them if there is one.
+         */
+        byte[] read(int length) throws IOException {
+            byte[] data = new byte[length];
+            int copied = 0;
+            while (copied < length) {
+                if (position == limit && !fill())
+                    throw new IOException("EOF in data (" + (length - copied) + " bytes remaining)");
+                int n = Math.min(length - copied, limit - position);
+                System.arraycopy(buffer, position, data, copied, n);
+                position += n;
+                copied += n;
+            }
+            if ((position < limit || fill()) && buffer[position] == '\n')
+                position++;
+            return data;
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buffer);
+            if (n <= 0)
+                return false;
+            position = 0;
+            limit = n;
+            return true;
+        }
+    }
+}
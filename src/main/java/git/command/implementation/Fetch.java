@@ -0,0 +1,134 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.command.CommandContext;
+import git.config.Config;
+import git.object.ObjectStore;
+import git.pack.IndexPack;
+import git.refs.RefStore;
+import git.transport.Transport;
+import git.transport.UploadPackClient;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * Downloads new objects and refs from a remote:
+ * {@code fetch [--upload-pack=<command>] [--threads=<n>] [<remote>]}.
+ * <p>
+ * Branches are stored as {@code refs/remotes/<remote>/<branch>}; tags the repository does
+ * not have yet are created. The tips of all local refs are offered as common objects, so only
+ * what is missing is transferred.
+ */
+public class Fetch implements Command {
+
+    private static final Logger log = Logger.getLogger(Fetch.class.getName());
+
+    private static final String HEADS = "refs/heads/";
+    private static final String TAGS = "refs/tags/";
+
+    /**
+     * The outcome of a fetch: what the remote advertised and the pack that was received.
+     *
+     * @param advertisement the refs and capabilities the remote advertised
+     * @param remoteRefs    the branches and tags of the remote, as local ref names
+     * @param pack          the new pack, or null if every object was already present
+     */
+    record Result(UploadPackClient.Advertisement advertisement, Map<String, String> remoteRefs, Path pack) {
+    }
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        String remote = DEFAULT_REMOTE;
+        for (int i = 1; i < args.length; i++)
+            if (!args[i].startsWith("-"))
+                remote = args[i];
+
+        Config config = Config.read(CommandContext.current().resolve(CONFIG_PATH));
+        String url = config.getString("remote." + remote + ".url");
+        if (url == null) {
+            log.log(Level.SEVERE, "fatal: ''{0}'' does not appear to be a git repository", remote);
+            return;
+        }
+
+        RefStore refs = RefStore.open();
+        Result result;
+        try (ObjectStore store = ObjectStore.open()) {
+            result = fetch(url, remote, stringOption(args, ARG_UPLOAD_PACK, DEFAULT_UPLOAD_PACK),
+                    intOption(args, ARG_THREADS, Runtime.getRuntime().availableProcessors()), store, refs);
+        }
+
+        int updated = 0;
+        for (Map.Entry<String, String> ref : result.remoteRefs().entrySet()) {
+            String name = ref.getKey();
+            String previous = refs.resolve(name);
+            if (ref.getValue().equals(previous) || (name.startsWith(TAGS) && previous != null))
+                continue;
+            refs.update(name, ref.getValue());
+            updated++;
+            log.log(Level.INFO, "{0} {1} -> {2}", new Object[]{previous == null ? "* [new]" : "  updated", name, ref.getValue()});
+        }
+        if (updated == 0)
+            log.log(Level.INFO, "Already up to date with {0}", url);
+    }
+
+    /**
+     * Fetches the branches and tags of the repository at {@code url} into {@code store}
+     * without touching any ref; the caller decides how to record them.
+     */
+    static Result fetch(String url, String remote, String uploadPack, int threads,
+                        ObjectStore store, RefStore refs) throws IOException {
+        try (Transport transport = Transport.open(url, uploadPack)) {
+            if (transport == null)
+                throw new IOException("No native transport for " + url);
+            UploadPackClient client = new UploadPackClient(transport);
+            UploadPackClient.Advertisement advertisement = client.advertisement();
+
+            Map<String, String> remoteRefs = new LinkedHashMap<>();
+            List<String> wants = new ArrayList<>();
+            for (Map.Entry<String, String> ref : advertisement.refs().entrySet()) {
+                String name = ref.getKey();
+                String local;
+                if (name.startsWith(HEADS))
+                    local = REFS + FORWARD_SLASH + "remotes/" + remote + FORWARD_SLASH + name.substring(HEADS.length());
+                else if (name.startsWith(TAGS))
+                    local = name;
+                else
+                    continue;
+                remoteRefs.put(local, ref.getValue());
+                if (!store.contains(ref.getValue()))
+                    wants.add(ref.getValue());
+            }
+
+            List<String> haves = new ArrayList<>();
+            for (String id : refs.list(REFS + FORWARD_SLASH).values())
+                if (store.contains(id))
+                    haves.add(id);
+
+            Path packDir = CommandContext.current().resolve(OBJECTS_PATH).resolve(PACK);
+            Path pack = client.fetch(wants, haves, new IndexPack(packDir, threads));
+            store.rescanPacks();
+            return new Result(advertisement, remoteRefs, pack);
+        }
+    }
+
+    static String stringOption(String[] args, String name, String defaultValue) {
+        for (String arg : args)
+            if (arg.startsWith(name + "="))
+                return arg.substring(name.length() + 1);
+        return defaultValue;
+    }
+
+    static int intOption(String[] args, String name, int defaultValue) {
+        String value = stringOption(args, name, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
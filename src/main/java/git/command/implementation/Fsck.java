@@ -0,0 +1,396 @@
+package git.command.implementation;
+
+import git.codec.Hex;
+import git.command.Command;
+import git.command.CommandContext;
+import git.command.ExitStatusException;
+import git.enums.ObjectType;
+import git.index.CacheTree;
+import git.index.Index;
+import git.index.IndexEntry;
+import git.object.GitObject;
+import git.object.ObjectChecker;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.Tree;
+import git.pack.IndexPack;
+import git.pack.PackFile;
+import git.pack.PackIndex;
+import git.refs.RefStore;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * {@code fsck [--unreachable]}: verifies every object of the repository and its connectivity.
+ * Problems with objects are reported as errors, links to objects the repository lacks as
+ * {@code missing <type> <id>}, and objects nothing reaches as {@code dangling <type> <id>} when
+ * no other object links to them either, or all as {@code unreachable <type> <id>} with
+ * {@code --unreachable}. The exit status is 1 when there are errors or missing objects.
+ * <p>
+ * Every object is hashed again from its content, in parallel: packs are re-indexed by
+ * {@link IndexPack#verify}, which also checks their checksums, offsets and CRC-32s against
+ * the {@code .idx}, and loose objects are read by a pool in batches. Each object is checked
+ * by {@link ObjectChecker} on the thread that inflated it, and only its links are kept, as
+ * positions: an object's position is its index in its pack's {@code .idx} after those of the
+ * packs before, and loose objects follow the packs. Connectivity is then a walk over the
+ * links from HEAD, the refs and the index, marking a {@link BitSet} by position, so no object
+ * is read twice and no ID is hashed or looked up in a map during the walk.
+ */
+public class Fsck implements Command {
+
+    private static final Logger log = Logger.getLogger(Fsck.class.getName());
+
+    // Loose objects read per task
+    private static final int BATCH_SIZE = 256;
+    // A link packs the target's position with the expected type's pack code minus one
+    private static final int TYPE_BITS = 2;
+    private static final int[] NO_LINKS = {};
+
+    private ObjectStore store;
+    private List<PackFile> packs;
+    private int[] packBases;
+    private int packedCount;
+    private List<ObjectId> loose;
+    private Map<ObjectId, Integer> loosePositions;
+
+    // Per position: the verified object's pack type code, 0 if it could not be read, and its links
+    private byte[] types;
+    private int[][] links;
+    private final Map<ObjectId, ObjectType> missing = new ConcurrentHashMap<>();
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        boolean showUnreachable = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals(ARG_UNREACHABLE)) {
+                showUnreachable = true;
+            } else {
+                log.log(Level.SEVERE, "Usage: fsck [--unreachable]");
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        boolean failed;
+        try (ObjectStore objectStore = ObjectStore.open()) {
+            store = objectStore;
+            locateObjects();
+            int threads = Runtime.getRuntime().availableProcessors();
+            for (int p = 0; p < packs.size(); p++)
+                verifyPack(p, threads);
+            verifyLoose(threads);
+            long verified = System.nanoTime();
+
+            BitSet referenced = checkLinkTypes();
+            BitSet reachable = walk();
+            OutputStream out = new BufferedOutputStream(System.out, 64 * 1024);
+            failed = report(out, referenced, reachable, showUnreachable);
+            out.flush();
+
+            long end = System.nanoTime();
+            double seconds = Math.max(end - start, 1) / 1_000_000_000.0;
+            log.log(Level.INFO, String.format("fsck: %d objects (%d packed, %d loose) in %.1f ms, verify %.1f ms, connectivity %.1f ms (%.0f objects/s)",
+                    types.length, packedCount, loose.size(), seconds * 1000, (verified - start) / 1e6, (end - verified) / 1e6,
+                    types.length / seconds));
+        }
+        if (failed)
+            throw new ExitStatusException(1);
+    }
+
+    /**
+     * Numbers the objects: packs in order, then the loose objects.
+     */
+    private void locateObjects() throws IOException {
+        packs = store.packs();
+        packBases = new int[packs.size()];
+        for (int p = 0; p < packs.size(); p++) {
+            packBases[p] = packedCount;
+            packedCount += packs.get(p).getIndex().getObjectCount();
+        }
+        loose = new ArrayList<>();
+        loosePositions = new HashMap<>();
+        for (String hash : store.looseObjectIds()) {
+            ObjectId id = ObjectId.fromHex(hash);
+            loosePositions.put(id, packedCount + loose.size());
+            loose.add(id);
+        }
+        int count = packedCount + loose.size();
+        types = new byte[count];
+        links = new int[count][];
+    }
+
+    /**
+     * Returns the position of the ID at {@code offset} of {@code data}, preferring the first
+     * pack holding it, or -1 if the repository does not have it.
+     */
+    private int positionOf(byte[] data, int offset, byte[] scratch) {
+        byte[] id = data;
+        if (offset != 0 || data.length != ObjectId.LENGTH) {
+            System.arraycopy(data, offset, scratch, 0, ObjectId.LENGTH);
+            id = scratch;
+        }
+        for (int p = 0; p < packs.size(); p++) {
+            int position = packs.get(p).getIndex().findPosition(id);
+            if (position >= 0)
+                return packBases[p] + position;
+        }
+        Integer position = loosePositions.isEmpty() ? null : loosePositions.get(ObjectId.fromRaw(id));
+        return position == null ? -1 : position;
+    }
+
+    private ObjectId idAt(int position) {
+        if (position >= packedCount)
+            return loose.get(position - packedCount);
+        int p = packs.size() - 1;
+        while (packBases[p] > position)
+            p--;
+        return ObjectId.fromRaw(packs.get(p).getIndex().getObjectId(position - packBases[p]));
+    }
+
+    private void verifyPack(int p, int threads) {
+        PackFile pack = packs.get(p);
+        PackIndex index = pack.getIndex();
+        ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[ObjectId.LENGTH]);
+        try {
+            List<String> problems = new IndexPack(pack.getPackPath().getParent(), threads).verify(pack, (offset, id, type, content) -> {
+                int position = index.findPosition(id);
+                if (position >= 0)
+                    check(packBases[p] + position, id, type, content, scratch.get());
+            });
+            problems.forEach(problem -> errors.add("error: " + problem));
+        } catch (IOException e) {
+            errors.add("error: cannot verify " + pack.getPackPath() + ": " + e.getMessage());
+        }
+    }
+
+    private void verifyLoose(int threads) throws IOException {
+        if (loose.isEmpty())
+            return;
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> batches = new ArrayList<>();
+            for (int from = 0; from < loose.size(); from += BATCH_SIZE) {
+                int batchStart = from;
+                int batchEnd = Math.min(from + BATCH_SIZE, loose.size());
+                batches.add(workers.submit(() -> {
+                    byte[] scratch = new byte[ObjectId.LENGTH];
+                    for (int i = batchStart; i < batchEnd; i++)
+                        verifyLoose(loose.get(i), packedCount + i, scratch);
+                    return null;
+                }));
+            }
+            for (Future<Void> batch : batches)
+                batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("fsck interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException("fsck failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void verifyLoose(ObjectId id, int position, byte[] scratch) {
+        GitObject object;
+        try {
+            object = store.readLoose(id);
+        } catch (IOException e) {
+            errors.add("error: " + id.name() + ": object corrupt or missing: " + e.getMessage());
+            return;
+        }
+        ObjectId actual = ObjectStore.idOf(object.type(), object.content(), object.size());
+        if (!actual.equals(id)) {
+            errors.add("error: hash mismatch for " + store.pathOf(id) + " (expected " + id.name() + ", got " + actual.name() + ")");
+            return;
+        }
+        check(position, id.toRaw(), object.type(), object.content(), scratch);
+    }
+
+    /**
+     * Records a verified object: its type, and its links unless another copy of it is the one
+     * that counts.
+     */
+    private void check(int position, byte[] id, ObjectType type, byte[] content, byte[] scratch) {
+        types[position] = (byte) type.getPackCode();
+        if (positionOf(id, 0, scratch) != position)
+            return;
+        int[][] found = {NO_LINKS};
+        int[] count = {0};
+        String problem = ObjectChecker.check(type, content, (data, offset, expected) -> {
+            int target = positionOf(data, offset, scratch);
+            if (target < 0) {
+                missing.putIfAbsent(ObjectId.fromRaw(data, offset), expected);
+                return;
+            }
+            if (count[0] == found[0].length)
+                found[0] = Arrays.copyOf(found[0], Math.max(4, count[0] * 2));
+            found[0][count[0]++] = target << TYPE_BITS | (expected.getPackCode() - 1);
+        });
+        links[position] = count[0] == found[0].length ? found[0] : Arrays.copyOf(found[0], count[0]);
+        if (problem != null)
+            errors.add("error in " + type.getValue() + " " + Hex.encode(id) + ": " + problem);
+    }
+
+    /**
+     * Checks that every link points to an object of the type its source expects; a link to an
+     * object that failed verification counts as missing.
+     *
+     * @return the positions some object links to
+     */
+    private BitSet checkLinkTypes() {
+        BitSet referenced = new BitSet(types.length);
+        for (int position = 0; position < links.length; position++) {
+            if (links[position] == null)
+                continue;
+            for (int link : links[position]) {
+                int target = link >>> TYPE_BITS;
+                int expected = (link & ((1 << TYPE_BITS) - 1)) + 1;
+                referenced.set(target);
+                if (types[target] == 0)
+                    missing.putIfAbsent(idAt(target), ObjectType.fromPackCode(expected));
+                else if (types[target] != expected)
+                    errors.add("error in " + typeName(types[position]) + " " + idAt(position).name() + ": "
+                            + idAt(target).name() + " is a " + typeName(types[target]) + ", not a " + typeName(expected));
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * Marks everything reachable from HEAD, the refs and the index.
+     */
+    private BitSet walk() throws IOException {
+        Walk walk = new Walk();
+        RefStore refs = RefStore.open();
+        String head = refs.resolve(HEAD);
+        if (head != null)
+            walk.mark(HEAD, ObjectId.fromHex(head).toRaw(), null);
+        for (Map.Entry<String, String> ref : refs.list(REFS + FORWARD_SLASH).entrySet())
+            walk.mark(ref.getKey(), ObjectId.fromHex(ref.getValue()).toRaw(), null);
+
+        Path indexFile = CommandContext.current().resolve(INDEX_PATH);
+        if (Files.exists(indexFile)) {
+            Index index = Index.read(indexFile);
+            // The stages of a path in conflict keep their blobs alive too
+            for (Collection<IndexEntry> entries : List.of(index.getEntries(), index.getUnmergedEntries()))
+                for (IndexEntry entry : entries)
+                    if (entry.getMode() != Tree.MODE_GITLINK)
+                        walk.mark(entry.getPath(), entry.getId(), ObjectType.BLOB);
+            if (index.getCacheTree() != null)
+                markCacheTree(walk, index.getCacheTree());
+        }
+        return walk.reachable;
+    }
+
+    private static void markCacheTree(Walk walk, CacheTree node) {
+        if (!node.isValid())
+            return;
+        walk.mark(INDEX_PATH, node.getId(), ObjectType.TREE);
+        for (CacheTree child : node.getChildren())
+            markCacheTree(walk, child);
+    }
+
+    /**
+     * A depth-first walk over the links, with an explicit stack of positions.
+     */
+    private final class Walk {
+
+        private final BitSet reachable = new BitSet(types.length);
+        private final byte[] scratch = new byte[ObjectId.LENGTH];
+        private int[] stack = new int[64];
+
+        /**
+         * Marks the object {@code name} points to and everything it reaches. A ref to an object
+         * the repository lacks is an error; an index entry's is a missing object of {@code type}.
+         */
+        void mark(String name, byte[] id, ObjectType type) {
+            int position = positionOf(id, 0, scratch);
+            if (position < 0 || types[position] == 0) {
+                if (type == null)
+                    errors.add("error: " + name + ": invalid sha1 pointer " + Hex.encode(id));
+                else
+                    missing.putIfAbsent(ObjectId.fromRaw(id), type);
+                return;
+            }
+            if (reachable.get(position))
+                return;
+            reachable.set(position);
+            int size = 0;
+            stack[size++] = position;
+            while (size > 0) {
+                int[] targets = links[stack[--size]];
+                if (targets == null)
+                    continue;
+                for (int link : targets) {
+                    int target = link >>> TYPE_BITS;
+                    if (reachable.get(target))
+                        continue;
+                    reachable.set(target);
+                    if (size == stack.length)
+                        stack = Arrays.copyOf(stack, size * 2);
+                    stack[size++] = target;
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the errors, the missing objects, and the unreachable or dangling ones.
+     *
+     * @return whether there were errors or missing objects
+     */
+    private boolean report(OutputStream out, BitSet referenced, BitSet reachable, boolean showUnreachable) throws IOException {
+        List<String> sorted = new ArrayList<>(errors);
+        Collections.sort(sorted);
+        for (String error : sorted)
+            log.log(Level.SEVERE, error);
+
+        for (Map.Entry<ObjectId, ObjectType> entry : new TreeMap<>(missing).entrySet())
+            out.write(("missing " + entry.getValue().getValue() + " " + entry.getKey().name() + NEW_LINE).getBytes());
+
+        SortedMap<ObjectId, Byte> unreachable = new TreeMap<>();
+        byte[] scratch = new byte[ObjectId.LENGTH];
+        for (int position = reachable.nextClearBit(0); position < types.length; position = reachable.nextClearBit(position + 1)) {
+            if (types[position] == 0 || (!showUnreachable && referenced.get(position)))
+                continue;
+            ObjectId id = idAt(position);
+            if (positionOf(id.toRaw(), 0, scratch) == position)
+                unreachable.put(id, types[position]);
+        }
+        String label = showUnreachable ? "unreachable " : "dangling ";
+        for (Map.Entry<ObjectId, Byte> entry : unreachable.entrySet())
+            out.write((label + typeName(entry.getValue()) + " " + entry.getKey().name() + NEW_LINE).getBytes());
+        return !errors.isEmpty() || !missing.isEmpty();
+    }
+
+    private static String typeName(int packCode) {
+        return ObjectType.fromPackCode(packCode).getValue();
+    }
+}
@@ -0,0 +1,20 @@
+package git.command.implementation;
+
+import git.command.Command;
+
+/**
+ * Packs every reachable object of the repository into a single pack and removes the loose
+ * copies and the packs it supersedes; equivalent to {@code repack -a -d}, which keeps
+ * unreachable objects loose. Then rewrites the commit-graph, as Git's {@code gc} does by
+ * default.
+ */
+public class Gc implements Command {
+
+    private final Repack repack = new Repack();
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        repack.execute(new String[]{"repack", "-a", "-d"});
+        new CommitGraph().write();
+    }
+}
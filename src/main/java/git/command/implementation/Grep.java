@@ -0,0 +1,490 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.command.ExitStatusException;
+import git.object.GitObject;
+import git.object.MissingObjectException;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.Tree;
+import git.refs.RefStore;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static git.constant.Constant.*;
+
+/**
+ * {@code grep [-i] [-n] [-c | -l] [--threads=<n>] [-e] <pattern> <tree-ish>}: prints the lines
+ * of the files under a tree or commit that match a regular expression, as
+ * {@code <tree-ish>:<path>:<line>}, without checking anything out. {@code -n} adds line
+ * numbers, {@code -c} prints a count per file and {@code -l} only the names of matching files.
+ * Exits with status 1 when nothing matches.
+ * <p>
+ * The pattern is a Java regular expression, which is closer to {@code git grep -P} than to
+ * Git's default basic syntax. It is matched on the raw bytes of each blob through a view that
+ * reads every byte as one char, so no blob is decoded: non-ASCII text in the pattern matches
+ * its UTF-8 bytes, and {@code -i} folds ASCII letters only. As with {@code git grep -I},
+ * binary blobs, those with a NUL byte in their first {@value #BINARY_PROBE} bytes, are
+ * skipped.
+ * <p>
+ * Like Git and GNU grep, the search looks for a literal that every match must contain, when
+ * the pattern has one outside groups and alternatives, with a plain byte scan, and only runs
+ * the regular expression on the lines where it occurs.
+ * <p>
+ * The search runs in the pipeline of {@code cat-file --batch}: a walker thread descends the
+ * tree depth first, in Git's order, and hands each blob to a pool of workers that inflate and
+ * match concurrently, while the calling thread writes the results in tree order as they
+ * complete. Only the trees along the walker's path are held, and at most
+ * {@value #PIPELINE_DEPTH} files are in flight. A blob found at several paths, as identical
+ * files are, is searched once and its result reused by ID.
+ */
+public class Grep implements Command {
+
+    private static final Logger log = Logger.getLogger(Grep.class.getName());
+
+    // How far Git looks into a blob for a NUL byte to call it binary
+    private static final int BINARY_PROBE = 8000;
+    // Files in flight between the walker and the writer
+    private static final int PIPELINE_DEPTH = 256;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final Result NO_MATCH = new Result(0, new int[0], new byte[0]);
+    private static final Pending END = new Pending(null, null);
+
+    private ObjectStore store;
+    private Pattern pattern;
+    // A string every match contains, lower case with -i, or null
+    private byte[] literal;
+    // Whether the pattern is that literal and nothing else, so finding it is a match
+    private boolean literalOnly;
+    private boolean ignoreCase;
+    private boolean lineNumbers;
+    private boolean countOnly;
+    private boolean namesOnly;
+    private final AtomicInteger binaries = new AtomicInteger();
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        String regex = null;
+        List<String> operands = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case ARG_IGNORE_CASE -> ignoreCase = true;
+                case ARG_LINE_NUMBER -> lineNumbers = true;
+                case ARG_COUNT_MATCHES, ARG_COUNT -> countOnly = true;
+                case ARG_FILES_WITH_MATCHES -> namesOnly = true;
+                case ARG_E -> regex = i + 1 < args.length ? args[++i] : null;
+                default -> {
+                    if (!args[i].startsWith(ARG_THREADS + "="))
+                        operands.add(args[i]);
+                }
+            }
+        }
+        if (regex == null && !operands.isEmpty())
+            regex = operands.remove(0);
+        if (regex == null || operands.size() != 1) {
+            log.log(Level.SEVERE, "Usage: grep [-i] [-n] [-c | -l] [--threads=<n>] [-e] <pattern> <tree-ish>");
+            return;
+        }
+        String name = operands.get(0);
+        int threads = Fetch.intOption(args, ARG_THREADS, Runtime.getRuntime().availableProcessors());
+
+        try {
+            // Match bytes, so the pattern's own non-ASCII characters become their UTF-8 bytes
+            String bytePattern = new String(regex.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+            pattern = Pattern.compile(bytePattern, Pattern.MULTILINE | (ignoreCase ? Pattern.CASE_INSENSITIVE : 0));
+            String required = requiredLiteral(bytePattern);
+            if (required != null) {
+                literal = (ignoreCase ? foldCase(required) : required).getBytes(StandardCharsets.ISO_8859_1);
+                literalOnly = required.equals(bytePattern);
+            }
+        } catch (PatternSyntaxException e) {
+            log.log(Level.SEVERE, "fatal: invalid pattern ''{0}'': {1}", new Object[]{regex, e.getDescription()});
+            return;
+        }
+
+        long start = System.nanoTime();
+        int matched;
+        try (ObjectStore objectStore = ObjectStore.open()) {
+            store = objectStore;
+            ObjectId tree = RevList.resolveTree(store, RevList.openWalk(store), RefStore.open(), name);
+            if (tree == null) {
+                log.log(Level.SEVERE, "fatal: not a tree object: ''{0}''", name);
+                return;
+            }
+            matched = run(tree, (name + ':').getBytes(StandardCharsets.UTF_8), threads, System.out);
+        } catch (MissingObjectException e) {
+            log.log(Level.SEVERE, "fatal: bad object {0}", e.getMessage());
+            return;
+        }
+        log.log(Level.FINE, String.format("grep: %d matching files, %d binary blobs skipped in %.1f ms",
+                matched, binaries.get(), (System.nanoTime() - start) / 1e6));
+        if (matched == 0)
+            throw new ExitStatusException(1);
+    }
+
+    /**
+     * Searches the files under {@code tree} and writes the results to {@code out}.
+     *
+     * @return the number of files with a match
+     */
+    private int run(ObjectId tree, byte[] prefix, int threads, OutputStream out) throws IOException {
+        BlockingQueue<Pending> pending = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(threads, 1));
+        Thread walker = new Thread(() -> walk(tree, workers, pending), "grep-walker");
+        walker.setDaemon(true);
+        walker.start();
+
+        BufferedOutputStream output = new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE);
+        int matched = 0;
+        try {
+            Pending next;
+            while ((next = pending.take()) != END) {
+                Result result = next.result().get();
+                if (result.count() > 0) {
+                    write(prefix, next.path(), result, output);
+                    matched++;
+                }
+                if (pending.isEmpty())
+                    output.flush();
+            }
+            output.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Grep interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException("Grep failed", e.getCause());
+        } finally {
+            walker.interrupt();
+            workers.shutdownNow();
+        }
+        return matched;
+    }
+
+    private void walk(ObjectId tree, ExecutorService workers, BlockingQueue<Pending> pending) {
+        try {
+            try {
+                walk(tree, "", workers, pending, new HashMap<>());
+            } catch (IOException e) {
+                pending.put(new Pending(null, CompletableFuture.failedFuture(e)));
+            }
+            pending.put(END);
+        } catch (InterruptedException e) {
+            // The writer gave up
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void walk(ObjectId treeId, String prefix, ExecutorService workers, BlockingQueue<Pending> pending,
+                      Map<ObjectId, Future<Result>> searched) throws IOException, InterruptedException {
+        for (Tree.Entry entry : store.readTree(treeId).entries()) {
+            if (entry.isTree()) {
+                walk(entry.id(), prefix + entry.name() + FORWARD_SLASH, workers, pending, searched);
+            } else if (entry.mode() != Tree.MODE_GITLINK) {
+                Future<Result> result = searched.computeIfAbsent(entry.id(), id -> workers.submit(() -> search(id)));
+                pending.put(new Pending(prefix + entry.name(), result));
+            }
+        }
+    }
+
+    /**
+     * Inflates one blob and finds its matching lines. Lines that hold the required literal are
+     * matched one by one; without a literal the whole blob is searched, and a match that runs
+     * across a line feed is retried within its first line, so that every match lies on one
+     * line as in Git.
+     */
+    private Result search(ObjectId id) throws IOException {
+        GitObject blob = store.readText(id, BINARY_PROBE);
+        if (blob == null) {
+            binaries.incrementAndGet();
+            return NO_MATCH;
+        }
+        byte[] data = blob.content();
+        Matcher matcher = pattern.matcher(new ByteSequence(data));
+        int count = 0;
+        int[] numbers = new int[8];
+        ByteArrayOutputStream lines = namesOnly || countOnly ? null : new ByteArrayOutputStream();
+        int lineNumber = 1;
+        int counted = 0;
+        int position = 0;
+        while (position < data.length) {
+            int lineStart;
+            int lineEnd;
+            if (literal != null) {
+                int hit = indexOfLiteral(data, position);
+                if (hit < 0)
+                    break;
+                lineStart = lastLineFeed(data, position, hit) + 1;
+                lineEnd = nextLineFeed(data, hit);
+                if (!literalOnly && !matcher.region(lineStart, lineEnd).find()) {
+                    position = lineEnd + 1;
+                    continue;
+                }
+            } else {
+                if (!matcher.region(position, data.length).find())
+                    break;
+                lineStart = lastLineFeed(data, position, matcher.start()) + 1;
+                lineEnd = nextLineFeed(data, matcher.start());
+                if (matcher.end() > lineEnd && !matcher.region(lineStart, lineEnd).find()) {
+                    position = lineEnd + 1;
+                    continue;
+                }
+            }
+            count++;
+            if (namesOnly)
+                break;
+            if (lines != null) {
+                for (int i = counted; i < lineStart; i++)
+                    if (data[i] == '\n')
+                        lineNumber++;
+                counted = lineStart;
+                if (count > numbers.length)
+                    numbers = Arrays.copyOf(numbers, numbers.length * 2);
+                numbers[count - 1] = lineNumber;
+                lines.write(data, lineStart, lineEnd - lineStart);
+                lines.write('\n');
+            }
+            position = lineEnd + 1;
+        }
+        return count == 0 ? NO_MATCH : new Result(count, numbers, lines == null ? null : lines.toByteArray());
+    }
+
+    private void write(byte[] prefix, String path, Result result, OutputStream output) throws IOException {
+        byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        if (namesOnly || countOnly) {
+            output.write(prefix);
+            output.write(name);
+            if (countOnly)
+                output.write((":" + result.count()).getBytes(StandardCharsets.US_ASCII));
+            output.write('\n');
+            return;
+        }
+        byte[] lines = result.lines();
+        int start = 0;
+        for (int i = 0; i < result.count(); i++) {
+            int end = nextLineFeed(lines, start);
+            output.write(prefix);
+            output.write(name);
+            output.write(':');
+            if (lineNumbers)
+                output.write((result.numbers()[i] + ":").getBytes(StandardCharsets.US_ASCII));
+            output.write(lines, start, end - start + 1);
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Returns the index of the last line feed in {@code [from, before)}, or {@code from - 1}.
+     */
+    private static int lastLineFeed(byte[] data, int from, int before) {
+        for (int i = before - 1; i >= from; i--)
+            if (data[i] == '\n')
+                return i;
+        return from - 1;
+    }
+
+    /**
+     * Returns the index of the line feed at or after {@code from}, or the length of the data.
+     */
+    private static int nextLineFeed(byte[] data, int from) {
+        for (int i = from; i < data.length; i++)
+            if (data[i] == '\n')
+                return i;
+        return data.length;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the literal at or after {@code from}, or -1;
+     * with {@code -i} ASCII letters of the data are compared in lower case.
+     */
+    private int indexOfLiteral(byte[] data, int from) {
+        byte[] needle = literal;
+        byte first = needle[0];
+        int last = data.length - needle.length;
+        if (ignoreCase) {
+            for (int i = from; i <= last; i++) {
+                if (foldCase(data[i]) != first)
+                    continue;
+                int j = 1;
+                while (j < needle.length && foldCase(data[i + j]) == needle[j])
+                    j++;
+                if (j == needle.length)
+                    return i;
+            }
+            return -1;
+        }
+        for (int i = from; i <= last; i++) {
+            if (data[i] == first && Arrays.equals(data, i + 1, i + needle.length, needle, 1, needle.length))
+                return i;
+        }
+        return -1;
+    }
+
+    private static byte foldCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b | 0x20) : b;
+    }
+
+    private static String foldCase(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            folded.append(c >= 'A' && c <= 'Z' ? (char) (c | 0x20) : c);
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Finds the longest run of literal characters outside groups and classes that every match
+     * of {@code regex} contains. Only what is certain is taken: a character made optional by a
+     * quantifier is dropped, and patterns with top-level alternatives, inline flags, quoting or
+     * escapes that take arguments have no literal.
+     *
+     * @return the literal, or null if none is known
+     */
+    static String requiredLiteral(String regex) {
+        if (regex.contains("(?") || regex.contains("\\Q"))
+            return null;
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        boolean afterLiteral = false;
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (++i == regex.length())
+                    return null;
+                c = regex.charAt(i);
+                if (Character.isLetterOrDigit(c) && "bBsSdDwWAzZGRhHvVtnrfae".indexOf(c) < 0)
+                    return null;
+                if (!Character.isLetterOrDigit(c)) {
+                    if (depth == 0)
+                        run.append(c);
+                    afterLiteral = depth == 0;
+                    continue;
+                }
+            } else if (c == '[') {
+                if ((i = skipClass(regex, i)) < 0)
+                    return null;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|') {
+                if (depth == 0)
+                    return null;
+                continue;
+            } else if (c == '*' || c == '?' || c == '{') {
+                // The atom before is optional
+                if (afterLiteral)
+                    run.setLength(run.length() - 1);
+                if (c == '{' && (i = regex.indexOf('}', i)) < 0)
+                    return null;
+            } else if (c != '+' && c != '.' && c != '^' && c != '$') {
+                if (depth == 0)
+                    run.append(c);
+                afterLiteral = depth == 0;
+                continue;
+            }
+            // Anything else ends the run; after a '+' its atom stays, but what follows need not
+            // be next to it
+            if (run.length() > best.length())
+                best = run.toString();
+            run.setLength(0);
+            afterLiteral = false;
+        }
+        if (run.length() > best.length())
+            best = run.toString();
+        return best.isEmpty() ? null : best;
+    }
+
+    /**
+     * Returns the index of the bracket that closes the class opened at {@code open}, or -1.
+     */
+    private static int skipClass(String regex, int open) {
+        int nesting = 0;
+        for (int i = open; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                nesting++;
+                // A bracket right after the opening one, or after its ^, is a member
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '^')
+                    i++;
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == ']')
+                    i++;
+            } else if (c == ']' && --nesting == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A file under the tree and its pending search.
+     */
+    private record Pending(String path, Future<Result> result) {
+    }
+
+    /**
+     * The matches in one blob: their count, and unless only that is wanted, the line number
+     * of each and the lines themselves, each followed by a line feed.
+     */
+    private record Result(int count, int[] numbers, byte[] lines) {
+    }
+
+    /**
+     * Bytes seen as chars of the same value, so that a regular expression runs over a blob in
+     * place.
+     */
+    private record ByteSequence(byte[] data, int start, int end) implements CharSequence {
+
+        ByteSequence(byte[] data) {
+            this(data, 0, data.length);
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (data[start + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new ByteSequence(data, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
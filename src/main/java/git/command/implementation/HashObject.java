@@ -1,63 +1,50 @@
 package git.command.implementation;
 
 import git.command.Command;
+import git.command.CommandContext;
+import git.object.CompressionPolicy;
+import git.object.ObjectId;
+import git.object.ObjectStore;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.HexFormat;
-import java.util.zip.DeflaterOutputStream;
-
-import static git.constant.Constant.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.ARG_COMPRESSION;
 import static java.lang.System.out;
 
+/**
+ * {@code hash-object -w [--compression=<level>] <file>}: stores the file as a blob and prints
+ * its ID. The level overrides {@code core.looseCompression} for this run.
+ */
 public class HashObject implements Command {
 
+    private static final Logger log = Logger.getLogger(HashObject.class.getName());
 
     @Override
     public void execute(String[] args) throws Exception {
-        String fileName = args[2];
-        String hash = hashFile(new File(fileName));
-        out.println(hash);
+        String fileName = args[args.length - 1];
+        Integer level;
+        try {
+            level = CompressionPolicy.levelOption(args, ARG_COMPRESSION);
+        } catch (IllegalArgumentException e) {
+            log.log(Level.SEVERE, "fatal: {0}", e.getMessage());
+            return;
+        }
+        try (ObjectStore objectStore = ObjectStore.open(level)) {
+            ObjectId id = hashFile(objectStore, CommandContext.current().resolve(fileName).toFile());
+            out.println(id.name());
+        }
     }
 
-    public String hashFile(File File) throws IOException, NoSuchAlgorithmException {
-        try (var inputStream = new FileInputStream(File)) {
-            return hashFile(inputStream.readAllBytes());
+    public ObjectId hashFile(File File) throws IOException {
+        try (ObjectStore objectStore = ObjectStore.open()) {
+            return hashFile(objectStore, File);
         }
     }
 
-    private String hashFile(byte[] bytes) throws IOException, NoSuchAlgorithmException {
-        var lengthBytes = String.valueOf(bytes.length).getBytes();
-        var message = MessageDigest.getInstance(SHA_1);
-        message.update(OBJECT_TYPE_BLOB);
-        message.update(SPACE_BYTES);
-        message.update(lengthBytes);
-        message.update(NULL_BYTES);
-        message.update(bytes);
-
-        var hashBytes = message.digest();
-        var hash = HexFormat.of().formatHex(hashBytes);
-
-        var firstTwo = hash.substring(0, 2);
-        var rest = hash.substring(2);
-        var firstTwoPath = Paths.get(OBJECTS_PATH, firstTwo).toFile();
-        firstTwoPath.mkdirs();
-        var restPath = Paths.get(firstTwoPath.getPath(), rest).toFile();
-        try (
-                var outputStream = Files.newOutputStream(restPath.toPath());
-                var deflaterOutputStream = new DeflaterOutputStream(outputStream);
-        ) {
-            deflaterOutputStream.write(OBJECT_TYPE_BLOB);
-            deflaterOutputStream.write(SPACE_BYTES);
-            deflaterOutputStream.write(lengthBytes);
-            deflaterOutputStream.write(NULL_BYTES);
-            deflaterOutputStream.write(bytes);
-        }
-        return hash;
+    ObjectId hashFile(ObjectStore objectStore, File file) throws IOException {
+        return objectStore.insertBlob(file.toPath());
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,8 @@
 package git.command.implementation;
 
 import git.command.Command;
+import git.command.CommandContext;
+import git.index.Index;
 
 import java.io.File;
 import java.io.IOException;
@@ -16,10 +18,11 @@ public class Init implements Command {
 
     @Override
     public void execute(String[] args) {
-        final File root = new File(GIT_DIRECTORY);
+        final File root = CommandContext.current().resolve(GIT_DIRECTORY).toFile();
         final File objectsDir = new File(root, OBJECTS);
         final File refsDir = new File(root, REFS);
         final File head = new File(root, HEAD);
+        final File index = new File(root, INDEX);
 
         // Create .git directory and its subdirectories
         try {
@@ -27,6 +30,7 @@ public class Init implements Command {
             createRefsDirectory(refsDir);
             createHeadFile(head);
             Files.write(head.toPath(), HEADS_REFS_BYTES);
+            createIndexFile(index);
             log.log(Level.INFO, "Initialized git directory");
         } catch (Exception e) {
             log.log(Level.SEVERE, "Exception in init command while handling file: {0}", e.getMessage());
@@ -39,6 +43,11 @@ public class Init implements Command {
             throwException("Failed to create HEAD file.");
     }
 
+    private void createIndexFile(File index) throws IOException {
+        if (!index.exists())
+            new Index().write(index.toPath());
+    }
+
     private void createRefsDirectory(File refsDir) throws IOException {
         if (!refsDir.mkdirs() && !refsDir.exists())
             throwException("Failed to create refs directory.");
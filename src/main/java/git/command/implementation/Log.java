@@ -0,0 +1,169 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.graph.RevCommit;
+import git.graph.RevWalk;
+import git.object.ObjectStore;
+import git.refs.RefStore;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * {@code log [--oneline] [--max-count=<n> | -n <n>] [--topo-order] [--all] [<revision>...]}:
+ * shows the commits reachable from {@code HEAD}, or from the given revisions, in Git's
+ * {@code medium} format or one line per commit.
+ * <p>
+ * The walk itself runs off the commit-graph like {@link RevList}; only the commits that are
+ * actually shown are inflated, for their author and message.
+ */
+public class Log implements Command {
+
+    private static final Logger log = Logger.getLogger(Log.class.getName());
+
+    private static final int ABBREV_LENGTH = 7;
+    private static final String INDENT = "    ";
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        boolean oneline = false;
+        boolean topoOrder = false;
+        boolean all = false;
+        int maxCount = -1;
+        List<String> revisions = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case ARG_ONELINE -> oneline = true;
+                case ARG_TOPO_ORDER -> topoOrder = true;
+                case ARG_ALL_REFS -> all = true;
+                case ARG_N -> maxCount = i + 1 < args.length ? Integer.parseInt(args[++i]) : -1;
+                default -> {
+                    if (args[i].startsWith(ARG_MAX_COUNT + "="))
+                        maxCount = Integer.parseInt(args[i].substring(ARG_MAX_COUNT.length() + 1));
+                    else
+                        revisions.add(args[i]);
+                }
+            }
+        }
+
+        RefStore refs = RefStore.open();
+        if (revisions.isEmpty() && !all) {
+            if (refs.resolve(HEAD) == null) {
+                log.log(Level.SEVERE, "fatal: your current branch does not have any commits yet");
+                return;
+            }
+            revisions.add(HEAD);
+        }
+
+        try (ObjectStore store = ObjectStore.open()) {
+            RevWalk walk = RevList.openWalk(store);
+            walk.setTopoOrder(topoOrder);
+            if (!RevList.markRevisions(walk, refs, revisions, all))
+                return;
+
+            Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            int shown = 0;
+            RevCommit commit;
+            while (shown != maxCount && (commit = walk.next()) != null) {
+                String content = new String(store.read(commit.getId()).content(), StandardCharsets.UTF_8);
+                if (oneline) {
+                    writer.write(abbreviate(commit) + SPACE + subject(content) + NEW_LINE);
+                } else {
+                    if (shown > 0)
+                        writer.write(NEW_LINE);
+                    writeMedium(writer, commit, content);
+                }
+                shown++;
+            }
+            writer.flush();
+        }
+    }
+
+    private static void writeMedium(Writer writer, RevCommit commit, String content) throws IOException {
+        writer.write(COMMIT + commit.getId().name() + NEW_LINE);
+        RevCommit[] parents = commit.getParents();
+        if (parents.length > 1) {
+            writer.write("Merge:");
+            for (RevCommit parent : parents)
+                writer.write(SPACE + abbreviate(parent));
+            writer.write(NEW_LINE);
+        }
+
+        int body = content.indexOf("\n\n");
+        String headers = body < 0 ? content : content.substring(0, body);
+        for (String line : headers.split(NEW_LINE)) {
+            if (!line.startsWith(AUTHOR))
+                continue;
+            // "author <name> <<email>> <time> <zone>"
+            int zone = line.lastIndexOf(' ');
+            int time = line.lastIndexOf(' ', zone - 1);
+            writer.write("Author: " + line.substring(AUTHOR.length(), time) + NEW_LINE);
+            writer.write("Date:   " + formatDate(Long.parseLong(line.substring(time + 1, zone)), line.substring(zone + 1)) + NEW_LINE);
+        }
+        writer.write(NEW_LINE);
+
+        for (String line : messageLines(content))
+            writer.write(INDENT + line + NEW_LINE);
+    }
+
+    /**
+     * Returns the lines of the commit message without the blank lines around it.
+     */
+    private static List<String> messageLines(String content) {
+        int body = content.indexOf("\n\n");
+        List<String> lines = new ArrayList<>();
+        if (body < 0)
+            return lines;
+        for (String line : content.substring(body + 2).split(NEW_LINE, -1)) {
+            if (!lines.isEmpty() || !line.isBlank())
+                lines.add(line);
+        }
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isBlank())
+            lines.remove(lines.size() - 1);
+        return lines;
+    }
+
+    /**
+     * Returns the first paragraph of the message, joined into one line.
+     */
+    private static String subject(String content) {
+        StringBuilder subject = new StringBuilder();
+        for (String line : messageLines(content)) {
+            if (line.isBlank())
+                break;
+            if (!subject.isEmpty())
+                subject.append(' ');
+            subject.append(line.strip());
+        }
+        return subject.toString();
+    }
+
+    private static String formatDate(long seconds, String zone) {
+        ZoneOffset offset;
+        try {
+            offset = ZoneOffset.of(zone);
+        } catch (RuntimeException e) {
+            offset = ZoneOffset.UTC;
+        }
+        return DATE_FORMAT.format(Instant.ofEpochSecond(seconds).atOffset(offset));
+    }
+
+    private static String abbreviate(RevCommit commit) {
+        return commit.getId().name().substring(0, ABBREV_LENGTH);
+    }
+}
@@ -1,68 +1,112 @@
 package git.command.implementation;
 
 import git.command.Command;
+import git.enums.ObjectType;
+import git.object.GitObject;
+import git.object.MissingObjectException;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.Tree;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.InflaterInputStream;
 
-import static git.constant.Constant.FORWARD_SLASH;
-import static git.constant.Constant.OBJECTS_PATH;
-import static java.lang.System.out;
+import static git.constant.Constant.*;
 
+/**
+ * {@code ls-tree [-r] [-t] [--name-only] <tree-ish>}: lists a tree in Git's format,
+ * {@code <mode> SP <type> SP <object> TAB <path>}, or just the paths with {@code --name-only}.
+ * With {@code -r} subtrees are walked instead of listed, and {@code -t} lists them as well.
+ * Subtrees come from the object store's tree cache, so repeated subtrees are inflated once.
+ */
 public class LsTree implements Command {
 
     private static final Logger log = Logger.getLogger(LsTree.class.getName());
 
+    private boolean recursive;
+    private boolean showTrees;
+    private boolean nameOnly;
+
     @Override
     public void execute(String[] args) throws Exception {
-        String hash = args[2];
-        File file = new File(OBJECTS_PATH + hash.substring(0, 2) + FORWARD_SLASH + hash.substring(2));
-        if (!file.exists()) {
-            log.log(Level.SEVERE, "Error: Object not found.");
+        recursive = false;
+        showTrees = false;
+        nameOnly = false;
+        String hash = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case ARG_RECURSIVE -> recursive = true;
+                case ARG_SHOW_TREES -> showTrees = true;
+                case ARG_NAME_ONLY -> nameOnly = true;
+                default -> hash = args[i];
+            }
+        }
+        if (hash == null) {
+            log.log(Level.SEVERE, "Usage: ls-tree [-r] [-t] [--name-only] <tree-ish>");
             return;
         }
-        try (InflaterInputStream inFlaterStream = new InflaterInputStream(new FileInputStream(file))) {
-            byte[] rawData = inFlaterStream.readAllBytes(); // Read decompressed tree object
-            parseAndPrintTree(rawData);
+
+        try (ObjectStore objectStore = ObjectStore.open()) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            listTree(objectStore, resolveTree(objectStore, ObjectId.fromHex(hash)), "", writer);
+            writer.flush();
+            log.log(Level.FINE, "Tree cache: {0} hits, {1} misses",
+                    new Object[]{objectStore.getTreeCache().getHits(), objectStore.getTreeCache().getMisses()});
+        } catch (MissingObjectException | IllegalArgumentException e) {
+            log.log(Level.SEVERE, "Error: Object not found.");
         }
     }
 
-    private void parseAndPrintTree(byte[] data) {
-        int index = 0;
-        // **Skip tree object header** ("tree <size>\0")
-        while (data[index] != 0) index++;
-        index++; // Move past the null terminator
-
-        List<String> fileNames = new ArrayList<>();
-
-        while (index < data.length) {
-            // Extract file mode (ends at the first space)
-            int modeEnd = index;
-            while (data[modeEnd] != ' ') modeEnd++;
-            new String(data, index, modeEnd - index);
-            index = modeEnd + 1;
+    /**
+     * Peels a commit to its tree; any other object must be a tree itself.
+     */
+    private Tree resolveTree(ObjectStore objectStore, ObjectId id) throws IOException {
+        GitObject object = objectStore.read(id);
+        if (object.type() == ObjectType.COMMIT) {
+            String content = new String(object.content(), 0, Math.min(object.content().length, TREE.length() + ObjectId.HEX_LENGTH),
+                    StandardCharsets.US_ASCII);
+            if (!content.startsWith(TREE))
+                throw new IOException("Corrupt commit " + id);
+            return objectStore.readTree(ObjectId.fromHex(content.substring(TREE.length())));
+        }
+        if (object.type() != ObjectType.TREE)
+            throw new IOException("Not a tree object: " + id);
+        return Tree.parse(object.content());
+    }
 
-            // Extract filename (ends at null byte)
-            int nameEnd = index;
-            while (data[nameEnd] != 0) nameEnd++;
-            String fileName = new String(data, index, nameEnd - index);
-            index = nameEnd + 1; // Move past null byte
+    private void listTree(ObjectStore objectStore, Tree tree, String prefix, Writer writer) throws IOException {
+        for (Tree.Entry entry : tree.entries()) {
+            String path = prefix + entry.name();
+            boolean descend = recursive && entry.isTree();
+            if (!descend || showTrees)
+                printEntry(entry, path, writer);
+            if (descend)
+                listTree(objectStore, objectStore.readTree(entry.id()), path + FORWARD_SLASH, writer);
+        }
+    }
 
-            // **Skip the 20-byte SHA-1 binary hash**
-            index += 20;
+    private void printEntry(Tree.Entry entry, String path, Writer writer) throws IOException {
+        if (!nameOnly)
+            writeDetails(entry, writer);
+        writer.write(path);
+        writer.write(NEW_LINE);
+    }
 
-            // Store the filename for sorting
-            fileNames.add(fileName);
-        }
-        // **Sort and print the filenames**
-        fileNames.sort(null);
-        for (String name : fileNames)
-            out.println(name);
+    /**
+     * Writes the {@code <mode> SP <type> SP <object> TAB} part of an entry line, shared with
+     * {@code cat-file -p}.
+     */
+    static void writeDetails(Tree.Entry entry, Writer writer) throws IOException {
+        writer.write(entry.modeString());
+        writer.write(EMPTY_CHAR);
+        writer.write(entry.type().getValue());
+        writer.write(EMPTY_CHAR);
+        writer.write(entry.id().name());
+        writer.write('\t');
     }
 }
-
@@ -0,0 +1,29 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.metrics.Metrics;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.ARG_JSON;
+
+/**
+ * {@code metrics [--json]}: prints the counters and latency histograms recorded so far in
+ * Prometheus text format, or as JSON. Run against a daemon, this reports everything the daemon
+ * has served since it started.
+ */
+public class MetricsCommand implements Command {
+
+    private static final Logger log = Logger.getLogger(MetricsCommand.class.getName());
+
+    @Override
+    public void execute(String[] args) {
+        if (!Metrics.ENABLED)
+            log.log(Level.WARNING, "Metrics are not being recorded; set {0} to enable them", Metrics.ENV);
+        Metrics.Format format = List.of(args).contains(ARG_JSON) ? Metrics.Format.JSON : Metrics.Format.PROMETHEUS;
+        System.out.print(Metrics.dump(format));
+        System.out.flush();
+    }
+}
@@ -0,0 +1,63 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.command.CommandContext;
+import git.command.ExitStatusException;
+import git.index.Index;
+import git.object.MissingObjectException;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.refs.RefStore;
+import git.worktree.Checkout;
+import git.worktree.UnsafePathException;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * {@code read-tree [-u] <tree-ish>}: replaces the index with the contents of a tree or commit.
+ * With {@code -u} the files are also written into the working directory, in parallel, and the
+ * index records their stat data, so a following {@code write-tree} rehashes nothing. Files the
+ * tree does not have are left in place. A tree holding a path that is not safe to check out,
+ * such as {@code ..} or {@code .git}, is refused, leaving the index and the files untouched.
+ */
+public class ReadTree implements Command {
+
+    private static final Logger log = Logger.getLogger(ReadTree.class.getName());
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        boolean update = false;
+        String name = null;
+        for (int i = 1; i < args.length; i++) {
+            if (ARG_UPDATE.equals(args[i]))
+                update = true;
+            else
+                name = args[i];
+        }
+        if (name == null) {
+            log.log(Level.SEVERE, "Usage: read-tree [-u] <tree-ish>");
+            return;
+        }
+
+        CommandContext context = CommandContext.current();
+        try (ObjectStore store = ObjectStore.open()) {
+            ObjectId tree = RevList.resolveTree(store, RevList.openWalk(store), RefStore.open(), name);
+            if (tree == null) {
+                log.log(Level.SEVERE, "fatal: not a tree object: ''{0}''", name);
+                return;
+            }
+            Checkout checkout = new Checkout(store, context.getWorkingDirectory());
+            Index index = update ? checkout.checkout(tree) : checkout.read(tree);
+            index.write(context.resolve(INDEX_PATH));
+        } catch (MissingObjectException e) {
+            log.log(Level.SEVERE, "fatal: bad object {0}", e.getMessage());
+        } catch (UnsafePathException e) {
+            // Refused before anything is written, with or without -u, so the index stays as it was
+            log.log(Level.SEVERE, "error: {0}", e.getMessage());
+            throw new ExitStatusException(128);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.command.CommandContext;
+import git.enums.ObjectType;
+import git.index.CacheTree;
+import git.index.Index;
+import git.index.IndexEntry;
+import git.object.GitObject;
+import git.object.ObjectChecker;
+import git.object.ObjectHeader;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.Tree;
+import git.object.TreeCursor;
+import git.pack.DeltaSearch;
+import git.pack.PackFile;
+import git.pack.PackIndex;
+import git.pack.PackWriter;
+import git.refs.RefStore;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * Packs loose objects into a delta-compressed packfile:
+ * {@code repack [-a] [-d] [--window=<n>] [--depth=<n>] [--threads=<n>]}.
+ * <p>
+ * As with Git, only objects reachable from {@code HEAD}, the refs or the index are packed.
+ * {@code -a} also repacks the reachable objects of existing packs into the new one, {@code -d}
+ * deletes the loose objects and packs made redundant by it. Unreachable loose objects are left
+ * alone, and the unreachable objects of a deleted pack are written out loose first, which is
+ * what Git's {@code -A} does, so nothing is lost before a prune.
+ * <p>
+ * {@code --threads} sizes one pool, on which the object headers are read and the delta search
+ * runs.
+ */
+public class Repack implements Command {
+
+    private static final Logger log = Logger.getLogger(Repack.class.getName());
+
+    private static final int DEFAULT_WINDOW = 10;
+    private static final int DEFAULT_DEPTH = 50;
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        List<String> options = Arrays.asList(args);
+        repack(options.contains(ARG_ALL), options.contains(ARG_DELETE),
+                intOption(args, ARG_WINDOW, DEFAULT_WINDOW), intOption(args, ARG_DEPTH, DEFAULT_DEPTH),
+                Math.max(1, intOption(args, ARG_THREADS, Runtime.getRuntime().availableProcessors())));
+    }
+
+    void repack(boolean all, boolean delete, int window, int depth, int threads) throws IOException {
+        long start = System.nanoTime();
+        try (ObjectStore objectStore = ObjectStore.open()) {
+            Set<ObjectId> loose = new HashSet<>();
+            for (String hash : objectStore.looseObjectIds())
+                loose.add(ObjectId.fromHex(hash));
+            List<PackFile> oldPacks = all ? objectStore.packs() : List.of();
+
+            Set<ObjectId> ids = new LinkedHashSet<>();
+            List<ObjectId> packedLoose = new ArrayList<>();
+            for (ObjectId id : reachableObjects(objectStore)) {
+                boolean isLoose = loose.contains(id);
+                if (isLoose)
+                    packedLoose.add(id);
+                if (isLoose || all)
+                    ids.add(id);
+            }
+            if (ids.isEmpty()) {
+                log.log(Level.INFO, "Nothing new to pack.");
+                return;
+            }
+            long looseBytes = 0;
+            for (ObjectId id : packedLoose)
+                looseBytes += Files.size(objectStore.pathOf(id));
+
+            List<DeltaSearch.Candidate> candidates;
+            Path packPath;
+            int[] deltas = new int[1];
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try (PackWriter writer = new PackWriter(CommandContext.current().resolve(OBJECTS_PATH).resolve(PACK))) {
+                candidates = describe(objectStore, new ArrayList<>(ids), pool, threads);
+                // Entries are written as the search finishes them, so their data is not kept
+                long[] offsets = new long[candidates.size()];
+                new DeltaSearch(objectStore, window, depth, pool, threads).search(candidates, (i, result) -> {
+                    long baseOffset = result.baseIndex() < 0 ? -1 : offsets[result.baseIndex()];
+                    offsets[i] = writer.writeRaw(result.id(), result.typeCode(), result.inflatedSize(), baseOffset, result.deflated());
+                    if (result.baseIndex() >= 0)
+                        deltas[0]++;
+                });
+                packPath = writer.finish();
+            } finally {
+                pool.shutdownNow();
+            }
+
+            if (delete) {
+                loosenUnreachable(objectStore, oldPacks, packPath, ids, loose);
+                for (PackFile pack : oldPacks)
+                    if (!pack.getPackPath().equals(packPath))
+                        deletePack(pack.getPackPath());
+                pruneLoose(objectStore, packedLoose);
+            }
+            objectStore.rescanPacks();
+
+            double millis = (System.nanoTime() - start) / 1_000_000.0;
+            log.log(Level.INFO, String.format("Packed %d objects (%d deltas) into %s: %d KB (loose objects: %d KB) in %.1f ms",
+                    candidates.size(), deltas[0], packPath.getFileName(), Files.size(packPath) / 1024, looseBytes / 1024, millis));
+        }
+    }
+
+    /**
+     * Collects the objects reachable from {@code HEAD}, the refs and the index, the same roots
+     * {@code fsck} walks from. Objects the repository lacks are passed over; fsck reports them.
+     */
+    private static Set<ObjectId> reachableObjects(ObjectStore objectStore) throws IOException {
+        Deque<Link> pending = new ArrayDeque<>();
+        RefStore refs = RefStore.open();
+        String head = refs.resolve(HEAD);
+        if (head != null)
+            pending.push(new Link(ObjectId.fromHex(head), null));
+        for (String id : refs.list(REFS + FORWARD_SLASH).values())
+            pending.push(new Link(ObjectId.fromHex(id), null));
+        Path indexFile = CommandContext.current().resolve(INDEX_PATH);
+        if (Files.exists(indexFile)) {
+            Index index = Index.read(indexFile);
+            // The stages of a path in conflict keep their blobs alive too
+            for (Collection<IndexEntry> entries : List.of(index.getEntries(), index.getUnmergedEntries()))
+                for (IndexEntry entry : entries)
+                    if (entry.getMode() != Tree.MODE_GITLINK)
+                        pending.push(new Link(ObjectId.fromRaw(entry.getId()), ObjectType.BLOB));
+            pushCacheTree(pending, index.getCacheTree());
+        }
+
+        Set<ObjectId> seen = new HashSet<>();
+        Set<ObjectId> reachable = new LinkedHashSet<>();
+        while (!pending.isEmpty()) {
+            Link link = pending.pop();
+            if (!seen.add(link.id()) || !objectStore.contains(link.id()))
+                continue;
+            reachable.add(link.id());
+            // Blobs link to nothing, so only their presence is checked
+            if (link.type() == ObjectType.BLOB)
+                continue;
+            GitObject object = objectStore.read(link.id());
+            ObjectChecker.check(object.type(), object.content(),
+                    (data, offset, type) -> pending.push(new Link(ObjectId.fromRaw(data, offset), type)));
+        }
+        return reachable;
+    }
+
+    private static void pushCacheTree(Deque<Link> pending, CacheTree node) {
+        if (node == null || !node.isValid())
+            return;
+        pending.push(new Link(ObjectId.fromRaw(node.getId()), ObjectType.TREE));
+        for (CacheTree child : node.getChildren())
+            pushCacheTree(pending, child);
+    }
+
+    /**
+     * Writes the objects of {@code oldPacks} that were not repacked and are not loose out as
+     * loose objects, before the packs are deleted.
+     */
+    private static void loosenUnreachable(ObjectStore objectStore, List<PackFile> oldPacks, Path packPath,
+                                          Set<ObjectId> packed, Set<ObjectId> loose) throws IOException {
+        Set<ObjectId> loosened = new HashSet<>();
+        for (PackFile pack : oldPacks) {
+            if (pack.getPackPath().equals(packPath))
+                continue;
+            PackIndex index = pack.getIndex();
+            for (int i = 0; i < index.getObjectCount(); i++) {
+                ObjectId id = ObjectId.fromRaw(index.getObjectId(i));
+                if (!packed.contains(id) && !loose.contains(id) && loosened.add(id))
+                    objectStore.loosen(id);
+            }
+        }
+        // The loose copies must be in place before their packs go
+        objectStore.flush();
+        if (!loosened.isEmpty())
+            log.log(Level.INFO, "Kept {0} unreachable objects of old packs as loose objects", loosened.size());
+    }
+
+    /**
+     * Reads the header of every object and derives path name hashes from the trees among them,
+     * reading whole objects only for trees. The objects are split into one batch per thread.
+     */
+    private static List<DeltaSearch.Candidate> describe(ObjectStore objectStore, List<ObjectId> ids,
+                                                        ExecutorService pool, int threads) throws IOException {
+        ObjectHeader[] headers = new ObjectHeader[ids.size()];
+        Map<ObjectId, Integer> nameHashes = new ConcurrentHashMap<>();
+        int batchSize = (ids.size() + threads - 1) / threads;
+        List<Future<Void>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            int batchStart = from;
+            int batchEnd = Math.min(from + batchSize, ids.size());
+            batches.add(pool.submit(() -> {
+                for (int i = batchStart; i < batchEnd; i++) {
+                    headers[i] = objectStore.readHeader(ids.get(i));
+                    if (headers[i].type() == ObjectType.TREE)
+                        recordNames(objectStore.read(ids.get(i)).content(), nameHashes);
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<Void> batch : batches)
+                batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Repack interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException("Repack failed", e.getCause());
+        }
+
+        List<DeltaSearch.Candidate> candidates = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            ObjectId id = ids.get(i);
+            candidates.add(new DeltaSearch.Candidate(id, headers[i].type(), headers[i].size(), nameHashes.getOrDefault(id, 0)));
+        }
+        return candidates;
+    }
+
+    private static void recordNames(byte[] tree, Map<ObjectId, Integer> nameHashes) throws IOException {
+        TreeCursor entry = new TreeCursor(tree);
+        while (entry.next())
+            nameHashes.putIfAbsent(entry.id(), DeltaSearch.nameHash(tree, entry.nameOffset(), entry.nameLength()));
+    }
+
+    private static void pruneLoose(ObjectStore objectStore, List<ObjectId> packed) throws IOException {
+        Set<Path> dirs = new LinkedHashSet<>();
+        for (ObjectId id : packed) {
+            Path path = objectStore.pathOf(id);
+            Files.deleteIfExists(path);
+            dirs.add(path.getParent());
+        }
+        for (Path dir : dirs) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                if (!stream.iterator().hasNext())
+                    Files.delete(dir);
+            }
+        }
+    }
+
+    private static void deletePack(Path pack) throws IOException {
+        String name = pack.getFileName().toString();
+        String base = name.substring(0, name.length() - ".pack".length());
+        Files.deleteIfExists(pack.resolveSibling(base + ".idx"));
+        Files.deleteIfExists(pack);
+    }
+
+    /**
+     * An object still to be walked, with the type its referrer expects, or null for a ref.
+     */
+    private record Link(ObjectId id, ObjectType type) {
+    }
+
+    private static int intOption(String[] args, String name, int defaultValue) {
+        for (String arg : args)
+            if (arg.startsWith(name + "="))
+                return Integer.parseInt(arg.substring(name.length() + 1));
+        return defaultValue;
+    }
+}
@@ -0,0 +1,221 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.command.CommandContext;
+import git.enums.ObjectType;
+import git.graph.CommitGraphFile;
+import git.graph.RevCommit;
+import git.graph.RevWalk;
+import git.object.MissingObjectException;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.refs.RefStore;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * {@code rev-list [--count] [--max-count=<n> | -n <n>] [--topo-order] [--all] <commit>...}:
+ * lists the commits reachable from the given ones, newest first. {@code ^<commit>} excludes
+ * what is reachable from a commit and {@code <a>..<b>} is short for {@code ^<a> <b>}. A commit
+ * is a full ID or a ref name, optionally followed by {@code ~<n>} and {@code ^<n>} steps.
+ * <p>
+ * With a commit-graph the walk reads parents and dates from the mapped graph file, so
+ * {@code --count} over a long history never inflates a commit object.
+ */
+public class RevList implements Command {
+
+    private static final Logger log = Logger.getLogger(RevList.class.getName());
+
+    private static final String RANGE = "..";
+    private static final String[] REF_PREFIXES = {"", "refs/", "refs/tags/", "refs/heads/", "refs/remotes/"};
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        boolean count = false;
+        boolean topoOrder = false;
+        boolean all = false;
+        int maxCount = -1;
+        List<String> revisions = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case ARG_COUNT -> count = true;
+                case ARG_TOPO_ORDER -> topoOrder = true;
+                case ARG_ALL_REFS -> all = true;
+                case ARG_N -> maxCount = i + 1 < args.length ? Integer.parseInt(args[++i]) : -1;
+                default -> {
+                    if (args[i].startsWith(ARG_MAX_COUNT + "="))
+                        maxCount = Integer.parseInt(args[i].substring(ARG_MAX_COUNT.length() + 1));
+                    else
+                        revisions.add(args[i]);
+                }
+            }
+        }
+        if (revisions.isEmpty() && !all) {
+            log.log(Level.SEVERE, "Usage: rev-list [--count] [--max-count=<n>] [--topo-order] [--all] <commit>...");
+            return;
+        }
+
+        try (ObjectStore store = ObjectStore.open()) {
+            RevWalk walk = openWalk(store);
+            walk.setTopoOrder(topoOrder);
+            if (!markRevisions(walk, RefStore.open(), revisions, all))
+                return;
+
+            Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            int shown = 0;
+            RevCommit commit;
+            while (shown != maxCount && (commit = walk.next()) != null) {
+                if (!count)
+                    writer.write(commit.getId().name() + NEW_LINE);
+                shown++;
+            }
+            if (count)
+                writer.write(shown + NEW_LINE);
+            writer.flush();
+        }
+    }
+
+    /**
+     * Opens a walk over the repository, using its commit-graph if it has one.
+     */
+    static RevWalk openWalk(ObjectStore store) throws IOException {
+        return new RevWalk(store, CommitGraphFile.open(CommandContext.current().resolve(COMMIT_GRAPH_PATH)));
+    }
+
+    /**
+     * Marks the start and excluded commits named by {@code revisions}, and with {@code all} the
+     * commits of every ref and {@code HEAD}. Logs the first name that does not resolve.
+     *
+     * @return false if a revision does not name a commit
+     */
+    static boolean markRevisions(RevWalk walk, RefStore refs, List<String> revisions, boolean all) throws IOException {
+        for (String revision : revisions) {
+            int range = revision.indexOf(RANGE);
+            boolean marked;
+            if (range >= 0) {
+                String from = revision.substring(0, range);
+                String to = revision.substring(range + RANGE.length());
+                marked = mark(walk, refs, from.isEmpty() ? HEAD : from, true)
+                        && mark(walk, refs, to.isEmpty() ? HEAD : to, false);
+            } else if (revision.startsWith("^")) {
+                marked = mark(walk, refs, revision.substring(1), true);
+            } else {
+                marked = mark(walk, refs, revision, false);
+            }
+            if (!marked) {
+                log.log(Level.SEVERE, "fatal: bad revision ''{0}''", revision);
+                return false;
+            }
+        }
+        if (all) {
+            List<String> ids = new ArrayList<>(refs.list(REFS + FORWARD_SLASH).values());
+            String head = refs.resolve(HEAD);
+            if (head != null)
+                ids.add(head);
+            for (String id : ids) {
+                // Refs may point at trees or blobs; those have no history to walk
+                RevCommit commit = walk.parseCommitReference(ObjectId.fromHex(id));
+                if (commit != null)
+                    walk.markStart(commit);
+            }
+        }
+        return true;
+    }
+
+    private static boolean mark(RevWalk walk, RefStore refs, String name, boolean uninteresting) throws IOException {
+        RevCommit commit;
+        try {
+            commit = resolveCommit(walk, refs, name);
+        } catch (MissingObjectException e) {
+            return false;
+        }
+        if (commit == null)
+            return false;
+        if (uninteresting)
+            walk.markUninteresting(commit);
+        else
+            walk.markStart(commit);
+        return true;
+    }
+
+    /**
+     * Resolves {@code name} to a commit, following {@code ~<n>} (the n-th first-parent
+     * ancestor) and {@code ^<n>} (the n-th parent) suffixes.
+     *
+     * @return the commit, or null if the name or one of its steps does not lead to one
+     */
+    static RevCommit resolveCommit(RevWalk walk, RefStore refs, String name) throws IOException {
+        int suffix = 1;
+        while (suffix < name.length() && name.charAt(suffix) != '~' && name.charAt(suffix) != '^')
+            suffix++;
+        ObjectId id = resolveRevision(refs, name.substring(0, suffix));
+        RevCommit commit = id == null ? null : walk.parseCommitReference(id);
+        while (commit != null && suffix < name.length()) {
+            char operator = name.charAt(suffix++);
+            if (operator != '~' && operator != '^')
+                return null;
+            int digits = suffix;
+            while (suffix < name.length() && Character.isDigit(name.charAt(suffix)))
+                suffix++;
+            int n = digits == suffix ? 1 : Integer.parseInt(name.substring(digits, suffix));
+            if (operator == '~') {
+                for (int i = 0; i < n && commit != null; i++)
+                    commit = parent(walk, commit, 1);
+            } else if (n > 0) {
+                // "^0" names the commit itself
+                commit = parent(walk, commit, n);
+            }
+        }
+        return commit;
+    }
+
+    private static RevCommit parent(RevWalk walk, RevCommit commit, int n) throws IOException {
+        RevCommit[] parents = commit.getParents();
+        return n <= parents.length ? walk.parse(parents[n - 1]) : null;
+    }
+
+    /**
+     * Resolves a tree-ish: a commit, or a tag of one, is peeled to its tree, and any other
+     * object must be a tree.
+     *
+     * @return the tree ID, or null if {@code name} does not lead to a tree
+     */
+    static ObjectId resolveTree(ObjectStore store, RevWalk walk, RefStore refs, String name) throws IOException {
+        ObjectId id = resolveRevision(refs, name);
+        if (id != null && store.readHeader(id).type() == ObjectType.TREE)
+            return id;
+        RevCommit commit = resolveCommit(walk, refs, name);
+        return commit == null ? null : commit.getTree();
+    }
+
+    /**
+     * Resolves a full object ID or a ref name, trying {@code <name>}, {@code refs/<name>},
+     * {@code refs/tags/<name>}, {@code refs/heads/<name>} and {@code refs/remotes/<name>} in
+     * that order, as Git does.
+     *
+     * @return the ID, or null if nothing matches
+     */
+    static ObjectId resolveRevision(RefStore refs, String name) throws IOException {
+        if (ObjectId.isId(name))
+            return ObjectId.fromHex(name);
+        if (name.isEmpty() || name.contains(RANGE) || name.startsWith(FORWARD_SLASH))
+            return null;
+        for (String prefix : REF_PREFIXES) {
+            String id = refs.resolve(prefix + name);
+            if (id != null && ObjectId.isId(id))
+                return ObjectId.fromHex(id);
+        }
+        String remoteHead = refs.resolve("refs/remotes/" + name + FORWARD_SLASH + HEAD);
+        return remoteHead != null && ObjectId.isId(remoteHead) ? ObjectId.fromHex(remoteHead) : null;
+    }
+}
@@ -0,0 +1,131 @@
+package git.command.implementation;
+
+import git.codec.PathQuote;
+import git.command.Command;
+import git.command.CommandContext;
+import git.index.Index;
+import git.object.MissingObjectException;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.refs.RefStore;
+import git.worktree.ChangeMonitor;
+import git.worktree.WorkTreeStatus;
+import git.worktree.WorkTreeStatus.Change;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * {@code status [--watch | --no-watch]}: lists how the working tree differs from HEAD's tree,
+ * in Git's short format: {@code " M"} modified, {@code " T"} type changed, {@code " D"}
+ * deleted, {@code "A "} for a path the index has but HEAD's tree does not, and {@code ??}
+ * untracked, a directory without tracked paths shown once with a trailing slash. The index is
+ * only a stat cache here, so there is no separate staged column.
+ * <p>
+ * The tree is scanned in parallel by {@link WorkTreeStatus}. {@code --watch} starts a
+ * {@link ChangeMonitor} for the working tree, kept by this JVM; run in the daemon, every later
+ * {@code status} of the same tree then rechecks only the paths the monitor saw change, as long
+ * as HEAD and the index are the same as last time. {@code --no-watch} stops it.
+ */
+public class Status implements Command {
+
+    private static final Logger log = Logger.getLogger(Status.class.getName());
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        boolean watch = false;
+        boolean unwatch = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case ARG_WATCH -> watch = true;
+                case ARG_NO_WATCH -> unwatch = true;
+                default -> {
+                    log.log(Level.SEVERE, "Usage: status [--watch | --no-watch]");
+                    return;
+                }
+            }
+        }
+
+        CommandContext context = CommandContext.current();
+        Path workTree = context.getWorkingDirectory();
+        if (unwatch) {
+            ChangeMonitor.stop(workTree);
+            return;
+        }
+        Path indexFile = context.resolve(INDEX_PATH);
+        try (ObjectStore store = ObjectStore.open()) {
+            ObjectId headTree = RevList.resolveTree(store, RevList.openWalk(store), RefStore.open(), HEAD);
+            ChangeMonitor monitor = watch ? startMonitor(workTree) : ChangeMonitor.get(workTree);
+            ChangeMonitor.Loader loader = () -> new WorkTreeStatus(store, workTree, headTree, Index.read(indexFile));
+            WorkTreeStatus status;
+            if (monitor == null) {
+                status = loader.load();
+                status.scan();
+            } else {
+                status = monitor.status(headTree + " " + indexStamp(indexFile), loader);
+            }
+            print(status);
+        } catch (MissingObjectException e) {
+            log.log(Level.SEVERE, "fatal: bad object {0}", e.getMessage());
+        }
+    }
+
+    private static ChangeMonitor startMonitor(Path workTree) {
+        try {
+            return ChangeMonitor.start(workTree);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot watch {0}: {1}", new Object[]{workTree, e.getMessage()});
+            return null;
+        }
+    }
+
+    /**
+     * Identifies the version of the index file, which decides which paths count as added.
+     */
+    private static String indexStamp(Path indexFile) throws IOException {
+        if (!Files.exists(indexFile))
+            return "none";
+        BasicFileAttributes attributes = Files.readAttributes(indexFile, BasicFileAttributes.class);
+        return attributes.lastModifiedTime().toInstant() + " " + attributes.size() + " " + attributes.fileKey();
+    }
+
+    /**
+     * Writes the tracked changes, then the untracked paths.
+     */
+    private static void print(WorkTreeStatus status) throws IOException {
+        NavigableMap<String, Change> changes = status.getChanges();
+        OutputStream out = new BufferedOutputStream(System.out, 64 * 1024);
+        for (Map.Entry<String, Change> entry : changes.entrySet())
+            if (entry.getValue() != Change.UNTRACKED)
+                printLine(out, entry.getValue(), entry.getKey());
+        String last = null;
+        for (Map.Entry<String, Change> entry : changes.entrySet()) {
+            if (entry.getValue() != Change.UNTRACKED)
+                continue;
+            String shown = status.untrackedPath(entry.getKey());
+            if (!shown.equals(last))
+                printLine(out, Change.UNTRACKED, shown);
+            last = shown;
+        }
+        out.flush();
+    }
+
+    private static void printLine(OutputStream out, Change change, String path) throws IOException {
+        out.write(change.getCode().getBytes(StandardCharsets.US_ASCII));
+        out.write(' ');
+        // The short format separates fields with spaces, so Git quotes paths holding one
+        PathQuote.write(out, path.getBytes(StandardCharsets.UTF_8), true);
+        out.write('\n');
+    }
+}
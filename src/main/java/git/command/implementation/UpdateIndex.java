@@ -0,0 +1,61 @@
+package git.command.implementation;
+
+import git.command.Command;
+import git.command.CommandContext;
+import git.index.Index;
+import git.object.ObjectStore;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * Low-level index update: {@code update-index [--add] [--remove] <file>...}.
+ * Without {@code --add} only paths that are already in the index are refreshed.
+ */
+public class UpdateIndex implements Command {
+
+    private static final Logger log = Logger.getLogger(UpdateIndex.class.getName());
+
+    private final Add add = new Add();
+
+    @Override
+    public void execute(String[] args) throws Exception {
+        boolean allowAdd = false;
+        boolean allowRemove = false;
+
+        Path indexFile = CommandContext.current().resolve(INDEX_PATH);
+        Index index = Index.read(indexFile);
+        try (ObjectStore objectStore = ObjectStore.open()) {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals(ARG_ADD)) {
+                    allowAdd = true;
+                    continue;
+                }
+                if (args[i].equals(ARG_REMOVE)) {
+                    allowRemove = true;
+                    continue;
+                }
+
+                String path = Add.toIndexPath(args[i]);
+                File file = CommandContext.current().resolve(path).toFile();
+                if (Add.isStageable(file)) {
+                    if (index.getEntry(path) == null && !allowAdd) {
+                        log.log(Level.SEVERE, "{0}: cannot add to the index - missing --add option?", path);
+                        return;
+                    }
+                    add.stage(objectStore, index, file, path);
+                } else if (allowRemove) {
+                    index.remove(path);
+                } else {
+                    log.log(Level.SEVERE, "{0}: does not exist and --remove not passed", path);
+                    return;
+                }
+            }
+        }
+        index.write(indexFile);
+    }
+}
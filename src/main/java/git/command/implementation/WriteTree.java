@@ -1,166 +1,517 @@
 package git.command.implementation;
 
 import git.command.Command;
+import git.command.CommandContext;
+import git.command.ExitStatusException;
+import git.index.CacheTree;
+import git.index.Index;
+import git.index.IndexEntry;
+import git.enums.ObjectType;
+import git.object.BlobPipeline;
+import git.object.CompressionPolicy;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.Tree;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.security.MessageDigest;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.zip.DeflaterOutputStream;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static git.constant.Constant.*;
 
+/**
+ * {@code write-tree [--parallel | --pipeline] [--compression=<level>]}: stores the working
+ * directory as trees and blobs and prints the root tree ID. The level overrides
+ * {@code core.looseCompression} for this run.
+ */
 public class WriteTree implements Command {
 
+    private static final Logger log = Logger.getLogger(WriteTree.class.getName());
+    private static final int MODE_SYMLINK = 0120000;
+    private static final byte[] TREE_MODE_BYTES = TREE_MODE_DIRECTORY.getBytes(StandardCharsets.US_ASCII);
 
+    /**
+     * How blobs are stored: one after another, as fork-join tasks that each read, hash,
+     * compress and write a file, or through a {@link BlobPipeline} that overlaps those stages.
+     */
+    public enum Mode {
+        SERIAL, PARALLEL, PIPELINE
+    }
+
+    private final LongAdder filesScanned = new LongAdder();
+    private final LongAdder filesHashed = new LongAdder();
+    private final LongAdder bytesHashed = new LongAdder();
+    private final Queue<IndexEntry> staged = new ConcurrentLinkedQueue<>();
+    private Index index;
+    private ObjectStore objectStore;
 
     @Override
     public void execute(String[] args) throws Exception {
-        File currentDir = new File(CURRENT_DIR);
-        String treeHash = writeTree(currentDir);
-        System.out.println(treeHash);
+        List<String> arguments = Arrays.asList(args);
+        Mode mode = arguments.contains(ARG_PIPELINE) ? Mode.PIPELINE
+                : arguments.contains(ARG_PARALLEL) ? Mode.PARALLEL : Mode.SERIAL;
+        Integer level;
+        try {
+            level = CompressionPolicy.levelOption(args, ARG_COMPRESSION);
+        } catch (IllegalArgumentException e) {
+            log.log(Level.SEVERE, "fatal: {0}", e.getMessage());
+            return;
+        }
+        Path indexFile = CommandContext.current().resolve(INDEX_PATH);
+        Index index = readIndex(indexFile);
+        if (!index.getUnmergedEntries().isEmpty()) {
+            for (IndexEntry entry : index.getUnmergedEntries())
+                log.log(Level.SEVERE, "{0}: unmerged ({1})", new Object[]{entry.getPath(), ObjectId.fromRaw(entry.getId()).name()});
+            log.log(Level.SEVERE, "fatal: git-write-tree: error building trees");
+            throw new ExitStatusException(128);
+        }
+
+        long start = System.nanoTime();
+        CacheTree root;
+        try (ObjectStore store = ObjectStore.open(level)) {
+            root = writeTree(CommandContext.current().getWorkingDirectory().toFile(), store, index, mode);
+        }
+        logThroughput(mode.name().toLowerCase(Locale.ROOT), System.nanoTime() - start);
+
+        // Persist the refreshed stat data and cache tree so the next run only rehashes changes
+        index.write(indexFile);
+
+        System.out.println(ObjectId.fromRaw(root.getId()).name());
     }
 
-    private String writeTree(File directory) throws IOException {
-        if (!directory.isDirectory()) return null;
+    /**
+     * Writes the tree of the working directory {@code root} into {@code store}, using
+     * {@code index} as stat cache and refreshing its entries and cache tree afterwards.
+     *
+     * @return the cache tree node of the root, carrying the root tree ID
+     */
+    CacheTree writeTree(File root, ObjectStore store, Index index, Mode mode) throws IOException {
+        this.index = index;
+        this.objectStore = store;
+        staged.clear();
+        filesScanned.reset();
+        filesHashed.reset();
+        bytesHashed.reset();
 
-        List<byte[]> entries = new ArrayList<>();
+        CacheTree tree = switch (mode) {
+            case SERIAL -> writeTree(root, "", index.getCacheTree());
+            case PARALLEL -> writeTreeParallel(root);
+            case PIPELINE -> writeTreePipelined(root);
+        };
+        index.replaceEntries(staged);
+        index.setCacheTree(tree);
+        return tree;
+    }
+
+    /**
+     * Reads the index, refusing to go on with one that cannot be read rather than replacing
+     * it with the entries of the working directory.
+     */
+    private Index readIndex(Path indexFile) throws ExitStatusException {
+        try {
+            return Index.read(indexFile);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "fatal: index file corrupt: {0}", e.getMessage());
+            throw new ExitStatusException(128);
+        }
+    }
+
+    /**
+     * Writes the tree of {@code directory}, reusing blob IDs of files whose stat data matches
+     * the index and the tree ID cached for the directory when nothing below it changed.
+     *
+     * @param prefix repository-relative path of the directory, empty or ending with a slash
+     * @param cached cache tree node recorded for this directory by the previous run, if any
+     * @return the cache tree node describing the written directory
+     */
+    private CacheTree writeTree(File directory, String prefix, CacheTree cached) throws IOException {
+        List<IndexEntry> blobs = new ArrayList<>();
+        List<CacheTree> subtrees = new ArrayList<>();
 
         for (File file : Objects.requireNonNull(directory.listFiles())) {
             if (file.getName().equals(GIT_DIRECTORY)) continue; // Ignore .git directory
 
-            if (file.isFile()) {
-                String fileHash = hashAndStoreBlob(file);
-                entries.add(serializeEntry(FILE_MODE_BLOB, file.getName(), fileHash));
+            if (isBlob(file, prefix)) {
+                blobs.add(stageBlob(file, prefix + file.getName()));
             } else if (file.isDirectory()) {
-                String treeHash = writeTree(file);
-                entries.add(serializeEntry(TREE_MODE_DIRECTORY, file.getName(), treeHash));
+                CacheTree child = cached == null ? null : cached.getChild(file.getName());
+                subtrees.add(writeTree(file, prefix + file.getName() + FORWARD_SLASH, child));
             }
         }
 
-        // Sort entries using raw bytes (Git sorts lexicographically)
-        sortWithRawBytes(entries);
-
-        // Compute the tree object byte size
-        int totalSize = entries.stream().mapToInt(e -> e.length).sum();
-        byte[] header = (TREE + totalSize + NULL_STRING).getBytes();
+        return buildTree(directory, prefix, cached, blobs, subtrees);
+    }
 
-        // Merge header and entries
-        ByteArrayOutputStream treeStream = new ByteArrayOutputStream();
-        treeStream.write(header);
-        for (byte[] entry : entries) {
-            treeStream.write(entry);
+    /**
+     * Writes the tree rooted at {@code directory} using a work-stealing fork-join pool:
+     * every subdirectory becomes its own task and every blob is hashed and stored in a
+     * separate subtask, so idle workers steal pending files from busy directories.
+     * Entries are sorted after all children have joined, so the resulting SHAs are
+     * byte-identical to the serial walk.
+     */
+    private CacheTree writeTreeParallel(File directory) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return pool.invoke(new TreeTask(directory, "", index.getCacheTree()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
         }
-        byte[] treeData = treeStream.toByteArray();
+    }
 
-        // Compute hash and store tree object
-        String treeHash = computeSHA1(treeData);
-        storeObject(treeHash, treeData);
-        return treeHash;
+    /**
+     * Writes the tree rooted at {@code directory} through a {@link BlobPipeline}. The walk only
+     * stats files and queues the changed ones, and each tree is built on the pipeline's
+     * processor pool as soon as all of its children are stored. Entries are sorted as in the
+     * serial walk, so the resulting SHAs are byte-identical.
+     */
+    private CacheTree writeTreePipelined(File directory) throws IOException {
+        try (BlobPipeline pipeline = new BlobPipeline(objectStore)) {
+            return pipelineTree(pipeline, directory, "", index.getCacheTree()).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io)
+                throw io.getCause();
+            throw e;
+        }
     }
 
-    private static void sortWithRawBytes(List<byte[]> entries) {
-        entries.sort((a, b) -> {
-            // Find the space byte (0x20) after the mode
-            int aSpace = -1;
-            for (int i = 0; i < a.length; i++) {
-                if (a[i] == EMPTY_CHAR) {
-                    aSpace = i;
-                    break;
-                }
-            }
+    private CompletableFuture<CacheTree> pipelineTree(BlobPipeline pipeline, File directory, String prefix,
+                                                      CacheTree cached) throws IOException {
+        List<CompletableFuture<IndexEntry>> blobs = new ArrayList<>();
+        List<CompletableFuture<CacheTree>> subtrees = new ArrayList<>();
+        for (File file : Objects.requireNonNull(directory.listFiles())) {
+            if (file.getName().equals(GIT_DIRECTORY)) continue; // Ignore .git directory
 
-            // Find the null byte (0x00) after the name
-            int aNull = aSpace + 1;
-            while (aNull < a.length && a[aNull] != 0) {
-                aNull++;
+            if (isBlob(file, prefix)) {
+                blobs.add(stageBlob(pipeline, file, prefix + file.getName()));
+            } else if (file.isDirectory()) {
+                CacheTree child = cached == null ? null : cached.getChild(file.getName());
+                subtrees.add(pipelineTree(pipeline, file, prefix + file.getName() + FORWARD_SLASH, child));
             }
+        }
 
-            // Do the same for b
-            int bSpace = -1;
-            for (int i = 0; i < b.length; i++) {
-                if (b[i] == EMPTY_CHAR) {
-                    bSpace = i;
-                    break;
-                }
+        List<CompletableFuture<?>> children = new ArrayList<>(blobs);
+        children.addAll(subtrees);
+        return CompletableFuture.allOf(children.toArray(CompletableFuture[]::new)).thenApplyAsync(ignored -> {
+            try {
+                return buildTree(directory, prefix, cached, blobs.stream().map(CompletableFuture::join).toList(),
+                        subtrees.stream().map(CompletableFuture::join).toList());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }, pipeline.cpuExecutor());
+    }
 
-            int bNull = bSpace + 1;
-            while (bNull < b.length && b[bNull] != 0) {
-                bNull++;
-            }
+    /**
+     * Whether {@code file} is stored as a single entry rather than walked: a regular file, a
+     * symbolic link, which is checked first so that a link to a directory is not walked into,
+     * or a submodule directory.
+     */
+    private boolean isBlob(File file, String prefix) {
+        return Files.isSymbolicLink(file.toPath()) || file.isFile() || gitlink(file, prefix + file.getName()) != null;
+    }
 
-            // Extract name bytes from both entries
-            byte[] aName = Arrays.copyOfRange(a, aSpace + 1, aNull);
-            byte[] bName = Arrays.copyOfRange(b, bSpace + 1, bNull);
+    /**
+     * Returns the index entry of the submodule checked out at {@code file}, or null if it is not
+     * a directory the index records as one. Submodules are not cloned, so the commit they point
+     * to is only known from the index.
+     */
+    private IndexEntry gitlink(File file, String path) {
+        IndexEntry cached = index.getEntry(path);
+        return cached != null && cached.getMode() == Tree.MODE_GITLINK
+                && Files.isDirectory(file.toPath(), LinkOption.NOFOLLOW_LINKS) ? cached : null;
+    }
 
-            return Arrays.compare(aName, bName);
-        });
+    /**
+     * Returns the index entry of {@code file}: the cached one when its mode and stat data are
+     * unchanged, otherwise a fresh entry after hashing and storing the blob.
+     */
+    private IndexEntry stageBlob(File file, String path) throws IOException {
+        IndexEntry gitlink = gitlink(file, path);
+        if (gitlink != null) {
+            staged.add(gitlink);
+            return gitlink;
+        }
+        IndexEntry stat = IndexEntry.lstat(file.toPath(), path);
+        IndexEntry entry = upToDateEntry(stat);
+        if (entry == null)
+            entry = stat.withId(hashAndStoreBlob(file, stat).toRaw());
+        staged.add(entry);
+        return entry;
     }
 
-    private byte[] serializeEntry(String mode, String name, String hash) {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        try {
-            output.write((mode + SPACE + name + NULL_STRING).getBytes());
-            output.write(hexToBinary(hash)); // Convert hash to binary
-        } catch (IOException e) {
-            throw new RuntimeException("Error serializing entry", e);
+    /**
+     * Like {@link #stageBlob(File, String)}, but queues the blob on {@code pipeline} and returns
+     * at once. Symbolic links are stored directly, as their blob is only the target path.
+     */
+    private CompletableFuture<IndexEntry> stageBlob(BlobPipeline pipeline, File file, String path) throws IOException {
+        if (gitlink(file, path) != null)
+            return CompletableFuture.completedFuture(stageBlob(file, path));
+        IndexEntry stat = IndexEntry.lstat(file.toPath(), path);
+        IndexEntry cached = upToDateEntry(stat);
+        if (cached != null || stat.getMode() == MODE_SYMLINK) {
+            IndexEntry entry = cached != null ? cached : stat.withId(hashAndStoreBlob(file, stat).toRaw());
+            staged.add(entry);
+            return CompletableFuture.completedFuture(entry);
         }
-        return output.toByteArray();
+        long size = file.length();
+        return pipeline.submit(file.toPath(), size).thenApply(id -> {
+            filesHashed.increment();
+            bytesHashed.add(size);
+            IndexEntry entry = stat.withId(id.toRaw());
+            staged.add(entry);
+            return entry;
+        });
     }
 
-    private String hashAndStoreBlob(File file) throws IOException {
-        byte[] content = Files.readAllBytes(file.toPath());
-        byte[] header = (BLOB + content.length + NULL_STRING).getBytes();
+    /**
+     * Counts the file {@code stat} was taken from as scanned and returns its index entry if
+     * its mode and stat data show it unchanged, or null if it has to be hashed.
+     */
+    private IndexEntry upToDateEntry(IndexEntry stat) {
+        filesScanned.increment();
+        IndexEntry cached = index.getEntry(stat.getPath());
+        return cached != null && !index.isRacilyClean(cached) && cached.getMode() == stat.getMode()
+                && cached.hasSameStat(stat) ? cached : null;
+    }
 
-        ByteArrayOutputStream blobStream = new ByteArrayOutputStream();
-        blobStream.write(header);
-        blobStream.write(content);
-        byte[] blobData = blobStream.toByteArray();
+    /**
+     * Serializes and stores the tree of one directory from its already written children.
+     * When every child still has the ID and mode recorded in the previous index and the entry counts
+     * match, the cached tree ID is reused and nothing is serialized, hashed or stored, unless
+     * the directory's order is one {@link #hasFragileOrder} does not trust.
+     */
+    private CacheTree buildTree(File directory, String prefix, CacheTree cached,
+                                List<IndexEntry> blobs, List<CacheTree> subtrees) throws IOException {
+        boolean unchanged = cached != null && cached.isValid() && cached.getSubtreeCount() == subtrees.size();
+        int entryCount = blobs.size();
+        for (IndexEntry blob : blobs) {
+            IndexEntry previous = index.getEntry(blob.getPath());
+            unchanged &= previous != null && previous.getMode() == blob.getMode()
+                    && Arrays.equals(previous.getId(), blob.getId());
+        }
+        for (CacheTree subtree : subtrees) {
+            CacheTree previous = cached == null ? null : cached.getChild(subtree.getName());
+            unchanged &= previous != null && previous.isValid() && Arrays.equals(previous.getId(), subtree.getId());
+            entryCount += subtree.getEntryCount();
+        }
+        unchanged &= cached != null && cached.getEntryCount() == entryCount;
+        // An index written before trees were sorted in Git's order may cache a misordered tree
+        unchanged = unchanged && !hasFragileOrder(prefix, blobs, subtrees);
 
-        String blobHash = computeSHA1(blobData);
-        storeObject(blobHash, blobData);
-        return blobHash;
+        byte[] treeId;
+        if (unchanged) {
+            treeId = cached.getId();
+        } else {
+            List<byte[]> entries = new ArrayList<>(blobs.size() + subtrees.size());
+            for (IndexEntry blob : blobs)
+                entries.add(serializeEntry(Integer.toOctalString(blob.getMode()), blob.getPath().substring(prefix.length()), ObjectId.fromRaw(blob.getId())));
+            for (CacheTree subtree : subtrees)
+                entries.add(serializeEntry(TREE_MODE_DIRECTORY, subtree.getName(), ObjectId.fromRaw(subtree.getId())));
+            treeId = storeTree(entries).toRaw();
+        }
+
+        CacheTree node = new CacheTree(prefix.isEmpty() ? "" : directory.getName(), entryCount, treeId);
+        subtrees.forEach(node::addChild);
+        return node;
     }
 
-    private String computeSHA1(byte[] data) {
-        try {
-            MessageDigest md = MessageDigest.getInstance(SHA_1);
-            byte[] hashBytes = md.digest(data);
-            return bytesToHex(hashBytes);
-        } catch (Exception e) {
-            throw new RuntimeException("Error computing SHA-1 hash", e);
+    /**
+     * Whether the order of a directory depends on the rules write-tree once got wrong: a name
+     * that extends a subdirectory's name with a byte below {@code /}, which sorts before the
+     * subdirectory, or a name beyond ASCII, whose bytes were compared as signed. A cached ID
+     * for such a directory may name a misordered tree, so it is rebuilt, which also corrects
+     * the index.
+     */
+    private static boolean hasFragileOrder(String prefix, List<IndexEntry> blobs, List<CacheTree> subtrees) {
+        List<String> names = new ArrayList<>(blobs.size() + subtrees.size());
+        for (IndexEntry blob : blobs)
+            names.add(blob.getPath().substring(prefix.length()));
+        for (CacheTree subtree : subtrees)
+            names.add(subtree.getName());
+        for (String name : names)
+            for (int i = 0; i < name.length(); i++)
+                if (name.charAt(i) > 0x7f)
+                    return true;
+        for (CacheTree subtree : subtrees) {
+            String directory = subtree.getName();
+            for (String name : names)
+                if (name.length() > directory.length() && name.startsWith(directory) && name.charAt(directory.length()) < '/')
+                    return true;
         }
+        return false;
     }
 
-    private void storeObject(String hash, byte[] data) throws IOException {
-        String objectDir = OBJECTS_PATH + hash.substring(0, 2);
-        String objectPath = objectDir + FORWARD_SLASH + hash.substring(2);
+    private ObjectId storeTree(List<byte[]> entries) throws IOException {
+        // Sort entries in Git's tree order
+        sortWithRawBytes(entries);
 
-        Files.createDirectories(Paths.get(objectDir));
+        // Concatenate the entries; the store adds the "tree <size>\0" header
+        ByteArrayOutputStream treeStream = new ByteArrayOutputStream();
+        for (byte[] entry : entries) {
+            treeStream.write(entry);
+        }
+        return objectStore.insert(ObjectType.TREE, treeStream.toByteArray());
+    }
+
+    /**
+     * Sorts serialized entries in Git's tree order, the order {@link git.object.TreeCursor#compare} checks:
+     * by the unsigned bytes of the names, with a subtree sorting as if its name ended with a
+     * slash, so that {@code foo.c} comes before the directory {@code foo}.
+     */
+    static void sortWithRawBytes(List<byte[]> entries) {
+        entries.sort(WriteTree::compareEntries);
+    }
+
+    private static int compareEntries(byte[] a, byte[] b) {
+        // Entries are "<mode> <name>\0<id>": the first space ends the mode, the next NUL the name
+        int aSpace = indexOf(a, EMPTY_CHAR, 0);
+        int aEnd = indexOf(a, 0, aSpace + 1);
+        int bSpace = indexOf(b, EMPTY_CHAR, 0);
+        int bEnd = indexOf(b, 0, bSpace + 1);
+        int aLength = aEnd - aSpace - 1;
+        int bLength = bEnd - bSpace - 1;
+
+        int common = Math.min(aLength, bLength);
+        int mismatch = Arrays.mismatch(a, aSpace + 1, aSpace + 1 + common, b, bSpace + 1, bSpace + 1 + common);
+        if (mismatch >= 0)
+            return Byte.toUnsignedInt(a[aSpace + 1 + mismatch]) - Byte.toUnsignedInt(b[bSpace + 1 + mismatch]);
+        int nextA = aLength > common ? Byte.toUnsignedInt(a[aSpace + 1 + common]) : isTreeEntry(a, aSpace) ? '/' : 0;
+        int nextB = bLength > common ? Byte.toUnsignedInt(b[bSpace + 1 + common]) : isTreeEntry(b, bSpace) ? '/' : 0;
+        return nextA - nextB;
+    }
+
+    private static boolean isTreeEntry(byte[] entry, int space) {
+        return Arrays.equals(entry, 0, space, TREE_MODE_BYTES, 0, TREE_MODE_BYTES.length);
+    }
+
+    private static int indexOf(byte[] data, int value, int from) {
+        int index = from;
+        while (index < data.length && data[index] != value)
+            index++;
+        return index;
+    }
 
-        try (OutputStream out = new DeflaterOutputStream(new FileOutputStream(objectPath))) {
-            out.write(data);
+    byte[] serializeEntry(String mode, String name, ObjectId id) {
+        byte[] prefix = (mode + SPACE + name + NULL_STRING).getBytes();
+        byte[] entry = Arrays.copyOf(prefix, prefix.length + ObjectId.LENGTH);
+        id.copyRawTo(entry, prefix.length); // The ID is stored in binary
+        return entry;
+    }
+
+    /**
+     * Stores the blob of {@code file}: its content, or the target path of a symbolic link.
+     */
+    private ObjectId hashAndStoreBlob(File file, IndexEntry stat) throws IOException {
+        ObjectId blobHash;
+        long size;
+        if (stat.getMode() == MODE_SYMLINK) {
+            byte[] target = Files.readSymbolicLink(file.toPath()).toString().getBytes(StandardCharsets.UTF_8);
+            blobHash = objectStore.insert(ObjectType.BLOB, target);
+            size = target.length;
+        } else {
+            blobHash = objectStore.insertBlob(file.toPath());
+            size = file.length();
         }
+
+        filesHashed.increment();
+        bytesHashed.add(size);
+        return blobHash;
+    }
+
+    private void logThroughput(String mode, long elapsedNanos) {
+        long files = filesHashed.sum();
+        double megabytes = bytesHashed.sum() / (1024.0 * 1024.0);
+        double seconds = Math.max(elapsedNanos, 1) / 1_000_000_000.0;
+        log.log(Level.INFO, String.format("write-tree (%s): %d of %d files hashed, %.2f MB in %.1f ms (%.0f files/s, %.2f MB/s)",
+                mode, files, filesScanned.sum(), megabytes, seconds * 1000, files / seconds, megabytes / seconds));
     }
 
-    private byte[] hexToBinary(String hex) {
-        byte[] binary = new byte[20];
-        for (int i = 0; i < 20; i++) {
-            binary[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+    /**
+     * Fork-join task producing the cache tree node of a single directory.
+     */
+    private class TreeTask extends RecursiveTask<CacheTree> {
+
+        private final File directory;
+        private final String prefix;
+        private final CacheTree cached;
+
+        TreeTask(File directory, String prefix, CacheTree cached) {
+            this.directory = directory;
+            this.prefix = prefix;
+            this.cached = cached;
+        }
+
+        @Override
+        protected CacheTree compute() {
+            List<BlobTask> blobTasks = new ArrayList<>();
+            List<TreeTask> treeTasks = new ArrayList<>();
+            for (File file : Objects.requireNonNull(directory.listFiles())) {
+                if (file.getName().equals(GIT_DIRECTORY)) continue; // Ignore .git directory
+
+                if (isBlob(file, prefix)) {
+                    blobTasks.add(new BlobTask(file, prefix + file.getName()));
+                } else if (file.isDirectory()) {
+                    CacheTree child = cached == null ? null : cached.getChild(file.getName());
+                    treeTasks.add(new TreeTask(file, prefix + file.getName() + FORWARD_SLASH, child));
+                }
+            }
+            List<ForkJoinTask<?>> children = new ArrayList<>(blobTasks);
+            children.addAll(treeTasks);
+            invokeAll(children);
+
+            List<IndexEntry> blobs = new ArrayList<>(blobTasks.size());
+            for (BlobTask task : blobTasks)
+                blobs.add(task.join());
+            List<CacheTree> subtrees = new ArrayList<>(treeTasks.size());
+            for (TreeTask task : treeTasks)
+                subtrees.add(task.join());
+            try {
+                return buildTree(directory, prefix, cached, blobs, subtrees);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
-        return binary;
     }
 
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder hex = new StringBuilder();
-        for (byte b : bytes) {
-            hex.append(String.format(HEX_CHAR, b));
+    /**
+     * Hashes and stores one blob unless the index already has it, yielding its index entry.
+     */
+    private class BlobTask extends RecursiveTask<IndexEntry> {
+
+        private final File file;
+        private final String path;
+
+        BlobTask(File file, String path) {
+            this.file = file;
+            this.path = path;
+        }
+
+        @Override
+        protected IndexEntry compute() {
+            try {
+                return stageBlob(file, path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
-        return hex.toString();
     }
 }
@@ -0,0 +1,143 @@
+package git.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal reader for Git's INI-style configuration files ({@code .git/config}).
+ * Keys are addressed as {@code section.key} or {@code section.subsection.key}; section and
+ * key names are case-insensitive, subsection names are not.
+ */
+public final class Config {
+
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    /**
+     * Reads {@code file}; a missing file yields an empty configuration.
+     */
+    public static Config read(Path file) throws IOException {
+        Config config = new Config();
+        if (!Files.isRegularFile(file))
+            return config;
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        String section = null;
+        for (String raw : lines) {
+            String line = stripComment(raw).trim();
+            if (line.isEmpty())
+                continue;
+            if (line.startsWith("[") && line.endsWith("]")) {
+                section = parseSection(line.substring(1, line.length() - 1).trim());
+                continue;
+            }
+            if (section == null)
+                continue;
+
+            int equals = line.indexOf('=');
+            String key = (equals < 0 ? line : line.substring(0, equals)).trim().toLowerCase(Locale.ROOT);
+            // A bare key is shorthand for "true"
+            String value = equals < 0 ? "true" : unquote(line.substring(equals + 1).trim());
+            config.values.put(section + "." + key, value);
+        }
+        return config;
+    }
+
+    public String getString(String key) {
+        return values.get(normalize(key));
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key);
+        if (value == null)
+            return defaultValue;
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "true", "yes", "on", "1" -> true;
+            case "false", "no", "off", "0", "" -> false;
+            default -> defaultValue;
+        };
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public void set(String key, String value) {
+        values.put(normalize(key), value);
+    }
+
+    /**
+     * Writes all values to {@code file}, grouped into sections in the order they were first
+     * read or set.
+     */
+    public void write(Path file) throws IOException {
+        Map<String, StringBuilder> sections = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String key = entry.getKey();
+            int first = key.indexOf('.');
+            int last = key.lastIndexOf('.');
+            String header = first == last
+                    ? "[" + key.substring(0, first) + "]"
+                    : "[" + key.substring(0, first) + " \"" + key.substring(first + 1, last) + "\"]";
+            sections.computeIfAbsent(header, h -> new StringBuilder(h).append('\n'))
+                    .append('\t').append(key.substring(last + 1)).append(" = ").append(quote(entry.getValue())).append('\n');
+        }
+        StringBuilder content = new StringBuilder();
+        sections.values().forEach(content::append);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+
+    private static String normalize(String key) {
+        int first = key.indexOf('.');
+        int last = key.lastIndexOf('.');
+        if (first == last)
+            return key.toLowerCase(Locale.ROOT);
+        // Subsection names keep their case
+        return key.substring(0, first).toLowerCase(Locale.ROOT) + key.substring(first, last + 1)
+                + key.substring(last + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static String parseSection(String header) {
+        int quote = header.indexOf('"');
+        if (quote < 0)
+            return header.toLowerCase(Locale.ROOT);
+        String name = header.substring(0, quote).trim().toLowerCase(Locale.ROOT);
+        String subsection = header.substring(quote + 1, header.lastIndexOf('"'));
+        return name + "." + subsection;
+    }
+
+    private static String stripComment(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"')
+                quoted = !quoted;
+            else if ((c == '#' || c == ';') && !quoted)
+                return line.substring(0, i);
+        }
+        return line;
+    }
+
+    private static String quote(String value) {
+        boolean needsQuotes = value.contains("#") || value.contains(";") || !value.equals(value.trim());
+        return needsQuotes ? "\"" + value + "\"" : value;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+            return value.substring(1, value.length() - 1);
+        return value;
+    }
+}
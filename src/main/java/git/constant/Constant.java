@@ -14,12 +14,59 @@ public class Constant {
     public static final byte[] NULL_BYTES = {0};
 
     public static final String ARG_P = "-p";
+    public static final String ARG_T = "-t";
+    public static final String ARG_S = "-s";
+    public static final String ARG_E = "-e";
+    public static final String ARG_BATCH = "--batch";
+    public static final String ARG_BATCH_CHECK = "--batch-check";
     public static final String ARG_M = "-m";
+    public static final String ARG_PARALLEL = "--parallel";
+    public static final String ARG_PIPELINE = "--pipeline";
+    public static final String ARG_UPDATE = "-u";
+    public static final String ARG_ADD = "--add";
+    public static final String ARG_REMOVE = "--remove";
+    public static final String ARG_ALL = "-a";
+    public static final String ARG_DELETE = "-d";
+    public static final String ARG_WINDOW = "--window";
+    public static final String ARG_DEPTH = "--depth";
+    public static final String ARG_THREADS = "--threads";
+    public static final String ARG_RECURSIVE = "-r";
+    public static final String ARG_SHOW_TREES = "-t";
+    public static final String ARG_NAME_ONLY = "--name-only";
+    public static final String ARG_NAME_STATUS = "--name-status";
+    public static final String ARG_SOCKET = "--socket";
+    public static final String ARG_WATCH = "--watch";
+    public static final String ARG_NO_WATCH = "--no-watch";
+    public static final String ARG_UNREACHABLE = "--unreachable";
+    public static final String ARG_IMPORT_MARKS = "--import-marks";
+    public static final String ARG_EXPORT_MARKS = "--export-marks";
+    public static final String ARG_DONE = "--done";
+    public static final String ARG_IGNORE_CASE = "-i";
+    public static final String ARG_LINE_NUMBER = "-n";
+    public static final String ARG_COUNT_MATCHES = "-c";
+    public static final String ARG_FILES_WITH_MATCHES = "-l";
+    public static final String ARG_UPLOAD_PACK = "--upload-pack";
+    public static final String ARG_JGIT = "--jgit";
+    public static final String ARG_COUNT = "--count";
+    public static final String ARG_MAX_COUNT = "--max-count";
+    public static final String ARG_N = "-n";
+    public static final String ARG_TOPO_ORDER = "--topo-order";
+    public static final String ARG_ALL_REFS = "--all";
+    public static final String ARG_ONELINE = "--oneline";
+    public static final String ARG_REACHABLE = "--reachable";
+    public static final String ARG_JSON = "--json";
+    public static final String ARG_COMPRESSION = "--compression";
+    public static final String DEFAULT_UPLOAD_PACK = "git-upload-pack";
+    public static final String DEFAULT_REMOTE = "origin";
     public static final String OBJECTS_BASE_PATH = ".git/objects/%s/%s";
     public static final String SHA_1 = "SHA-1";
     public static final String OBJECTS_PATH = ".git/objects/";
+    public static final String INDEX_PATH = ".git/index";
+    public static final String CONFIG_PATH = ".git/config";
+    public static final String COMMIT_GRAPH_PATH = ".git/objects/info/commit-graph";
+    public static final String TEMP_OBJECT_PREFIX = "tmp_obj_";
+    public static final String TEMP_PACK_PREFIX = "tmp_pack_";
     public static final String FORWARD_SLASH = "/";
-    public static final String HEX_CHAR = "%02x";
     public static final String BLOB = "blob ";
     public static final String SPACE = " ";
     public static final String NULL_STRING = "\0";
@@ -28,8 +75,10 @@ public class Constant {
     public static final String TREE_MODE_DIRECTORY = "40000"; // Directory (tree object)
     public static final String GIT_DIRECTORY = ".git";
     public static final String OBJECTS = "objects";
+    public static final String PACK = "pack";
     public static final String REFS = "refs";
     public static final String HEAD = "HEAD";
+    public static final String INDEX = "index";
     public static final String CURRENT_DIR = ".";
     public static final String COMMIT_TREE = "commit-tree";
     public static final String PARENT = "parent ";
@@ -0,0 +1,100 @@
+package git.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.OptionalInt;
+
+/**
+ * Thin client: forwards its arguments, working directory and standard input to a running
+ * {@link DaemonServer} and replays the output it streams back. Loads none of the command
+ * classes, so its own startup stays minimal.
+ */
+public final class DaemonClient {
+
+    private DaemonClient() {
+    }
+
+    /**
+     * Returns the socket named by the {@code GIT_DAEMON_SOCKET} environment variable, if set.
+     */
+    public static Path configuredSocket() {
+        String socket = System.getenv(DaemonProtocol.SOCKET_ENV);
+        return socket == null || socket.isEmpty() ? null : Paths.get(socket);
+    }
+
+    /**
+     * Runs {@code args} on the daemon listening on {@code socket}.
+     *
+     * @return the exit status of the command, or empty if no daemon accepts connections there
+     * @throws IOException if the connection fails after the command was sent
+     */
+    public static OptionalInt forward(Path socket, String[] args) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            return OptionalInt.empty();
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DaemonProtocol.writeRequest(out, Paths.get("").toAbsolutePath(), args);
+
+            Thread stdin = new Thread(() -> sendInput(System.in, out), "daemon-client-stdin");
+            stdin.setDaemon(true);
+            stdin.start();
+            return OptionalInt.of(receive(in));
+        }
+    }
+
+    private static int receive(DataInputStream in) throws IOException {
+        byte[] buffer = new byte[DaemonProtocol.MAX_CHUNK];
+        try {
+            while (true) {
+                byte kind = in.readByte();
+                if (kind == DaemonProtocol.EXIT) {
+                    System.out.flush();
+                    return in.readInt();
+                }
+                int length = in.readInt();
+                if (length < 0 || length > buffer.length)
+                    throw new IOException("Bad frame length " + length);
+                in.readFully(buffer, 0, length);
+                PrintStream target = kind == DaemonProtocol.STDERR ? System.err : System.out;
+                target.write(buffer, 0, length);
+                target.flush();
+            }
+        } catch (EOFException e) {
+            throw new IOException("Daemon closed the connection before the command finished", e);
+        }
+    }
+
+    private static void sendInput(InputStream stdin, DataOutputStream out) {
+        byte[] buffer = new byte[DaemonProtocol.MAX_CHUNK];
+        try {
+            int n;
+            while ((n = stdin.read(buffer)) != -1) {
+                if (n == 0)
+                    continue;
+                out.writeInt(n);
+                out.write(buffer, 0, n);
+                out.flush();
+            }
+            out.writeInt(0);
+            out.flush();
+        } catch (IOException e) {
+            // The command finished without reading all of its input
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package git.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Wire format between {@link DaemonClient} and {@link DaemonServer}.
+ * <p>
+ * The client opens with {@code MAGIC}, its working directory and its arguments, then sends its
+ * standard input as length-prefixed chunks, a zero length marking the end. The server answers
+ * with frames of {@code kind, length, bytes}: standard output, standard error, and finally an
+ * {@code EXIT} frame carrying the exit status in place of a length.
+ */
+final class DaemonProtocol {
+
+    static final int MAGIC = 0x47495444; // "GITD"
+
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 3;
+
+    static final int MAX_CHUNK = 64 * 1024;
+
+    /**
+     * Environment variable naming the socket; when set, {@code Main} forwards commands to the
+     * daemon listening there.
+     */
+    static final String SOCKET_ENV = "GIT_DAEMON_SOCKET";
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * The socket used when none is given: one per user in the temporary directory.
+     */
+    static Path defaultSocket() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "codecrafters-git-" + System.getProperty("user.name") + ".sock");
+    }
+
+    static void writeRequest(DataOutputStream out, Path workingDirectory, String[] args) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeUTF(workingDirectory.toString());
+        out.writeInt(args.length);
+        for (String arg : args)
+            out.writeUTF(arg);
+        out.flush();
+    }
+
+    static Request readRequest(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a daemon request");
+        Path workingDirectory = Paths.get(in.readUTF());
+        int count = in.readInt();
+        if (count < 0 || count > 4096)
+            throw new IOException("Bad argument count " + count);
+        String[] args = new String[count];
+        for (int i = 0; i < count; i++)
+            args[i] = in.readUTF();
+        return new Request(workingDirectory, args);
+    }
+
+    record Request(Path workingDirectory, String[] args) {
+    }
+}
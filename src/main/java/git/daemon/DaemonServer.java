@@ -0,0 +1,172 @@
+package git.daemon;
+
+import git.command.CommandContext;
+import git.command.CommandRegistry;
+import git.command.ExitStatusException;
+import git.daemon.DaemonProtocol.Request;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one warmed-up JVM serving commands on a Unix domain socket.
+ * <p>
+ * Every connection carries one command and is handled on its own virtual thread. The command
+ * runs through the {@link CommandRegistry}, which creates a new command instance per request,
+ * inside a {@link CommandContext} holding the client's working directory and
+ * streams; standard output and error are streamed back as they are flushed, followed by the
+ * exit status.
+ */
+public final class DaemonServer {
+
+    private static final Logger log = Logger.getLogger(DaemonServer.class.getName());
+
+    private final Path socket;
+    private final CommandRegistry registry = new CommandRegistry();
+
+    public DaemonServer(Path socket) {
+        this.socket = socket;
+    }
+
+    /**
+     * Returns the default socket path, used by the daemon and its clients when none is given.
+     */
+    public static Path defaultSocket() {
+        return DaemonProtocol.defaultSocket();
+    }
+
+    /**
+     * Listens until the process is stopped.
+     *
+     * @throws IOException if the socket cannot be bound, or another daemon is already serving it
+     */
+    public void serve() throws IOException {
+        removeStaleSocket();
+        RoutingStreams.install();
+        rebindConsoleHandlers();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            try {
+                Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // The socket keeps the default permissions of the file system
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(this::deleteSocket));
+            log.log(Level.INFO, "Daemon listening on {0}", socket);
+
+            while (server.isOpen()) {
+                SocketChannel client = server.accept();
+                requests.submit(() -> handle(client));
+            }
+        } finally {
+            deleteSocket();
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        long start = System.nanoTime();
+        try (channel) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            Request request = DaemonProtocol.readRequest(in);
+
+            Lock connectionLock = new ReentrantLock();
+            PrintStream stdout = new PrintStream(new FrameOutputStream(out, connectionLock, DaemonProtocol.STDOUT),
+                    false, StandardCharsets.UTF_8);
+            PrintStream stderr = new PrintStream(new FrameOutputStream(out, connectionLock, DaemonProtocol.STDERR),
+                    false, StandardCharsets.UTF_8);
+            CommandContext context = new CommandContext(request.workingDirectory(), new FrameInputStream(in), stdout, stderr);
+
+            int status = 0;
+            try {
+                context.run(() -> registry.execute(request.args()));
+            } catch (ExitStatusException e) {
+                status = e.getStatus();
+            } catch (Exception e) {
+                e.printStackTrace(stderr);
+                status = 1;
+            }
+            stdout.flush();
+            stderr.flush();
+
+            connectionLock.lock();
+            try {
+                out.writeByte(DaemonProtocol.EXIT);
+                out.writeInt(status);
+                out.flush();
+            } finally {
+                connectionLock.unlock();
+            }
+            log.log(Level.FINE, "{0} finished with status {1} in {2} us",
+                    new Object[]{String.join(" ", request.args()), status, (System.nanoTime() - start) / 1000});
+        } catch (IOException e) {
+            log.log(Level.FINE, "Client connection failed: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Removes a socket file left behind by a daemon that did not shut down cleanly, refusing to
+     * take over one that still accepts connections.
+     */
+    private void removeStaleSocket() throws IOException {
+        if (!Files.exists(socket))
+            return;
+        boolean live;
+        try (SocketChannel probe = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            live = probe.isConnected();
+        } catch (IOException e) {
+            live = false;
+        }
+        if (live)
+            throw new IOException("A daemon is already listening on " + socket);
+        Files.delete(socket);
+    }
+
+    private void deleteSocket() {
+        try {
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            // Nothing left to do on the way out
+        }
+    }
+
+    /**
+     * Console handlers capture {@code System.err} when created; recreate them so that log
+     * records of a request reach its client.
+     */
+    private static void rebindConsoleHandlers() {
+        Logger root = Logger.getLogger("");
+        for (Handler handler : root.getHandlers()) {
+            if (handler instanceof ConsoleHandler) {
+                ConsoleHandler routed = new ConsoleHandler();
+                routed.setLevel(handler.getLevel());
+                routed.setFormatter(handler.getFormatter());
+                root.removeHandler(handler);
+                root.addHandler(routed);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package git.daemon;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The standard input of a request, read on demand from the client's length-prefixed chunks by
+ * the thread running the command.
+ */
+final class FrameInputStream extends InputStream {
+
+    private final DataInputStream connection;
+    private int remaining;
+    private boolean finished;
+
+    FrameInputStream(DataInputStream connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        while (remaining == 0) {
+            if (finished)
+                return -1;
+            remaining = connection.readInt();
+            if (remaining == 0)
+                finished = true;
+        }
+        int n = connection.read(data, offset, Math.min(length, remaining));
+        if (n == -1)
+            throw new IOException("Client closed standard input mid-chunk");
+        remaining -= n;
+        return n;
+    }
+}
@@ -0,0 +1,88 @@
+package git.daemon;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffers one output stream of a request and sends it as frames of the given kind. Standard
+ * output and error share the connection, so frames are written under the connection's lock.
+ * Locks rather than monitors are used so that a virtual thread blocked on the socket does not
+ * pin its carrier.
+ */
+final class FrameOutputStream extends OutputStream {
+
+    private final DataOutputStream connection;
+    private final Lock connectionLock;
+    private final byte kind;
+    private final Lock lock = new ReentrantLock();
+    private final byte[] buffer = new byte[DaemonProtocol.MAX_CHUNK];
+    private int count;
+
+    FrameOutputStream(DataOutputStream connection, Lock connectionLock, byte kind) {
+        this.connection = connection;
+        this.connectionLock = connectionLock;
+        this.kind = kind;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        lock.lock();
+        try {
+            if (count == buffer.length)
+                sendFrame();
+            buffer[count++] = (byte) b;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        lock.lock();
+        try {
+            while (length > 0) {
+                if (count == buffer.length)
+                    sendFrame();
+                int n = Math.min(length, buffer.length - count);
+                System.arraycopy(data, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            if (count > 0)
+                sendFrame();
+            connectionLock.lock();
+            try {
+                connection.flush();
+            } finally {
+                connectionLock.unlock();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sendFrame() throws IOException {
+        connectionLock.lock();
+        try {
+            connection.writeByte(kind);
+            connection.writeInt(count);
+            connection.write(buffer, 0, count);
+        } finally {
+            connectionLock.unlock();
+        }
+        count = 0;
+    }
+}
@@ -0,0 +1,73 @@
+package git.daemon;
+
+import git.command.CommandContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.function.Function;
+
+/**
+ * Stand-ins for {@code System.in}, {@code System.out} and {@code System.err} that forward to
+ * the streams of the {@link CommandContext} of the calling thread, so commands written against
+ * the standard streams talk to their own client. Threads outside any request, such as the
+ * accept loop, fall through to the process streams.
+ */
+final class RoutingStreams {
+
+    private RoutingStreams() {
+    }
+
+    /**
+     * Replaces the standard streams of the JVM. The process context keeps the original ones.
+     */
+    static void install() {
+        CommandContext.process();
+        System.setIn(new RoutingInputStream());
+        System.setOut(new PrintStream(new RoutingOutputStream(CommandContext::getOut), false));
+        System.setErr(new PrintStream(new RoutingOutputStream(CommandContext::getErr), false));
+    }
+
+    private static final class RoutingOutputStream extends OutputStream {
+
+        private final Function<CommandContext, PrintStream> target;
+
+        RoutingOutputStream(Function<CommandContext, PrintStream> target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) {
+            target.apply(CommandContext.current()).write(b);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            target.apply(CommandContext.current()).write(data, offset, length);
+        }
+
+        @Override
+        public void flush() {
+            target.apply(CommandContext.current()).flush();
+        }
+    }
+
+    private static final class RoutingInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            return CommandContext.current().getIn().read();
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) throws IOException {
+            return CommandContext.current().getIn().read(data, offset, length);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return CommandContext.current().getIn().available();
+        }
+    }
+}
@@ -1,22 +1,68 @@
 package git.enums;
 
+import git.command.implementation.*;
+
+import java.util.function.Supplier;
+
+/**
+ * The commands by name, each with a factory for its implementation.
+ * <p>
+ * The factories are lambdas rather than constructor references on purpose: a lambda body is
+ * only linked when it runs, so resolving one command loads that command's classes alone and,
+ * for instance, {@code cat-file} never pulls JGit in through {@link Clone}.
+ */
 public enum Command {
 
-    INIT("init"),
-    CAT_FILE("cat-file"),
-    HASH_OBJECT("hash-object"),
-    LS_TREE("ls-tree"),
-    WRITE_TREE("write-tree"),
-    COMMIT_TREE("commit-tree"),
-    CLONE("clone");
+    INIT("init", () -> new Init()),
+    CAT_FILE("cat-file", () -> new CatFile()),
+    HASH_OBJECT("hash-object", () -> new HashObject()),
+    LS_TREE("ls-tree", () -> new LsTree()),
+    DIFF_TREE("diff-tree", () -> new DiffTree()),
+    WRITE_TREE("write-tree", () -> new WriteTree()),
+    READ_TREE("read-tree", () -> new ReadTree()),
+    STATUS("status", () -> new Status()),
+    FSCK("fsck", () -> new Fsck()),
+    FAST_IMPORT("fast-import", () -> new FastImport()),
+    GREP("grep", () -> new Grep()),
+    COMMIT_TREE("commit-tree", () -> new CommitTree()),
+    LOG("log", () -> new Log()),
+    REV_LIST("rev-list", () -> new RevList()),
+    COMMIT_GRAPH("commit-graph", () -> new CommitGraph()),
+    CLONE("clone", () -> new Clone()),
+    FETCH("fetch", () -> new Fetch()),
+    ADD("add", () -> new Add()),
+    UPDATE_INDEX("update-index", () -> new UpdateIndex()),
+    REPACK("repack", () -> new Repack()),
+    GC("gc", () -> new Gc()),
+    DAEMON("daemon", () -> new Daemon()),
+    METRICS("metrics", () -> new MetricsCommand());
 
     private final String value;
+    private final Supplier<git.command.Command> factory;
 
-    Command(String value) {
+    Command(String value, Supplier<git.command.Command> factory) {
         this.value = value;
+        this.factory = factory;
     }
 
     public String getValue() {
         return value;
     }
+
+    /**
+     * Creates a new instance of the command's implementation.
+     */
+    public git.command.Command create() {
+        return factory.get();
+    }
+
+    /**
+     * Returns the command with the given name, or {@code null} if there is none.
+     */
+    public static Command fromValue(String value) {
+        for (Command command : values())
+            if (command.value.equals(value))
+                return command;
+        return null;
+    }
 }
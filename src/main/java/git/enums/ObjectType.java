@@ -0,0 +1,42 @@
+package git.enums;
+
+public enum ObjectType {
+
+    COMMIT("commit", 1),
+    TREE("tree", 2),
+    BLOB("blob", 3),
+    TAG("tag", 4);
+
+    private final String value;
+    private final int packCode;
+
+    ObjectType(String value, int packCode) {
+        this.value = value;
+        this.packCode = packCode;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the 3-bit type code used in packfile object headers.
+     */
+    public int getPackCode() {
+        return packCode;
+    }
+
+    public static ObjectType fromValue(String value) {
+        for (ObjectType type : values())
+            if (type.value.equals(value))
+                return type;
+        throw new IllegalArgumentException("Unknown object type: " + value);
+    }
+
+    public static ObjectType fromPackCode(int code) {
+        for (ObjectType type : values())
+            if (type.packCode == code)
+                return type;
+        throw new IllegalArgumentException("Unknown pack object type: " + code);
+    }
+}
@@ -0,0 +1,163 @@
+package git.graph;
+
+import git.object.ObjectId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped reader for Git's {@code objects/info/commit-graph} file.
+ * <p>
+ * For every commit the file holds its tree, the graph positions of its parents, its commit
+ * time and its generation number, so a history walk follows parents by position and never
+ * inflates or parses a commit object. Commits are found by ID through the fan-out table and a
+ * binary search of the sorted ID chunk, as in a pack index.
+ */
+public final class CommitGraphFile {
+
+    static final int SIGNATURE = 0x43475048; // "CGPH"
+    static final int VERSION = 1;
+    static final int HASH_VERSION_SHA1 = 1;
+    static final int HEADER_SIZE = 8;
+    static final int CHUNK_ENTRY_SIZE = 12;
+
+    static final int CHUNK_OID_FANOUT = 0x4f494446; // "OIDF"
+    static final int CHUNK_OID_LOOKUP = 0x4f49444c; // "OIDL"
+    static final int CHUNK_COMMIT_DATA = 0x43444154; // "CDAT"
+    static final int CHUNK_EXTRA_EDGES = 0x45444745; // "EDGE"
+
+    static final int COMMIT_DATA_SIZE = ObjectId.LENGTH + 16;
+    static final int PARENT_NONE = 0x70000000;
+    static final int PARENT_EXTRA_EDGES = 0x80000000;
+    static final int LAST_EDGE = 0x80000000;
+
+    private static final int[] NO_PARENTS = {};
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int fanoutOffset;
+    private final int lookupOffset;
+    private final int dataOffset;
+    private final int edgesOffset;
+
+    private CommitGraphFile(ByteBuffer buffer, Path file) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != SIGNATURE)
+            throw new IOException("Not a commit-graph file: " + file);
+        if (buffer.get(4) != VERSION || buffer.get(5) != HASH_VERSION_SHA1)
+            throw new IOException("Unsupported commit-graph version in " + file);
+
+        int chunks = buffer.get(6) & 0xff;
+        int fanout = -1, lookup = -1, data = -1, edges = -1;
+        for (int i = 0; i < chunks; i++) {
+            int entry = HEADER_SIZE + i * CHUNK_ENTRY_SIZE;
+            long offset = buffer.getLong(entry + 4);
+            if (offset < 0 || offset > buffer.limit())
+                throw new IOException("Corrupt commit-graph chunk table in " + file);
+            switch (buffer.getInt(entry)) {
+                case CHUNK_OID_FANOUT -> fanout = (int) offset;
+                case CHUNK_OID_LOOKUP -> lookup = (int) offset;
+                case CHUNK_COMMIT_DATA -> data = (int) offset;
+                case CHUNK_EXTRA_EDGES -> edges = (int) offset;
+                default -> {
+                    // Optional chunks written by newer versions of Git are not needed here
+                }
+            }
+        }
+        if (fanout < 0 || lookup < 0 || data < 0)
+            throw new IOException("Commit-graph " + file + " lacks a required chunk");
+        this.fanoutOffset = fanout;
+        this.lookupOffset = lookup;
+        this.dataOffset = data;
+        this.edgesOffset = edges;
+        this.count = buffer.getInt(fanoutOffset + 255 * 4);
+    }
+
+    /**
+     * Maps {@code file}.
+     *
+     * @return the graph, or null if the file does not exist
+     */
+    public static CommitGraphFile open(Path file) throws IOException {
+        if (!Files.isRegularFile(file))
+            return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new CommitGraphFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+        }
+    }
+
+    public int getCommitCount() {
+        return count;
+    }
+
+    /**
+     * Returns the position of {@code id} in the graph, or -1 when the graph does not have it.
+     */
+    public int findPosition(ObjectId id) {
+        int first = id.firstByte();
+        int low = first == 0 ? 0 : buffer.getInt(fanoutOffset + (first - 1) * 4);
+        int high = buffer.getInt(fanoutOffset + first * 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = id.compareTo(buffer, lookupOffset + mid * ObjectId.LENGTH);
+            if (cmp > 0)
+                low = mid + 1;
+            else if (cmp < 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    public ObjectId getId(int position) {
+        return ObjectId.fromRaw(buffer, lookupOffset + position * ObjectId.LENGTH);
+    }
+
+    public ObjectId getTree(int position) {
+        return ObjectId.fromRaw(buffer, dataOffset + position * COMMIT_DATA_SIZE);
+    }
+
+    /**
+     * Returns the graph positions of the parents of the commit at {@code position}, in order.
+     */
+    public int[] getParents(int position) {
+        int entry = dataOffset + position * COMMIT_DATA_SIZE + ObjectId.LENGTH;
+        int first = buffer.getInt(entry);
+        if (first == PARENT_NONE)
+            return NO_PARENTS;
+        int second = buffer.getInt(entry + 4);
+        if (second == PARENT_NONE)
+            return new int[]{first};
+        if ((second & PARENT_EXTRA_EDGES) == 0)
+            return new int[]{first, second};
+
+        // An octopus merge lists its second and later parents in the extra edge chunk
+        int edge = edgesOffset + (second & ~PARENT_EXTRA_EDGES) * 4;
+        int more = 1;
+        while ((buffer.getInt(edge + (more - 1) * 4) & LAST_EDGE) == 0)
+            more++;
+        int[] parents = new int[1 + more];
+        parents[0] = first;
+        for (int i = 0; i < more; i++)
+            parents[1 + i] = buffer.getInt(edge + i * 4) & ~LAST_EDGE;
+        return parents;
+    }
+
+    /**
+     * The topological level of the commit: 1 for a root, otherwise one more than the highest
+     * level among its parents.
+     */
+    public int getGeneration(int position) {
+        return buffer.getInt(dataOffset + position * COMMIT_DATA_SIZE + ObjectId.LENGTH + 8) >>> 2;
+    }
+
+    public long getCommitTime(int position) {
+        int entry = dataOffset + position * COMMIT_DATA_SIZE + ObjectId.LENGTH + 8;
+        return (buffer.getInt(entry) & 0x3L) << 32 | (buffer.getInt(entry + 4) & 0xffffffffL);
+    }
+}
@@ -0,0 +1,182 @@
+package git.graph;
+
+import git.codec.CodecContext;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static git.graph.CommitGraphFile.*;
+
+/**
+ * Writes a commit-graph file in Git's chunk format: the header, a table of contents, the
+ * {@code OIDF} fan-out, the sorted {@code OIDL} IDs, the fixed-size {@code CDAT} records and,
+ * for octopus merges only, the {@code EDGE} list, followed by a SHA-1 of all of it.
+ * <p>
+ * Generation numbers are topological levels, the version Git reads from {@code CDAT}.
+ */
+public final class CommitGraphWriter {
+
+    private static final int MAX_GENERATION = 0x3fffffff;
+    private static final long MAX_COMMIT_TIME = (1L << 34) - 1;
+
+    private CommitGraphWriter() {
+    }
+
+    /**
+     * Writes the graph of {@code commits}, which must be parsed and include every parent of
+     * each of them, to {@code file}, replacing it atomically.
+     */
+    public static void write(Path file, Collection<RevCommit> commits) throws IOException {
+        List<RevCommit> sorted = new ArrayList<>(commits);
+        sorted.sort((a, b) -> a.getId().compareTo(b.getId()));
+        int count = sorted.size();
+        Map<ObjectId, Integer> positions = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++)
+            positions.put(sorted.get(i).getId(), i);
+
+        int[][] parents = new int[count][];
+        int extraEdges = 0;
+        for (int i = 0; i < count; i++) {
+            RevCommit[] commitParents = sorted.get(i).getParents();
+            parents[i] = new int[commitParents.length];
+            for (int j = 0; j < commitParents.length; j++) {
+                Integer position = positions.get(commitParents[j].getId());
+                if (position == null)
+                    throw new IOException("Parent " + commitParents[j].getId() + " of " + sorted.get(i).getId() + " is not in the graph");
+                parents[i][j] = position;
+            }
+            if (commitParents.length > 2)
+                extraEdges += commitParents.length - 1;
+        }
+        int[] generations = generations(parents);
+
+        boolean hasEdges = extraEdges > 0;
+        int chunks = hasEdges ? 4 : 3;
+        long fanoutOffset = HEADER_SIZE + (long) (chunks + 1) * CHUNK_ENTRY_SIZE;
+        long lookupOffset = fanoutOffset + 256 * 4;
+        long dataOffset = lookupOffset + (long) count * ObjectId.LENGTH;
+        long edgesOffset = dataOffset + (long) count * COMMIT_DATA_SIZE;
+        long end = edgesOffset + (long) extraEdges * 4;
+
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), "tmp_graph_", "");
+        try {
+            MessageDigest digest = CodecContext.get().digest();
+            try (OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(temp), CodecContext.BUFFER_SIZE);
+                 DataOutputStream out = new DataOutputStream(new DigestOutputStream(fileOut, digest))) {
+                out.writeInt(SIGNATURE);
+                out.writeByte(VERSION);
+                out.writeByte(HASH_VERSION_SHA1);
+                out.writeByte(chunks);
+                out.writeByte(0); // No base graphs
+
+                writeChunkEntry(out, CHUNK_OID_FANOUT, fanoutOffset);
+                writeChunkEntry(out, CHUNK_OID_LOOKUP, lookupOffset);
+                writeChunkEntry(out, CHUNK_COMMIT_DATA, dataOffset);
+                if (hasEdges)
+                    writeChunkEntry(out, CHUNK_EXTRA_EDGES, edgesOffset);
+                writeChunkEntry(out, 0, end);
+
+                int[] fanout = new int[256];
+                for (RevCommit commit : sorted)
+                    fanout[commit.getId().firstByte()]++;
+                int cumulative = 0;
+                for (int bucket : fanout) {
+                    cumulative += bucket;
+                    out.writeInt(cumulative);
+                }
+
+                byte[] raw = new byte[ObjectId.LENGTH];
+                for (RevCommit commit : sorted) {
+                    commit.getId().copyRawTo(raw, 0);
+                    out.write(raw);
+                }
+
+                int edge = 0;
+                for (int i = 0; i < count; i++) {
+                    RevCommit commit = sorted.get(i);
+                    commit.getTree().copyRawTo(raw, 0);
+                    out.write(raw);
+                    int[] commitParents = parents[i];
+                    out.writeInt(commitParents.length > 0 ? commitParents[0] : PARENT_NONE);
+                    if (commitParents.length > 2) {
+                        out.writeInt(PARENT_EXTRA_EDGES | edge);
+                        edge += commitParents.length - 1;
+                    } else {
+                        out.writeInt(commitParents.length > 1 ? commitParents[1] : PARENT_NONE);
+                    }
+                    long time = Math.min(Math.max(commit.getCommitTime(), 0), MAX_COMMIT_TIME);
+                    out.writeInt(generations[i] << 2 | (int) (time >>> 32));
+                    out.writeInt((int) time);
+                }
+
+                for (int[] commitParents : parents) {
+                    if (commitParents.length <= 2)
+                        continue;
+                    for (int j = 1; j < commitParents.length; j++)
+                        out.writeInt(j == commitParents.length - 1 ? LAST_EDGE | commitParents[j] : commitParents[j]);
+                }
+
+                out.flush();
+                // The trailing checksum covers everything before it, so write it past the digest
+                fileOut.write(digest.digest());
+            }
+            ObjectStore.makeReadOnly(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Computes the topological level of every commit without recursion, so a long linear
+     * history cannot overflow the stack.
+     */
+    private static int[] generations(int[][] parents) {
+        int[] generations = new int[parents.length];
+        int[] stack = new int[parents.length];
+        for (int root = 0; root < parents.length; root++) {
+            if (generations[root] != 0)
+                continue;
+            int depth = 0;
+            stack[depth++] = root;
+            while (depth > 0) {
+                int commit = stack[depth - 1];
+                int generation = 1;
+                boolean ready = true;
+                for (int parent : parents[commit]) {
+                    if (generations[parent] == 0) {
+                        stack[depth++] = parent;
+                        ready = false;
+                        break;
+                    }
+                    generation = Math.max(generation, generations[parent] + 1);
+                }
+                if (ready) {
+                    generations[commit] = Math.min(generation, MAX_GENERATION);
+                    depth--;
+                }
+            }
+        }
+        return generations;
+    }
+
+    private static void writeChunkEntry(DataOutputStream out, int id, long offset) throws IOException {
+        out.writeInt(id);
+        out.writeLong(offset);
+    }
+}
@@ -0,0 +1,75 @@
+package git.graph;
+
+import git.object.ObjectId;
+
+/**
+ * A commit as seen by a {@link RevWalk}: its ID and, once parsed, its tree, parents, commit
+ * time and generation number, plus the walk's bookkeeping.
+ */
+public final class RevCommit {
+
+    /**
+     * Generation of a commit that is not in the commit-graph: unknown, so it sorts above every
+     * known generation and cut-offs never skip it.
+     */
+    public static final int GENERATION_INFINITY = Integer.MAX_VALUE;
+
+    static final int SEEN = 1;
+    static final int UNINTERESTING = 1 << 1;
+    static final int PAINTED = 1 << 2;
+    static final int EXPLORED = 1 << 3;
+
+    private static final RevCommit[] NO_PARENTS = {};
+
+    private final ObjectId id;
+    final int graphPosition;
+
+    ObjectId tree;
+    RevCommit[] parents;
+    long commitTime;
+    int generation = GENERATION_INFINITY;
+
+    int flags;
+    // Topological ordering: 1 + the number of unshown children found so far, 0 when not counted
+    int indegree;
+    // Insertion order, which breaks ties between commits made in the same second
+    long sequence;
+
+    RevCommit(ObjectId id, int graphPosition) {
+        this.id = id;
+        this.graphPosition = graphPosition;
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public ObjectId getTree() {
+        return tree;
+    }
+
+    public RevCommit[] getParents() {
+        return parents == null ? NO_PARENTS : parents;
+    }
+
+    public long getCommitTime() {
+        return commitTime;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    boolean isParsed() {
+        return parents != null;
+    }
+
+    boolean has(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return id.name();
+    }
+}
@@ -0,0 +1,331 @@
+package git.graph;
+
+import git.enums.ObjectType;
+import git.object.GitObject;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.*;
+
+/**
+ * Walks the history from a set of start commits, newest first or in topological order,
+ * leaving out what is reachable from the commits marked uninteresting.
+ * <p>
+ * Commits in the commit-graph are parsed from the mapped file; only commits newer than the
+ * graph are inflated from the object store. Both orderings and the exclusion of uninteresting
+ * history lean on generation numbers: a commit's generation is greater than that of each of
+ * its parents, so once every commit of a generation above {@code g} has been processed, no
+ * undiscovered commit can still be a child of one at {@code g}. Exclusions are therefore
+ * painted only down to the generation being emitted, and topological order counts in-edges
+ * only as deep as it needs to instead of walking the whole history up front.
+ */
+public final class RevWalk {
+
+    private static final Logger log = Logger.getLogger(RevWalk.class.getName());
+
+    private static final String OBJECT = "object ";
+    private static final Comparator<RevCommit> BY_DATE = Comparator
+            .comparingLong((RevCommit c) -> -c.commitTime)
+            .thenComparingLong(c -> c.sequence);
+    private static final Comparator<RevCommit> BY_GENERATION = Comparator.comparingInt(c -> -c.generation);
+
+    private final ObjectStore store;
+    private final CommitGraphFile graph;
+    private final RevCommit[] byPosition;
+    private final Map<ObjectId, RevCommit> byId = new HashMap<>();
+
+    private final List<RevCommit> starts = new ArrayList<>();
+    private final PriorityQueue<RevCommit> dateQueue = new PriorityQueue<>(BY_DATE);
+    private final PriorityQueue<RevCommit> paintQueue = new PriorityQueue<>(BY_GENERATION);
+    private final PriorityQueue<RevCommit> exploreQueue = new PriorityQueue<>(BY_GENERATION);
+    private final Deque<RevCommit> topoStack = new ArrayDeque<>();
+
+    private boolean topoOrder;
+    private boolean started;
+    private long nextSequence;
+    private int fromGraph;
+    private int fromStore;
+
+    /**
+     * @param graph the repository's commit-graph, or null to parse every commit from the store
+     */
+    public RevWalk(ObjectStore store, CommitGraphFile graph) {
+        this.store = store;
+        this.graph = graph;
+        this.byPosition = new RevCommit[graph == null ? 0 : graph.getCommitCount()];
+    }
+
+    /**
+     * Shows no parent before all of its children, rather than strictly newest first.
+     */
+    public void setTopoOrder(boolean topoOrder) {
+        this.topoOrder = topoOrder;
+    }
+
+    /**
+     * Returns the parsed commit {@code id} names, peeling annotated tags.
+     *
+     * @return the commit, or null if {@code id} names another kind of object
+     * @throws git.object.MissingObjectException if the object does not exist
+     */
+    public RevCommit parseCommitReference(ObjectId id) throws IOException {
+        RevCommit commit = lookup(id);
+        if (commit.graphPosition >= 0 || commit.isParsed())
+            return parse(commit);
+
+        GitObject object = store.read(id);
+        while (object.type() == ObjectType.TAG) {
+            id = taggedObject(object.content());
+            commit = lookup(id);
+            if (commit.graphPosition >= 0 || commit.isParsed())
+                return parse(commit);
+            object = store.read(id);
+        }
+        if (object.type() != ObjectType.COMMIT)
+            return null;
+        parseContent(commit, object.content());
+        return commit;
+    }
+
+    public void markStart(RevCommit commit) throws IOException {
+        parse(commit);
+        if (!commit.has(RevCommit.SEEN)) {
+            commit.flags |= RevCommit.SEEN;
+            commit.sequence = nextSequence++;
+            starts.add(commit);
+        }
+    }
+
+    /**
+     * Leaves {@code commit} and everything reachable from it out of the walk.
+     */
+    public void markUninteresting(RevCommit commit) throws IOException {
+        parse(commit);
+        paint(commit);
+    }
+
+    /**
+     * Returns the next commit of the walk, or null when it is complete.
+     */
+    public RevCommit next() throws IOException {
+        if (!started)
+            start();
+        return topoOrder ? nextInTopoOrder() : nextByDate();
+    }
+
+    /**
+     * Loads the tree, parents, commit time and generation of {@code commit} if not done yet.
+     */
+    public RevCommit parse(RevCommit commit) throws IOException {
+        if (commit.isParsed())
+            return commit;
+        int position = commit.graphPosition;
+        if (position >= 0) {
+            commit.tree = graph.getTree(position);
+            int[] parentPositions = graph.getParents(position);
+            RevCommit[] parents = new RevCommit[parentPositions.length];
+            for (int i = 0; i < parents.length; i++)
+                parents[i] = lookup(parentPositions[i]);
+            commit.commitTime = graph.getCommitTime(position);
+            commit.generation = graph.getGeneration(position);
+            commit.parents = parents;
+            fromGraph++;
+            return commit;
+        }
+        GitObject object = store.read(commit.getId());
+        if (object.type() != ObjectType.COMMIT)
+            throw new IOException("Object " + commit.getId() + " is a " + object.type().getValue() + ", not a commit");
+        parseContent(commit, object.content());
+        return commit;
+    }
+
+    private void start() throws IOException {
+        started = true;
+        List<RevCommit> tips = new ArrayList<>(starts);
+        tips.sort(BY_DATE);
+        if (!topoOrder) {
+            dateQueue.addAll(tips);
+            return;
+        }
+
+        int minGeneration = RevCommit.GENERATION_INFINITY;
+        for (RevCommit tip : tips) {
+            tip.indegree = 1;
+            tip.flags |= RevCommit.EXPLORED;
+            exploreQueue.add(tip);
+            minGeneration = Math.min(minGeneration, tip.generation);
+        }
+        exploreDownTo(minGeneration);
+        paintDownTo(minGeneration);
+        // The stack pops the last push first, so push the newest tip last
+        for (int i = tips.size() - 1; i >= 0; i--) {
+            RevCommit tip = tips.get(i);
+            if (tip.indegree == 1 && !tip.has(RevCommit.UNINTERESTING))
+                topoStack.addLast(tip);
+        }
+    }
+
+    private RevCommit nextByDate() throws IOException {
+        RevCommit commit;
+        while ((commit = dateQueue.poll()) != null) {
+            paintDownTo(commit.generation);
+            if (commit.has(RevCommit.UNINTERESTING))
+                continue;
+            for (RevCommit parent : commit.parents) {
+                if (!parent.has(RevCommit.SEEN)) {
+                    parse(parent);
+                    parent.flags |= RevCommit.SEEN;
+                    parent.sequence = nextSequence++;
+                    dateQueue.add(parent);
+                }
+            }
+            return commit;
+        }
+        logStatistics();
+        return null;
+    }
+
+    private RevCommit nextInTopoOrder() throws IOException {
+        RevCommit commit = topoStack.pollLast();
+        if (commit == null) {
+            logStatistics();
+            return null;
+        }
+        commit.indegree = 0;
+        for (RevCommit parent : commit.parents) {
+            parse(parent);
+            paintDownTo(parent.generation);
+            if (parent.has(RevCommit.UNINTERESTING))
+                continue;
+            exploreDownTo(parent.generation);
+            // All of the parent's children are counted now; it is ready once they are shown
+            if (--parent.indegree == 1)
+                topoStack.addLast(parent);
+        }
+        return commit;
+    }
+
+    /**
+     * Counts the in-edges of every commit reachable from the tips down to {@code generation}.
+     */
+    private void exploreDownTo(int generation) throws IOException {
+        while (!exploreQueue.isEmpty() && exploreQueue.peek().generation >= generation) {
+            RevCommit commit = exploreQueue.poll();
+            for (RevCommit parent : commit.parents) {
+                parse(parent);
+                parent.indegree = parent.indegree == 0 ? 2 : parent.indegree + 1;
+                if (!parent.has(RevCommit.EXPLORED)) {
+                    parent.flags |= RevCommit.EXPLORED;
+                    exploreQueue.add(parent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks everything reachable from the uninteresting commits down to {@code generation}.
+     */
+    private void paintDownTo(int generation) throws IOException {
+        while (!paintQueue.isEmpty() && paintQueue.peek().generation >= generation) {
+            for (RevCommit parent : paintQueue.poll().parents)
+                paint(parse(parent));
+        }
+    }
+
+    private void paint(RevCommit commit) {
+        if (!commit.has(RevCommit.UNINTERESTING)) {
+            commit.flags |= RevCommit.UNINTERESTING;
+            paintQueue.add(commit);
+        }
+    }
+
+    private RevCommit lookup(ObjectId id) {
+        if (graph != null) {
+            int position = graph.findPosition(id);
+            if (position >= 0)
+                return lookup(position);
+        }
+        return byId.computeIfAbsent(id, key -> new RevCommit(key, -1));
+    }
+
+    private RevCommit lookup(int position) {
+        RevCommit commit = byPosition[position];
+        if (commit == null) {
+            commit = new RevCommit(graph.getId(position), position);
+            byPosition[position] = commit;
+        }
+        return commit;
+    }
+
+    /**
+     * Reads the header of a commit object: its tree, its parents and the committer's time.
+     */
+    private void parseContent(RevCommit commit, byte[] content) throws IOException {
+        List<RevCommit> parents = new ArrayList<>(2);
+        int position = 0;
+        while (position < content.length && content[position] != '\n') {
+            int end = indexOf(content, '\n', position);
+            if (startsWith(content, position, TREE)) {
+                commit.tree = ObjectId.fromHex(ascii(content, position + TREE.length(), ObjectId.HEX_LENGTH));
+            } else if (startsWith(content, position, PARENT)) {
+                parents.add(lookup(ObjectId.fromHex(ascii(content, position + PARENT.length(), ObjectId.HEX_LENGTH))));
+            } else if (startsWith(content, position, COMMITTER)) {
+                // "committer <name> <<email>> <time> <zone>"
+                String line = new String(content, position, end - position, StandardCharsets.UTF_8);
+                int zone = line.lastIndexOf(' ');
+                commit.commitTime = Long.parseLong(line.substring(line.lastIndexOf(' ', zone - 1) + 1, zone));
+            }
+            position = end + 1;
+        }
+        if (commit.tree == null)
+            throw new IOException("Corrupt commit " + commit.getId());
+        commit.parents = parents.toArray(new RevCommit[0]);
+        fromStore++;
+    }
+
+    private static ObjectId taggedObject(byte[] content) throws IOException {
+        if (!startsWith(content, 0, OBJECT) || content.length < OBJECT.length() + ObjectId.HEX_LENGTH)
+            throw new IOException("Corrupt tag object");
+        return ObjectId.fromHex(ascii(content, OBJECT.length(), ObjectId.HEX_LENGTH));
+    }
+
+    private void logStatistics() {
+        log.log(Level.FINE, "rev-walk: {0} commits read from the commit-graph, {1} from objects",
+                new Object[]{fromGraph, fromStore});
+    }
+
+    private static int indexOf(byte[] content, char c, int from) {
+        for (int i = from; i < content.length; i++)
+            if (content[i] == c)
+                return i;
+        return content.length;
+    }
+
+    private static boolean startsWith(byte[] content, int offset, String prefix) {
+        if (content.length - offset < prefix.length())
+            return false;
+        for (int i = 0; i < prefix.length(); i++)
+            if (content[offset + i] != prefix.charAt(i))
+                return false;
+        return true;
+    }
+
+    private static String ascii(byte[] content, int offset, int length) throws IOException {
+        if (offset + length > content.length)
+            throw new IOException("Truncated object header");
+        return new String(content, offset, length, StandardCharsets.US_ASCII);
+    }
+}
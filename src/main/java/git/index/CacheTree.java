@@ -0,0 +1,74 @@
+package git.index;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory form of the index {@code TREE} extension. Each node caches the tree object ID of
+ * one directory together with the number of index entries below it; an entry count of
+ * {@code -1} marks the node as invalidated by a change somewhere underneath.
+ */
+public final class CacheTree {
+
+    private final String name;
+    private int entryCount;
+    private byte[] id;
+    private final Map<String, CacheTree> children = new TreeMap<>();
+
+    public CacheTree(String name, int entryCount, byte[] id) {
+        this.name = name;
+        this.entryCount = entryCount;
+        this.id = id;
+    }
+
+    public static CacheTree invalid(String name) {
+        return new CacheTree(name, -1, null);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public int getSubtreeCount() {
+        return children.size();
+    }
+
+    public byte[] getId() {
+        return id;
+    }
+
+    public boolean isValid() {
+        return entryCount >= 0 && id != null;
+    }
+
+    public CacheTree getChild(String childName) {
+        return children.get(childName);
+    }
+
+    public Iterable<CacheTree> getChildren() {
+        return children.values();
+    }
+
+    public void addChild(CacheTree child) {
+        children.put(child.name, child);
+    }
+
+    /**
+     * Invalidates this node and every directory on the way to {@code path}, the way Git does
+     * whenever an index entry is added, updated or removed.
+     */
+    void invalidate(String path) {
+        entryCount = -1;
+        id = null;
+        int slash = path.indexOf('/');
+        if (slash < 0)
+            return;
+        CacheTree child = children.get(path.substring(0, slash));
+        if (child != null)
+            child.invalidate(path.substring(slash + 1));
+    }
+}
@@ -0,0 +1,407 @@
+package git.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.SHA_1;
+
+/**
+ * Git-compatible index ({@code .git/index}, DIRC versions 2 to 4) used as a stat cache.
+ * <p>
+ * Each entry remembers the blob ID of a path along with the stat data it had when it was
+ * hashed, and the optional {@code TREE} extension ({@link CacheTree}) remembers the tree ID
+ * of every directory that has not changed since the last write-tree.
+ * <p>
+ * An index is written back in the version it was read in, with the conflict stages of an
+ * unfinished merge and the optional extensions this class does not know. Only {@code EOIE},
+ * {@code IEOT} and {@code FSMN} are dropped: they describe entries by their position in the
+ * file, and Git rebuilds them when they are missing.
+ */
+public final class Index {
+
+    private static final Logger log = Logger.getLogger(Index.class.getName());
+
+    private static final int SIGNATURE = 0x44495243; // "DIRC"
+    private static final int VERSION = 2;
+    private static final int EXTENDED_VERSION = 3;
+    private static final int PREFIX_COMPRESSED_VERSION = 4;
+    private static final int TREE_EXTENSION = 0x54524545; // "TREE"
+    private static final int END_OF_INDEX_EXTENSION = 0x454F4945; // "EOIE"
+    private static final int ENTRY_OFFSET_EXTENSION = 0x49454F54; // "IEOT"
+    private static final int FSMONITOR_EXTENSION = 0x46534D4E; // "FSMN"
+    private static final int ENTRY_FIXED_SIZE = 62;
+    private static final int NAME_MASK = 0xFFF;
+    private static final int EXTENDED_FLAG = 0x4000;
+    // The assume-valid bit and the stage, kept with an entry; the other bits are derived
+    private static final int KEPT_FLAGS = 0xB000;
+    private static final int ID_LENGTH = 20;
+    // Git's order of index entries: by path bytes, then by stage
+    private static final Comparator<IndexEntry> ENTRY_ORDER = Comparator
+            .<IndexEntry, byte[]>comparing(entry -> entry.pathBytes, Arrays::compareUnsigned)
+            .thenComparingInt(IndexEntry::getStage);
+
+    private final Map<String, IndexEntry> entries = new HashMap<>();
+    private final Map<String, List<IndexEntry>> unmerged = new HashMap<>();
+    private final List<Extension> extensions = new ArrayList<>();
+    private CacheTree cacheTree;
+    private FileTime timestamp;
+    private int version = VERSION;
+
+    /**
+     * Reads the index at {@code file}; a missing file yields an empty index.
+     */
+    public static Index read(Path file) throws IOException {
+        Index index = new Index();
+        if (!Files.exists(file))
+            return index;
+
+        byte[] data = Files.readAllBytes(file);
+        index.timestamp = Files.getLastModifiedTime(file);
+        if (data.length < 12 + ID_LENGTH)
+            throw new IOException("Index file is too short: " + file);
+
+        byte[] expected = Arrays.copyOfRange(data, data.length - ID_LENGTH, data.length);
+        byte[] actual = digest().digest(Arrays.copyOf(data, data.length - ID_LENGTH));
+        if (!Arrays.equals(expected, actual))
+            throw new IOException("Index file checksum mismatch: " + file);
+
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, data.length - ID_LENGTH);
+        if (buffer.getInt() != SIGNATURE)
+            throw new IOException("Bad index file signature: " + file);
+        index.version = buffer.getInt();
+        if (index.version < VERSION || index.version > PREFIX_COMPRESSED_VERSION)
+            throw new IOException("Unsupported index file version " + index.version);
+
+        int count = buffer.getInt();
+        IndexEntry previous = null;
+        for (int i = 0; i < count; i++) {
+            IndexEntry entry = readEntry(buffer, index.version, previous);
+            if (entry.getStage() == 0)
+                index.entries.put(entry.path, entry);
+            else
+                index.unmerged.computeIfAbsent(entry.path, path -> new ArrayList<>()).add(entry);
+            previous = entry;
+        }
+
+        while (buffer.remaining() >= 8) {
+            int signature = buffer.getInt();
+            int size = buffer.getInt();
+            if (signature == TREE_EXTENSION) {
+                ByteBuffer extension = buffer.slice(buffer.position(), size);
+                index.cacheTree = readCacheTree(extension);
+            } else if (signature >>> 24 < 'A' || signature >>> 24 > 'Z') {
+                throw new IOException("Unsupported mandatory index extension " + Integer.toHexString(signature));
+            } else if (signature != END_OF_INDEX_EXTENSION && signature != ENTRY_OFFSET_EXTENSION
+                    && signature != FSMONITOR_EXTENSION) {
+                byte[] content = new byte[size];
+                buffer.get(buffer.position(), content);
+                index.extensions.add(new Extension(signature, content));
+            }
+            buffer.position(buffer.position() + size);
+        }
+        return index;
+    }
+
+    /**
+     * Writes the index to {@code file} through a {@code .lock} file that is renamed into
+     * place, so readers never observe a partially written index.
+     */
+    public void write(Path file) throws IOException {
+        List<IndexEntry> sorted = new ArrayList<>(entries.values());
+        unmerged.values().forEach(sorted::addAll);
+        sorted.sort(ENTRY_ORDER);
+        // Like Git, versions 2 and 3 follow whether any entry needs the extended flags
+        int writeVersion = version;
+        if (writeVersion != PREFIX_COMPRESSED_VERSION)
+            writeVersion = sorted.stream().anyMatch(entry -> entry.extendedFlags != 0) ? EXTENDED_VERSION : VERSION;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SIGNATURE);
+        out.writeInt(writeVersion);
+        out.writeInt(sorted.size());
+        IndexEntry previous = null;
+        for (IndexEntry entry : sorted) {
+            writeEntry(out, entry, writeVersion, previous);
+            previous = entry;
+        }
+
+        if (cacheTree != null) {
+            ByteArrayOutputStream extension = new ByteArrayOutputStream();
+            writeCacheTree(new DataOutputStream(extension), cacheTree);
+            out.writeInt(TREE_EXTENSION);
+            out.writeInt(extension.size());
+            extension.writeTo(out);
+        }
+        for (Extension extension : extensions) {
+            out.writeInt(extension.signature());
+            out.writeInt(extension.data().length);
+            out.write(extension.data());
+        }
+        out.write(digest().digest(bytes.toByteArray()));
+
+        Path lock = file.resolveSibling(file.getFileName() + ".lock");
+        Files.write(lock, bytes.toByteArray());
+        Files.move(lock, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.log(Level.FINE, "Wrote index with {0} entries", sorted.size());
+    }
+
+    /**
+     * Returns the merged entry of {@code path}, or null if there is none; a path in conflict
+     * has only {@link #getUnmergedEntries() unmerged} entries.
+     */
+    public IndexEntry getEntry(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * The merged entries, those of stage 0, in no particular order.
+     */
+    public Collection<IndexEntry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * The entries of stages 1 to 3 left by a merge with conflicts, in path and stage order.
+     */
+    public List<IndexEntry> getUnmergedEntries() {
+        List<IndexEntry> conflicts = new ArrayList<>();
+        unmerged.values().forEach(conflicts::addAll);
+        conflicts.sort(ENTRY_ORDER);
+        return conflicts;
+    }
+
+    public CacheTree getCacheTree() {
+        return cacheTree;
+    }
+
+    public void setCacheTree(CacheTree cacheTree) {
+        this.cacheTree = cacheTree;
+    }
+
+    /**
+     * Adds or replaces an entry and invalidates the cached trees of its parent directories.
+     * Adding a path in conflict resolves it, dropping its unmerged entries.
+     */
+    public void add(IndexEntry entry) {
+        entries.put(entry.path, entry);
+        unmerged.remove(entry.path);
+        if (cacheTree != null)
+            cacheTree.invalidate(entry.path);
+    }
+
+    public boolean remove(String path) {
+        boolean removed = entries.remove(path) != null | unmerged.remove(path) != null;
+        if (removed && cacheTree != null)
+            cacheTree.invalidate(path);
+        return removed;
+    }
+
+    /**
+     * Replaces all entries at once, unmerged ones included, keeping the cache tree untouched;
+     * used by write-tree, which rebuilds the cache tree itself.
+     */
+    public void replaceEntries(Collection<IndexEntry> newEntries) {
+        entries.clear();
+        unmerged.clear();
+        for (IndexEntry entry : newEntries)
+            entries.put(entry.path, entry);
+    }
+
+    /**
+     * Returns true when {@code entry} was written in the same instant as the index or later;
+     * such a file could have been modified again without its mtime changing, so its stat
+     * data cannot be trusted ("racy git").
+     */
+    public boolean isRacilyClean(IndexEntry entry) {
+        if (timestamp == null)
+            return false;
+        long indexNanos = timestamp.to(TimeUnit.NANOSECONDS);
+        long entryNanos = TimeUnit.SECONDS.toNanos(Integer.toUnsignedLong(entry.mtimeSeconds)) + entry.mtimeNanos;
+        return entryNanos >= indexNanos;
+    }
+
+    /**
+     * Reads the entry at the buffer's position. In version 4 the path is stored as the number
+     * of bytes to drop from the end of {@code previous}'s path and the bytes to append, without
+     * padding; earlier versions store it whole, NUL-padded to a multiple of eight bytes.
+     */
+    private static IndexEntry readEntry(ByteBuffer buffer, int version, IndexEntry previous) throws IOException {
+        int start = buffer.position();
+        int ctimeSeconds = buffer.getInt();
+        int ctimeNanos = buffer.getInt();
+        int mtimeSeconds = buffer.getInt();
+        int mtimeNanos = buffer.getInt();
+        int dev = buffer.getInt();
+        int ino = buffer.getInt();
+        int mode = buffer.getInt();
+        int uid = buffer.getInt();
+        int gid = buffer.getInt();
+        int size = buffer.getInt();
+        byte[] id = new byte[ID_LENGTH];
+        buffer.get(id);
+        int flags = Short.toUnsignedInt(buffer.getShort());
+        int extendedFlags = 0;
+        if ((flags & EXTENDED_FLAG) != 0) {
+            if (version < EXTENDED_VERSION)
+                throw new IOException("Extended index entry flags in version " + version);
+            extendedFlags = Short.toUnsignedInt(buffer.getShort());
+        }
+
+        int stripped = 0;
+        if (version == PREFIX_COMPRESSED_VERSION) {
+            stripped = readVarint(buffer);
+            if (previous == null ? stripped != 0 : stripped > previous.pathBytes.length)
+                throw new IOException("Corrupt prefix-compressed index entry");
+        }
+        int nameStart = buffer.position();
+        int nameEnd = nameStart;
+        while (buffer.get(nameEnd) != 0) nameEnd++;
+        byte[] name = new byte[nameEnd - nameStart];
+        buffer.get(name);
+        if (version == PREFIX_COMPRESSED_VERSION && previous != null) {
+            int kept = previous.pathBytes.length - stripped;
+            byte[] whole = Arrays.copyOf(previous.pathBytes, kept + name.length);
+            System.arraycopy(name, 0, whole, kept, name.length);
+            name = whole;
+        }
+        String path = new String(name, StandardCharsets.UTF_8);
+        if ((flags & NAME_MASK) != NAME_MASK && (flags & NAME_MASK) != name.length)
+            log.log(Level.WARNING, "Index entry name length mismatch for {0}", path);
+
+        if (version == PREFIX_COMPRESSED_VERSION) {
+            buffer.get(); // Skip the terminator
+        } else {
+            int length = buffer.position() - start;
+            buffer.position(start + ((length + 8) & ~7));
+        }
+        return new IndexEntry(ctimeSeconds, ctimeNanos, mtimeSeconds, mtimeNanos, dev, ino,
+                mode, uid, gid, size, id, path, flags & KEPT_FLAGS, extendedFlags);
+    }
+
+    private static void writeEntry(DataOutputStream out, IndexEntry entry, int version, IndexEntry previous)
+            throws IOException {
+        int start = out.size();
+        out.writeInt(entry.ctimeSeconds);
+        out.writeInt(entry.ctimeNanos);
+        out.writeInt(entry.mtimeSeconds);
+        out.writeInt(entry.mtimeNanos);
+        out.writeInt(entry.dev);
+        out.writeInt(entry.ino);
+        out.writeInt(entry.mode);
+        out.writeInt(entry.uid);
+        out.writeInt(entry.gid);
+        out.writeInt(entry.size);
+        out.write(entry.id);
+        int flags = entry.flags | Math.min(entry.pathBytes.length, NAME_MASK);
+        if (entry.extendedFlags != 0) {
+            out.writeShort(flags | EXTENDED_FLAG);
+            out.writeShort(entry.extendedFlags);
+        } else {
+            out.writeShort(flags);
+        }
+
+        if (version == PREFIX_COMPRESSED_VERSION) {
+            byte[] last = previous == null ? new byte[0] : previous.pathBytes;
+            int common = Arrays.mismatch(last, entry.pathBytes);
+            if (common < 0)
+                common = last.length;
+            writeVarint(out, last.length - common);
+            out.write(entry.pathBytes, common, entry.pathBytes.length - common);
+            out.write(0);
+        } else {
+            out.write(entry.pathBytes);
+            int length = out.size() - start;
+            out.write(new byte[((length + 8) & ~7) - length]);
+        }
+    }
+
+    /**
+     * Reads Git's offset varint, in which each continuation also adds one, so every value has
+     * a single encoding.
+     */
+    private static int readVarint(ByteBuffer buffer) {
+        int c = buffer.get() & 0xFF;
+        int value = c & 0x7F;
+        while ((c & 0x80) != 0) {
+            c = buffer.get() & 0xFF;
+            value = ((value + 1) << 7) | (c & 0x7F);
+        }
+        return value;
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        byte[] varint = new byte[5];
+        int position = varint.length - 1;
+        varint[position] = (byte) (value & 0x7F);
+        while ((value >>>= 7) != 0)
+            varint[--position] = (byte) (0x80 | (--value & 0x7F));
+        out.write(varint, position, varint.length - position);
+    }
+
+    private static CacheTree readCacheTree(ByteBuffer buffer) {
+        String name = readUntil(buffer, (byte) 0);
+        int entryCount = Integer.parseInt(readUntil(buffer, (byte) ' '));
+        int subtreeCount = Integer.parseInt(readUntil(buffer, (byte) '\n'));
+        byte[] id = null;
+        if (entryCount >= 0) {
+            id = new byte[ID_LENGTH];
+            buffer.get(id);
+        }
+        CacheTree node = new CacheTree(name, entryCount, id);
+        for (int i = 0; i < subtreeCount; i++)
+            node.addChild(readCacheTree(buffer));
+        return node;
+    }
+
+    private static void writeCacheTree(DataOutputStream out, CacheTree node) throws IOException {
+        out.write(node.getName().getBytes(StandardCharsets.UTF_8));
+        out.write(0);
+        int entryCount = node.isValid() ? node.getEntryCount() : -1;
+        out.write((entryCount + " " + node.getSubtreeCount() + "\n").getBytes(StandardCharsets.US_ASCII));
+        if (entryCount >= 0)
+            out.write(node.getId());
+        for (CacheTree child : node.getChildren())
+            writeCacheTree(out, child);
+    }
+
+    private static String readUntil(ByteBuffer buffer, byte terminator) {
+        int start = buffer.position();
+        int end = start;
+        while (buffer.get(end) != terminator) end++;
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytes);
+        buffer.get(); // Skip the terminator
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(SHA_1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private record Extension(int signature, byte[] data) {
+    }
+}
@@ -0,0 +1,203 @@
+package git.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single path in the index together with the stat data captured when its blob was hashed.
+ * Fields are kept as the 32-bit values stored on disk, so comparisons against a fresh
+ * {@code lstat} behave exactly like Git's own stat cache.
+ */
+public final class IndexEntry {
+
+    static final int REGULAR_FILE_MODE = 0100644;
+    private static final int EXECUTABLE_FILE_MODE = 0100755;
+    private static final int SYMLINK_MODE = 0120000;
+    private static final int DIRECTORY_MODE = 0040000;
+    private static final int S_IFMT = 0170000;
+    private static final int S_IXUSR = 0100;
+    private static final String UNIX_ATTRIBUTES = "unix:size,lastModifiedTime,ctime,ino,dev,uid,gid,mode";
+    private static final String BASIC_ATTRIBUTES = "basic:size,lastModifiedTime,creationTime,isRegularFile,isDirectory,isSymbolicLink";
+
+    final int ctimeSeconds;
+    final int ctimeNanos;
+    final int mtimeSeconds;
+    final int mtimeNanos;
+    final int dev;
+    final int ino;
+    final int mode;
+    final int uid;
+    final int gid;
+    final int size;
+    final byte[] id;
+    final String path;
+    final byte[] pathBytes;
+    // The assume-valid bit and merge stage of the on-disk flags, and the version 3 extended flags
+    final int flags;
+    final int extendedFlags;
+
+    IndexEntry(int ctimeSeconds, int ctimeNanos, int mtimeSeconds, int mtimeNanos, int dev, int ino,
+               int mode, int uid, int gid, int size, byte[] id, String path) {
+        this(ctimeSeconds, ctimeNanos, mtimeSeconds, mtimeNanos, dev, ino, mode, uid, gid, size, id, path, 0, 0);
+    }
+
+    IndexEntry(int ctimeSeconds, int ctimeNanos, int mtimeSeconds, int mtimeNanos, int dev, int ino,
+               int mode, int uid, int gid, int size, byte[] id, String path, int flags, int extendedFlags) {
+        this.ctimeSeconds = ctimeSeconds;
+        this.ctimeNanos = ctimeNanos;
+        this.mtimeSeconds = mtimeSeconds;
+        this.mtimeNanos = mtimeNanos;
+        this.dev = dev;
+        this.ino = ino;
+        this.mode = mode;
+        this.uid = uid;
+        this.gid = gid;
+        this.size = size;
+        this.id = id;
+        this.path = path;
+        this.pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        this.flags = flags;
+        this.extendedFlags = extendedFlags;
+    }
+
+    /**
+     * Captures the stat data of {@code file}. Must be called before the file is read, so
+     * that a modification racing with the hash is detected on the next run.
+     *
+     * @param file working tree file
+     * @param path repository-relative path using forward slashes
+     * @return an entry without an object ID; see {@link #withId(byte[])}
+     */
+    public static IndexEntry stat(Path file, String path) throws IOException {
+        return fromAttributes(readAttributes(file), null, path);
+    }
+
+    /**
+     * Like {@link #stat}, but the entry carries the mode Git would give what is at
+     * {@code file}: {@code 0120000} for a symbolic link, {@code 0100755} for a file its owner
+     * may execute, {@code 0100644} for another regular file, {@code 040000} for a directory
+     * and 0 for anything else. Symbolic links are never followed, by either method.
+     */
+    public static IndexEntry lstat(Path file, String path) throws IOException {
+        Map<String, Object> attributes = readAttributes(file);
+        return fromAttributes(attributes, null, path).withMode(gitMode(attributes));
+    }
+
+    /**
+     * Returns an entry with no stat data, for a path known only from a tree, which is never
+     * up to date with a file until hashed.
+     */
+    public static IndexEntry unstated(String path, int mode, byte[] id) {
+        return new IndexEntry(0, 0, 0, 0, 0, 0, mode, 0, 0, 0, id, path);
+    }
+
+    public IndexEntry withId(byte[] id) {
+        return new IndexEntry(ctimeSeconds, ctimeNanos, mtimeSeconds, mtimeNanos, dev, ino,
+                mode, uid, gid, size, id, path);
+    }
+
+    /**
+     * Returns a copy with another mode, such as {@code 0100755} for an executable or
+     * {@code 0120000} for a symbolic link; {@link #stat} always records a regular file.
+     */
+    public IndexEntry withMode(int mode) {
+        return new IndexEntry(ctimeSeconds, ctimeNanos, mtimeSeconds, mtimeNanos, dev, ino,
+                mode, uid, gid, size, id, path);
+    }
+
+    /**
+     * Returns true when {@code file} still carries the stat data recorded in this entry,
+     * meaning the cached object ID can be reused without reading the file.
+     */
+    public boolean isUpToDate(Path file) throws IOException {
+        return hasSameStat(fromAttributes(readAttributes(file), null, path));
+    }
+
+    /**
+     * Returns true when {@code current}, fresh from {@link #lstat}, carries the stat data
+     * recorded in this entry; the modes are not compared.
+     */
+    public boolean hasSameStat(IndexEntry current) {
+        return current.mtimeSeconds == mtimeSeconds && current.mtimeNanos == mtimeNanos
+                && current.ctimeSeconds == ctimeSeconds && current.ctimeNanos == ctimeNanos
+                && current.size == size && current.ino == ino && current.dev == dev
+                && current.uid == uid && current.gid == gid;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public byte[] getId() {
+        return id;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * The merge stage: 0 for a merged path, and 1 to 3 for the base, ours and theirs versions
+     * of a path left in conflict.
+     */
+    public int getStage() {
+        return (flags >>> 12) & 3;
+    }
+
+    private static Map<String, Object> readAttributes(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException e) {
+            // Non-POSIX file systems only offer the basic view
+            return Files.readAttributes(file, BASIC_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+        }
+    }
+
+    private static int gitMode(Map<String, Object> attributes) {
+        if (attributes.get("mode") instanceof Integer mode) {
+            return switch (mode & S_IFMT) {
+                case REGULAR_FILE_MODE & S_IFMT -> (mode & S_IXUSR) != 0 ? EXECUTABLE_FILE_MODE : REGULAR_FILE_MODE;
+                case SYMLINK_MODE, DIRECTORY_MODE -> mode & S_IFMT;
+                default -> 0;
+            };
+        }
+        if (Boolean.TRUE.equals(attributes.get("isSymbolicLink")))
+            return SYMLINK_MODE;
+        if (Boolean.TRUE.equals(attributes.get("isDirectory")))
+            return DIRECTORY_MODE;
+        return Boolean.TRUE.equals(attributes.get("isRegularFile")) ? REGULAR_FILE_MODE : 0;
+    }
+
+    private static IndexEntry fromAttributes(Map<String, Object> attributes, byte[] id, String path) {
+        FileTime mtime = (FileTime) attributes.get("lastModifiedTime");
+        FileTime ctime = (FileTime) attributes.getOrDefault("ctime", attributes.get("creationTime"));
+        return new IndexEntry(
+                seconds(ctime), nanos(ctime), seconds(mtime), nanos(mtime),
+                (int) longValue(attributes.get("dev")), (int) longValue(attributes.get("ino")),
+                REGULAR_FILE_MODE,
+                (int) longValue(attributes.get("uid")), (int) longValue(attributes.get("gid")),
+                (int) longValue(attributes.get("size")), id, path);
+    }
+
+    private static long longValue(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    private static int seconds(FileTime time) {
+        return time == null ? 0 : (int) time.to(TimeUnit.SECONDS);
+    }
+
+    private static int nanos(FileTime time) {
+        return time == null ? 0 : (int) (time.to(TimeUnit.NANOSECONDS) % 1_000_000_000L);
+    }
+}
@@ -0,0 +1,22 @@
+package git.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one command, from dispatch to its return.
+ */
+@Name("git.Command")
+@Label("Git Command")
+@Category("Git")
+@Description("A command run by the registry, in the process or for a daemon client")
+public class CommandEvent extends jdk.jfr.Event {
+
+    @Label("Command")
+    public String command;
+
+    @Label("Arguments")
+    public String arguments;
+}
@@ -0,0 +1,19 @@
+package git.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one fsync of a file or directory.
+ */
+@Name("git.Fsync")
+@Label("Fsync")
+@Category("Git")
+@Description("A file or directory flushed to stable storage")
+public class FsyncEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    public String path;
+}
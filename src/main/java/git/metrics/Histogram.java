@@ -0,0 +1,48 @@
+package git.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with power-of-two buckets from one microsecond up to about 17 seconds,
+ * plus an overflow bucket. Recording is a few atomic increments and never allocates.
+ */
+final class Histogram {
+
+    static final int BUCKETS = 26;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sumNanos = new LongAdder();
+
+    void record(long nanos) {
+        long micros = nanos / 1000;
+        // Bucket i holds durations up to 2^i microseconds; the last one holds everything longer
+        int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * The upper bound of {@code bucket} in seconds, or infinity for the overflow bucket.
+     */
+    static double upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Double.POSITIVE_INFINITY : (1L << bucket) / 1e6;
+    }
+
+    /**
+     * Returns the number of durations up to each bucket's bound, the form both dump formats use.
+     */
+    long[] cumulativeCounts() {
+        long[] cumulative = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    double sumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+}
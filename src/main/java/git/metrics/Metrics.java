@@ -0,0 +1,281 @@
+package git.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and latency histograms for commands and object I/O.
+ * <p>
+ * Recording is switched on by the {@code GIT_METRICS} environment variable: {@code json} or
+ * {@code prometheus} also dump everything in that format when the process exits, to
+ * {@code $GIT_METRICS_FILE} or else standard error, and any other non-empty value other than
+ * {@code 0}, {@code false} or {@code off} only records, for a daemon that is queried with the
+ * {@code metrics} command. The switch is a constant read once, so with recording off every
+ * call here is a branch the JIT folds away.
+ * <p>
+ * While recording, the same points also emit the JDK Flight Recorder events of this package,
+ * which a JFR recording then filters by its own settings. The event classes are only created
+ * through the {@code begin...} methods, which return null when recording is off, because
+ * merely loading one starts up the JFR machinery and adds a few hundred milliseconds to every
+ * command.
+ */
+public final class Metrics {
+
+    public static final String ENV = "GIT_METRICS";
+    public static final String FILE_ENV = "GIT_METRICS_FILE";
+
+    private static final String DUMP_FORMAT = dumpFormat(System.getenv(ENV));
+    public static final boolean ENABLED = DUMP_FORMAT != null;
+
+    /**
+     * The counters, each with its name in the dumps and its description.
+     */
+    public enum Counter {
+        OBJECTS_READ("objects_read", "Objects read from loose files or packs"),
+        OBJECT_HEADERS_READ("object_headers_read", "Object headers read without the content"),
+        OBJECTS_WRITTEN("objects_written", "Loose objects written"),
+        BYTES_INFLATED("bytes_inflated", "Bytes produced by zlib inflation"),
+        BYTES_DEFLATED("bytes_deflated", "Bytes consumed by zlib deflation"),
+        TREE_CACHE_HITS("tree_cache_hits", "Tree lookups served by the parsed tree cache"),
+        TREE_CACHE_MISSES("tree_cache_misses", "Tree lookups that had to read the object"),
+        DELTA_BASE_CACHE_HITS("delta_base_cache_hits", "Delta bases served by a pack's base cache"),
+        DELTA_BASE_CACHE_MISSES("delta_base_cache_misses", "Delta bases that had to be read and resolved"),
+        FSYNCS("fsyncs", "Files and directories flushed to stable storage");
+
+        private final String metricName;
+        private final String help;
+
+        Counter(String metricName, String help) {
+            this.metricName = metricName;
+            this.help = help;
+        }
+    }
+
+    /**
+     * The output formats of {@link #dump}.
+     */
+    public enum Format {
+        JSON, PROMETHEUS
+    }
+
+    private static final LongAdder[] COUNTERS = new LongAdder[Counter.values().length];
+    private static final Histogram OBJECT_READS = new Histogram();
+    private static final Histogram OBJECT_WRITES = new Histogram();
+    private static final Map<String, Histogram> COMMANDS = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < COUNTERS.length; i++)
+            COUNTERS[i] = new LongAdder();
+    }
+
+    private Metrics() {
+    }
+
+    public static void add(Counter counter, long amount) {
+        if (ENABLED)
+            COUNTERS[counter.ordinal()].add(amount);
+    }
+
+    public static void increment(Counter counter) {
+        if (ENABLED)
+            COUNTERS[counter.ordinal()].increment();
+    }
+
+    /**
+     * Returns the start time to pass to one of the {@code ...Finished} methods, or 0 without
+     * reading the clock when recording is off.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static void commandFinished(String command, long start) {
+        if (ENABLED)
+            COMMANDS.computeIfAbsent(command, key -> new Histogram()).record(System.nanoTime() - start);
+    }
+
+    public static void objectReadFinished(long start) {
+        if (ENABLED) {
+            OBJECT_READS.record(System.nanoTime() - start);
+            COUNTERS[Counter.OBJECTS_READ.ordinal()].increment();
+        }
+    }
+
+    public static void objectWriteFinished(long start) {
+        if (ENABLED) {
+            OBJECT_WRITES.record(System.nanoTime() - start);
+            COUNTERS[Counter.OBJECTS_WRITTEN.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Returns a begun command event, or null when recording is off.
+     */
+    public static CommandEvent beginCommand() {
+        if (!ENABLED)
+            return null;
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Returns a begun object read event, or null when recording is off.
+     */
+    public static ObjectReadEvent beginObjectRead() {
+        if (!ENABLED)
+            return null;
+        ObjectReadEvent event = new ObjectReadEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Returns a begun object write event, or null when recording is off.
+     */
+    public static ObjectWriteEvent beginObjectWrite() {
+        if (!ENABLED)
+            return null;
+        ObjectWriteEvent event = new ObjectWriteEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Returns a begun fsync event, or null when recording is off.
+     */
+    public static FsyncEvent beginFsync() {
+        if (!ENABLED)
+            return null;
+        FsyncEvent event = new FsyncEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Dumps everything when the process exits, if {@code GIT_METRICS} asks for it.
+     */
+    public static void dumpAtExit() {
+        if (!ENABLED || DUMP_FORMAT.isEmpty())
+            return;
+        Format format = Format.valueOf(DUMP_FORMAT.toUpperCase(Locale.ROOT));
+        String file = System.getenv(FILE_ENV);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            String text = dump(format);
+            if (file == null || file.isEmpty()) {
+                System.err.print(text);
+                System.err.flush();
+                return;
+            }
+            try {
+                Files.writeString(Paths.get(file), text, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                System.err.println("Cannot write metrics to " + file + ": " + e.getMessage());
+            }
+        }, "metrics-dump"));
+    }
+
+    /**
+     * Renders the current values.
+     */
+    public static String dump(Format format) {
+        StringBuilder out = new StringBuilder();
+        Map<String, Histogram> commands = new TreeMap<>(COMMANDS);
+        if (format == Format.PROMETHEUS) {
+            for (Counter counter : Counter.values()) {
+                String name = "git_" + counter.metricName + "_total";
+                out.append("# HELP ").append(name).append(' ').append(counter.help).append('\n');
+                out.append("# TYPE ").append(name).append(" counter\n");
+                out.append(name).append(' ').append(COUNTERS[counter.ordinal()].sum()).append('\n');
+            }
+            prometheusHeader(out, "git_command_duration_seconds", "Time spent running a command");
+            for (Map.Entry<String, Histogram> command : commands.entrySet())
+                prometheusHistogram(out, "git_command_duration_seconds", "command=\"" + command.getKey() + "\",", command.getValue());
+            prometheusHeader(out, "git_object_read_duration_seconds", "Time spent reading one object");
+            prometheusHistogram(out, "git_object_read_duration_seconds", "", OBJECT_READS);
+            prometheusHeader(out, "git_object_write_duration_seconds", "Time spent writing one loose object");
+            prometheusHistogram(out, "git_object_write_duration_seconds", "", OBJECT_WRITES);
+            return out.toString();
+        }
+
+        out.append("{\"enabled\":").append(ENABLED).append(",\"counters\":{");
+        for (Counter counter : Counter.values()) {
+            if (counter.ordinal() > 0)
+                out.append(',');
+            out.append('"').append(counter.metricName).append("\":").append(COUNTERS[counter.ordinal()].sum());
+        }
+        out.append("},\"commands\":{");
+        boolean first = true;
+        for (Map.Entry<String, Histogram> command : commands.entrySet()) {
+            if (!first)
+                out.append(',');
+            first = false;
+            out.append('"').append(command.getKey()).append("\":");
+            jsonHistogram(out, command.getValue());
+        }
+        out.append("},\"object_reads\":");
+        jsonHistogram(out, OBJECT_READS);
+        out.append(",\"object_writes\":");
+        jsonHistogram(out, OBJECT_WRITES);
+        return out.append("}\n").toString();
+    }
+
+    private static void prometheusHeader(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+    }
+
+    private static void prometheusHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long[] counts = histogram.cumulativeCounts();
+        for (int i = 0; i < counts.length; i++) {
+            double bound = Histogram.upperBound(i);
+            out.append(name).append("_bucket{").append(labels).append("le=\"")
+                    .append(Double.isInfinite(bound) ? "+Inf" : bound).append("\"} ").append(counts[i]).append('\n');
+        }
+        String plainLabels = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        out.append(name).append("_sum").append(plainLabels).append(' ').append(histogram.sumSeconds()).append('\n');
+        out.append(name).append("_count").append(plainLabels).append(' ').append(counts[counts.length - 1]).append('\n');
+    }
+
+    /**
+     * Writes {@code {"count":..,"sum_seconds":..,"buckets":{"<bound>":<cumulative count>,..}}},
+     * leaving out the buckets above the longest duration seen.
+     */
+    private static void jsonHistogram(StringBuilder out, Histogram histogram) {
+        long[] counts = histogram.cumulativeCounts();
+        long total = counts[counts.length - 1];
+        out.append("{\"count\":").append(total).append(",\"sum_seconds\":").append(histogram.sumSeconds())
+                .append(",\"buckets\":{");
+        for (int i = 0; i < counts.length; i++) {
+            if (i > 0)
+                out.append(',');
+            double bound = Histogram.upperBound(i);
+            out.append('"').append(Double.isInfinite(bound) ? "+Inf" : bound).append("\":").append(counts[i]);
+            if (counts[i] == total)
+                break;
+        }
+        out.append("}}");
+    }
+
+    /**
+     * Maps the value of {@code GIT_METRICS} to a dump format: "json" or "prometheus", "" to
+     * record without dumping, or null when recording is off.
+     */
+    private static String dumpFormat(String value) {
+        if (value == null)
+            return null;
+        String normalized = value.trim().toLowerCase(Locale.ROOT);
+        return switch (normalized) {
+            case "", "0", "false", "off", "no" -> null;
+            case "json", "prometheus" -> normalized;
+            default -> "";
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package git.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the read of one object, including inflation and delta resolution.
+ */
+@Name("git.ObjectRead")
+@Label("Object Read")
+@Category("Git")
+@Description("An object read from a loose file or a pack")
+public class ObjectReadEvent extends jdk.jfr.Event {
+
+    @Label("Object ID")
+    public String id;
+
+    @Label("Type")
+    public String type;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+
+    @Label("Packed")
+    public boolean packed;
+}
@@ -0,0 +1,27 @@
+package git.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the write of one loose object, from hashing to its rename into place.
+ */
+@Name("git.ObjectWrite")
+@Label("Object Write")
+@Category("Git")
+@Description("A loose object written to the object store")
+public class ObjectWriteEvent extends jdk.jfr.Event {
+
+    @Label("Object ID")
+    public String id;
+
+    @Label("Type")
+    public String type;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+}
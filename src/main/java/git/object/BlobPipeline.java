@@ -0,0 +1,135 @@
+package git.object;
+
+import git.enums.ObjectType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores files as blobs through overlapped stages, so that reading and writing files proceeds
+ * while other blobs are being hashed and compressed.
+ * <p>
+ * A file is read whole on a virtual thread, hashed and deflated into memory on a pool with one
+ * thread per processor through {@link ObjectStore#deflate}, then written and renamed into place
+ * on a virtual thread through {@link ObjectStore#write}. Only the middle stage uses the
+ * per-thread {@link git.codec.CodecContext}, which is why it runs on platform threads. The
+ * bytes of file content in flight are bounded: {@link #submit} blocks once the budget is
+ * spent, so a fast directory walk cannot outrun the disk or fill the heap. Files too large to
+ * hold in memory are streamed by {@link ObjectStore#insertBlob} on the processor pool.
+ * <p>
+ * Once enough blobs have been submitted, every fan-out directory is created in one pass
+ * instead of one at a time by the writers.
+ */
+public final class BlobPipeline implements Closeable {
+
+    // In-flight budget in KiB, to fit the semaphore's int permits
+    private static final int BUDGET_KIB = 64 * 1024;
+    // Submissions after which all fan-out directories are created up front
+    private static final int FANOUT_BATCH_THRESHOLD = 256;
+
+    private final ObjectStore store;
+    private final ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+    private final ExecutorService cpu = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private final Semaphore budget = new Semaphore(BUDGET_KIB);
+    private final AtomicInteger submitted = new AtomicInteger();
+
+    public BlobPipeline(ObjectStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Queues {@code file}, of {@code size} bytes, to be stored as a blob, waiting first if too
+     * much content is already in flight.
+     *
+     * @return the blob ID, failing with an {@link UncheckedIOException} if the file cannot be
+     * read or changes while being read
+     */
+    public CompletableFuture<ObjectId> submit(Path file, long size) throws IOException {
+        if (submitted.incrementAndGet() == FANOUT_BATCH_THRESHOLD)
+            store.createFanoutDirectories();
+        if (size > ObjectStore.SMALL_BLOB_LIMIT)
+            return CompletableFuture.supplyAsync(() -> insertBlob(file), cpu);
+
+        int permits = (int) Math.max(1, (size + 1023) / 1024);
+        try {
+            budget.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing " + file, e);
+        }
+        return CompletableFuture.supplyAsync(() -> read(file, size), io)
+                .thenApplyAsync(this::deflate, cpu)
+                .thenApplyAsync(this::write, io)
+                .whenComplete((id, failure) -> budget.release(permits));
+    }
+
+    /**
+     * Returns the processor pool, for work such as building trees that needs a
+     * {@link git.codec.CodecContext} and should not run on a virtual thread.
+     */
+    public Executor cpuExecutor() {
+        return cpu;
+    }
+
+    /**
+     * Waits for the running work to finish and stops the threads. Callers wait for the blobs
+     * they submitted first; after a failure, stages not yet started may be rejected instead.
+     */
+    @Override
+    public void close() {
+        cpu.close();
+        io.close();
+    }
+
+    private static byte[] read(Path file, long size) {
+        // One spare byte so that a file that grew since the stat is noticed
+        byte[] content = new byte[(int) size + 1];
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining() && in.read(buffer) != -1) {
+                // Read until the spare byte or the end of the file
+            }
+            if (buffer.position() != size)
+                throw new IOException("File changed while hashing: " + file);
+            return content;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DeflatedObject deflate(byte[] content) {
+        try {
+            return store.deflate(ObjectType.BLOB, content, content.length - 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ObjectId write(DeflatedObject object) {
+        try {
+            store.write(object);
+            return object.id();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ObjectId insertBlob(Path file) {
+        try {
+            return store.insertBlob(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
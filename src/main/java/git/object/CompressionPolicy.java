@@ -0,0 +1,159 @@
+package git.object;
+
+import git.config.Config;
+import git.enums.ObjectType;
+
+import java.util.zip.Deflater;
+
+/**
+ * The zlib level used for loose objects, and a cheap probe that lowers it for blobs that would
+ * not shrink anyway.
+ * <p>
+ * The level comes from {@code core.looseCompression}, else {@code core.compression}, else
+ * Git's default of 1 (best speed); -1 is zlib's default and 0 writes stored blocks. Before a
+ * blob is deflated, its first bytes are checked for the signature of an already compressed
+ * format (JPEG, PNG, GIF, WebP, ZIP and jar, gzip, bzip2, xz, zstd, 7z, MP4) and their byte
+ * entropy is estimated: compressed or random content is stored, and dense binary content is
+ * deflated at level 1 at most. Every result is still an ordinary zlib stream, so readers are
+ * unaffected.
+ */
+public final class CompressionPolicy {
+
+    /**
+     * Git's {@code core.looseCompression} when neither it nor {@code core.compression} is set.
+     */
+    public static final int DEFAULT_LOOSE_LEVEL = Deflater.BEST_SPEED;
+    public static final CompressionPolicy DEFAULT = new CompressionPolicy(DEFAULT_LOOSE_LEVEL, true);
+
+    // Blobs shorter than this are not probed; the sample would say little and save less
+    private static final int PROBE_MIN_LENGTH = 512;
+    private static final int SAMPLE_LENGTH = 4096;
+    // Entropy in bits per byte: above STORED deflate cannot gain, above FAST it gains little
+    private static final double STORED_ENTROPY = 7.5;
+    private static final double FAST_ENTROPY = 6.0;
+
+    private static final byte[][] COMPRESSED_SIGNATURES = {
+            {(byte) 0xff, (byte) 0xd8, (byte) 0xff},                   // JPEG
+            {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'},      // PNG
+            {'G', 'I', 'F', '8'},                                      // GIF
+            {'P', 'K', 0x03, 0x04},                                    // ZIP, jar, docx, apk
+            {0x1f, (byte) 0x8b},                                       // gzip
+            {'B', 'Z', 'h'},                                           // bzip2
+            {(byte) 0xfd, '7', 'z', 'X', 'Z', 0x00},                   // xz
+            {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd},                    // zstd
+            {'7', 'z', (byte) 0xbc, (byte) 0xaf, 0x27, 0x1c},          // 7z
+    };
+    private static final byte[] RIFF = {'R', 'I', 'F', 'F'};
+    private static final byte[] WEBP = {'W', 'E', 'B', 'P'};
+    private static final byte[] FTYP = {'f', 't', 'y', 'p'};
+
+    private final int level;
+    private final boolean probe;
+
+    /**
+     * @param level the zlib level, -1 to 9
+     * @param probe whether blobs are probed for incompressible content
+     */
+    public CompressionPolicy(int level, boolean probe) {
+        this.level = checkLevel(level);
+        this.probe = probe;
+    }
+
+    /**
+     * Reads the level from {@code core.looseCompression} and {@code core.compression}.
+     *
+     * @throws IllegalArgumentException if the configured level is outside -1 to 9
+     */
+    public static CompressionPolicy fromConfig(Config config) {
+        int level = config.getInt("core.looseCompression", config.getInt("core.compression", DEFAULT_LOOSE_LEVEL));
+        return level == DEFAULT_LOOSE_LEVEL ? DEFAULT : new CompressionPolicy(level, true);
+    }
+
+    /**
+     * Returns the value of a {@code --compression=<level>} argument, for commands that let it
+     * override the configuration.
+     *
+     * @return the level, or null if there is no such argument
+     * @throws IllegalArgumentException if the level is not a number from -1 to 9
+     */
+    public static Integer levelOption(String[] args, String option) {
+        String prefix = option + "=";
+        Integer level = null;
+        for (String arg : args) {
+            if (!arg.startsWith(prefix))
+                continue;
+            try {
+                level = checkLevel(Integer.parseInt(arg.substring(prefix.length())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad zlib compression level " + arg.substring(prefix.length()));
+            }
+        }
+        return level;
+    }
+
+    public CompressionPolicy withLevel(int level) {
+        return level == this.level ? this : new CompressionPolicy(level, probe);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the level for an object of {@code type} whose content starts with the
+     * {@code length} bytes at {@code offset} of {@code sample}; for a streamed blob the sample
+     * is its first buffer.
+     */
+    public int levelFor(ObjectType type, byte[] sample, int offset, int length) {
+        if (!probe || type != ObjectType.BLOB || level == Deflater.NO_COMPRESSION || length < PROBE_MIN_LENGTH)
+            return level;
+        if (isCompressedFormat(sample, offset, length))
+            return Deflater.NO_COMPRESSION;
+        double entropy = entropy(sample, offset, Math.min(length, SAMPLE_LENGTH));
+        if (entropy > STORED_ENTROPY)
+            return Deflater.NO_COMPRESSION;
+        if (entropy > FAST_ENTROPY && (level == Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_SPEED))
+            return Deflater.BEST_SPEED;
+        return level;
+    }
+
+    private static boolean isCompressedFormat(byte[] data, int offset, int length) {
+        for (byte[] signature : COMPRESSED_SIGNATURES)
+            if (startsWith(data, offset, length, 0, signature))
+                return true;
+        return (startsWith(data, offset, length, 0, RIFF) && startsWith(data, offset, length, 8, WEBP))
+                || startsWith(data, offset, length, 4, FTYP);
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int length, int at, byte[] signature) {
+        if (length < at + signature.length)
+            return false;
+        for (int i = 0; i < signature.length; i++)
+            if (data[offset + at + i] != signature[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Shannon entropy of the byte distribution of the given range, in bits per byte.
+     */
+    private static double entropy(byte[] data, int offset, int length) {
+        int[] counts = new int[256];
+        for (int i = offset; i < offset + length; i++)
+            counts[data[i] & 0xff]++;
+        double entropy = 0;
+        for (int count : counts) {
+            if (count == 0)
+                continue;
+            double p = (double) count / length;
+            entropy -= p * Math.log(p);
+        }
+        return entropy / Math.log(2);
+    }
+
+    private static int checkLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("bad zlib compression level " + level);
+        return level;
+    }
+}
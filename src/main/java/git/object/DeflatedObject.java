@@ -0,0 +1,15 @@
+package git.object;
+
+import git.enums.ObjectType;
+
+/**
+ * An object hashed and compressed in memory by {@link ObjectStore#deflate}, ready to be
+ * written by {@link ObjectStore#write}. {@code data} is null when the store already has the
+ * object, so there is nothing to write.
+ *
+ * @param size   size of the uncompressed content
+ * @param data   the loose object file contents, in its first {@code length} bytes
+ * @param length number of bytes of {@code data} in use
+ */
+public record DeflatedObject(ObjectId id, ObjectType type, long size, byte[] data, int length) {
+}
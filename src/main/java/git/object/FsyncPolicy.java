@@ -0,0 +1,37 @@
+package git.object;
+
+import git.config.Config;
+
+/**
+ * When loose objects are flushed to stable storage.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Leave flushing to the operating system.
+     */
+    NONE,
+    /**
+     * Fsync every object before it is renamed into place.
+     */
+    EACH,
+    /**
+     * Keep written objects under their temporary names and fsync them together, renaming
+     * them into place only once the whole batch is durable.
+     */
+    BATCH;
+
+    /**
+     * Derives the policy from {@code core.fsyncObjectFiles} and {@code core.fsyncMethod}
+     * (or the newer {@code core.fsync} list containing {@code loose-object}).
+     */
+    public static FsyncPolicy fromConfig(Config config) {
+        String components = config.getString("core.fsync");
+        boolean enabled = config.getBoolean("core.fsyncObjectFiles", false)
+                || (components != null && (components.contains("loose-object") || components.contains("objects")
+                || components.contains("all")));
+        if (!enabled)
+            return NONE;
+        return "batch".equalsIgnoreCase(config.getString("core.fsyncMethod")) ? BATCH : EACH;
+    }
+}
@@ -0,0 +1,13 @@
+package git.object;
+
+import git.enums.ObjectType;
+
+/**
+ * A fully inflated object: its type and its content without the {@code "<type> <size>\0"} header.
+ */
+public record GitObject(ObjectType type, byte[] content) {
+
+    public int size() {
+        return content.length;
+    }
+}
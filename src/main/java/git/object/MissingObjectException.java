@@ -0,0 +1,13 @@
+package git.object;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an object is neither stored loose nor in any pack.
+ */
+public class MissingObjectException extends IOException {
+
+    public MissingObjectException(String hash) {
+        super("Object not found: " + hash);
+    }
+}
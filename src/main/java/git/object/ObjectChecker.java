@@ -0,0 +1,216 @@
+package git.object;
+
+import git.enums.ObjectType;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Checks that the content of an object is well formed for its type, the way {@code git fsck}
+ * does, and reports the objects it links to.
+ * <p>
+ * Trees must have known modes, names that are neither empty nor {@code .}, {@code ..} or
+ * {@code .git} and hold no slash, and entries in strict tree order. Commits must start with a
+ * tree line, then parent lines, an author and a committer; tags with object, type and tag
+ * lines. Blobs are anything. The content is read in place, without parsing it into objects.
+ */
+public final class ObjectChecker {
+
+    /**
+     * Receives the links of a checked object: the ID at {@code offset} of {@code data} and the
+     * type the linking object expects there.
+     */
+    @FunctionalInterface
+    public interface LinkVisitor {
+        void link(byte[] data, int offset, ObjectType type);
+    }
+
+    private static final byte[] TREE = "tree ".getBytes();
+    private static final byte[] PARENT = "parent ".getBytes();
+    private static final byte[] AUTHOR = "author ".getBytes();
+    private static final byte[] COMMITTER = "committer ".getBytes();
+    private static final byte[] OBJECT = "object ".getBytes();
+    private static final byte[] TYPE = "type ".getBytes();
+    private static final byte[] TAG = "tag ".getBytes();
+    private static final byte[] ZERO_ID = new byte[ObjectId.LENGTH];
+
+    private ObjectChecker() {
+    }
+
+    /**
+     * Checks {@code content} as an object of {@code type}, passing its links to {@code links}
+     * as they are found; submodule entries of trees are not links.
+     *
+     * @return what is wrong with the object, or null if it is well formed
+     */
+    public static String check(ObjectType type, byte[] content, LinkVisitor links) {
+        return switch (type) {
+            case TREE -> checkTree(content, links);
+            case COMMIT -> checkCommit(content, links);
+            case TAG -> checkTag(content, links);
+            case BLOB -> null;
+        };
+    }
+
+    private static String checkTree(byte[] content, LinkVisitor links) {
+        TreeCursor previous = new TreeCursor(content);
+        TreeCursor entry = new TreeCursor(content);
+        try {
+            while (entry.next()) {
+                int mode = entry.mode();
+                // 100664 was written by early Git and is still accepted
+                if (mode != 0100644 && mode != 0100755 && mode != 0100664 && mode != 0120000
+                        && mode != Tree.MODE_TREE && mode != Tree.MODE_GITLINK)
+                    return "contains bad file modes";
+                String badName = checkName(content, entry.nameOffset(), entry.nameLength());
+                if (badName != null)
+                    return badName;
+                if (Arrays.equals(content, entry.idOffset(), entry.idOffset() + ObjectId.LENGTH, ZERO_ID, 0, ObjectId.LENGTH))
+                    return "contains entries pointing to null sha1";
+                if (previous.hasEntry()) {
+                    if (Arrays.equals(content, previous.nameOffset(), previous.nameOffset() + previous.nameLength(),
+                            content, entry.nameOffset(), entry.nameOffset() + entry.nameLength()))
+                        return "contains duplicate file entries";
+                    if (TreeCursor.compare(previous, entry) > 0)
+                        return "not properly sorted";
+                }
+                if (mode != Tree.MODE_GITLINK)
+                    links.link(content, entry.idOffset(), mode == Tree.MODE_TREE ? ObjectType.TREE : ObjectType.BLOB);
+                previous.next();
+            }
+            return null;
+        } catch (IOException e) {
+            return "cannot be parsed: " + e.getMessage();
+        }
+    }
+
+    private static String checkName(byte[] content, int offset, int length) {
+        if (length == 0)
+            return "contains empty pathname";
+        for (int i = offset; i < offset + length; i++)
+            if (content[i] == '/')
+                return "contains full pathnames";
+        if (length == 1 && content[offset] == '.')
+            return "contains '.'";
+        if (length == 2 && content[offset] == '.' && content[offset + 1] == '.')
+            return "contains '..'";
+        if (length == 4 && content[offset] == '.' && (content[offset + 1] | 0x20) == 'g'
+                && (content[offset + 2] | 0x20) == 'i' && (content[offset + 3] | 0x20) == 't')
+            return "contains '.git'";
+        return null;
+    }
+
+    private static String checkCommit(byte[] content, LinkVisitor links) {
+        if (!startsWith(content, 0, TREE))
+            return "invalid format - expected 'tree' line";
+        int position = TREE.length;
+        if (!isIdLine(content, position))
+            return "invalid 'tree' line format - bad sha1";
+        links.link(hexToRaw(content, position), 0, ObjectType.TREE);
+        position += ObjectId.HEX_LENGTH + 1;
+        while (startsWith(content, position, PARENT)) {
+            position += PARENT.length;
+            if (!isIdLine(content, position))
+                return "invalid 'parent' line format - bad sha1";
+            links.link(hexToRaw(content, position), 0, ObjectType.COMMIT);
+            position += ObjectId.HEX_LENGTH + 1;
+        }
+        if (!startsWith(content, position, AUTHOR))
+            return "invalid format - expected 'author' line";
+        if ((position = identLineEnd(content, position + AUTHOR.length)) < 0)
+            return "invalid author/committer line";
+        if (!startsWith(content, position, COMMITTER))
+            return "invalid format - expected 'committer' line";
+        if (identLineEnd(content, position + COMMITTER.length) < 0)
+            return "invalid author/committer line";
+        return null;
+    }
+
+    private static String checkTag(byte[] content, LinkVisitor links) {
+        if (!startsWith(content, 0, OBJECT))
+            return "invalid format - expected 'object' line";
+        int position = OBJECT.length;
+        if (!isIdLine(content, position))
+            return "invalid 'object' line format - bad sha1";
+        int idStart = position;
+        position += ObjectId.HEX_LENGTH + 1;
+        if (!startsWith(content, position, TYPE))
+            return "invalid format - expected 'type' line";
+        position += TYPE.length;
+        int end = lineEnd(content, position);
+        if (end < 0)
+            return "invalid format - unexpected end after 'type' line";
+        ObjectType target;
+        try {
+            target = ObjectType.fromValue(new String(content, position, end - position));
+        } catch (IllegalArgumentException e) {
+            return "invalid 'type' value";
+        }
+        position = end + 1;
+        if (!startsWith(content, position, TAG))
+            return "invalid format - expected 'tag' line";
+        if (lineEnd(content, position) < 0)
+            return "invalid format - unexpected end after 'tag' line";
+        links.link(hexToRaw(content, idStart), 0, target);
+        return null;
+    }
+
+    private static boolean startsWith(byte[] content, int offset, byte[] prefix) {
+        return offset + prefix.length <= content.length
+                && Arrays.equals(content, offset, offset + prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * Whether {@code offset} starts 40 lowercase hex digits and a line feed.
+     */
+    private static boolean isIdLine(byte[] content, int offset) {
+        if (offset + ObjectId.HEX_LENGTH >= content.length || content[offset + ObjectId.HEX_LENGTH] != '\n')
+            return false;
+        for (int i = offset; i < offset + ObjectId.HEX_LENGTH; i++) {
+            byte c = content[i];
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f'))
+                return false;
+        }
+        return true;
+    }
+
+    private static byte[] hexToRaw(byte[] content, int offset) {
+        byte[] raw = new byte[ObjectId.LENGTH];
+        for (int i = 0; i < ObjectId.LENGTH; i++)
+            raw[i] = (byte) (digit(content[offset + 2 * i]) << 4 | digit(content[offset + 2 * i + 1]));
+        return raw;
+    }
+
+    private static int digit(byte c) {
+        return c <= '9' ? c - '0' : c - 'a' + 10;
+    }
+
+    /**
+     * Checks a {@code Name <email> time zone} identity up to its line feed.
+     *
+     * @return the offset after the line, or -1 if it is malformed
+     */
+    private static int identLineEnd(byte[] content, int offset) {
+        int end = lineEnd(content, offset);
+        if (end < 0)
+            return -1;
+        int open = -1;
+        int close = -1;
+        for (int i = offset; i < end && close < 0; i++) {
+            if (content[i] == '<' && open < 0)
+                open = i;
+            else if (content[i] == '>' && open >= 0)
+                close = i;
+        }
+        if (close < 0 || close + 1 >= end || content[close + 1] != ' ')
+            return -1;
+        return end + 1;
+    }
+
+    private static int lineEnd(byte[] content, int offset) {
+        for (int i = offset; i < content.length; i++)
+            if (content[i] == '\n')
+                return i;
+        return -1;
+    }
+}
@@ -0,0 +1,9 @@
+package git.object;
+
+import git.enums.ObjectType;
+
+/**
+ * Type and inflated size of an object, available without inflating its content.
+ */
+public record ObjectHeader(ObjectType type, long size) {
+}
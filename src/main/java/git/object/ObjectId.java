@@ -0,0 +1,174 @@
+package git.object;
+
+import git.codec.Hex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An immutable SHA-1 object ID.
+ * <p>
+ * The 20 bytes are held in three primitive fields rather than a {@code byte[]} or a 40-character
+ * string, so an ID is one small object, compares and hashes without touching an array, and is
+ * written into a tree entry without going through hex. The hex form is rendered on first use
+ * and kept.
+ */
+public final class ObjectId implements Comparable<ObjectId> {
+
+    public static final int LENGTH = 20;
+    public static final int HEX_LENGTH = 40;
+
+    private final long high;
+    private final long middle;
+    private final int low;
+    // Computed lazily; a race only renders the same string twice
+    private String name;
+
+    private ObjectId(long high, long middle, int low) {
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
+    }
+
+    public static ObjectId fromRaw(byte[] raw) {
+        return fromRaw(raw, 0);
+    }
+
+    /**
+     * Reads the 20 raw bytes at {@code offset}, for instance from inside a tree entry.
+     */
+    public static ObjectId fromRaw(byte[] raw, int offset) {
+        return new ObjectId(readLong(raw, offset), readLong(raw, offset + 8), readInt(raw, offset + 16));
+    }
+
+    /**
+     * Reads the 20 raw bytes at {@code offset} of a big-endian buffer, such as a mapped index.
+     */
+    public static ObjectId fromRaw(ByteBuffer buffer, int offset) {
+        return new ObjectId(buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getInt(offset + 16));
+    }
+
+    /**
+     * Parses a 40-character hexadecimal ID, in either case.
+     *
+     * @throws IllegalArgumentException if {@code hex} is not a full hexadecimal ID
+     */
+    public static ObjectId fromHex(CharSequence hex) {
+        if (hex.length() != HEX_LENGTH)
+            throw new IllegalArgumentException("Invalid object ID: " + hex);
+        return new ObjectId(Hex.decodeBits(hex, 0, 16), Hex.decodeBits(hex, 16, 16), (int) Hex.decodeBits(hex, 32, 8));
+    }
+
+    /**
+     * Returns true if {@code text} is a full hexadecimal ID.
+     */
+    public static boolean isId(CharSequence text) {
+        if (text.length() != HEX_LENGTH)
+            return false;
+        for (int i = 0; i < HEX_LENGTH; i++)
+            if (Character.digit(text.charAt(i), 16) < 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Writes the 20 raw bytes into {@code out} at {@code offset}.
+     */
+    public void copyRawTo(byte[] out, int offset) {
+        writeLong(high, out, offset);
+        writeLong(middle, out, offset + 8);
+        writeInt(low, out, offset + 16);
+    }
+
+    public byte[] toRaw() {
+        byte[] raw = new byte[LENGTH];
+        copyRawTo(raw, 0);
+        return raw;
+    }
+
+    /**
+     * The first byte, which selects the fan-out bucket of a pack index.
+     */
+    public int firstByte() {
+        return (int) (high >>> 56);
+    }
+
+    /**
+     * The lowercase hexadecimal form.
+     */
+    public String name() {
+        String result = name;
+        if (result == null) {
+            byte[] chars = new byte[HEX_LENGTH];
+            Hex.encodeBits(high, 16, chars, 0);
+            Hex.encodeBits(middle, 16, chars, 16);
+            Hex.encodeBits(low, 8, chars, 32);
+            result = new String(chars, StandardCharsets.ISO_8859_1);
+            name = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ObjectId id && high == id.high && middle == id.middle && low == id.low;
+    }
+
+    @Override
+    public int hashCode() {
+        // SHA-1 output is uniformly distributed, so any 32 bits make a good hash
+        return (int) (high >>> 32);
+    }
+
+    /**
+     * Orders IDs by their unsigned bytes, the order of pack indexes and of Git's output.
+     */
+    @Override
+    public int compareTo(ObjectId other) {
+        int result = Long.compareUnsigned(high, other.high);
+        if (result == 0)
+            result = Long.compareUnsigned(middle, other.middle);
+        if (result == 0)
+            result = Integer.compareUnsigned(low, other.low);
+        return result;
+    }
+
+    /**
+     * Compares this ID with the raw ID at {@code offset} of a big-endian buffer, so a mapped
+     * table can be binary searched without copying its entries out.
+     */
+    public int compareTo(ByteBuffer buffer, int offset) {
+        int result = Long.compareUnsigned(high, buffer.getLong(offset));
+        if (result == 0)
+            result = Long.compareUnsigned(middle, buffer.getLong(offset + 8));
+        if (result == 0)
+            result = Integer.compareUnsigned(low, buffer.getInt(offset + 16));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+    private static long readLong(byte[] raw, int offset) {
+        return (long) readInt(raw, offset) << 32 | (readInt(raw, offset + 4) & 0xffffffffL);
+    }
+
+    private static int readInt(byte[] raw, int offset) {
+        return (raw[offset] & 0xff) << 24 | (raw[offset + 1] & 0xff) << 16
+                | (raw[offset + 2] & 0xff) << 8 | (raw[offset + 3] & 0xff);
+    }
+
+    private static void writeLong(long value, byte[] out, int offset) {
+        writeInt((int) (value >>> 32), out, offset);
+        writeInt((int) value, out, offset + 4);
+    }
+
+    private static void writeInt(int value, byte[] out, int offset) {
+        out[offset] = (byte) (value >>> 24);
+        out[offset + 1] = (byte) (value >>> 16);
+        out[offset + 2] = (byte) (value >>> 8);
+        out[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,930 @@
+package git.object;
+
+import git.codec.CodecContext;
+import git.codec.Hex;
+import git.command.CommandContext;
+import git.config.Config;
+import git.enums.ObjectType;
+import git.metrics.FsyncEvent;
+import git.metrics.Metrics;
+import git.metrics.ObjectReadEvent;
+import git.metrics.ObjectWriteEvent;
+import git.pack.PackFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static git.constant.Constant.*;
+
+/**
+ * The object database under {@code .git/objects}, shared by every command that reads or
+ * writes objects. Lookups check loose objects first and then every pack under
+ * {@code objects/pack}, so commands work the same before and after objects are packed.
+ * <p>
+ * Objects are hashed first and only compressed when no object with that ID exists yet, so
+ * unchanged content costs a hash plus a stat. New objects are deflated into a temporary file
+ * and atomically renamed to their {@code xx/yyyy...} path, so a crash never leaves a torn
+ * object behind. Durability follows the configured {@link FsyncPolicy}; callers must
+ * {@link #close()} the store to publish objects held back by batched fsync. The zlib level of
+ * each object is chosen by the configured {@link CompressionPolicy}.
+ * <p>
+ * Hashing, compression and inflation go through the calling thread's {@link CodecContext},
+ * so storing an object allocates little beyond its ID.
+ */
+public class ObjectStore implements Closeable {
+
+    private static final Logger log = Logger.getLogger(ObjectStore.class.getName());
+
+    // Files up to this size are read once into memory; larger ones are streamed twice
+    static final int SMALL_BLOB_LIMIT = 1024 * 1024;
+    private static final int BATCH_SIZE = 512;
+    private static final int HEADER_LIMIT = CodecContext.HEADER_SIZE;
+    private static final long TREE_CACHE_BYTES = 32L * 1024 * 1024;
+
+    private static final ObjectType[] OBJECT_TYPES = ObjectType.values();
+    private static final byte[][] TYPE_NAMES = new byte[OBJECT_TYPES.length][];
+
+    static {
+        for (ObjectType type : OBJECT_TYPES)
+            TYPE_NAMES[type.ordinal()] = type.getValue().getBytes();
+    }
+
+    private static final Set<PosixFilePermission> READ_ONLY = PosixFilePermissions.fromString("r--r--r--");
+
+    private final Path objectsDir;
+    private final FsyncPolicy fsyncPolicy;
+    private final CompressionPolicy compression;
+    private final Set<String> createdDirs = ConcurrentHashMap.newKeySet();
+    private final List<PendingObject> pending = new ArrayList<>();
+    private final Set<ObjectId> pendingIds = ConcurrentHashMap.newKeySet();
+    // The 256 fan-out directories, resolved once each
+    private final Path[] fanoutDirs = new Path[256];
+    private final TreeCache treeCache = new TreeCache(TREE_CACHE_BYTES);
+    private volatile List<PackFile> packs;
+
+    public ObjectStore(Path objectsDir, FsyncPolicy fsyncPolicy) {
+        this(objectsDir, fsyncPolicy, CompressionPolicy.DEFAULT);
+    }
+
+    public ObjectStore(Path objectsDir, FsyncPolicy fsyncPolicy, CompressionPolicy compression) {
+        this.objectsDir = objectsDir;
+        this.fsyncPolicy = fsyncPolicy;
+        this.compression = compression;
+    }
+
+    /**
+     * Opens the object store of the repository in the command's working directory, honouring the fsync
+     * and compression settings of {@code .git/config}.
+     */
+    public static ObjectStore open() throws IOException {
+        return open(null);
+    }
+
+    /**
+     * Opens the object store like {@link #open()}, with {@code compressionLevel}, if not null,
+     * replacing the configured zlib level.
+     */
+    public static ObjectStore open(Integer compressionLevel) throws IOException {
+        CommandContext context = CommandContext.current();
+        Config config = Config.read(context.resolve(CONFIG_PATH));
+        CompressionPolicy compression = CompressionPolicy.fromConfig(config);
+        if (compressionLevel != null)
+            compression = compression.withLevel(compressionLevel);
+        return new ObjectStore(context.resolve(OBJECTS_PATH), FsyncPolicy.fromConfig(config), compression);
+    }
+
+    /**
+     * Returns the path of the loose object {@code id}.
+     */
+    public Path pathOf(ObjectId id) {
+        int fanout = id.firstByte();
+        Path dir = fanoutDirs[fanout];
+        String name = id.name();
+        if (dir == null) {
+            dir = objectsDir.resolve(name.substring(0, 2));
+            fanoutDirs[fanout] = dir;
+        }
+        return dir.resolve(name.substring(2));
+    }
+
+    public Path pathOf(String hash) {
+        return pathOf(ObjectId.fromHex(hash));
+    }
+
+    public boolean contains(ObjectId id) throws IOException {
+        if (pendingIds.contains(id) || Files.exists(pathOf(id)))
+            return true;
+        byte[] raw = id.toRaw();
+        for (PackFile pack : packs())
+            if (pack.contains(raw))
+                return true;
+        return false;
+    }
+
+    public boolean contains(String hash) throws IOException {
+        return contains(ObjectId.fromHex(hash));
+    }
+
+    /**
+     * Reads and inflates the object {@code id}.
+     *
+     * @throws MissingObjectException if no loose or packed object has that ID
+     */
+    public GitObject read(ObjectId id) throws IOException {
+        ObjectReadEvent event = Metrics.beginObjectRead();
+        long start = Metrics.start();
+        Path loose = pathOf(id);
+        boolean packed = !Files.exists(loose);
+        GitObject object = packed ? readPacked(id) : readLoose(loose);
+        recordRead(event, start, id, object.type(), object.size(), packed);
+        return object;
+    }
+
+    private GitObject readPacked(ObjectId id) throws IOException {
+        byte[] raw = id.toRaw();
+        for (PackFile pack : packs()) {
+            GitObject object = pack.read(raw, this::readBase);
+            if (object != null)
+                return object;
+        }
+        throw new MissingObjectException(id.name());
+    }
+
+    private static void recordRead(ObjectReadEvent event, long start, ObjectId id, ObjectType type, long size, boolean packed) {
+        Metrics.objectReadFinished(start);
+        if (event != null && event.shouldCommit()) {
+            event.id = id.name();
+            event.type = type.getValue();
+            event.size = size;
+            event.packed = packed;
+            event.commit();
+        }
+    }
+
+    public GitObject read(String hash) throws IOException {
+        return read(ObjectId.fromHex(hash));
+    }
+
+    /**
+     * Reads the object {@code id} unless it is binary, which Git tells by a NUL byte among the
+     * first {@code probe} bytes. A packed object that is not a delta is inflated no further
+     * than that when it is binary.
+     *
+     * @return the object, or null if it is binary
+     * @throws MissingObjectException if no loose or packed object has that ID
+     */
+    public GitObject readText(ObjectId id, int probe) throws IOException {
+        Path loose = pathOf(id);
+        if (Files.exists(loose)) {
+            GitObject object = readLoose(loose);
+            return isBinary(object.content(), probe) ? null : object;
+        }
+        byte[] raw = id.toRaw();
+        for (PackFile pack : packs()) {
+            long offset = pack.getIndex().findOffset(raw);
+            if (offset >= 0)
+                return pack.readTextAt(offset, this::readBase, probe);
+        }
+        throw new MissingObjectException(id.name());
+    }
+
+    /**
+     * Whether a NUL byte occurs among the first {@code probe} bytes of {@code content}.
+     */
+    public static boolean isBinary(byte[] content, int probe) {
+        for (int i = 0, end = Math.min(probe, content.length); i < end; i++)
+            if (content[i] == 0)
+                return true;
+        return false;
+    }
+
+    /**
+     * Writes the content of an object to {@code out}. Loose objects are inflated through the
+     * thread's fixed output buffer, so memory use does not depend on the object size; packed
+     * objects may be deltas and are materialized first.
+     *
+     * @return the type and size of the object
+     * @throws MissingObjectException if no loose or packed object has that ID
+     */
+    public ObjectHeader copyTo(ObjectId id, WritableByteChannel out) throws IOException {
+        Path loose = pathOf(id);
+        if (!Files.exists(loose)) {
+            GitObject object = read(id);
+            writeFully(out, ByteBuffer.wrap(object.content()));
+            return new ObjectHeader(object.type(), object.size());
+        }
+
+        ObjectReadEvent event = Metrics.beginObjectRead();
+        long started = Metrics.start();
+        try (FileChannel in = FileChannel.open(loose, StandardOpenOption.READ)) {
+            CodecContext codec = CodecContext.get();
+            Inflater inflater = codec.inflater();
+            byte[] prefix = codec.headerBuffer();
+            int length = inflate(in, inflater, prefix, 0, HEADER_LIMIT, loose);
+            ObjectHeader header = parseHeader(prefix, length, loose);
+
+            int start = headerLength(prefix, length);
+            long remaining = header.size() - (length - start);
+            if (remaining < 0)
+                throw new IOException("Loose object size mismatch: " + loose);
+            writeFully(out, ByteBuffer.wrap(prefix, start, length - start));
+            byte[] buffer = codec.outputBuffer();
+            while (remaining > 0) {
+                int n = inflate(in, inflater, buffer, 0, (int) Math.min(buffer.length, remaining), loose);
+                if (n == 0)
+                    throw new IOException("Loose object size mismatch: " + loose);
+                writeFully(out, codec.output().limit(n));
+                remaining -= n;
+            }
+            if (inflate(in, inflater, prefix, 0, 1, loose) != 0)
+                throw new IOException("Loose object size mismatch: " + loose);
+            recordRead(event, started, id, header.type(), header.size(), false);
+            return header;
+        }
+    }
+
+    public ObjectHeader copyTo(String hash, WritableByteChannel out) throws IOException {
+        return copyTo(ObjectId.fromHex(hash), out);
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer data) throws IOException {
+        while (data.hasRemaining())
+            out.write(data);
+    }
+
+    /**
+     * Reads and parses the tree {@code id}. Parsed trees are kept in a size-bounded cache,
+     * so walks that visit the same subtrees again skip the inflate.
+     *
+     * @throws MissingObjectException if no loose or packed object has that ID
+     * @throws IOException            if the object is not a tree
+     */
+    public Tree readTree(ObjectId id) throws IOException {
+        Tree tree = treeCache.get(id);
+        if (tree != null)
+            return tree;
+        GitObject object = read(id);
+        if (object.type() != ObjectType.TREE)
+            throw new IOException("Not a tree object: " + id);
+        tree = Tree.parse(object.content());
+        treeCache.put(id, tree);
+        return tree;
+    }
+
+    public Tree readTree(String hash) throws IOException {
+        return readTree(ObjectId.fromHex(hash));
+    }
+
+    public TreeCache getTreeCache() {
+        return treeCache;
+    }
+
+    /**
+     * Returns the type and size of an object, inflating no more than its header.
+     *
+     * @throws MissingObjectException if no loose or packed object has that ID
+     */
+    public ObjectHeader readHeader(ObjectId id) throws IOException {
+        Metrics.increment(Metrics.Counter.OBJECT_HEADERS_READ);
+        Path loose = pathOf(id);
+        if (Files.exists(loose)) {
+            try (FileChannel in = FileChannel.open(loose, StandardOpenOption.READ)) {
+                CodecContext codec = CodecContext.get();
+                Inflater inflater = codec.inflater();
+                byte[] prefix = codec.headerBuffer();
+                int length = inflate(in, inflater, prefix, 0, HEADER_LIMIT, loose);
+                return parseHeader(prefix, length, loose);
+            }
+        }
+
+        byte[] raw = id.toRaw();
+        for (PackFile pack : packs()) {
+            long offset = pack.getIndex().findOffset(raw);
+            if (offset >= 0)
+                return pack.readHeaderAt(offset, this::readBase);
+        }
+        throw new MissingObjectException(id.name());
+    }
+
+    public ObjectHeader readHeader(String hash) throws IOException {
+        return readHeader(ObjectId.fromHex(hash));
+    }
+
+    /**
+     * Returns the IDs of all loose objects.
+     */
+    public List<String> looseObjectIds() throws IOException {
+        List<String> ids = new ArrayList<>();
+        if (!Files.isDirectory(objectsDir))
+            return ids;
+        try (DirectoryStream<Path> fanout = Files.newDirectoryStream(objectsDir, "[0-9a-f][0-9a-f]")) {
+            for (Path dir : fanout) {
+                try (DirectoryStream<Path> objects = Files.newDirectoryStream(dir)) {
+                    for (Path object : objects) {
+                        String name = object.getFileName().toString();
+                        if (name.length() == 38)
+                            ids.add(dir.getFileName() + name);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the packs of this repository, scanning {@code objects/pack} on first use.
+     */
+    public List<PackFile> packs() throws IOException {
+        List<PackFile> result = packs;
+        if (result == null) {
+            synchronized (this) {
+                if (packs == null)
+                    packs = scanPacks();
+                result = packs;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the known packs so that packs written or deleted since are picked up.
+     */
+    public synchronized void rescanPacks() {
+        packs = null;
+    }
+
+    private List<PackFile> scanPacks() throws IOException {
+        Path packDir = objectsDir.resolve(PACK);
+        List<PackFile> found = new ArrayList<>();
+        if (!Files.isDirectory(packDir))
+            return found;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(packDir, "*.idx")) {
+            for (Path idx : stream)
+                found.add(PackFile.open(idx));
+        }
+        return found;
+    }
+
+    /**
+     * Reads the loose copy of {@code id}, even if a pack holds the object too.
+     *
+     * @throws java.nio.file.NoSuchFileException if there is no loose copy
+     * @throws IOException                       if the file is not a well-formed loose object
+     */
+    public GitObject readLoose(ObjectId id) throws IOException {
+        return readLoose(pathOf(id));
+    }
+
+    private GitObject readBase(byte[] id) throws IOException {
+        return read(ObjectId.fromRaw(id));
+    }
+
+    /**
+     * Inflates a loose object straight into an array of its exact size: the header is inflated
+     * into the scratch buffer first, and whatever content came with it is copied over.
+     */
+    private static GitObject readLoose(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            CodecContext codec = CodecContext.get();
+            Inflater inflater = codec.inflater();
+            byte[] prefix = codec.headerBuffer();
+            int length = inflate(in, inflater, prefix, 0, HEADER_LIMIT, file);
+            ObjectHeader header = parseHeader(prefix, length, file);
+
+            int start = headerLength(prefix, length);
+            byte[] content = new byte[Math.toIntExact(header.size())];
+            int copied = Math.min(length - start, content.length);
+            System.arraycopy(prefix, start, content, 0, copied);
+            if (start + copied != length
+                    || inflate(in, inflater, content, copied, content.length - copied, file) != content.length - copied
+                    || inflate(in, inflater, prefix, 0, 1, file) != 0)
+                throw new IOException("Loose object size mismatch: " + file);
+            return new GitObject(header.type(), content);
+        }
+    }
+
+    /**
+     * Inflates up to {@code length} bytes into {@code out}, reading compressed input from
+     * {@code in} through the context's input buffer as needed.
+     *
+     * @return the number of bytes inflated, less than {@code length} only at the end of the stream
+     */
+    private static int inflate(FileChannel in, Inflater inflater, byte[] out, int offset, int length, Path file)
+            throws IOException {
+        byte[] input = CodecContext.get().inputBuffer();
+        int written = 0;
+        try {
+            while (written < length && !inflater.finished()) {
+                if (inflater.needsInput()) {
+                    int read = in.read(CodecContext.get().input());
+                    if (read == -1)
+                        throw new IOException("Truncated loose object: " + file);
+                    inflater.setInput(input, 0, read);
+                }
+                written += inflater.inflate(out, offset + written, length - written);
+            }
+            Metrics.add(Metrics.Counter.BYTES_INFLATED, written);
+            return written;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt loose object: " + file, e);
+        }
+    }
+
+    private static int headerLength(byte[] data, int length) {
+        int nul = 0;
+        while (data[nul] != NULL_CHAR) nul++;
+        return nul + 1;
+    }
+
+    /**
+     * Parses the {@code "<type> <size>\0"} header at the start of an inflated loose object.
+     */
+    private static ObjectHeader parseHeader(byte[] data, int length, Path file) throws IOException {
+        int space = 0;
+        while (space < length && data[space] != EMPTY_CHAR) space++;
+        int nul = space;
+        while (nul < length && data[nul] != NULL_CHAR) nul++;
+        if (nul >= length)
+            throw new IOException("Corrupt loose object header: " + file);
+        ObjectType type = typeOf(data, space);
+        if (type == null || nul == space + 1)
+            throw new IOException("Corrupt loose object header: " + file);
+        long size = 0;
+        for (int i = space + 1; i < nul; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9)
+                throw new IOException("Corrupt loose object header: " + file);
+            size = size * 10 + digit;
+        }
+        return new ObjectHeader(type, size);
+    }
+
+    private static ObjectType typeOf(byte[] data, int length) {
+        for (ObjectType type : OBJECT_TYPES) {
+            byte[] name = TYPE_NAMES[type.ordinal()];
+            if (Arrays.equals(data, 0, length, name, 0, name.length))
+                return type;
+        }
+        return null;
+    }
+
+    /**
+     * Stores an object whose content is already in memory.
+     *
+     * @return the ID of the object
+     */
+    public ObjectId insert(ObjectType type, byte[] content) throws IOException {
+        return insert(type, content, content.length);
+    }
+
+    /**
+     * Stores the first {@code length} bytes of {@code content} as an object of {@code type}.
+     */
+    public ObjectId insert(ObjectType type, byte[] content, int length) throws IOException {
+        ObjectWriteEvent event = Metrics.beginObjectWrite();
+        long start = Metrics.start();
+        CodecContext codec = CodecContext.get();
+        byte[] header = codec.headerBuffer();
+        int headerLength = header(type, length, header);
+        ObjectId id = hash(codec, header, headerLength, content, length);
+        if (contains(id))
+            return id;
+
+        Path temp = createTemp();
+        try (LooseObjectWriter out = new LooseObjectWriter(temp, codec, compression.levelFor(type, content, 0, length))) {
+            out.write(header, 0, headerLength);
+            out.write(content, 0, length);
+            out.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        publish(id, temp);
+        recordWrite(event, start, id, type, length);
+        return id;
+    }
+
+    /**
+     * Writes the packed object {@code id} out as a loose one, so that it outlives a repack that
+     * deletes its pack. Does nothing if the object is loose already.
+     */
+    public void loosen(ObjectId id) throws IOException {
+        if (Files.exists(pathOf(id)))
+            return;
+        GitObject object = read(id);
+        byte[] content = object.content();
+        CodecContext codec = CodecContext.get();
+        byte[] header = codec.headerBuffer();
+        int headerLength = header(object.type(), content.length, header);
+        Path temp = createTemp();
+        try (LooseObjectWriter out = new LooseObjectWriter(temp, codec, compression.levelFor(object.type(), content, 0, content.length))) {
+            out.write(header, 0, headerLength);
+            out.write(content, 0, content.length);
+            out.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        publish(id, temp);
+    }
+
+    /**
+     * Hashes and compresses the first {@code length} bytes of {@code content} as an object of
+     * {@code type} into memory, for {@link #write} to store later, possibly on another thread.
+     * This is the CPU half of {@link #insert}.
+     *
+     * @return the object, with no data if the store already has it
+     */
+    public DeflatedObject deflate(ObjectType type, byte[] content, int length) throws IOException {
+        CodecContext codec = CodecContext.get();
+        byte[] header = codec.headerBuffer();
+        int headerLength = header(type, length, header);
+        ObjectId id = hash(codec, header, headerLength, content, length);
+        if (contains(id))
+            return new DeflatedObject(id, type, length, null, 0);
+
+        Metrics.add(Metrics.Counter.BYTES_DEFLATED, headerLength + length);
+        Deflater deflater = codec.deflater(compression.levelFor(type, content, 0, length));
+        // zlib's compressBound, so that a single pass normally suffices
+        long total = (long) headerLength + length;
+        byte[] out = new byte[(int) Math.min(Integer.MAX_VALUE - 8, total + (total >> 12) + (total >> 14) + 64)];
+        int position = 0;
+        deflater.setInput(header, 0, headerLength);
+        while (!deflater.needsInput())
+            position += deflater.deflate(out, position, out.length - position);
+        deflater.setInput(content, 0, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (position == out.length)
+                out = Arrays.copyOf(out, out.length + (out.length >> 1));
+            position += deflater.deflate(out, position, out.length - position);
+        }
+        return new DeflatedObject(id, type, length, out, position);
+    }
+
+    /**
+     * Writes an object prepared by {@link #deflate} into place. This is the I/O half of
+     * {@link #insert} and does not touch the thread's {@link CodecContext}, so it suits a
+     * virtual thread.
+     */
+    public void write(DeflatedObject object) throws IOException {
+        if (object.data() == null)
+            return;
+        ObjectWriteEvent event = Metrics.beginObjectWrite();
+        long start = Metrics.start();
+        Path temp = createTemp();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.wrap(object.data(), 0, object.length()));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        publish(object.id(), temp);
+        recordWrite(event, start, object.id(), object.type(), object.size());
+    }
+
+    /**
+     * Creates every missing {@code objects/xx} fan-out directory in one pass, so that a bulk
+     * import does not check for and create a directory per object.
+     */
+    public void createFanoutDirectories() throws IOException {
+        Files.createDirectories(objectsDir);
+        createdDirs.add("");
+        for (int fanout = 0; fanout < fanoutDirs.length; fanout++) {
+            String name = Hex.encode(new byte[]{(byte) fanout});
+            if (createdDirs.contains(name))
+                continue;
+            Path dir = objectsDir.resolve(name);
+            fanoutDirs[fanout] = dir;
+            Files.createDirectories(dir);
+            createdDirs.add(name);
+        }
+    }
+
+    /**
+     * Stores {@code file} as a blob with memory use independent of the file size.
+     * <p>
+     * Small files are read once. Larger files are streamed through a fixed buffer to compute
+     * the ID, and only if the object is missing streamed a second time through the deflater;
+     * the second pass is verified against the first, so a file modified in between is rejected.
+     *
+     * @throws IOException if the file cannot be read, or changes while being read
+     */
+    public ObjectId insertBlob(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size <= SMALL_BLOB_LIMIT) {
+                // One spare byte so that a file that grew since the stat is noticed
+                byte[] content = CodecContext.get().contentBuffer((int) size + 1, SMALL_BLOB_LIMIT + 1);
+                int length = 0;
+                int read;
+                while (length <= size && (read = in.read(ByteBuffer.wrap(content, length, (int) size + 1 - length))) != -1)
+                    length += read;
+                if (length != size)
+                    throw new IOException("File changed while hashing: " + file);
+                return insert(ObjectType.BLOB, content, length);
+            }
+
+            ObjectWriteEvent event = Metrics.beginObjectWrite();
+            long start = Metrics.start();
+            ObjectId id = streamBlob(in, size, null, file);
+            if (contains(id))
+                return id;
+
+            Path temp = createTemp();
+            try (LooseObjectWriter out = new LooseObjectWriter(temp, CodecContext.get(), probeLevel(in))) {
+                in.position(0);
+                if (!id.equals(streamBlob(in, size, out, file)))
+                    throw new IOException("File changed while hashing: " + file);
+                out.finish();
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            publish(id, temp);
+            recordWrite(event, start, id, ObjectType.BLOB, size);
+            return id;
+        }
+    }
+
+    /**
+     * Computes the ID {@code file} would have as a blob, without storing it.
+     *
+     * @throws IOException if the file cannot be read, or changes while being read
+     */
+    public static ObjectId hashBlob(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            return streamBlob(in, in.size(), null, file);
+        }
+    }
+
+    /**
+     * Computes the ID of the blob holding the first {@code length} bytes of {@code content},
+     * without storing it.
+     */
+    public static ObjectId hashBlob(byte[] content, int length) {
+        return idOf(ObjectType.BLOB, content, length);
+    }
+
+    /**
+     * Computes the ID of the object of {@code type} holding the first {@code length} bytes of
+     * {@code content}, without storing it.
+     */
+    public static ObjectId idOf(ObjectType type, byte[] content, int length) {
+        CodecContext codec = CodecContext.get();
+        byte[] header = codec.headerBuffer();
+        return hash(codec, header, header(type, length, header), content, length);
+    }
+
+    /**
+     * Returns the level for the blob read from {@code in}, probing its first buffer.
+     */
+    private int probeLevel(FileChannel in) throws IOException {
+        CodecContext codec = CodecContext.get();
+        in.position(0);
+        int read = Math.max(in.read(codec.input()), 0);
+        return compression.levelFor(ObjectType.BLOB, codec.inputBuffer(), 0, read);
+    }
+
+    private static void recordWrite(ObjectWriteEvent event, long start, ObjectId id, ObjectType type, long size) {
+        Metrics.objectWriteFinished(start);
+        if (event != null && event.shouldCommit()) {
+            event.id = id.name();
+            event.type = type.getValue();
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    /**
+     * Publishes every object held back by {@link FsyncPolicy#BATCH}: all temporary files are
+     * flushed first, then renamed, then their directories are flushed once each.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty())
+            return;
+        for (PendingObject object : pending)
+            fsync(object.temp());
+        Set<Path> dirs = new LinkedHashSet<>();
+        for (PendingObject object : pending) {
+            Path target = pathOf(object.id());
+            moveIntoPlace(object.temp(), target);
+            dirs.add(target.getParent());
+        }
+        for (Path dir : dirs)
+            fsyncDirectory(dir);
+        log.log(Level.FINE, "Flushed {0} objects in one batch", pending.size());
+        pending.clear();
+        pendingIds.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void publish(ObjectId id, Path temp) throws IOException {
+        makeReadOnly(temp);
+        switch (fsyncPolicy) {
+            case NONE -> moveIntoPlace(temp, pathOf(id));
+            case EACH -> {
+                fsync(temp);
+                Path target = pathOf(id);
+                moveIntoPlace(temp, target);
+                fsyncDirectory(target.getParent());
+            }
+            case BATCH -> {
+                boolean full;
+                synchronized (this) {
+                    pending.add(new PendingObject(id, temp));
+                    pendingIds.add(id);
+                    full = pending.size() >= BATCH_SIZE;
+                }
+                if (full)
+                    flush();
+            }
+        }
+    }
+
+    private void moveIntoPlace(Path temp, Path target) throws IOException {
+        Path dir = target.getParent();
+        // Marked only once created, so that a concurrent writer never skips a missing directory
+        String name = dir.getFileName().toString();
+        if (!createdDirs.contains(name)) {
+            Files.createDirectories(dir);
+            createdDirs.add(name);
+        }
+        // rename(2) replaces an identical object written concurrently, which is harmless
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path createTemp() throws IOException {
+        if (!createdDirs.contains("")) {
+            Files.createDirectories(objectsDir);
+            createdDirs.add("");
+        }
+        return Files.createTempFile(objectsDir, TEMP_OBJECT_PREFIX, null);
+    }
+
+    /**
+     * Gives a fully written object file Git's {@code 0444} permissions instead of the
+     * owner-only mode of temporary files.
+     */
+    public static void makeReadOnly(Path file) throws IOException {
+        try {
+            Files.setPosixFilePermissions(file, READ_ONLY);
+        } catch (UnsupportedOperationException e) {
+            // Non-POSIX file systems keep their default permissions
+        }
+    }
+
+    /**
+     * Reads {@code size} bytes from {@code in}, hashing them after a blob header and copying
+     * the header and data to {@code out} when given.
+     */
+    private static ObjectId streamBlob(FileChannel in, long size, LooseObjectWriter out, Path file)
+            throws IOException {
+        CodecContext codec = CodecContext.get();
+        byte[] header = codec.headerBuffer();
+        int headerLength = header(ObjectType.BLOB, size, header);
+        MessageDigest digest = codec.digest();
+        digest.update(header, 0, headerLength);
+        if (out != null)
+            out.write(header, 0, headerLength);
+        byte[] buffer = codec.inputBuffer();
+        long total = 0;
+        int read;
+        while ((read = in.read(codec.input())) != -1) {
+            digest.update(buffer, 0, read);
+            if (out != null)
+                out.write(buffer, 0, read);
+            total += read;
+        }
+        if (total != size)
+            throw new IOException("File changed while hashing: " + file);
+        return ObjectId.fromRaw(codec.finishDigest());
+    }
+
+    private static ObjectId hash(CodecContext codec, byte[] header, int headerLength, byte[] content, int length) {
+        MessageDigest digest = codec.digest();
+        digest.update(header, 0, headerLength);
+        digest.update(content, 0, length);
+        return ObjectId.fromRaw(codec.finishDigest());
+    }
+
+    /**
+     * Writes the {@code "<type> <size>\0"} header into {@code out}.
+     *
+     * @return the length of the header
+     */
+    private static int header(ObjectType type, long size, byte[] out) {
+        byte[] name = TYPE_NAMES[type.ordinal()];
+        System.arraycopy(name, 0, out, 0, name.length);
+        int position = name.length;
+        out[position++] = (byte) EMPTY_CHAR;
+        int digits = position + 1;
+        for (long rest = size / 10; rest > 0; rest /= 10)
+            digits++;
+        for (int i = digits - 1; i >= position; i--) {
+            out[i] = (byte) ('0' + size % 10);
+            size /= 10;
+        }
+        out[digits] = NULL_CHAR;
+        return digits + 1;
+    }
+
+    private static void fsync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            force(channel, file);
+        }
+    }
+
+    private static void fsyncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            force(channel, dir);
+        } catch (IOException e) {
+            // Not every platform allows opening directories; the rename is still atomic
+            log.log(Level.FINE, "Cannot fsync directory {0}", dir);
+        }
+    }
+
+    /**
+     * Flushes {@code channel}, open on {@code path}, counting and recording the fsync.
+     */
+    public static void force(FileChannel channel, Path path) throws IOException {
+        FsyncEvent event = Metrics.beginFsync();
+        channel.force(true);
+        Metrics.increment(Metrics.Counter.FSYNCS);
+        if (event != null && event.shouldCommit()) {
+            event.path = path.toString();
+            event.commit();
+        }
+    }
+
+    /**
+     * Deflates a loose object into a temporary file with the thread's pooled deflater and
+     * output buffer. {@link #finish()} must be called before closing for the file to be complete.
+     */
+    private static final class LooseObjectWriter implements Closeable {
+
+        private final FileChannel channel;
+        private final CodecContext codec;
+        private final Deflater deflater;
+
+        LooseObjectWriter(Path temp, CodecContext codec, int level) throws IOException {
+            this.channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            this.codec = codec;
+            this.deflater = codec.deflater(level);
+        }
+
+        void write(byte[] data, int offset, int length) throws IOException {
+            Metrics.add(Metrics.Counter.BYTES_DEFLATED, length);
+            deflater.setInput(data, offset, length);
+            while (!deflater.needsInput())
+                drain();
+        }
+
+        void finish() throws IOException {
+            deflater.finish();
+            while (!deflater.finished())
+                drain();
+        }
+
+        private void drain() throws IOException {
+            int length = deflater.deflate(codec.outputBuffer());
+            ByteBuffer output = codec.output().limit(length);
+            while (output.hasRemaining())
+                channel.write(output);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private record PendingObject(ObjectId id, Path temp) {
+    }
+}
@@ -0,0 +1,73 @@
+package git.object;
+
+import git.enums.ObjectType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A parsed tree object: its entries in stored order, which is Git's tree order.
+ */
+public record Tree(List<Entry> entries) {
+
+    public static final int MODE_TREE = 0040000;
+    public static final int MODE_GITLINK = 0160000;
+
+    // Rough per-object and per-entry overheads of the parsed form, for cache accounting
+    private static final int TREE_OVERHEAD = 64;
+    private static final int ENTRY_OVERHEAD = 96;
+
+    /**
+     * Parses the content of a tree object.
+     *
+     * @throws IOException if the content is not a well-formed tree
+     */
+    public static Tree parse(byte[] content) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        TreeCursor cursor = new TreeCursor(content);
+        while (cursor.next()) {
+            String name = new String(content, cursor.nameOffset(), cursor.nameLength(), StandardCharsets.UTF_8);
+            entries.add(new Entry(cursor.mode(), name, cursor.id()));
+        }
+        return new Tree(List.copyOf(entries));
+    }
+
+    /**
+     * Approximate heap footprint of this tree, used to bound caches by bytes rather than entries.
+     */
+    public long weight() {
+        long weight = TREE_OVERHEAD;
+        for (Entry entry : entries)
+            weight += ENTRY_OVERHEAD + entry.name().length() * 2L;
+        return weight;
+    }
+
+    /**
+     * One tree entry. {@code mode} is the numeric file mode, e.g. {@code 0100644}.
+     */
+    public record Entry(int mode, String name, ObjectId id) {
+
+        public boolean isTree() {
+            return mode == MODE_TREE;
+        }
+
+        /**
+         * The type of the object the entry points to; a submodule entry points to a commit.
+         */
+        public ObjectType type() {
+            if (mode == MODE_TREE)
+                return ObjectType.TREE;
+            return mode == MODE_GITLINK ? ObjectType.COMMIT : ObjectType.BLOB;
+        }
+
+        /**
+         * The mode as Git prints it: six octal digits, e.g. {@code 040000}.
+         */
+        public String modeString() {
+            String octal = Integer.toOctalString(mode);
+            return octal.length() >= 6 ? octal : "0".repeat(6 - octal.length()) + octal;
+        }
+    }
+}
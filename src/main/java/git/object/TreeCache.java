@@ -0,0 +1,64 @@
+package git.object;
+
+import git.metrics.Metrics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of parsed trees, bounded by their approximate size in bytes so
+ * that a few huge trees cannot crowd the heap the way a count-bounded cache would allow.
+ * Safe for concurrent use.
+ */
+public class TreeCache {
+
+    private final long maxBytes;
+    private final Map<ObjectId, Tree> trees = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public TreeCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized Tree get(ObjectId id) {
+        Tree tree = trees.get(id);
+        if (tree == null) {
+            misses++;
+            Metrics.increment(Metrics.Counter.TREE_CACHE_MISSES);
+        } else {
+            hits++;
+            Metrics.increment(Metrics.Counter.TREE_CACHE_HITS);
+        }
+        return tree;
+    }
+
+    /**
+     * Adds a tree, evicting the least recently used ones until the cache fits its bound again.
+     * A tree larger than the whole bound is not cached.
+     */
+    public synchronized void put(ObjectId id, Tree tree) {
+        long weight = tree.weight();
+        if (weight > maxBytes)
+            return;
+        Tree previous = trees.put(id, tree);
+        if (previous != null)
+            bytes -= previous.weight();
+        bytes += weight;
+        Iterator<Tree> eldest = trees.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().weight();
+            eldest.remove();
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
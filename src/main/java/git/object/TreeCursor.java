@@ -0,0 +1,116 @@
+package git.object;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Steps through the entries of a tree object in place: the mode is decoded and the name and
+ * ID are left as offsets into the content, so walking a tree creates no strings or IDs.
+ * <p>
+ * The cursor starts before the first entry; {@link #next()} moves it to the following one.
+ */
+public final class TreeCursor {
+
+    private final byte[] content;
+    private int position;
+    private int mode;
+    private int nameOffset;
+    private int nameLength;
+    private int idOffset = -1;
+
+    public TreeCursor(byte[] content) {
+        this.content = content;
+    }
+
+    /**
+     * Moves to the next entry.
+     *
+     * @return false if there are no more entries
+     * @throws IOException if the content is not a well-formed tree
+     */
+    public boolean next() throws IOException {
+        if (position >= content.length) {
+            idOffset = -1;
+            return false;
+        }
+        int index = position;
+        int parsed = 0;
+        while (index < content.length && content[index] != ' ') {
+            int digit = content[index++] - '0';
+            if (digit < 0 || digit > 7)
+                throw new IOException("Corrupt tree: bad mode");
+            parsed = (parsed << 3) | digit;
+        }
+        int nameStart = ++index;
+        while (index < content.length && content[index] != 0) index++;
+        if (index + 1 + ObjectId.LENGTH > content.length)
+            throw new IOException("Corrupt tree: truncated entry");
+        mode = parsed;
+        nameOffset = nameStart;
+        nameLength = index - nameStart;
+        idOffset = index + 1;
+        position = idOffset + ObjectId.LENGTH;
+        return true;
+    }
+
+    /**
+     * Whether the cursor is on an entry, i.e. the last {@link #next()} returned true.
+     */
+    public boolean hasEntry() {
+        return idOffset >= 0;
+    }
+
+    public int mode() {
+        return mode;
+    }
+
+    public boolean isTree() {
+        return mode == Tree.MODE_TREE;
+    }
+
+    /**
+     * The tree content holding the current name at {@link #nameOffset()}.
+     */
+    public byte[] content() {
+        return content;
+    }
+
+    public int nameOffset() {
+        return nameOffset;
+    }
+
+    public int nameLength() {
+        return nameLength;
+    }
+
+    public int idOffset() {
+        return idOffset;
+    }
+
+    public ObjectId id() {
+        return ObjectId.fromRaw(content, idOffset);
+    }
+
+    /**
+     * Whether the current entries of both cursors point to the same object.
+     */
+    public boolean sameId(TreeCursor other) {
+        return Arrays.equals(content, idOffset, idOffset + ObjectId.LENGTH,
+                other.content, other.idOffset, other.idOffset + ObjectId.LENGTH);
+    }
+
+    /**
+     * Compares the current entries of two cursors in Git's tree order, where a subtree sorts
+     * as if its name ended with a slash.
+     */
+    public static int compare(TreeCursor a, TreeCursor b) {
+        int common = Math.min(a.nameLength, b.nameLength);
+        int mismatch = Arrays.mismatch(a.content, a.nameOffset, a.nameOffset + common,
+                b.content, b.nameOffset, b.nameOffset + common);
+        if (mismatch >= 0)
+            return Byte.toUnsignedInt(a.content[a.nameOffset + mismatch]) - Byte.toUnsignedInt(b.content[b.nameOffset + mismatch]);
+        int nextA = a.nameLength > common ? Byte.toUnsignedInt(a.content[a.nameOffset + common]) : a.isTree() ? '/' : 0;
+        int nextB = b.nameLength > common ? Byte.toUnsignedInt(b.content[b.nameOffset + common]) : b.isTree() ? '/' : 0;
+        return nextA - nextB;
+    }
+}
@@ -0,0 +1,75 @@
+package git.pack;
+
+import java.io.IOException;
+
+/**
+ * Git's binary delta format: two varint sizes followed by copy-from-base and insert-literal
+ * instructions.
+ */
+public final class Delta {
+
+    private Delta() {
+    }
+
+    /**
+     * Reconstructs the target object from {@code base} and the inflated {@code delta}.
+     */
+    public static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        int[] position = {0};
+        long baseSize = readSize(delta, position);
+        if (baseSize != base.length)
+            throw new IOException("Delta base size mismatch: expected " + baseSize + ", got " + base.length);
+        long resultSize = readSize(delta, position);
+        byte[] result = new byte[Math.toIntExact(resultSize)];
+
+        int in = position[0];
+        int out = 0;
+        while (in < delta.length) {
+            int op = delta[in++] & 0xff;
+            if ((op & 0x80) != 0) {
+                int offset = 0;
+                int size = 0;
+                for (int i = 0; i < 4; i++)
+                    if ((op & (1 << i)) != 0)
+                        offset |= (delta[in++] & 0xff) << (8 * i);
+                for (int i = 0; i < 3; i++)
+                    if ((op & (0x10 << i)) != 0)
+                        size |= (delta[in++] & 0xff) << (8 * i);
+                if (size == 0)
+                    size = 0x10000;
+                System.arraycopy(base, offset, result, out, size);
+                out += size;
+            } else if (op != 0) {
+                System.arraycopy(delta, in, result, out, op);
+                in += op;
+                out += op;
+            } else {
+                throw new IOException("Invalid delta opcode 0");
+            }
+        }
+        if (out != result.length)
+            throw new IOException("Delta produced " + out + " bytes, expected " + result.length);
+        return result;
+    }
+
+    /**
+     * Returns the size of the object a delta produces, reading only its header.
+     */
+    public static long resultSize(byte[] deltaHeader) {
+        int[] position = {0};
+        readSize(deltaHeader, position);
+        return readSize(deltaHeader, position);
+    }
+
+    static long readSize(byte[] data, int[] position) {
+        long size = 0;
+        int shift = 0;
+        int c;
+        do {
+            c = data[position[0]++] & 0xff;
+            size |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        return size;
+    }
+}
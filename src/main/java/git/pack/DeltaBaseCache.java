@@ -0,0 +1,50 @@
+package git.pack;
+
+import git.metrics.Metrics;
+import git.object.GitObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of the resolved objects that deltas of one pack are applied to,
+ * keyed by their offset and bounded by their size in bytes, like Git's delta base cache.
+ * Deltas of the same base and chains that share a prefix then inflate it once instead of
+ * once per delta. Safe for concurrent use.
+ */
+final class DeltaBaseCache {
+
+    private final long maxBytes;
+    private final Map<Long, GitObject> bases = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    DeltaBaseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized GitObject get(long offset) {
+        GitObject base = bases.get(offset);
+        Metrics.increment(base == null ? Metrics.Counter.DELTA_BASE_CACHE_MISSES : Metrics.Counter.DELTA_BASE_CACHE_HITS);
+        return base;
+    }
+
+    /**
+     * Adds a base, evicting the least recently used ones until the cache fits its bound again.
+     * A base larger than a quarter of the bound is not cached.
+     */
+    synchronized void put(long offset, GitObject base) {
+        long weight = base.content().length;
+        if (weight > maxBytes / 4)
+            return;
+        GitObject previous = bases.put(offset, base);
+        if (previous != null)
+            bytes -= previous.content().length;
+        bytes += weight;
+        Iterator<GitObject> eldest = bases.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().content().length;
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package git.pack;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Computes Git binary deltas.
+ * <p>
+ * The base is indexed in 16-byte blocks by a rolling hash; the target is scanned with the same
+ * rolling hash, and every candidate block is verified and extended forwards and backwards.
+ * Matches become copy instructions, everything else is emitted as literal inserts. An encoder
+ * is built once per base and can be reused for many targets.
+ */
+public final class DeltaEncoder {
+
+    private static final int BLOCK = 16;
+    private static final int MAX_CHAIN = 64;
+    private static final int MAX_INSERT = 0x7f;
+    private static final int MAX_COPY = 0xffffff;
+    private static final int MULTIPLIER = 31;
+    private static final int MULTIPLIER_POW;
+
+    static {
+        int pow = 1;
+        for (int i = 0; i < BLOCK - 1; i++)
+            pow *= MULTIPLIER;
+        MULTIPLIER_POW = pow;
+    }
+
+    private final byte[] base;
+    private final int[] heads;
+    private final int[] next;
+    private final int mask;
+
+    public DeltaEncoder(byte[] base) {
+        this.base = base;
+        int blocks = base.length / BLOCK;
+        int size = Integer.highestOneBit(Math.max(blocks, 1) * 2 - 1) << 1;
+        this.mask = size - 1;
+        this.heads = new int[size];
+        this.next = new int[Math.max(blocks, 1)];
+        Arrays.fill(heads, -1);
+        // Insert in reverse so chains list earlier blocks first
+        for (int block = blocks - 1; block >= 0; block--) {
+            int bucket = hash(base, block * BLOCK) & mask;
+            next[block] = heads[bucket];
+            heads[bucket] = block;
+        }
+    }
+
+    public int getBaseSize() {
+        return base.length;
+    }
+
+    /**
+     * Encodes {@code target} against the base.
+     *
+     * @param maxSize give up as soon as the delta grows beyond this many bytes
+     * @return the delta, or null when it would not be smaller than {@code maxSize}
+     */
+    public byte[] encode(byte[] target, int maxSize) {
+        DeltaOutput out = new DeltaOutput(maxSize);
+        out.writeVarint(base.length);
+        out.writeVarint(target.length);
+
+        int literalStart = 0;
+        int position = 0;
+        int rolling = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (position + BLOCK <= target.length) {
+            int bestOffset = -1;
+            int bestLength = 0;
+            for (int block = heads[rolling & mask], chain = 0; block >= 0 && chain < MAX_CHAIN; block = next[block], chain++) {
+                int offset = block * BLOCK;
+                int length = matchLength(offset, target, position);
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestOffset = offset;
+                }
+            }
+
+            if (bestLength >= BLOCK) {
+                // Extend the match backwards over pending literals
+                while (position > literalStart && bestOffset > 0 && base[bestOffset - 1] == target[position - 1]) {
+                    position--;
+                    bestOffset--;
+                    bestLength++;
+                }
+                if (!out.insert(target, literalStart, position - literalStart) || !out.copy(bestOffset, bestLength))
+                    return null;
+                position += bestLength;
+                literalStart = position;
+                if (position + BLOCK <= target.length)
+                    rolling = hash(target, position);
+            } else {
+                if (position + BLOCK < target.length)
+                    rolling = (rolling - target[position] * MULTIPLIER_POW) * MULTIPLIER + target[position + BLOCK];
+                position++;
+            }
+        }
+        if (!out.insert(target, literalStart, target.length - literalStart))
+            return null;
+        return out.toByteArray();
+    }
+
+    private int matchLength(int offset, byte[] target, int position) {
+        int limit = Math.min(base.length - offset, target.length - position);
+        int length = 0;
+        while (length < limit && base[offset + length] == target[position + length])
+            length++;
+        return length;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int i = 0; i < BLOCK; i++)
+            h = h * MULTIPLIER + data[offset + i];
+        return h;
+    }
+
+    private static final class DeltaOutput extends ByteArrayOutputStream {
+
+        private final int maxSize;
+
+        DeltaOutput(int maxSize) {
+            super(Math.max(64, Math.min(maxSize, 8192)));
+            this.maxSize = maxSize;
+        }
+
+        void writeVarint(long value) {
+            while (value >= 0x80) {
+                write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        boolean insert(byte[] data, int offset, int length) {
+            while (length > 0) {
+                int chunk = Math.min(length, MAX_INSERT);
+                write(chunk);
+                write(data, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+            return count <= maxSize;
+        }
+
+        boolean copy(int offset, int length) {
+            while (length > 0) {
+                int chunk = Math.min(length, MAX_COPY);
+                int opIndex = count;
+                write(0x80);
+                int op = 0x80;
+                for (int i = 0; i < 4; i++) {
+                    int b = (offset >>> (8 * i)) & 0xff;
+                    if (b != 0) {
+                        write(b);
+                        op |= 1 << i;
+                    }
+                }
+                for (int i = 0; i < 3; i++) {
+                    int b = (chunk >>> (8 * i)) & 0xff;
+                    if (b != 0) {
+                        write(b);
+                        op |= 0x10 << i;
+                    }
+                }
+                buf[opIndex] = (byte) op;
+                offset += chunk;
+                length -= chunk;
+            }
+            return count <= maxSize;
+        }
+    }
+}
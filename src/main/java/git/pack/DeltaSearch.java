@@ -0,0 +1,250 @@
+package git.pack;
+
+import git.enums.ObjectType;
+import git.metrics.Metrics;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Sliding-window delta search over the objects of a new pack.
+ * <p>
+ * Objects are ordered by type, path name hash and descending size, the same heuristics Git
+ * uses, so that likely bases sit next to each other. The ordered list is split into
+ * contiguous ranges of at most {@value #RANGE_OBJECTS} objects and {@value #RANGE_BYTES}
+ * inflated bytes, which are searched by parallel workers; within a range each object is tried
+ * against the previous {@code window} objects of the same type and stored as an
+ * {@code OFS_DELTA} against the base giving the smallest delta. Workers also deflate their
+ * results, and finished ranges are handed to a {@link ResultSink} in write order while later
+ * ones are still searched. Only a few ranges per worker are in flight at a time, so the
+ * memory held depends on the window and the range size, not on the size of the repository.
+ * The workers run on an executor owned by the caller, who can share it with the steps that
+ * prepare the candidates.
+ */
+public final class DeltaSearch {
+
+    private static final int MIN_DELTA_SIZE = 50;
+    private static final int MAX_DELTA_SOURCE = 512 * 1024 * 1024;
+    private static final int MIN_OBJECTS_PER_WORKER = 256;
+    private static final int RANGE_OBJECTS = 4096;
+    private static final int RANGE_BYTES = 8 * 1024 * 1024;
+    private static final int RANGES_IN_FLIGHT_PER_WORKER = 2;
+
+    /**
+     * An object to be packed, described by its header and the name hash of its path.
+     */
+    public record Candidate(ObjectId id, ObjectType type, long size, int nameHash) {
+    }
+
+    /**
+     * A pack entry ready to be written; {@code baseIndex} is the position of an earlier entry
+     * in the pack, or -1 for a whole object.
+     */
+    public record Result(byte[] id, int typeCode, long inflatedSize, int baseIndex, byte[] deflated) {
+    }
+
+    /**
+     * Receives the pack entries in write order; {@code index} is the position of the entry in
+     * the pack, which later entries use as {@link Result#baseIndex()}.
+     */
+    @FunctionalInterface
+    public interface ResultSink {
+        void accept(int index, Result result) throws IOException;
+    }
+
+    private record Range(int from, Future<Result[]> results) {
+    }
+
+    private final ObjectStore objectStore;
+    private final int window;
+    private final int maxDepth;
+    private final ExecutorService pool;
+    private final int threads;
+
+    /**
+     * @param pool    executor running the workers, with at least {@code threads} threads
+     * @param threads the most ranges searched at once
+     */
+    public DeltaSearch(ObjectStore objectStore, int window, int maxDepth, ExecutorService pool, int threads) {
+        this.objectStore = objectStore;
+        this.window = window;
+        this.maxDepth = maxDepth;
+        this.pool = pool;
+        this.threads = threads;
+    }
+
+    /**
+     * Orders the candidates, computes their pack entries and passes them to {@code sink} in
+     * write order, each as soon as it and all entries before it are done.
+     */
+    public void search(List<Candidate> candidates, ResultSink sink) throws IOException {
+        List<Candidate> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator.comparingInt((Candidate c) -> c.type().getPackCode())
+                .thenComparingInt(Candidate::nameHash)
+                .thenComparing(Comparator.comparingLong(Candidate::size).reversed()));
+
+        int workers = Math.max(1, Math.min(threads, ordered.size() / MIN_OBJECTS_PER_WORKER));
+        // Small searches still get one range per worker rather than a single one
+        int rangeObjects = Math.max(MIN_OBJECTS_PER_WORKER, Math.min(RANGE_OBJECTS, (ordered.size() + workers - 1) / workers));
+        Deque<Range> inFlight = new ArrayDeque<>();
+        try {
+            int next = 0;
+            while (next < ordered.size() || !inFlight.isEmpty()) {
+                while (next < ordered.size() && inFlight.size() < workers * RANGES_IN_FLIGHT_PER_WORKER) {
+                    int from = next;
+                    int to = rangeEnd(ordered, from, rangeObjects);
+                    inFlight.add(new Range(from, pool.submit(() -> searchRange(ordered, from, to))));
+                    next = to;
+                }
+                Range range = inFlight.poll();
+                Result[] results = range.results().get();
+                for (int i = 0; i < results.length; i++)
+                    sink.accept(range.from() + i, results[i]);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Delta search interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io)
+                throw io.getCause();
+            throw new IOException("Delta search failed", e.getCause());
+        } finally {
+            for (Range range : inFlight)
+                range.results().cancel(true);
+        }
+    }
+
+    /**
+     * Returns the end of the range starting at {@code from}: at most {@code maxObjects} objects,
+     * and no more than {@value #RANGE_BYTES} inflated bytes unless a single object is larger.
+     */
+    private static int rangeEnd(List<Candidate> ordered, int from, int maxObjects) {
+        int limit = Math.min(ordered.size(), from + maxObjects);
+        long bytes = ordered.get(from).size();
+        int to = from + 1;
+        while (to < limit && bytes + ordered.get(to).size() <= RANGE_BYTES)
+            bytes += ordered.get(to++).size();
+        return to;
+    }
+
+    /**
+     * Searches {@code [from, to)} with a private window, deflater and encoders.
+     *
+     * @return the entries of the range, whose base indexes are positions in the whole pack
+     */
+    private Result[] searchRange(List<Candidate> ordered, int from, int to) {
+        Result[] results = new Result[to - from];
+        Deque<WindowEntry> recent = new ArrayDeque<>(window);
+        Deflater deflater = new Deflater();
+        try {
+            for (int i = from; i < to; i++) {
+                Candidate candidate = ordered.get(i);
+                byte[] content = objectStore.read(candidate.id()).content();
+
+                byte[] bestDelta = null;
+                WindowEntry bestBase = null;
+                if (content.length >= MIN_DELTA_SIZE && content.length <= MAX_DELTA_SOURCE) {
+                    for (WindowEntry base : recent) {
+                        if (base.type != candidate.type() || base.depth >= maxDepth)
+                            continue;
+                        // A base much smaller than the target rarely yields a useful delta
+                        if (base.content.length < content.length / 32)
+                            continue;
+                        int limit = (bestDelta == null ? content.length / 2 - 20 : bestDelta.length) - 1;
+                        if (limit <= 0)
+                            continue;
+                        byte[] delta = base.encoder().encode(content, limit);
+                        if (delta != null) {
+                            bestDelta = delta;
+                            bestBase = base;
+                        }
+                    }
+                }
+
+                byte[] id = candidate.id().toRaw();
+                if (bestDelta != null) {
+                    results[i - from] = new Result(id, PackFile.OBJ_OFS_DELTA, bestDelta.length, bestBase.index,
+                            deflate(deflater, bestDelta));
+                } else {
+                    results[i - from] = new Result(id, candidate.type().getPackCode(), content.length, -1,
+                            deflate(deflater, content));
+                }
+
+                if (content.length >= MIN_DELTA_SIZE && content.length <= MAX_DELTA_SOURCE) {
+                    if (recent.size() == window)
+                        recent.removeLast();
+                    recent.addFirst(new WindowEntry(i, candidate.type(), content, bestBase == null ? 0 : bestBase.depth + 1));
+                }
+            }
+            return results;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] data) {
+        Metrics.add(Metrics.Counter.BYTES_DEFLATED, data.length);
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[Math.max(64, data.length / 2)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Git's path name hash: favours the last characters, so files with the same name or
+     * extension in different directories sort together.
+     */
+    public static int nameHash(byte[] name, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int c = name[i] & 0xff;
+            if (Character.isWhitespace(c))
+                continue;
+            hash = (hash >>> 2) + (c << 24);
+        }
+        return hash;
+    }
+
+    private static final class WindowEntry {
+
+        final int index;
+        final ObjectType type;
+        final byte[] content;
+        final int depth;
+        private DeltaEncoder encoder;
+
+        WindowEntry(int index, ObjectType type, byte[] content, int depth) {
+            this.index = index;
+            this.type = type;
+            this.content = content;
+            this.depth = depth;
+        }
+
+        DeltaEncoder encoder() {
+            if (encoder == null)
+                encoder = new DeltaEncoder(content);
+            return encoder;
+        }
+    }
+}
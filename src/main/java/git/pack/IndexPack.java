@@ -0,0 +1,427 @@
+package git.pack;
+
+import git.codec.CodecContext;
+import git.codec.Hex;
+import git.enums.ObjectType;
+import git.object.ObjectId;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static git.constant.Constant.TEMP_PACK_PREFIX;
+
+/**
+ * Stores a pack received from a remote and builds its index, like {@code git index-pack}.
+ * <p>
+ * The incoming bytes go straight into the pack directory while the trailing checksum is
+ * verified on the fly. A sequential pass then walks the mapped pack once to find the entry
+ * boundaries and their CRC-32s, which only needs inflating without keeping any output. The
+ * expensive part, inflating and hashing every object and applying every delta, runs on a
+ * fork-join pool: each whole object is a task, and once its ID is known the deltas based on
+ * it (by offset or by ID) become child tasks that share the base content, so independent
+ * delta chains resolve in parallel.
+ */
+public final class IndexPack {
+
+    private static final Logger log = Logger.getLogger(IndexPack.class.getName());
+
+    private static final int HEADER_LENGTH = 12;
+    private static final int TRAILER_LENGTH = 20;
+    private static final int[] NO_CHILDREN = {};
+
+    private final Path packDir;
+    private final int threads;
+
+    public IndexPack(Path packDir, int threads) {
+        this.packDir = packDir;
+        this.threads = threads;
+    }
+
+    /**
+     * Receives a complete pack from {@code in}, indexes it and publishes both files.
+     *
+     * @return the path of the published {@code .pack} file
+     */
+    public Path receive(InputStream in) throws IOException {
+        Files.createDirectories(packDir);
+        Path temp = Files.createTempFile(packDir, TEMP_PACK_PREFIX, ".pack");
+        try {
+            byte[] checksum = copy(in, temp);
+            return index(temp, checksum);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Copies the pack into {@code file}, digesting all but the last 20 bytes, and checks them
+     * against that digest.
+     *
+     * @return the pack checksum
+     */
+    private static byte[] copy(InputStream in, Path file) throws IOException {
+        MessageDigest digest = PackIndexWriter.newDigest();
+        byte[] buffer = new byte[TRAILER_LENGTH + CodecContext.BUFFER_SIZE];
+        int held = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), CodecContext.BUFFER_SIZE)) {
+            int n;
+            while ((n = in.read(buffer, held, buffer.length - held)) > 0) {
+                out.write(buffer, held, n);
+                int total = held + n;
+                // Hold back what might be the trailer until more data proves otherwise
+                int digestible = total - TRAILER_LENGTH;
+                if (digestible > 0) {
+                    digest.update(buffer, 0, digestible);
+                    System.arraycopy(buffer, digestible, buffer, 0, TRAILER_LENGTH);
+                    held = TRAILER_LENGTH;
+                } else {
+                    held = total;
+                }
+            }
+        }
+        byte[] checksum = Arrays.copyOf(buffer, TRAILER_LENGTH);
+        if (held != TRAILER_LENGTH || !Arrays.equals(digest.digest(), checksum))
+            throw new IOException("Received pack is truncated or its checksum does not match");
+        return checksum;
+    }
+
+    private Path index(Path temp, byte[] checksum) throws IOException {
+        long start = System.nanoTime();
+        PackFile pack = PackFile.openUnindexed(temp);
+        Entries scan = scan(pack);
+        long scanned = System.nanoTime();
+        byte[][] ids = resolve(pack, scan, null, null);
+
+        int count = ids.length;
+        int deltas = 0;
+        ObjectTable objects = new ObjectTable();
+        for (int i = 0; i < count; i++) {
+            int typeCode = scan.headers()[i].typeCode();
+            objects.add(ids[i], typeCode, scan.offsets()[i], scan.crcs()[i]);
+            if (typeCode == PackFile.OBJ_OFS_DELTA || typeCode == PackFile.OBJ_REF_DELTA)
+                deltas++;
+        }
+        Path published = PackWriter.publish(packDir, temp, objects, checksum);
+
+        long end = System.nanoTime();
+        log.log(Level.INFO, String.format("index-pack: %d objects (%d deltas) in %.1f ms, scan %.1f ms, resolve on %d threads %.1f ms",
+                count, deltas, (end - start) / 1e6, (scanned - start) / 1e6, threads, (end - scanned) / 1e6));
+        return published;
+    }
+
+    /**
+     * Checks an indexed pack by indexing it again: its trailing checksum is recomputed, every
+     * object is inflated, resolved and hashed on the pool as when it was received, and each
+     * ID, offset and CRC-32 must match the {@code .idx}. Each object is also handed to
+     * {@code visitor}, on the thread that resolved it.
+     * <p>
+     * Unlike {@link #index}, the entries are delimited by the offsets of the {@code .idx}
+     * rather than by inflating the pack from the start, so an entry that cannot be read is
+     * reported with the deltas based on it and the rest of the pack is still checked.
+     *
+     * @return the problems found, empty if none
+     * @throws IOException if the pack header cannot be read
+     */
+    public List<String> verify(PackFile pack, ObjectVisitor visitor) throws IOException {
+        List<String> problems = Collections.synchronizedList(new ArrayList<>());
+        Path path = pack.getPackPath();
+        if (!checksumMatches(pack))
+            problems.add("pack " + path + " does not match its checksum");
+        PackIndex index = pack.getIndex();
+        if (pack.objectCount() != index.getObjectCount())
+            problems.add("pack " + path + " has " + pack.objectCount() + " objects but its index " + index.getObjectCount());
+        Entries scan = indexedEntries(pack, problems);
+
+        byte[][] ids;
+        try {
+            ids = resolve(pack, scan, visitor, problems);
+        } catch (IOException e) {
+            problems.add(e.getMessage());
+            return problems;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == null)
+                continue;
+            int position = index.findPosition(ids[i]);
+            if (position < 0 || index.getOffset(position) != scan.offsets()[i])
+                problems.add(Hex.encode(ids[i]) + " at offset " + scan.offsets()[i] + " of " + path + " is not in its index");
+            else if (index.getCrc32(position) != scan.crcs()[i])
+                problems.add(Hex.encode(ids[i]) + " in " + path + " does not match its CRC-32");
+        }
+        return problems;
+    }
+
+    /**
+     * Walks the mapped pack once to find the entry boundaries, their headers and CRC-32s.
+     */
+    private static Entries scan(PackFile pack) throws IOException {
+        int count = pack.objectCount();
+        PackFile.EntryHeader[] headers = new PackFile.EntryHeader[count];
+        long[] offsets = new long[count];
+        int[] crcs = new int[count];
+        long offset = HEADER_LENGTH;
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < count; i++) {
+            if (offset >= pack.length() - TRAILER_LENGTH)
+                throw new IOException("Pack " + pack.getPackPath() + " ends after " + i + " of " + count + " objects");
+            headers[i] = pack.readEntryHeader(offset);
+            long end = pack.skipEntryData(headers[i].dataOffset());
+            offsets[i] = offset;
+            crc.reset();
+            for (long position = offset; position < end; ) {
+                ByteBuffer chunk = pack.slice(position);
+                chunk.limit((int) Math.min(chunk.limit(), end - position));
+                position += chunk.remaining();
+                crc.update(chunk);
+            }
+            crcs[i] = (int) crc.getValue();
+            offset = end;
+        }
+        if (offset != pack.length() - TRAILER_LENGTH)
+            throw new IOException("Unexpected data after the last object in " + pack.getPackPath());
+        return new Entries(headers, offsets, crcs);
+    }
+
+    /**
+     * Finds the entries of an indexed pack at the offsets of its {@code .idx}, each ending
+     * where the next begins. An entry whose header cannot be read is reported and left null.
+     */
+    private static Entries indexedEntries(PackFile pack, List<String> problems) {
+        PackIndex index = pack.getIndex();
+        int count = index.getObjectCount();
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++)
+            offsets[i] = index.getOffset(i);
+        Arrays.sort(offsets);
+        PackFile.EntryHeader[] headers = new PackFile.EntryHeader[count];
+        int[] crcs = new int[count];
+        CRC32 crc = new CRC32();
+        long trailer = pack.length() - TRAILER_LENGTH;
+        for (int i = 0; i < count; i++) {
+            long end = i + 1 < count ? offsets[i + 1] : trailer;
+            if (offsets[i] < HEADER_LENGTH || end > trailer || end <= offsets[i]) {
+                problems.add("bad offset " + offsets[i] + " in the index of " + pack.getPackPath());
+                continue;
+            }
+            try {
+                headers[i] = pack.readEntryHeader(offsets[i]);
+            } catch (IOException | RuntimeException e) {
+                problems.add("cannot read the object at offset " + offsets[i] + " of " + pack.getPackPath() + ": " + e.getMessage());
+                continue;
+            }
+            crc.reset();
+            for (long position = offsets[i]; position < end; ) {
+                ByteBuffer chunk = pack.slice(position);
+                chunk.limit((int) Math.min(chunk.limit(), end - position));
+                position += chunk.remaining();
+                crc.update(chunk);
+            }
+            crcs[i] = (int) crc.getValue();
+        }
+        return new Entries(headers, offsets, crcs);
+    }
+
+    /**
+     * Inflates, resolves and hashes every entry on the pool. With {@code failures}, an entry
+     * that cannot be resolved is added there and left without an ID, and so are the deltas
+     * based on it; without, the first such entry fails the whole pack.
+     *
+     * @return the ID of each entry, in pack order
+     */
+    private byte[][] resolve(PackFile pack, Entries scan, ObjectVisitor visitor, List<String> failures) throws IOException {
+        PackFile.EntryHeader[] headers = scan.headers();
+        long[] offsets = scan.offsets();
+        int count = headers.length;
+        int[][] ofsChildren = new int[count][];
+        Map<ObjectId, List<Integer>> refChildren = new HashMap<>();
+        List<Integer> roots = new ArrayList<>();
+        int unreadable = 0;
+        for (int i = 0; i < count; i++) {
+            PackFile.EntryHeader header = headers[i];
+            if (header == null) {
+                unreadable++;
+            } else if (header.typeCode() == PackFile.OBJ_OFS_DELTA) {
+                int base = Arrays.binarySearch(offsets, 0, i, header.baseOffset());
+                if (base < 0 && failures == null)
+                    throw new IOException("Delta at offset " + offsets[i] + " has no base at offset " + header.baseOffset());
+                if (base < 0)
+                    failures.add("delta at offset " + offsets[i] + " of " + pack.getPackPath() + " has no base at offset " + header.baseOffset());
+                else
+                    ofsChildren[base] = append(ofsChildren[base], i);
+            } else if (header.typeCode() == PackFile.OBJ_REF_DELTA) {
+                refChildren.computeIfAbsent(ObjectId.fromRaw(header.baseId()), key -> new ArrayList<>()).add(i);
+            } else {
+                roots.add(i);
+            }
+        }
+
+        byte[][] ids = new byte[count][];
+        AtomicInteger resolved = new AtomicInteger();
+        Resolver resolver = new Resolver(pack, headers, offsets, ofsChildren, refChildren, ids, resolved, visitor, failures);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    List<Resolver.ResolveTask> tasks = new ArrayList<>(roots.size());
+                    for (int root : roots)
+                        tasks.add(resolver.new ResolveTask(root, null, null));
+                    invokeAll(tasks);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        if (failures == null && resolved.get() != count)
+            throw new IOException((count - resolved.get()) + " deltas in " + pack.getPackPath() + " have no base in the pack");
+        if (failures != null && resolved.get() + unreadable != count)
+            failures.add((count - unreadable - resolved.get()) + " objects in " + pack.getPackPath() + " could not be resolved");
+        return ids;
+    }
+
+    private static boolean checksumMatches(PackFile pack) {
+        MessageDigest digest = CodecContext.get().digest();
+        long end = pack.length() - TRAILER_LENGTH;
+        for (long position = 0; position < end; ) {
+            ByteBuffer chunk = pack.slice(position);
+            chunk.limit((int) Math.min(chunk.limit(), end - position));
+            position += chunk.remaining();
+            digest.update(chunk);
+        }
+        byte[] trailer = new byte[TRAILER_LENGTH];
+        pack.slice(end).get(trailer);
+        return Arrays.equals(digest.digest(), trailer);
+    }
+
+    /**
+     * Receives every object of a pack as {@link #verify} resolves it.
+     */
+    public interface ObjectVisitor {
+        void visit(long offset, byte[] id, ObjectType type, byte[] content);
+    }
+
+    private static int[] append(int[] array, int value) {
+        if (array == null)
+            return new int[]{value};
+        int[] grown = Arrays.copyOf(array, array.length + 1);
+        grown[array.length] = value;
+        return grown;
+    }
+
+    private record Entries(PackFile.EntryHeader[] headers, long[] offsets, int[] crcs) {
+    }
+
+    /**
+     * Shared state of one resolution: the pack, what is known about each entry, and the IDs
+     * found so far.
+     */
+    private static final class Resolver {
+
+        private final PackFile pack;
+        private final PackFile.EntryHeader[] headers;
+        private final long[] offsets;
+        private final int[][] ofsChildren;
+        private final Map<ObjectId, List<Integer>> refChildren;
+        private final byte[][] ids;
+        private final AtomicInteger resolved;
+        private final ObjectVisitor visitor;
+        private final List<String> failures;
+
+        Resolver(PackFile pack, PackFile.EntryHeader[] headers, long[] offsets, int[][] ofsChildren,
+                 Map<ObjectId, List<Integer>> refChildren, byte[][] ids, AtomicInteger resolved,
+                 ObjectVisitor visitor, List<String> failures) {
+            this.pack = pack;
+            this.headers = headers;
+            this.offsets = offsets;
+            this.ofsChildren = ofsChildren;
+            this.refChildren = refChildren;
+            this.ids = ids;
+            this.resolved = resolved;
+            this.visitor = visitor;
+            this.failures = failures;
+        }
+
+        /**
+         * Inflates one entry, applying it to its base if it is a delta, hashes the result and
+         * then resolves the deltas that use it as their base.
+         */
+        final class ResolveTask extends RecursiveAction {
+
+            private final int entry;
+            private final ObjectType baseType;
+            private final byte[] baseContent;
+
+            ResolveTask(int entry, ObjectType baseType, byte[] baseContent) {
+                this.entry = entry;
+                this.baseType = baseType;
+                this.baseContent = baseContent;
+            }
+
+            @Override
+            protected void compute() {
+                try {
+                    PackFile.EntryHeader header = headers[entry];
+                    byte[] data = pack.inflate(header.dataOffset(), header.size());
+                    ObjectType type;
+                    byte[] content;
+                    if (baseContent == null) {
+                        type = ObjectType.fromPackCode(header.typeCode());
+                        content = data;
+                    } else {
+                        type = baseType;
+                        content = Delta.apply(baseContent, data);
+                    }
+                    byte[] id = hash(type, content);
+                    ids[entry] = id;
+                    resolved.incrementAndGet();
+                    if (visitor != null)
+                        visitor.visit(offsets[entry], id, type, content);
+
+                    int[] byOffset = ofsChildren[entry] == null ? NO_CHILDREN : ofsChildren[entry];
+                    List<Integer> byId = refChildren.getOrDefault(ObjectId.fromRaw(id), List.of());
+                    if (byOffset.length + byId.size() == 0)
+                        return;
+                    List<ResolveTask> children = new ArrayList<>(byOffset.length + byId.size());
+                    for (int child : byOffset)
+                        children.add(new ResolveTask(child, type, content));
+                    for (int child : byId)
+                        children.add(new ResolveTask(child, type, content));
+                    invokeAll(children);
+                } catch (IOException | RuntimeException e) {
+                    if (failures == null)
+                        throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+                    failures.add("cannot unpack the object at offset " + offsets[entry] + " of " + pack.getPackPath() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        private static byte[] hash(ObjectType type, byte[] content) {
+            MessageDigest digest = CodecContext.get().digest();
+            digest.update((type.getValue() + " " + content.length + "\0").getBytes(StandardCharsets.US_ASCII));
+            digest.update(content);
+            return digest.digest();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package git.pack;
+
+import git.enums.ObjectType;
+import git.object.ObjectId;
+
+import java.util.Arrays;
+
+/**
+ * The objects of a pack being written, held in primitive columns rather than one object per
+ * entry: each ID as two longs and an int, its offset, CRC-32 and type, in pages of
+ * {@value #PAGE_SIZE} entries that are allocated as the table grows, so that no array is ever
+ * copied and tens of millions of entries cost about 45 bytes each. An open-addressing table
+ * of entry numbers finds an entry by ID.
+ * <p>
+ * Entries are numbered in the order they were added. Not safe for concurrent use.
+ */
+public final class ObjectTable {
+
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private long[][] highs = new long[16][];
+    private long[][] middles = new long[16][];
+    private int[][] lows = new int[16][];
+    private long[][] offsets = new long[16][];
+    private int[][] crcs = new int[16][];
+    private byte[][] types = new byte[16][];
+    private int size;
+
+    // Entry number plus one per slot, 0 when free; at most half full, as most lookups miss
+    private int[] slots = new int[1024];
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of the entry with the raw ID at {@code offset} of {@code id}, or -1.
+     */
+    public int find(byte[] id, int offset) {
+        long high = readLong(id, offset);
+        long middle = readLong(id, offset + 8);
+        int low = readInt(id, offset + 16);
+        int mask = slots.length - 1;
+        for (int slot = (int) (high >>> 32) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (entry < 0)
+                return -1;
+            int page = entry >>> PAGE_SHIFT;
+            int index = entry & PAGE_MASK;
+            if (highs[page][index] == high && middles[page][index] == middle && lows[page][index] == low)
+                return entry;
+        }
+    }
+
+    public int find(ObjectId id) {
+        byte[] raw = new byte[ObjectId.LENGTH];
+        id.copyRawTo(raw, 0);
+        return find(raw, 0);
+    }
+
+    /**
+     * Adds an entry for an ID that is not in the table yet.
+     *
+     * @param packOffset the offset of the entry in the pack
+     * @return the number of the new entry
+     */
+    public int add(byte[] id, ObjectType type, long packOffset, int crc32) {
+        return add(id, type == null ? 0 : type.getPackCode(), packOffset, crc32);
+    }
+
+    int add(byte[] id, int typeCode, long packOffset, int crc32) {
+        int entry = size;
+        int page = entry >>> PAGE_SHIFT;
+        int index = entry & PAGE_MASK;
+        if (page == highs.length)
+            growDirectory();
+        if (highs[page] == null) {
+            highs[page] = new long[PAGE_SIZE];
+            middles[page] = new long[PAGE_SIZE];
+            lows[page] = new int[PAGE_SIZE];
+            offsets[page] = new long[PAGE_SIZE];
+            crcs[page] = new int[PAGE_SIZE];
+            types[page] = new byte[PAGE_SIZE];
+        }
+        highs[page][index] = readLong(id, 0);
+        middles[page][index] = readLong(id, 8);
+        lows[page][index] = readInt(id, 16);
+        offsets[page][index] = packOffset;
+        crcs[page][index] = crc32;
+        types[page][index] = (byte) typeCode;
+        size++;
+
+        if (size * 2L > slots.length)
+            rehash(slots.length * 2);
+        else
+            insertSlot(entry);
+        return entry;
+    }
+
+    public ObjectId getId(int entry) {
+        byte[] raw = new byte[ObjectId.LENGTH];
+        copyId(entry, raw, 0);
+        return ObjectId.fromRaw(raw);
+    }
+
+    public void copyId(int entry, byte[] out, int offset) {
+        int page = entry >>> PAGE_SHIFT;
+        int index = entry & PAGE_MASK;
+        writeLong(highs[page][index], out, offset);
+        writeLong(middles[page][index], out, offset + 8);
+        writeInt(lows[page][index], out, offset + 16);
+    }
+
+    /**
+     * The type of the object, or null if it was written as a delta or added without one.
+     */
+    public ObjectType getType(int entry) {
+        int code = types[entry >>> PAGE_SHIFT][entry & PAGE_MASK];
+        return code >= 1 && code <= 4 ? ObjectType.fromPackCode(code) : null;
+    }
+
+    public long getOffset(int entry) {
+        return offsets[entry >>> PAGE_SHIFT][entry & PAGE_MASK];
+    }
+
+    public int getCrc32(int entry) {
+        return crcs[entry >>> PAGE_SHIFT][entry & PAGE_MASK];
+    }
+
+    /**
+     * Returns the entry numbers sorted by ID, the order of a pack index.
+     */
+    int[] sortedById() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        sort(order, 0, size - 1);
+        return order;
+    }
+
+    private int compare(int a, int b) {
+        int pa = a >>> PAGE_SHIFT, ia = a & PAGE_MASK;
+        int pb = b >>> PAGE_SHIFT, ib = b & PAGE_MASK;
+        int result = Long.compareUnsigned(highs[pa][ia], highs[pb][ib]);
+        if (result == 0)
+            result = Long.compareUnsigned(middles[pa][ia], middles[pb][ib]);
+        if (result == 0)
+            result = Integer.compareUnsigned(lows[pa][ia], lows[pb][ib]);
+        return result;
+    }
+
+    /**
+     * Quicksort of entry numbers by ID, with a median-of-three pivot and insertion sort for
+     * short ranges; SHA-1 IDs are random, so the worst case does not arise.
+     */
+    private void sort(int[] order, int from, int to) {
+        while (to - from > 16) {
+            int mid = (from + to) >>> 1;
+            if (compare(order[mid], order[from]) < 0) swap(order, mid, from);
+            if (compare(order[to], order[from]) < 0) swap(order, to, from);
+            if (compare(order[to], order[mid]) < 0) swap(order, to, mid);
+            int pivot = order[mid];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (compare(order[i], pivot) < 0) i++;
+                while (compare(order[j], pivot) > 0) j--;
+                if (i <= j)
+                    swap(order, i++, j--);
+            }
+            // Recurse into the smaller side so the stack stays logarithmic
+            if (j - from < to - i) {
+                sort(order, from, j);
+                from = i;
+            } else {
+                sort(order, i, to);
+                to = j;
+            }
+        }
+        for (int i = from + 1; i <= to; i++) {
+            int value = order[i];
+            int j = i - 1;
+            while (j >= from && compare(order[j], value) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = value;
+        }
+    }
+
+    private static void swap(int[] array, int a, int b) {
+        int value = array[a];
+        array[a] = array[b];
+        array[b] = value;
+    }
+
+    private void insertSlot(int entry) {
+        int mask = slots.length - 1;
+        int slot = (int) (highs[entry >>> PAGE_SHIFT][entry & PAGE_MASK] >>> 32) & mask;
+        while (slots[slot] != 0)
+            slot = (slot + 1) & mask;
+        slots[slot] = entry + 1;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int entry = 0; entry < size; entry++)
+            insertSlot(entry);
+    }
+
+    private void growDirectory() {
+        int length = highs.length * 2;
+        highs = Arrays.copyOf(highs, length);
+        middles = Arrays.copyOf(middles, length);
+        lows = Arrays.copyOf(lows, length);
+        offsets = Arrays.copyOf(offsets, length);
+        crcs = Arrays.copyOf(crcs, length);
+        types = Arrays.copyOf(types, length);
+    }
+
+    private static long readLong(byte[] raw, int offset) {
+        return (long) readInt(raw, offset) << 32 | (readInt(raw, offset + 4) & 0xffffffffL);
+    }
+
+    private static int readInt(byte[] raw, int offset) {
+        return (raw[offset] & 0xff) << 24 | (raw[offset + 1] & 0xff) << 16
+                | (raw[offset + 2] & 0xff) << 8 | (raw[offset + 3] & 0xff);
+    }
+
+    private static void writeLong(long value, byte[] out, int offset) {
+        writeInt((int) (value >>> 32), out, offset);
+        writeInt((int) value, out, offset + 4);
+    }
+
+    private static void writeInt(int value, byte[] out, int offset) {
+        out[offset] = (byte) (value >>> 24);
+        out[offset + 1] = (byte) (value >>> 16);
+        out[offset + 2] = (byte) (value >>> 8);
+        out[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,341 @@
+package git.pack;
+
+import git.codec.CodecContext;
+import git.codec.Hex;
+import git.enums.ObjectType;
+import git.metrics.Metrics;
+import git.object.GitObject;
+import git.object.ObjectHeader;
+import git.object.ObjectStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Memory-mapped reader for a version 2 packfile and its index.
+ * <p>
+ * The pack is mapped in 1 GiB segments so packs beyond 2 GiB can be addressed. Objects are
+ * inflated straight from the mapping, and {@code OFS_DELTA}/{@code REF_DELTA} chains are
+ * resolved by reading only the bases along the chain; resolved bases are kept in a small
+ * {@link DeltaBaseCache}. Instances are safe for concurrent use.
+ */
+public final class PackFile {
+
+    static final int OBJ_OFS_DELTA = 6;
+    static final int OBJ_REF_DELTA = 7;
+    private static final int SIGNATURE = 0x5041434b; // "PACK"
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final int DELTA_HEADER_LIMIT = 32;
+    private static final long DELTA_BASE_CACHE_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Resolves {@code REF_DELTA} bases that may live outside this pack.
+     */
+    public interface BaseResolver {
+        GitObject read(byte[] id) throws IOException;
+    }
+
+    private final Path packPath;
+    private final PackIndex index;
+    private final MappedByteBuffer[] segments;
+    private final long length;
+    private final DeltaBaseCache baseCache = new DeltaBaseCache(DELTA_BASE_CACHE_BYTES);
+
+    private PackFile(Path packPath, PackIndex index, MappedByteBuffer[] segments, long length) {
+        this.packPath = packPath;
+        this.index = index;
+        this.segments = segments;
+        this.length = length;
+    }
+
+    /**
+     * Opens the pack belonging to the given {@code .idx} file.
+     */
+    public static PackFile open(Path idxPath) throws IOException {
+        String name = idxPath.getFileName().toString();
+        Path packPath = idxPath.resolveSibling(name.substring(0, name.length() - ".idx".length()) + ".pack");
+        return map(packPath, PackIndex.open(idxPath));
+    }
+
+    /**
+     * Maps a pack that has no index yet, for {@link IndexPack}. Only offset-based access works.
+     */
+    static PackFile openUnindexed(Path packPath) throws IOException {
+        return map(packPath, null);
+    }
+
+    private static PackFile map(Path packPath, PackIndex index) throws IOException {
+        try (FileChannel channel = FileChannel.open(packPath, StandardOpenOption.READ)) {
+            long length = channel.size();
+            int count = (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_MASK + 1, length - start));
+            }
+            PackFile pack = new PackFile(packPath, index, segments, length);
+            if (length < 12 || pack.readInt(0) != SIGNATURE)
+                throw new IOException("Not a packfile: " + packPath);
+            return pack;
+        }
+    }
+
+    public Path getPackPath() {
+        return packPath;
+    }
+
+    public PackIndex getIndex() {
+        return index;
+    }
+
+    public boolean contains(byte[] id) {
+        return index.findPosition(id) >= 0;
+    }
+
+    /**
+     * Reads the object {@code id}, or returns null when this pack does not contain it.
+     */
+    public GitObject read(byte[] id, BaseResolver resolver) throws IOException {
+        long offset = index.findOffset(id);
+        return offset < 0 ? null : readAt(offset, resolver);
+    }
+
+    /**
+     * Reads and fully resolves the object stored at {@code offset}.
+     */
+    public GitObject readAt(long offset, BaseResolver resolver) throws IOException {
+        EntryHeader header = readEntryHeader(offset);
+        return switch (header.typeCode) {
+            case OBJ_OFS_DELTA -> {
+                GitObject base = readBaseAt(header.baseOffset, resolver);
+                yield new GitObject(base.type(), Delta.apply(base.content(), inflate(header.dataOffset, header.size)));
+            }
+            case OBJ_REF_DELTA -> {
+                GitObject base = readBase(header.baseId, resolver);
+                yield new GitObject(base.type(), Delta.apply(base.content(), inflate(header.dataOffset, header.size)));
+            }
+            default -> new GitObject(ObjectType.fromPackCode(header.typeCode), inflate(header.dataOffset, header.size));
+        };
+    }
+
+    /**
+     * Reads the object stored at {@code offset} unless a NUL byte among its first
+     * {@code probe} bytes marks it binary. A whole entry is given up on as soon as its first
+     * {@code probe} bytes are inflated; a delta has to be resolved before it can be probed.
+     *
+     * @return the object, or null if it is binary
+     */
+    public GitObject readTextAt(long offset, BaseResolver resolver, int probe) throws IOException {
+        EntryHeader header = readEntryHeader(offset);
+        if (header.typeCode == OBJ_OFS_DELTA || header.typeCode == OBJ_REF_DELTA) {
+            GitObject object = readAt(offset, resolver);
+            return ObjectStore.isBinary(object.content(), probe) ? null : object;
+        }
+        byte[] content = inflate(header.dataOffset, header.size, probe);
+        return content == null ? null : new GitObject(ObjectType.fromPackCode(header.typeCode), content);
+    }
+
+    /**
+     * Returns the type and inflated size of the object at {@code offset} without inflating
+     * more than the few header bytes of each delta along its chain.
+     */
+    public ObjectHeader readHeaderAt(long offset, BaseResolver resolver) throws IOException {
+        EntryHeader header = readEntryHeader(offset);
+        if (header.typeCode != OBJ_OFS_DELTA && header.typeCode != OBJ_REF_DELTA)
+            return new ObjectHeader(ObjectType.fromPackCode(header.typeCode), header.size);
+
+        long size = Delta.resultSize(inflatePrefix(header.dataOffset, (int) Math.min(header.size, DELTA_HEADER_LIMIT)));
+        ObjectType type = header.typeCode == OBJ_OFS_DELTA
+                ? readHeaderAt(header.baseOffset, resolver).type()
+                : readBase(header.baseId, resolver).type();
+        return new ObjectHeader(type, size);
+    }
+
+    /**
+     * Reads the base of an {@code OFS_DELTA}, through the base cache.
+     */
+    private GitObject readBaseAt(long offset, BaseResolver resolver) throws IOException {
+        GitObject base = baseCache.get(offset);
+        if (base == null) {
+            base = readAt(offset, resolver);
+            baseCache.put(offset, base);
+        }
+        return base;
+    }
+
+    private GitObject readBase(byte[] baseId, BaseResolver resolver) throws IOException {
+        long baseOffset = index.findOffset(baseId);
+        GitObject base = baseOffset >= 0 ? readAt(baseOffset, resolver) : resolver.read(baseId);
+        if (base == null)
+            throw new IOException("Missing delta base " + Hex.encode(baseId));
+        return base;
+    }
+
+    long length() {
+        return length;
+    }
+
+    /**
+     * Returns the object count from the pack header.
+     */
+    int objectCount() throws IOException {
+        int version = readInt(4);
+        if (version != 2 && version != 3)
+            throw new IOException("Unsupported pack version " + version + " in " + packPath);
+        return readInt(8);
+    }
+
+    EntryHeader readEntryHeader(long offset) throws IOException {
+        long position = offset;
+        int c = readByte(position++);
+        int typeCode = (c >> 4) & 7;
+        long size = c & 0x0f;
+        int shift = 4;
+        while ((c & 0x80) != 0) {
+            c = readByte(position++);
+            size |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        }
+
+        long baseOffset = -1;
+        byte[] baseId = null;
+        if (typeCode == OBJ_OFS_DELTA) {
+            c = readByte(position++);
+            long distance = c & 0x7f;
+            while ((c & 0x80) != 0) {
+                c = readByte(position++);
+                distance = ((distance + 1) << 7) | (c & 0x7f);
+            }
+            baseOffset = offset - distance;
+        } else if (typeCode == OBJ_REF_DELTA) {
+            baseId = new byte[PackIndex.ID_LENGTH];
+            for (int i = 0; i < baseId.length; i++)
+                baseId[i] = (byte) readByte(position++);
+        } else if (typeCode < 1 || typeCode > 4) {
+            throw new IOException("Invalid object type " + typeCode + " at offset " + offset + " in " + packPath);
+        }
+        return new EntryHeader(typeCode, size, position, baseOffset, baseId);
+    }
+
+    /**
+     * Inflates the entry data starting at {@code dataOffset} without keeping it, and returns the
+     * offset just past its compressed bytes; this is how entry boundaries are found in a pack
+     * that has no index.
+     */
+    long skipEntryData(long dataOffset) throws IOException {
+        Inflater inflater = CodecContext.get().inflater();
+        byte[] scratch = CodecContext.get().outputBuffer();
+        try {
+            long position = dataOffset;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (position >= length)
+                        throw new IOException("Truncated object data in " + packPath);
+                    ByteBuffer input = slice(position);
+                    position += input.remaining();
+                    inflater.setInput(input);
+                }
+                if (inflater.inflate(scratch) == 0 && inflater.needsDictionary())
+                    throw new IOException("Corrupt object data in " + packPath);
+            }
+            Metrics.add(Metrics.Counter.BYTES_INFLATED, inflater.getBytesWritten());
+            return dataOffset + inflater.getBytesRead();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt object data in " + packPath, e);
+        }
+    }
+
+    byte[] inflate(long dataOffset, long size) throws IOException {
+        return inflate(dataOffset, size, 0);
+    }
+
+    /**
+     * Inflates entry data of {@code size} bytes, first only as far as {@code probe} bytes to
+     * look for a NUL byte there when {@code probe} is positive.
+     *
+     * @return the data, or null if the probe found a NUL byte
+     */
+    private byte[] inflate(long dataOffset, long size, int probe) throws IOException {
+        byte[] out = new byte[Math.toIntExact(size)];
+        Inflater inflater = CodecContext.get().inflater();
+        try {
+            long position = dataOffset;
+            int written = 0;
+            boolean probing = probe > 0;
+            int limit = probing ? Math.min(probe, out.length) : out.length;
+            while (!inflater.finished()) {
+                if (probing && written == limit) {
+                    probing = false;
+                    if (ObjectStore.isBinary(out, written)) {
+                        Metrics.add(Metrics.Counter.BYTES_INFLATED, written);
+                        return null;
+                    }
+                    limit = out.length;
+                }
+                if (inflater.needsInput()) {
+                    if (position >= length)
+                        throw new IOException("Truncated object data in " + packPath);
+                    ByteBuffer input = slice(position);
+                    position += input.remaining();
+                    inflater.setInput(input);
+                }
+                int n = inflater.inflate(out, written, limit - written);
+                if (n == 0 && !inflater.finished() && !inflater.needsInput())
+                    throw new IOException("Object larger than its recorded size in " + packPath);
+                written += n;
+            }
+            if (written != out.length)
+                throw new IOException("Inflated size mismatch in " + packPath);
+            if (probing && ObjectStore.isBinary(out, written))
+                return null;
+            Metrics.add(Metrics.Counter.BYTES_INFLATED, written);
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt object data in " + packPath, e);
+        }
+    }
+
+    private byte[] inflatePrefix(long dataOffset, int limit) throws IOException {
+        byte[] out = new byte[limit];
+        Inflater inflater = CodecContext.get().inflater();
+        try {
+            inflater.setInput(slice(dataOffset));
+            int written = 0;
+            while (written < limit && !inflater.finished()) {
+                int n = inflater.inflate(out, written, limit - written);
+                if (n == 0 && inflater.needsInput())
+                    break;
+                written += n;
+            }
+            Metrics.add(Metrics.Counter.BYTES_INFLATED, written);
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt object data in " + packPath, e);
+        }
+    }
+
+    ByteBuffer slice(long position) {
+        MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+        int start = (int) (position & SEGMENT_MASK);
+        return segment.slice(start, segment.limit() - start);
+    }
+
+    private int readByte(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK)) & 0xff;
+    }
+
+    private int readInt(long position) {
+        return (readByte(position) << 24) | (readByte(position + 1) << 16)
+                | (readByte(position + 2) << 8) | readByte(position + 3);
+    }
+
+    record EntryHeader(int typeCode, long size, long dataOffset, long baseOffset, byte[] baseId) {
+    }
+}
@@ -0,0 +1,107 @@
+package git.pack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped reader for version 2 pack index ({@code .idx}) files.
+ * <p>
+ * Lookups first narrow the candidate range with the 256-entry fan-out table and then binary
+ * search the sorted object names in place, so finding an object is O(log n) and touches only
+ * a handful of pages of the mapping.
+ */
+public final class PackIndex {
+
+    static final int ID_LENGTH = 20;
+    private static final int MAGIC = 0xff744f63; // "\377tOc"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int FANOUT_SIZE = 256 * 4;
+
+    private final ByteBuffer buffer;
+    private final int objectCount;
+    private final int namesOffset;
+    private final int crcOffset;
+    private final int offsetsOffset;
+    private final int largeOffsetsOffset;
+
+    private PackIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported pack index format");
+        this.objectCount = buffer.getInt(HEADER_SIZE + 255 * 4);
+        this.namesOffset = HEADER_SIZE + FANOUT_SIZE;
+        this.crcOffset = namesOffset + objectCount * ID_LENGTH;
+        this.offsetsOffset = crcOffset + objectCount * 4;
+        this.largeOffsetsOffset = offsetsOffset + objectCount * 4;
+    }
+
+    public static PackIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new PackIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * Returns the position of {@code id} in the sorted name table, or -1 when absent.
+     */
+    public int findPosition(byte[] id) {
+        int first = id[0] & 0xff;
+        int low = first == 0 ? 0 : buffer.getInt(HEADER_SIZE + (first - 1) * 4);
+        int high = buffer.getInt(HEADER_SIZE + first * 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareName(mid, id);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the pack offset of {@code id}, or -1 when the pack does not contain it.
+     */
+    public long findOffset(byte[] id) {
+        int position = findPosition(id);
+        return position < 0 ? -1 : getOffset(position);
+    }
+
+    public byte[] getObjectId(int position) {
+        byte[] id = new byte[ID_LENGTH];
+        buffer.get(namesOffset + position * ID_LENGTH, id);
+        return id;
+    }
+
+    public long getOffset(int position) {
+        int offset = buffer.getInt(offsetsOffset + position * 4);
+        if (offset >= 0)
+            return offset;
+        // The most significant bit selects an entry of the 64-bit offset table
+        return buffer.getLong(largeOffsetsOffset + (offset & 0x7fffffff) * 8);
+    }
+
+    public int getCrc32(int position) {
+        return buffer.getInt(crcOffset + position * 4);
+    }
+
+    private int compareName(int position, byte[] id) {
+        int base = namesOffset + position * ID_LENGTH;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            int cmp = Integer.compare(buffer.get(base + i) & 0xff, id[i] & 0xff);
+            if (cmp != 0)
+                return cmp;
+        }
+        return 0;
+    }
+}
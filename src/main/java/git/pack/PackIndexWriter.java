@@ -0,0 +1,91 @@
+package git.pack;
+
+import git.object.ObjectId;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static git.constant.Constant.SHA_1;
+
+/**
+ * Writes version 2 pack index ({@code .idx}) files.
+ */
+public final class PackIndexWriter {
+
+    private static final byte[] MAGIC = {(byte) 0xff, 't', 'O', 'c'};
+    private static final int VERSION = 2;
+    private static final long MAX_SMALL_OFFSET = 0x7fffffffL;
+
+    private PackIndexWriter() {
+    }
+
+    /**
+     * Writes the index for the entries of {@code objects}, which may be in any order.
+     *
+     * @param packChecksum the SHA-1 trailer of the pack the entries belong to
+     */
+    public static void write(Path file, ObjectTable objects, byte[] packChecksum) throws IOException {
+        int[] sorted = objects.sortedById();
+        byte[] id = new byte[ObjectId.LENGTH];
+
+        MessageDigest digest = newDigest();
+        try (OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+             DataOutputStream out = new DataOutputStream(new DigestOutputStream(fileOut, digest))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+
+            int[] fanout = new int[256];
+            for (int entry : sorted) {
+                objects.copyId(entry, id, 0);
+                fanout[id[0] & 0xff]++;
+            }
+            int cumulative = 0;
+            for (int count : fanout) {
+                cumulative += count;
+                out.writeInt(cumulative);
+            }
+
+            for (int entry : sorted) {
+                objects.copyId(entry, id, 0);
+                out.write(id);
+            }
+            for (int entry : sorted)
+                out.writeInt(objects.getCrc32(entry));
+
+            List<Long> largeOffsets = new ArrayList<>();
+            for (int entry : sorted) {
+                long offset = objects.getOffset(entry);
+                if (offset <= MAX_SMALL_OFFSET) {
+                    out.writeInt((int) offset);
+                } else {
+                    out.writeInt(0x80000000 | largeOffsets.size());
+                    largeOffsets.add(offset);
+                }
+            }
+            for (long offset : largeOffsets)
+                out.writeLong(offset);
+
+            out.write(packChecksum);
+            out.flush();
+            // The trailing checksum covers everything before it, so write it past the digest
+            fileOut.write(digest.digest());
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(SHA_1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package git.pack;
+
+import git.codec.CodecContext;
+import git.codec.Hex;
+import git.enums.ObjectType;
+import git.metrics.Metrics;
+import git.object.ObjectStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static git.constant.Constant.TEMP_PACK_PREFIX;
+
+/**
+ * Appends objects to a new version 2 packfile and publishes it with its index.
+ * <p>
+ * The object count in the pack header is patched in by {@link #finish()}, so callers may
+ * stream objects without knowing their number up front. Entries are written to a temporary
+ * file in the pack directory; {@code finish()} appends the checksum trailer, renames the pack
+ * to {@code pack-<checksum>.pack} and writes the matching {@code .idx}, so readers never see
+ * a pack without its index.
+ */
+public final class PackWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {'P', 'A', 'C', 'K'};
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+
+    private final Path packDir;
+    private final Path temp;
+    private final FileChannel channel;
+    private final Deflater deflater = new Deflater();
+    private final ObjectTable objects = new ObjectTable();
+    private final CRC32 crc = new CRC32();
+    private byte[] deflateBuffer = new byte[64 * 1024];
+    // Entries appended but not yet written, so that small objects cost one write per batch
+    private final ByteBuffer pending = ByteBuffer.allocate(256 * 1024);
+    private long position = HEADER_SIZE;
+    private boolean finished;
+
+    public PackWriter(Path packDir) throws IOException {
+        this.packDir = packDir;
+        Files.createDirectories(packDir);
+        this.temp = Files.createTempFile(packDir, TEMP_PACK_PREFIX, ".pack");
+        this.channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        channel.write(ByteBuffer.wrap(new byte[HEADER_SIZE]));
+    }
+
+    /**
+     * Deflates and appends a whole object.
+     *
+     * @return the offset of the entry in the pack
+     */
+    public long write(byte[] id, ObjectType type, byte[] content) throws IOException {
+        return writeRaw(id, type.getPackCode(), content.length, -1, deflate(content));
+    }
+
+    /**
+     * Deflates and appends a delta against the entry at {@code baseOffset}.
+     */
+    public long writeOfsDelta(byte[] id, long baseOffset, byte[] delta) throws IOException {
+        return writeRaw(id, PackFile.OBJ_OFS_DELTA, delta.length, baseOffset, deflate(delta));
+    }
+
+    /**
+     * Appends an entry whose data is already deflated, e.g. by a worker thread.
+     *
+     * @param typeCode     pack type code; {@code OBJ_OFS_DELTA} requires {@code baseOffset}
+     * @param inflatedSize size of the whole object or delta before compression
+     * @param deflated     zlib stream of the object or delta
+     */
+    public long writeRaw(byte[] id, int typeCode, long inflatedSize, long baseOffset, byte[] deflated) throws IOException {
+        byte[] header = encodeHeader(typeCode, inflatedSize, position, baseOffset);
+        crc.reset();
+        crc.update(header);
+        crc.update(deflated);
+
+        long offset = position;
+        writeFully(ByteBuffer.wrap(header));
+        writeFully(ByteBuffer.wrap(deflated));
+        objects.add(id, typeCode, offset, (int) crc.getValue());
+        return offset;
+    }
+
+    public int getObjectCount() {
+        return objects.size();
+    }
+
+    /**
+     * The entries written so far, in the order they were written.
+     */
+    public ObjectTable getObjects() {
+        return objects;
+    }
+
+    /**
+     * Reads back the content of the object written at {@code offset}, applying its delta chain
+     * if it is a delta, so that a writer can build on objects of the pack before it is
+     * published.
+     */
+    public byte[] read(long offset) throws IOException {
+        flush();
+        ByteBuffer header = ByteBuffer.allocate(32);
+        channel.read(header, offset);
+        int c = header.get(0) & 0xff;
+        int typeCode = (c >> 4) & 7;
+        long size = c & 0x0f;
+        int length = 1;
+        for (int shift = 4; (c & 0x80) != 0; shift += 7) {
+            c = header.get(length++) & 0xff;
+            size |= (long) (c & 0x7f) << shift;
+        }
+        long baseOffset = -1;
+        if (typeCode == PackFile.OBJ_OFS_DELTA) {
+            c = header.get(length++) & 0xff;
+            long distance = c & 0x7f;
+            while ((c & 0x80) != 0) {
+                c = header.get(length++) & 0xff;
+                distance = ((distance + 1) << 7) | (c & 0x7f);
+            }
+            baseOffset = offset - distance;
+        } else if (typeCode < 1 || typeCode > 4) {
+            throw new IOException("Cannot read back the entry of type " + typeCode + " at offset " + offset + " of " + temp);
+        }
+
+        byte[] content = inflate(offset, offset + length, Math.toIntExact(size));
+        return baseOffset < 0 ? content : Delta.apply(read(baseOffset), content);
+    }
+
+    private byte[] inflate(long offset, long position, int size) throws IOException {
+        byte[] content = new byte[size];
+        Inflater inflater = CodecContext.get().inflater();
+        ByteBuffer input = CodecContext.get().input();
+        int written = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    input.clear();
+                    int n = channel.read(input, position);
+                    if (n <= 0)
+                        throw new IOException("Truncated object at offset " + offset + " of " + temp);
+                    position += n;
+                    inflater.setInput(input.flip());
+                }
+                written += inflater.inflate(content, written, content.length - written);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt object at offset " + offset + " of " + temp, e);
+        }
+        if (written != content.length)
+            throw new IOException("Size mismatch of the object at offset " + offset + " of " + temp);
+        return content;
+    }
+
+    /**
+     * Finalizes the pack and writes its index.
+     *
+     * @return the path of the published {@code .pack} file
+     */
+    public Path finish() throws IOException {
+        flush();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(SIGNATURE).putInt(VERSION).putInt(objects.size()).flip();
+        channel.write(header, 0);
+
+        MessageDigest digest = PackIndexWriter.newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long read = 0;
+        while (read < position) {
+            buffer.clear();
+            int n = channel.read(buffer, read);
+            if (n < 0)
+                throw new IOException("Unexpected end of pack " + temp);
+            digest.update(buffer.array(), 0, n);
+            read += n;
+        }
+        byte[] checksum = digest.digest();
+        writeFully(ByteBuffer.wrap(checksum));
+        flush();
+        ObjectStore.force(channel, temp);
+        channel.close();
+        finished = true;
+
+        return publish(packDir, temp, objects, checksum);
+    }
+
+    /**
+     * Writes the index of the complete pack {@code temp} and moves both files into place as
+     * {@code pack-<checksum>.pack} and {@code .idx}, read-only like Git's.
+     */
+    static Path publish(Path packDir, Path temp, ObjectTable objects, byte[] checksum) throws IOException {
+        String name = "pack-" + Hex.encode(checksum);
+        Path pack = packDir.resolve(name + ".pack");
+        Path idxTemp = Files.createTempFile(packDir, TEMP_PACK_PREFIX, ".idx");
+        try {
+            PackIndexWriter.write(idxTemp, objects, checksum);
+            ObjectStore.makeReadOnly(temp);
+            ObjectStore.makeReadOnly(idxTemp);
+            Files.move(temp, pack, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(idxTemp, packDir.resolve(name + ".idx"), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(idxTemp);
+        }
+        return pack;
+    }
+
+    /**
+     * Discards the pack unless it was finished.
+     */
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        if (!finished) {
+            channel.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Encodes a pack entry header: type and size, followed for {@code OFS_DELTA} by the
+     * distance back to the base entry.
+     */
+    static byte[] encodeHeader(int typeCode, long size, long offset, long baseOffset) {
+        byte[] out = new byte[32];
+        int n = 0;
+        int c = (typeCode << 4) | (int) (size & 0x0f);
+        size >>>= 4;
+        while (size != 0) {
+            out[n++] = (byte) (c | 0x80);
+            c = (int) (size & 0x7f);
+            size >>>= 7;
+        }
+        out[n++] = (byte) c;
+
+        if (typeCode == PackFile.OBJ_OFS_DELTA) {
+            long distance = offset - baseOffset;
+            byte[] encoded = new byte[10];
+            int pos = encoded.length - 1;
+            encoded[pos] = (byte) (distance & 0x7f);
+            while ((distance >>>= 7) != 0)
+                encoded[--pos] = (byte) (0x80 | (--distance & 0x7f));
+            System.arraycopy(encoded, pos, out, n, encoded.length - pos);
+            n += encoded.length - pos;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private byte[] deflate(byte[] data) {
+        Metrics.add(Metrics.Counter.BYTES_DEFLATED, data.length);
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == deflateBuffer.length)
+                deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+            length += deflater.deflate(deflateBuffer, length, deflateBuffer.length - length);
+        }
+        return Arrays.copyOf(deflateBuffer, length);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() > pending.remaining())
+            flush();
+        if (buffer.remaining() <= pending.remaining()) {
+            position += buffer.remaining();
+            pending.put(buffer);
+            return;
+        }
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private void flush() throws IOException {
+        pending.flip();
+        long at = position - pending.remaining();
+        while (pending.hasRemaining())
+            at += channel.write(pending, at);
+        pending.clear();
+    }
+}
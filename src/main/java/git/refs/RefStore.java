@@ -0,0 +1,165 @@
+package git.refs;
+
+import git.command.CommandContext;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static git.constant.Constant.GIT_DIRECTORY;
+
+/**
+ * The refs of a repository: loose files under {@code .git/refs} and {@code .git/packed-refs}.
+ * <p>
+ * A loose ref shadows a packed one of the same name. Updates take a {@code .lock} file next to
+ * the ref and rename it into place, so concurrent Git processes see either value but never a
+ * partial one.
+ */
+public final class RefStore {
+
+    private static final String SYMBOLIC_PREFIX = "ref: ";
+    private static final String PACKED_REFS = "packed-refs";
+    private static final String PACKED_REFS_HEADER = "# pack-refs with: peeled fully-peeled sorted \n";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final int MAX_SYMBOLIC_DEPTH = 5;
+
+    private final Path gitDir;
+
+    public RefStore(Path gitDir) {
+        this.gitDir = gitDir;
+    }
+
+    /**
+     * Opens the refs of the repository in the command's working directory.
+     */
+    public static RefStore open() {
+        return new RefStore(CommandContext.current().resolve(GIT_DIRECTORY));
+    }
+
+    /**
+     * Resolves {@code name}, following symbolic refs such as {@code HEAD}.
+     *
+     * @return the object ID, or null if the ref or the branch it points to does not exist
+     */
+    public String resolve(String name) throws IOException {
+        String current = name;
+        for (int depth = 0; depth <= MAX_SYMBOLIC_DEPTH; depth++) {
+            Path loose = gitDir.resolve(current);
+            if (Files.isRegularFile(loose)) {
+                String value = Files.readString(loose, StandardCharsets.UTF_8).trim();
+                if (!value.startsWith(SYMBOLIC_PREFIX))
+                    return value;
+                current = value.substring(SYMBOLIC_PREFIX.length()).trim();
+                continue;
+            }
+            return readPacked().get(current);
+        }
+        throw new IOException("Symbolic ref loop at " + name);
+    }
+
+    /**
+     * Returns the ref {@code name} points to if it is symbolic, otherwise null.
+     */
+    public String readSymbolic(String name) throws IOException {
+        Path loose = gitDir.resolve(name);
+        if (!Files.isRegularFile(loose))
+            return null;
+        String value = Files.readString(loose, StandardCharsets.UTF_8).trim();
+        return value.startsWith(SYMBOLIC_PREFIX) ? value.substring(SYMBOLIC_PREFIX.length()).trim() : null;
+    }
+
+    /**
+     * Lists the refs whose names start with {@code prefix}, such as {@code refs/heads/}, sorted
+     * by name. Symbolic refs among them are left out.
+     */
+    public SortedMap<String, String> list(String prefix) throws IOException {
+        SortedMap<String, String> refs = new TreeMap<>();
+        for (Map.Entry<String, String> packed : readPacked().entrySet())
+            if (packed.getKey().startsWith(prefix))
+                refs.put(packed.getKey(), packed.getValue());
+
+        Path refsDir = gitDir.resolve("refs");
+        if (Files.isDirectory(refsDir)) {
+            try (Stream<Path> files = Files.walk(refsDir)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    String name = gitDir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                    if (!name.startsWith(prefix) || name.endsWith(LOCK_SUFFIX))
+                        continue;
+                    String value = Files.readString(file, StandardCharsets.UTF_8).trim();
+                    if (!value.startsWith(SYMBOLIC_PREFIX))
+                        refs.put(name, value);
+                }
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Points the loose ref {@code name} at the object {@code id}.
+     */
+    public void update(String name, String id) throws IOException {
+        write(name, id + "\n");
+    }
+
+    /**
+     * Makes {@code name} a symbolic ref to {@code target}, as {@code HEAD} is to a branch.
+     */
+    public void link(String name, String target) throws IOException {
+        write(name, SYMBOLIC_PREFIX + target + "\n");
+    }
+
+    /**
+     * Replaces {@code packed-refs} with {@code refs}, recording the peeled value of each
+     * annotated tag in {@code peeled}. Cheaper than one loose file per ref when a clone brings
+     * in many branches and tags.
+     */
+    public void writePacked(Map<String, String> refs, Map<String, String> peeled) throws IOException {
+        StringBuilder content = new StringBuilder(PACKED_REFS_HEADER);
+        for (Map.Entry<String, String> ref : new TreeMap<>(refs).entrySet()) {
+            content.append(ref.getValue()).append(' ').append(ref.getKey()).append('\n');
+            String target = peeled.get(ref.getKey());
+            if (target != null)
+                content.append('^').append(target).append('\n');
+        }
+        write(PACKED_REFS, content.toString());
+    }
+
+    private void write(String name, String content) throws IOException {
+        Path file = gitDir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Path lock = file.resolveSibling(file.getFileName() + LOCK_SUFFIX);
+        try {
+            Files.writeString(lock, content, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException("Unable to lock " + name + ": " + lock + " exists", e);
+        }
+        try {
+            Files.move(lock, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(lock);
+        }
+    }
+
+    private Map<String, String> readPacked() throws IOException {
+        Map<String, String> refs = new TreeMap<>();
+        Path file = gitDir.resolve(PACKED_REFS);
+        if (!Files.isRegularFile(file))
+            return refs;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("^"))
+                continue;
+            int space = line.indexOf(' ');
+            if (space > 0)
+                refs.put(line.substring(space + 1).trim(), line.substring(0, space));
+        }
+        return refs;
+    }
+}
@@ -0,0 +1,100 @@
+package git.transport;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * The smart HTTP protocol: the advertisement is fetched from
+ * {@code info/refs?service=git-upload-pack} and the request is POSTed to
+ * {@code git-upload-pack}, whose response body streams the pack.
+ */
+final class HttpTransport implements Transport {
+
+    private static final String SERVICE = "git-upload-pack";
+    private static final String ADVERTISEMENT_TYPE = "application/x-git-upload-pack-advertisement";
+    private static final String REQUEST_TYPE = "application/x-git-upload-pack-request";
+    private static final String RESULT_TYPE = "application/x-git-upload-pack-result";
+    private static final String USER_AGENT = "git/codecrafters-git";
+
+    private final URI base;
+    private final HttpClient client;
+    private InputStream response;
+
+    HttpTransport(URI url) {
+        String text = url.toString();
+        this.base = URI.create(text.endsWith("/") ? text : text + "/");
+        this.client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    @Override
+    public InputStream openAdvertisement() throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(base.resolve("info/refs?service=" + SERVICE))
+                .header("User-Agent", USER_AGENT)
+                .GET()
+                .build();
+        InputStream in = send(request, ADVERTISEMENT_TYPE);
+        // Smart servers open with a "# service=..." packet and a flush before the refs
+        String service = PacketLine.readString(in);
+        if (!("# service=" + SERVICE).equals(service))
+            throw new IOException("Unexpected service announcement from " + base + ": " + service);
+        if (PacketLine.read(in) != null)
+            throw new IOException("Missing flush after the service announcement from " + base);
+        return in;
+    }
+
+    @Override
+    public InputStream sendRequest(byte[] body) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(base.resolve(SERVICE))
+                .header("User-Agent", USER_AGENT)
+                .header("Content-Type", REQUEST_TYPE)
+                .header("Accept", RESULT_TYPE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return send(request, RESULT_TYPE);
+    }
+
+    private InputStream send(HttpRequest request, String expectedType) throws IOException {
+        HttpResponse<InputStream> result;
+        try {
+            result = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while contacting " + request.uri(), e);
+        }
+        InputStream body = result.body();
+        if (result.statusCode() != 200) {
+            body.close();
+            throw new IOException("HTTP " + result.statusCode() + " from " + request.uri());
+        }
+        String type = result.headers().firstValue("Content-Type").orElse("");
+        if (!type.startsWith(expectedType)) {
+            body.close();
+            throw new IOException("Not a smart HTTP server (" + request.uri() + " returned " + type + ")");
+        }
+        closeResponse();
+        response = new BufferedInputStream(body, 64 * 1024);
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeResponse();
+        client.close();
+    }
+
+    private void closeResponse() throws IOException {
+        if (response != null) {
+            response.close();
+            response = null;
+        }
+    }
+}
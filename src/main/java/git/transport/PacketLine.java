@@ -0,0 +1,80 @@
+package git.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Git's pkt-line framing: every line is prefixed with its total length as four hex digits,
+ * and {@code 0000} is a flush packet marking the end of a section.
+ */
+public final class PacketLine {
+
+    /**
+     * Largest packet, including the four length digits.
+     */
+    public static final int MAX_LENGTH = 65520;
+    private static final byte[] FLUSH = {'0', '0', '0', '0'};
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private PacketLine() {
+    }
+
+    /**
+     * Reads the payload of the next packet, or returns null for a flush packet.
+     *
+     * @throws EOFException if the stream ends, even between packets
+     */
+    public static byte[] read(InputStream in) throws IOException {
+        byte[] prefix = in.readNBytes(4);
+        if (prefix.length < 4)
+            throw new EOFException("Unexpected end of stream while reading a pkt-line");
+        int length = 0;
+        for (byte b : prefix) {
+            int digit = Character.digit(b, 16);
+            if (digit < 0)
+                throw new IOException("Invalid pkt-line length " + new String(prefix, StandardCharsets.US_ASCII));
+            length = (length << 4) | digit;
+        }
+        if (length == 0)
+            return null;
+        if (length < 4 || length > MAX_LENGTH)
+            throw new IOException("Invalid pkt-line length " + length);
+        byte[] payload = in.readNBytes(length - 4);
+        if (payload.length < length - 4)
+            throw new EOFException("Unexpected end of stream inside a pkt-line");
+        return payload;
+    }
+
+    /**
+     * Reads the next packet as text without its trailing newline, or returns null for a flush.
+     */
+    public static String readString(InputStream in) throws IOException {
+        byte[] payload = read(in);
+        if (payload == null)
+            return null;
+        int length = payload.length;
+        if (length > 0 && payload[length - 1] == '\n')
+            length--;
+        return new String(payload, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes {@code line} followed by a newline as one packet.
+     */
+    public static void write(OutputStream out, String line) throws IOException {
+        byte[] payload = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        int length = payload.length + 4;
+        if (length > MAX_LENGTH)
+            throw new IOException("pkt-line too long: " + length);
+        out.write(new byte[]{HEX_DIGITS[(length >> 12) & 0xf], HEX_DIGITS[(length >> 8) & 0xf],
+                HEX_DIGITS[(length >> 4) & 0xf], HEX_DIGITS[length & 0xf]});
+        out.write(payload);
+    }
+
+    public static void flush(OutputStream out) throws IOException {
+        out.write(FLUSH);
+    }
+}
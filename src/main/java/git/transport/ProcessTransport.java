@@ -0,0 +1,100 @@
+package git.transport;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the upload-pack service as a child process for a repository on the local file system,
+ * exactly as Git does for {@code file://} URLs, and talks to it over its stdin and stdout.
+ */
+final class ProcessTransport implements Transport {
+
+    private final Process process;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Thread errorPump;
+    private final StringBuilder errors = new StringBuilder();
+    private boolean requestSent;
+
+    ProcessTransport(String uploadPack, Path repository) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList(uploadPack.trim().split("\\s+")));
+        command.add(repository.toString());
+        this.process = new ProcessBuilder(command).start();
+        this.in = new BufferedInputStream(process.getInputStream(), 64 * 1024);
+        this.out = process.getOutputStream();
+        // Drain stderr so that a chatty or failing service cannot block on a full pipe
+        this.errorPump = Thread.ofPlatform().daemon().start(() -> {
+            try (InputStream err = process.getErrorStream()) {
+                String text = new String(err.readAllBytes(), StandardCharsets.UTF_8);
+                synchronized (errors) {
+                    errors.append(text);
+                }
+            } catch (IOException ignored) {
+                // The process is gone; there is nothing left to report
+            }
+        });
+    }
+
+    @Override
+    public InputStream openAdvertisement() throws IOException {
+        in.mark(1);
+        if (in.read() < 0)
+            throw new IOException("Could not read from remote repository: " + awaitErrors());
+        in.reset();
+        return in;
+    }
+
+    @Override
+    public InputStream sendRequest(byte[] request) throws IOException {
+        requestSent = true;
+        out.write(request);
+        out.flush();
+        return in;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // A client that wants nothing ends the conversation with a single flush packet
+            if (!requestSent && process.isAlive()) {
+                PacketLine.flush(out);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // The service may already have exited
+        }
+        out.close();
+        in.close();
+        try {
+            int status = process.waitFor();
+            errorPump.join();
+            if (status != 0 && requestSent)
+                throw new IOException("upload-pack exited with status " + status + ": " + errorText());
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String awaitErrors() {
+        try {
+            errorPump.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return errorText();
+    }
+
+    private String errorText() {
+        synchronized (errors) {
+            return errors.toString().strip();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package git.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Demultiplexes a {@code side-band-64k} response: band 1 carries the pack, band 2 progress
+ * messages and band 3 a fatal error from the remote. Only the pack data is returned to the
+ * reader; the stream ends at the closing flush packet.
+ */
+final class SideBandInputStream extends InputStream {
+
+    private static final Logger log = Logger.getLogger(SideBandInputStream.class.getName());
+
+    private static final int BAND_DATA = 1;
+    private static final int BAND_PROGRESS = 2;
+    private static final int BAND_ERROR = 3;
+
+    private final InputStream in;
+    private byte[] packet = new byte[0];
+    private int position = 1;
+    private boolean finished;
+
+    SideBandInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return packet[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int n = Math.min(length, packet.length - position);
+        System.arraycopy(packet, position, buffer, offset, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * Makes sure unread pack data is buffered, reading packets of the other bands on the way.
+     *
+     * @return false once the response has ended
+     */
+    private boolean fill() throws IOException {
+        while (position >= packet.length) {
+            if (finished)
+                return false;
+            byte[] next = PacketLine.read(in);
+            if (next == null) {
+                finished = true;
+                return false;
+            }
+            if (next.length == 0)
+                continue;
+            switch (next[0]) {
+                case BAND_DATA -> {
+                    packet = next;
+                    position = 1;
+                }
+                case BAND_PROGRESS -> log.log(Level.FINE, "remote: {0}", message(next));
+                case BAND_ERROR -> throw new IOException("remote error: " + message(next));
+                default -> throw new IOException("Invalid side-band channel " + next[0]);
+            }
+        }
+        return true;
+    }
+
+    private static String message(byte[] packet) {
+        return new String(packet, 1, packet.length - 1, StandardCharsets.UTF_8).strip();
+    }
+}
@@ -0,0 +1,55 @@
+package git.transport;
+
+import git.command.CommandContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+
+/**
+ * A connection to the {@code git-upload-pack} service of a remote repository, speaking
+ * protocol version 0.
+ * <p>
+ * The exchange always has the same two steps: the remote advertises its refs, then the client
+ * sends one request (wants, haves and {@code done}) and reads the response. A bidirectional
+ * transport writes the request into the running service; a stateless one such as smart HTTP
+ * sends it as a separate call.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Returns the stream positioned at the first ref advertisement packet.
+     */
+    InputStream openAdvertisement() throws IOException;
+
+    /**
+     * Sends the request and returns the stream carrying the response.
+     */
+    InputStream sendRequest(byte[] request) throws IOException;
+
+    /**
+     * Returns true for the URLs {@link #open} can handle: {@code http://}, {@code https://},
+     * {@code file://} and plain local paths.
+     */
+    static boolean supports(String url) {
+        return url.startsWith("http://") || url.startsWith("https://") || url.startsWith("file://")
+                || !(url.contains("://") || url.matches("^[^/]+:.*"));
+    }
+
+    /**
+     * Opens a transport for {@code url}: smart HTTP for {@code http://} and {@code https://},
+     * otherwise {@code uploadPack} run on the local repository.
+     *
+     * @return null for a URL that has no native transport
+     */
+    static Transport open(String url, String uploadPack) throws IOException {
+        if (!supports(url))
+            return null;
+        if (url.startsWith("http://") || url.startsWith("https://"))
+            return new HttpTransport(URI.create(url));
+        Path repository = url.startsWith("file://") ? Path.of(URI.create(url)) : CommandContext.current().resolve(url);
+        return new ProcessTransport(uploadPack, repository);
+    }
+}
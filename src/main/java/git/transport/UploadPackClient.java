@@ -0,0 +1,143 @@
+package git.transport;
+
+import git.pack.IndexPack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client side of the version 0 fetch protocol over a {@link Transport}.
+ * <p>
+ * The negotiation is the single-round form used by stateless transports: all wants, then all
+ * haves and {@code done} in one request, without {@code multi_ack}. The server answers with
+ * one {@code ACK} or {@code NAK} line followed by the pack on side-band 1, which is handed to
+ * {@link IndexPack} as it arrives.
+ */
+public final class UploadPackClient {
+
+    private static final Logger log = Logger.getLogger(UploadPackClient.class.getName());
+
+    private static final String AGENT = "agent=codecrafters-git/1.0";
+    private static final String[] WANTED_CAPABILITIES = {"side-band-64k", "ofs-delta", "no-progress"};
+    private static final String PEELED_SUFFIX = "^{}";
+
+    /**
+     * The refs a remote advertised.
+     *
+     * @param refs         ref names to object IDs, in advertisement order
+     * @param peeled       annotated tags to the object they point at
+     * @param capabilities the capabilities of the server
+     * @param head         the ref {@code HEAD} points to, or null if the server did not say
+     */
+    public record Advertisement(Map<String, String> refs, Map<String, String> peeled,
+                                Set<String> capabilities, String head) {
+    }
+
+    private final Transport transport;
+    private Advertisement advertisement;
+
+    public UploadPackClient(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Reads the ref advertisement; an empty repository advertises no refs.
+     */
+    public Advertisement advertisement() throws IOException {
+        if (advertisement != null)
+            return advertisement;
+
+        InputStream in = transport.openAdvertisement();
+        Map<String, String> refs = new LinkedHashMap<>();
+        Map<String, String> peeled = new LinkedHashMap<>();
+        Set<String> capabilities = new LinkedHashSet<>();
+        String line;
+        boolean first = true;
+        while ((line = PacketLine.readString(in)) != null) {
+            if (line.startsWith("ERR "))
+                throw new IOException("remote error: " + line.substring(4));
+            if (first && line.startsWith("version "))
+                continue;
+            if (first) {
+                int nul = line.indexOf('\0');
+                if (nul >= 0) {
+                    Collections.addAll(capabilities, line.substring(nul + 1).trim().split(" "));
+                    line = line.substring(0, nul);
+                }
+                first = false;
+            }
+            int space = line.indexOf(' ');
+            if (space != 40)
+                throw new IOException("Invalid ref advertisement line: " + line);
+            String id = line.substring(0, space);
+            String name = line.substring(space + 1);
+            if (name.equals("capabilities" + PEELED_SUFFIX))
+                continue; // Placeholder sent by an empty repository
+            if (name.endsWith(PEELED_SUFFIX))
+                peeled.put(name.substring(0, name.length() - PEELED_SUFFIX.length()), id);
+            else
+                refs.put(name, id);
+        }
+
+        String head = null;
+        for (String capability : capabilities)
+            if (capability.startsWith("symref=HEAD:"))
+                head = capability.substring("symref=HEAD:".length());
+        advertisement = new Advertisement(refs, peeled, capabilities, head);
+        log.log(Level.FINE, "Remote advertised {0} refs", refs.size());
+        return advertisement;
+    }
+
+    /**
+     * Fetches the objects reachable from {@code wants} but not from {@code haves} and indexes
+     * them into a new pack in {@code packDir}.
+     *
+     * @return the new {@code .pack} file, or null when nothing was wanted
+     */
+    public Path fetch(Collection<String> wants, Collection<String> haves, IndexPack indexPack) throws IOException {
+        Advertisement remote = advertisement();
+        if (wants.isEmpty())
+            return null;
+
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        boolean first = true;
+        for (String want : new LinkedHashSet<>(wants)) {
+            if (first) {
+                StringBuilder line = new StringBuilder("want ").append(want);
+                for (String capability : WANTED_CAPABILITIES)
+                    if (remote.capabilities().contains(capability))
+                        line.append(' ').append(capability);
+                line.append(' ').append(AGENT);
+                PacketLine.write(request, line.toString());
+                first = false;
+            } else {
+                PacketLine.write(request, "want " + want);
+            }
+        }
+        PacketLine.flush(request);
+        for (String have : new HashSet<>(haves))
+            PacketLine.write(request, "have " + have);
+        PacketLine.write(request, "done");
+
+        InputStream in = transport.sendRequest(request.toByteArray());
+        String acknowledgement = PacketLine.readString(in);
+        if (acknowledgement != null && acknowledgement.startsWith("ERR "))
+            throw new IOException("remote error: " + acknowledgement.substring(4));
+        if (acknowledgement == null || !(acknowledgement.equals("NAK") || acknowledgement.startsWith("ACK ")))
+            throw new IOException("Unexpected negotiation response: " + acknowledgement);
+
+        InputStream pack = remote.capabilities().contains("side-band-64k") ? new SideBandInputStream(in) : in;
+        return indexPack.receive(pack);
+    }
+}
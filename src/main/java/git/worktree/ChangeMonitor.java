@@ -0,0 +1,275 @@
+package git.worktree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.GIT_DIRECTORY;
+
+/**
+ * Watches a working tree with a {@link WatchService} and records the paths that changed, so
+ * that {@code status} only rechecks those instead of walking the whole tree.
+ * <p>
+ * Every directory of the tree except {@code .git} is registered, and directories created later
+ * are registered as their creation is reported. A monitor lives as long as the JVM that
+ * started it, normally the daemon, and is found again by its work tree.
+ * <p>
+ * Events arrive asynchronously, so before the recorded paths are used {@link #sync()} creates
+ * a cookie file in {@code .git}, which is watched on its own, and waits until the monitor
+ * thread has seen it: every change made before the call has been recorded by then. When the
+ * watch overflows, the cookie does not arrive in time or the monitor has just started, the
+ * recorded paths are incomplete and {@code sync} says so, and the caller walks everything.
+ */
+public final class ChangeMonitor {
+
+    private static final Logger log = Logger.getLogger(ChangeMonitor.class.getName());
+
+    private static final Map<Path, ChangeMonitor> MONITORS = new ConcurrentHashMap<>();
+    private static final String COOKIE_PREFIX = "status-cookie-";
+    private static final long SYNC_TIMEOUT_MILLIS = 1000;
+
+    private final Path workTree;
+    private final Path gitDirectory;
+    private final WatchService watcher;
+    private final String cookiePrefix = COOKIE_PREFIX + ProcessHandle.current().pid() + "-";
+    private final AtomicLong cookieCount = new AtomicLong();
+    private final Map<String, CountDownLatch> cookies = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    // Guarded by itself; complete is false while paths may be missing from dirty
+    private final Set<String> dirty = new HashSet<>();
+    private boolean complete;
+
+    // The status kept up to date with this monitor, and the HEAD and index it is for
+    private final Lock lock = new ReentrantLock();
+    private String statusKey;
+    private WorkTreeStatus status;
+
+    private ChangeMonitor(Path workTree) throws IOException {
+        this.workTree = workTree;
+        this.gitDirectory = workTree.resolve(GIT_DIRECTORY);
+        this.watcher = workTree.getFileSystem().newWatchService();
+        try {
+            gitDirectory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            registerAll(workTree);
+        } catch (IOException | RuntimeException e) {
+            watcher.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the monitor of {@code workTree}, starting one if none is running.
+     *
+     * @throws IOException if the tree cannot be watched, for example when there are more
+     *                     directories than the system allows watches
+     */
+    public static ChangeMonitor start(Path workTree) throws IOException {
+        synchronized (MONITORS) {
+            ChangeMonitor monitor = get(workTree);
+            if (monitor != null)
+                return monitor;
+            long begin = System.nanoTime();
+            monitor = new ChangeMonitor(workTree);
+            MONITORS.put(workTree, monitor);
+            // A platform thread, as it blocks for good and must run while a status waits for it
+            Thread.ofPlatform().daemon().name("change-monitor").start(monitor::run);
+            log.log(Level.FINE, String.format("Watching %s, registered in %.1f ms", workTree, (System.nanoTime() - begin) / 1e6));
+            return monitor;
+        }
+    }
+
+    /**
+     * Returns the running monitor of {@code workTree}, or null.
+     */
+    public static ChangeMonitor get(Path workTree) {
+        ChangeMonitor monitor = MONITORS.get(workTree);
+        return monitor == null || monitor.closed ? null : monitor;
+    }
+
+    /**
+     * Stops the monitor of {@code workTree}.
+     *
+     * @return false if none was running
+     */
+    public static boolean stop(Path workTree) throws IOException {
+        ChangeMonitor monitor = MONITORS.remove(workTree);
+        if (monitor == null)
+            return false;
+        monitor.closed = true;
+        monitor.watcher.close();
+        return true;
+    }
+
+    /**
+     * Returns the status of the working tree, checking only the paths changed since the last
+     * call when that was for the same {@code key}, which names the HEAD and index the result
+     * depends on; otherwise a new status from {@code loader} checks everything. Calls are
+     * serialized, so that no change is consumed by one call and missed by another.
+     */
+    public WorkTreeStatus status(String key, Loader loader) throws IOException {
+        lock.lock();
+        try {
+            Set<String> changed = sync();
+            if (changed != null && key.equals(statusKey)) {
+                status.update(changed);
+            } else {
+                statusKey = null;
+                status = loader.load();
+                status.scan();
+                statusKey = key;
+            }
+            return status;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every change made so far is recorded, and returns the repository-relative
+     * paths changed since the previous call.
+     *
+     * @return the changed paths, or null if some may be missing
+     */
+    private Set<String> sync() throws IOException {
+        String name = cookiePrefix + cookieCount.incrementAndGet();
+        CountDownLatch arrived = new CountDownLatch(1);
+        cookies.put(name, arrived);
+        Path cookie = gitDirectory.resolve(name);
+        try {
+            Files.createFile(cookie);
+            if (!arrived.await(SYNC_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) || closed) {
+                log.log(Level.FINE, "Change monitor of {0} did not catch up", workTree);
+                markIncomplete();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            markIncomplete();
+        } finally {
+            cookies.remove(name);
+            Files.deleteIfExists(cookie);
+        }
+
+        synchronized (dirty) {
+            if (!complete) {
+                complete = true;
+                dirty.clear();
+                return null;
+            }
+            Set<String> changed = new HashSet<>(dirty);
+            dirty.clear();
+            return changed;
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                // Drain everything already queued, so a cookie is released after the events before it
+                List<CountDownLatch> cookiesSeen = new ArrayList<>();
+                do {
+                    process(key, cookiesSeen);
+                } while ((key = watcher.poll()) != null);
+                cookiesSeen.forEach(CountDownLatch::countDown);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Stopped
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Change monitor of " + workTree + " failed", e);
+        } finally {
+            closed = true;
+            MONITORS.remove(workTree, this);
+            cookies.values().forEach(CountDownLatch::countDown);
+        }
+    }
+
+    private void process(WatchKey key, List<CountDownLatch> cookiesSeen) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                markIncomplete();
+                continue;
+            }
+            Path name = (Path) event.context();
+            if (directory.equals(gitDirectory)) {
+                CountDownLatch cookie = cookies.get(name.toString());
+                if (cookie != null)
+                    cookiesSeen.add(cookie);
+                continue;
+            }
+            if (name.toString().equals(GIT_DIRECTORY))
+                continue;
+            Path child = directory.resolve(name);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    registerAll(child);
+                } catch (IOException e) {
+                    log.log(Level.FINE, "Cannot watch " + child, e);
+                    markIncomplete();
+                }
+            }
+            synchronized (dirty) {
+                dirty.add(workTree.relativize(child).toString().replace(File.separatorChar, '/'));
+            }
+        }
+        key.reset();
+    }
+
+    private void registerAll(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                if (directory.getFileName() != null && directory.getFileName().toString().equals(GIT_DIRECTORY))
+                    return FileVisitResult.SKIP_SUBTREE;
+                directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Removed while walking; its parent reports that
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Creates the status for a HEAD and index.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        WorkTreeStatus load() throws IOException;
+    }
+
+    private void markIncomplete() {
+        synchronized (dirty) {
+            complete = false;
+            dirty.clear();
+        }
+    }
+}
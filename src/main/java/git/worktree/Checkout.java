@@ -0,0 +1,272 @@
+package git.worktree;
+
+import git.index.CacheTree;
+import git.index.Index;
+import git.index.IndexEntry;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.Tree;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.FORWARD_SLASH;
+import static git.constant.Constant.GIT_DIRECTORY;
+
+/**
+ * Writes the files of a tree into a working tree and builds the matching index.
+ * <p>
+ * The trees are read first, on the calling thread, which yields the list of directories and
+ * files and the whole cache tree without touching a blob. All directories are then created in
+ * one pass, parents first, and the files are written by a pool with one thread per processor
+ * in batches of consecutive files, so small files do not cost a task each. Each blob is copied
+ * with {@link ObjectStore#copyTo} into the file's channel, which streams loose objects through
+ * a fixed buffer whatever their size.
+ * <p>
+ * The index gets the stat data of every file just written and a cache tree carrying the ID
+ * of every directory, so a following {@code write-tree} finds nothing to rehash. Files and
+ * symbolic links already at a path are replaced, but files the tree does not have are left
+ * alone.
+ */
+public final class Checkout {
+
+    private static final Logger log = Logger.getLogger(Checkout.class.getName());
+
+    private static final int MODE_EXECUTABLE = 0100755;
+    private static final int MODE_SYMLINK = 0120000;
+    // Files per task; a checkout with fewer is written on the calling thread
+    private static final int BATCH_SIZE = 64;
+
+    private final ObjectStore store;
+    private final Path workTree;
+    private final LongAdder bytesWritten = new LongAdder();
+
+    public Checkout(ObjectStore store, Path workTree) {
+        this.store = store;
+        this.workTree = workTree;
+    }
+
+    /**
+     * Checks out the tree {@code treeId} and returns the index describing the result.
+     */
+    public Index checkout(ObjectId treeId) throws IOException {
+        long start = System.nanoTime();
+        List<Path> directories = new ArrayList<>();
+        List<FileEntry> files = new ArrayList<>();
+        CacheTree root = collect(treeId, workTree, "", "", directories, files);
+
+        Files.createDirectories(workTree);
+        for (Path directory : directories)
+            createDirectory(directory);
+        IndexEntry[] entries = writeFiles(files);
+
+        Index index = new Index();
+        for (IndexEntry entry : entries)
+            index.add(entry);
+        index.setCacheTree(root);
+        logThroughput(files.size(), System.nanoTime() - start);
+        return index;
+    }
+
+    /**
+     * Returns the index of the tree {@code treeId} without writing any file. The entries carry
+     * no stat data, so the next {@code write-tree} hashes the files it finds once.
+     */
+    public Index read(ObjectId treeId) throws IOException {
+        List<FileEntry> files = new ArrayList<>();
+        CacheTree root = collect(treeId, workTree, "", "", new ArrayList<>(), files);
+        Index index = new Index();
+        for (FileEntry file : files)
+            index.add(IndexEntry.unstated(file.path(), file.entry().mode(), file.entry().id().toRaw()));
+        index.setCacheTree(root);
+        return index;
+    }
+
+    /**
+     * Walks the tree {@code treeId}, adding its subdirectories in pre-order and its files in
+     * tree order. The whole tree is walked before anything is written, so a tree with an unsafe
+     * name is refused without touching the work tree.
+     *
+     * @return the cache tree node of the tree
+     */
+    private CacheTree collect(ObjectId treeId, Path directory, String name, String prefix,
+                              List<Path> directories, List<FileEntry> files) throws IOException {
+        Tree tree = store.readTree(treeId);
+        List<CacheTree> subtrees = new ArrayList<>();
+        int entryCount = 0;
+        for (Tree.Entry entry : tree.entries()) {
+            String path = prefix + entry.name();
+            Path target = resolveEntry(directory, entry.name(), path);
+            if (entry.isTree()) {
+                directories.add(target);
+                CacheTree child = collect(entry.id(), target, entry.name(), path + FORWARD_SLASH, directories, files);
+                subtrees.add(child);
+                entryCount += child.getEntryCount();
+                continue;
+            }
+            files.add(new FileEntry(entry, target, path));
+            entryCount++;
+        }
+        CacheTree node = new CacheTree(name, entryCount, treeId.toRaw());
+        subtrees.forEach(node::addChild);
+        return node;
+    }
+
+    /**
+     * Resolves the tree entry {@code name} in {@code directory}, refusing the names Git's
+     * {@code verify_path} refuses: empty, {@code .}, {@code ..}, {@code .git} in any case, and
+     * names holding a slash, a backslash or a NUL. A tree fetched from elsewhere could otherwise
+     * write outside the work tree or into the repository.
+     *
+     * @throws UnsafePathException if the name is refused
+     */
+    private static Path resolveEntry(Path directory, String name, String path) throws UnsafePathException {
+        if (!isValidName(name))
+            throw new UnsafePathException(path);
+        Path target = directory.resolve(name);
+        if (!target.normalize().startsWith(directory.normalize()) || target.getNameCount() != directory.getNameCount() + 1)
+            throw new UnsafePathException(path);
+        return target;
+    }
+
+    /**
+     * Whether {@code name} may be used as one component of a path in the work tree.
+     */
+    private static boolean isValidName(String name) {
+        if (name.isEmpty() || name.equals(".") || name.equals("..") || name.equalsIgnoreCase(GIT_DIRECTORY))
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '/' || c == '\\' || c == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private IndexEntry[] writeFiles(List<FileEntry> files) throws IOException {
+        IndexEntry[] entries = new IndexEntry[files.size()];
+        if (files.size() <= BATCH_SIZE) {
+            writeBatch(files, 0, files.size(), entries);
+            return entries;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<Void>> batches = new ArrayList<>();
+            for (int from = 0; from < files.size(); from += BATCH_SIZE) {
+                int batchStart = from;
+                int batchEnd = Math.min(from + BATCH_SIZE, files.size());
+                batches.add(workers.submit(() -> {
+                    writeBatch(files, batchStart, batchEnd, entries);
+                    return null;
+                }));
+            }
+            for (Future<Void> batch : batches)
+                batch.get();
+            return entries;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Checkout interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException("Checkout failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void writeBatch(List<FileEntry> files, int from, int to, IndexEntry[] entries) throws IOException {
+        for (int i = from; i < to; i++)
+            entries[i] = writeEntry(files.get(i));
+    }
+
+    private IndexEntry writeEntry(FileEntry file) throws IOException {
+        Tree.Entry entry = file.entry();
+        Path target = file.target();
+        if (entry.mode() == Tree.MODE_GITLINK) {
+            // Submodules are not cloned; Git leaves an empty directory in their place too
+            createDirectory(target);
+        } else if (entry.mode() == MODE_SYMLINK) {
+            Path link = Path.of(new String(store.read(entry.id()).content(), StandardCharsets.UTF_8));
+            try {
+                Files.createSymbolicLink(target, link);
+            } catch (FileAlreadyExistsException e) {
+                Files.delete(target);
+                Files.createSymbolicLink(target, link);
+            }
+        } else {
+            writeFile(entry.id(), target);
+            if (entry.mode() == MODE_EXECUTABLE)
+                makeExecutable(target);
+        }
+        return IndexEntry.stat(target, file.path()).withId(entry.id().toRaw()).withMode(entry.mode());
+    }
+
+    /**
+     * Writes a blob into a new file, replacing whatever is at {@code target} so that neither a
+     * symbolic link is followed nor old permissions are kept.
+     */
+    private void writeFile(ObjectId id, Path target) throws IOException {
+        try (FileChannel channel = createFile(target)) {
+            bytesWritten.add(store.copyTo(id, channel).size());
+        }
+    }
+
+    private static FileChannel createFile(Path target) throws IOException {
+        try {
+            return FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException e) {
+            Files.delete(target);
+            return FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * Creates {@code directory}, whose parent exists, replacing a file or link in its place.
+     */
+    private static void createDirectory(Path directory) throws IOException {
+        try {
+            Files.createDirectory(directory);
+        } catch (FileAlreadyExistsException e) {
+            if (Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS))
+                return;
+            Files.delete(directory);
+            Files.createDirectory(directory);
+        }
+    }
+
+    private static void makeExecutable(Path file) throws IOException {
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rwxr-xr-x"));
+        } catch (UnsupportedOperationException e) {
+            file.toFile().setExecutable(true);
+        }
+    }
+
+    private void logThroughput(int files, long elapsedNanos) {
+        double megabytes = bytesWritten.sum() / (1024.0 * 1024.0);
+        double seconds = Math.max(elapsedNanos, 1) / 1_000_000_000.0;
+        log.log(Level.INFO, String.format("checkout: %d files, %.2f MB in %.1f ms (%.0f files/s, %.2f MB/s)",
+                files, megabytes, seconds * 1000, files / seconds, megabytes / seconds));
+    }
+
+    private record FileEntry(Tree.Entry entry, Path target, String path) {
+    }
+}
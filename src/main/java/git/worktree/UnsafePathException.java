@@ -0,0 +1,14 @@
+package git.worktree;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a tree holds a path that must not be written into a work tree, such as one
+ * leading out of it or into the repository.
+ */
+public class UnsafePathException extends IOException {
+
+    public UnsafePathException(String path) {
+        super("invalid path '" + path + "'");
+    }
+}
@@ -0,0 +1,366 @@
+package git.worktree;
+
+import git.index.Index;
+import git.index.IndexEntry;
+import git.object.ObjectId;
+import git.object.ObjectStore;
+import git.object.Tree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static git.constant.Constant.FORWARD_SLASH;
+import static git.constant.Constant.GIT_DIRECTORY;
+
+/**
+ * Compares a working tree with HEAD's tree, using the index as a stat cache.
+ * <p>
+ * The checked part of the tree is walked on a fork-join pool: a directory task only lists
+ * names, and the {@code lstat} of the entries is done by batch tasks of at most
+ * {@value #BATCH_SIZE} names each, which fork the subdirectories they find, so a large
+ * directory is spread over the workers as well as a deep tree. A file is hashed only when its
+ * stat data no longer matches the index, or the index entry is racily clean; symbolic links
+ * are always hashed, from their target, as the index may have followed them.
+ * <p>
+ * An instance keeps its last result, and {@link #update} rechecks only some paths of it,
+ * which is how a {@link ChangeMonitor} avoids the full walk; it stays valid as long as HEAD
+ * and the index are those it was created with.
+ */
+public final class WorkTreeStatus {
+
+    private static final Logger log = Logger.getLogger(WorkTreeStatus.class.getName());
+
+    /**
+     * How a path differs, with its code in Git's short format.
+     */
+    public enum Change {
+        MODIFIED(" M"), TYPE_CHANGED(" T"), DELETED(" D"), ADDED("A "), UNMERGED("UU"), UNTRACKED("??");
+
+        private final String code;
+
+        Change(String code) {
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+
+    // Names lstat'ed per task
+    private static final int BATCH_SIZE = 64;
+    private static final int MODE_TYPE_MASK = 0170000;
+    private static final int MODE_DIRECTORY = 0040000;
+    private static final int MODE_SYMLINK = 0120000;
+
+    private final Path workTree;
+    private final Index index;
+    // Every path of HEAD's tree, and the paths only the index has, with no HEAD mode and ID
+    private final NavigableMap<String, Tracked> tracked = new TreeMap<>();
+    // Every directory holding a tracked path, with a trailing slash
+    private final Set<String> trackedDirectories = new HashSet<>();
+    // The paths left in conflict by a merge
+    private final Set<String> unmerged = new HashSet<>();
+
+    private NavigableMap<String, Change> changes = new TreeMap<>();
+    private final Map<String, Change> found = new ConcurrentHashMap<>();
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final LongAdder filesScanned = new LongAdder();
+    private final LongAdder filesHashed = new LongAdder();
+
+    /**
+     * @param headTree HEAD's tree, or null on an unborn branch
+     */
+    public WorkTreeStatus(ObjectStore store, Path workTree, ObjectId headTree, Index index) throws IOException {
+        this.workTree = workTree;
+        this.index = index;
+        if (headTree != null)
+            flatten(store, headTree, "");
+        for (IndexEntry entry : index.getEntries())
+            if (!tracked.containsKey(entry.getPath()))
+                track(entry.getPath(), new Tracked(0, null, entry));
+        for (IndexEntry entry : index.getUnmergedEntries()) {
+            unmerged.add(entry.getPath());
+            if (!tracked.containsKey(entry.getPath()))
+                track(entry.getPath(), new Tracked(0, null, null));
+        }
+    }
+
+    /**
+     * The differing paths found by the last check, in path order.
+     */
+    public NavigableMap<String, Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Checks the whole working tree.
+     *
+     * @return the differing paths in path order
+     */
+    public NavigableMap<String, Change> scan() throws IOException {
+        return update(List.of(""));
+    }
+
+    /**
+     * Rechecks {@code paths}, with everything below those that are directories, and keeps the
+     * rest of the last result. Not safe for concurrent calls; a returned map is never changed.
+     *
+     * @param paths repository-relative paths; the empty path is the whole tree
+     * @return the differing paths in path order
+     */
+    public NavigableMap<String, Change> update(Collection<String> paths) throws IOException {
+        long start = System.nanoTime();
+        List<String> roots = roots(paths);
+        found.clear();
+        seen.clear();
+        filesScanned.reset();
+        filesHashed.reset();
+        NavigableMap<String, Change> changes = new TreeMap<>(this.changes);
+        for (String root : roots)
+            clear(changes, root);
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            for (String root : roots) {
+                tasks.add(root.isEmpty() ? new DirectoryTask(workTree, "")
+                        : new BatchTask(List.of(workTree.resolve(root)), parentPrefix(root)));
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+
+        changes.putAll(found);
+        for (String root : roots)
+            reportDeleted(changes, root);
+        log.log(Level.FINE, String.format("status: %d roots, %d files scanned, %d hashed in %.1f ms",
+                roots.size(), filesScanned.sum(), filesHashed.sum(), (System.nanoTime() - start) / 1e6));
+        this.changes = changes;
+        return changes;
+    }
+
+    /**
+     * Returns how an untracked path is shown: its outermost directory that holds no tracked
+     * path, with a trailing slash, or the path itself.
+     */
+    public String untrackedPath(String path) {
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+            String directory = path.substring(0, slash + 1);
+            if (!trackedDirectories.contains(directory))
+                return directory;
+        }
+        return path;
+    }
+
+    private void flatten(ObjectStore store, ObjectId treeId, String prefix) throws IOException {
+        for (Tree.Entry entry : store.readTree(treeId).entries()) {
+            String path = prefix + entry.name();
+            if (entry.isTree())
+                flatten(store, entry.id(), path + FORWARD_SLASH);
+            else
+                track(path, new Tracked(entry.mode(), entry.id(), index.getEntry(path)));
+        }
+    }
+
+    private void track(String path, Tracked entry) {
+        tracked.put(path, entry);
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1))
+            trackedDirectories.add(path.substring(0, slash + 1));
+    }
+
+    /**
+     * Drops the paths below another of {@code paths}, as checking that one covers them.
+     */
+    private static List<String> roots(Collection<String> paths) {
+        Set<String> all = new HashSet<>(paths);
+        if (all.contains(""))
+            return List.of("");
+        List<String> roots = new ArrayList<>();
+        outer:
+        for (String path : all) {
+            for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1))
+                if (all.contains(path.substring(0, slash)))
+                    continue outer;
+            roots.add(path);
+        }
+        return roots;
+    }
+
+    /**
+     * Removes the entries of {@code map} at {@code root} or below it.
+     */
+    private static void clear(NavigableMap<String, ?> map, String root) {
+        if (root.isEmpty()) {
+            map.clear();
+            return;
+        }
+        map.remove(root);
+        below(map, root).clear();
+    }
+
+    /**
+     * The entries of {@code map} below the directory {@code root}; as '0' follows '/', the
+     * range holds exactly the paths starting with {@code root + "/"}.
+     */
+    private static <V> NavigableMap<String, V> below(NavigableMap<String, V> map, String root) {
+        return map.subMap(root + '/', true, root + '0', false);
+    }
+
+    /**
+     * Reports the tracked paths at {@code root} or below it that the walk did not see.
+     */
+    private void reportDeleted(NavigableMap<String, Change> changes, String root) {
+        Map<String, Tracked> candidates = root.isEmpty() ? tracked : below(tracked, root);
+        for (Map.Entry<String, Tracked> entry : candidates.entrySet())
+            if (entry.getValue().headId() != null && !seen.contains(entry.getKey()))
+                changes.put(entry.getKey(), Change.DELETED);
+        Tracked exact = tracked.get(root);
+        if (exact != null && exact.headId() != null && !seen.contains(root))
+            changes.put(root, Change.DELETED);
+    }
+
+    private static String parentPrefix(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash + 1);
+    }
+
+    /**
+     * Checks one file or symbolic link.
+     */
+    private void check(Path file, IndexEntry stat) throws IOException {
+        filesScanned.increment();
+        String path = stat.getPath();
+        Tracked entry = tracked.get(path);
+        if (entry == null) {
+            found.put(path, Change.UNTRACKED);
+            return;
+        }
+        seen.add(path);
+        if (unmerged.contains(path)) {
+            found.put(path, Change.UNMERGED);
+        } else if (entry.headId() == null) {
+            found.put(path, Change.ADDED);
+        } else if ((stat.getMode() & MODE_TYPE_MASK) != (entry.headMode() & MODE_TYPE_MASK)) {
+            found.put(path, Change.TYPE_CHANGED);
+        } else if (stat.getMode() != entry.headMode() || !entry.headId().equals(currentId(file, stat, entry.cached()))) {
+            found.put(path, Change.MODIFIED);
+        }
+    }
+
+    private ObjectId currentId(Path file, IndexEntry stat, IndexEntry cached) throws IOException {
+        if (stat.getMode() == MODE_SYMLINK) {
+            filesHashed.increment();
+            byte[] target = Files.readSymbolicLink(file).toString().getBytes(StandardCharsets.UTF_8);
+            return ObjectStore.hashBlob(target, target.length);
+        }
+        if (cached != null && !index.isRacilyClean(cached) && cached.hasSameStat(stat))
+            return ObjectId.fromRaw(cached.getId());
+        filesHashed.increment();
+        return ObjectStore.hashBlob(file);
+    }
+
+    /**
+     * Lists a directory and hands its entries to batch tasks.
+     */
+    private final class DirectoryTask extends RecursiveAction {
+
+        private final Path directory;
+        private final String prefix;
+
+        DirectoryTask(Path directory, String prefix) {
+            this.directory = directory;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected void compute() {
+            List<Path> children = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path child : entries)
+                    if (!child.getFileName().toString().equals(GIT_DIRECTORY)) // Ignore .git directories
+                        children.add(child);
+            } catch (NoSuchFileException e) {
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            List<BatchTask> batches = new ArrayList<>();
+            for (int from = 0; from < children.size(); from += BATCH_SIZE)
+                batches.add(new BatchTask(children.subList(from, Math.min(from + BATCH_SIZE, children.size())), prefix));
+            invokeAll(batches);
+        }
+    }
+
+    /**
+     * Stats some entries of one directory, checks the files and walks the subdirectories.
+     */
+    private final class BatchTask extends RecursiveAction {
+
+        private final List<Path> children;
+        private final String prefix;
+
+        BatchTask(List<Path> children, String prefix) {
+            this.children = children;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            try {
+                for (Path child : children) {
+                    String path = prefix + child.getFileName();
+                    IndexEntry stat;
+                    try {
+                        stat = IndexEntry.lstat(child, path);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    if (stat.getMode() == MODE_DIRECTORY) {
+                        Tracked entry = tracked.get(path);
+                        if (entry != null && entry.headMode() == Tree.MODE_GITLINK)
+                            seen.add(path); // Submodule contents are not compared
+                        else
+                            subdirectories.add(new DirectoryTask(child, path + FORWARD_SLASH));
+                    } else if (stat.getMode() != 0) {
+                        check(child, stat);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subdirectories);
+        }
+    }
+
+    private record Tracked(int headMode, ObjectId headId, IndexEntry cached) {
+    }
+}